@@ -1310,6 +1310,33 @@ public class ByteArray extends PrimitiveArray {
         //ByteArray does nothing
     }
 
+    /**
+     * This is applyConstraint's test for ByteArrays, for the usual case: 
+     * value2 is an int and op isn't REGEX_OP.
+     * Like getInt, if maxIsMV, MAX_VALUE is treated as NaN.
+     */
+    protected int applyConstraintFast(boolean morePrecise, BitSet keep, String op, String value2) {
+        final int tOp = opCode(op);
+        final double value2d = String2.parseDouble(value2);
+        final int value2i = String2.parseInt(value2);
+        if (tOp < 0 || value2d != value2i || value2i == Integer.MAX_VALUE)
+            return -1; //let applyConstraint handle it
+        final byte tArray[] = array;
+        final int mv = maxIsMV? Byte.MAX_VALUE : Integer.MIN_VALUE; //MIN_VALUE: no missing value;
+        return applyConstraintMask(keep, (firstRow, nRows) -> {
+            long mask = 0;
+            switch (tOp) {
+                case OP_EQ: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a == value2i & a != mv? 1L : 0L) << i;} break;
+                case OP_NE: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a != value2i | a == mv? 1L : 0L) << i;} break;
+                case OP_LE: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a <= value2i & a != mv? 1L : 0L) << i;} break;
+                case OP_GE: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a >= value2i & a != mv? 1L : 0L) << i;} break;
+                case OP_LT: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a <  value2i & a != mv? 1L : 0L) << i;} break;
+                case OP_GT: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a >  value2i & a != mv? 1L : 0L) << i;} break;
+            }
+            return mask;
+        });
+    }
+
     /**
      * This writes 'size' elements to a DataOutputStream.
      *
@@ -0,0 +1,818 @@
+/*
+ * ByteWriter Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package com.cohort.array;
+
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This writes text (notably, the cells of a table's PrimitiveArrays)
+ * directly to an OutputStream via a reusable byte buffer.
+ * It is used instead of a BufferedWriter by the TableWriters which write
+ * lots of text (e.g., .csv, .tsv, .json, .jsonl),
+ * because it avoids making a String for each number and each encoded String.
+ *
+ * <p>The output is exactly the same as writing the Strings from
+ * pa.getString(), pa.getSVString() and pa.getJsonString()
+ * (and String2.toSVString() and String2.toJson()) to a BufferedWriter.
+ * Values are encoded straight into the byte buffer.
+ * For floats and doubles, that is done by ShortestDecimal on Java 19+
+ * (where Float/Double.toString are specified to make the same shortest decimal).
+ * Since Java 17's Float/Double.toString sometimes use more digits,
+ * on older Javas they are formatted into a reusable StringBuilder
+ * (by the same code as Float/Double.toString, but without making a String).
+ *
+ * <p>Since the SV and Json encodings \\uhhhh encode chars #127 and above,
+ * their output is 7bit ASCII. ASCII chars are written directly.
+ * Other chars (e.g., in a separator or in a String written with write(String))
+ * are encoded with the charset.
+ *
+ * <p>This is not thread-safe.
+ */
+public class ByteWriter {
+
+    /** The default size of the byte buffer. */
+    public final static int BUFFER_SIZE = 8192;
+
+    private final OutputStream outputStream;
+    private final Charset charset;
+    private byte buf[];
+    private int po = 0; //the number of bytes in buf
+    private char isoChars[] = new char[32]; //for writeIsoTime
+    private final boolean utf8;
+    private char pendingHighSurrogate = 0; //from write(char), waiting for its low surrogate
+    private final StringBuilder numberSB = new StringBuilder(32); //for floats and doubles if !useShortestDecimal
+
+    /** If true, floats and doubles are formatted by ShortestDecimal (not final, so tests can change it). */
+    static boolean useShortestDecimal = ShortestDecimal.SAME_AS_TO_STRING;
+
+    /**
+     * The constructor.
+     *
+     * @param tOutputStream the outputStream which will receive the bytes.
+     *   It needn't be buffered.
+     * @param tCharset the name of the charset used to encode non-ASCII chars,
+     *   e.g., File2.ISO_8859_1 or File2.UTF_8.
+     */
+    public ByteWriter(OutputStream tOutputStream, String tCharset) {
+        outputStream = tOutputStream;
+        charset = Charset.forName(tCharset);
+        utf8 = StandardCharsets.UTF_8.equals(charset);
+        buf = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * This ensures there is room for n more bytes in buf.
+     *
+     * @param n the number of bytes which will be added to buf
+     */
+    private void ensureRoom(int n) throws IOException {
+        if (po + n <= buf.length)
+            return;
+        flushBuffer();
+        if (n > buf.length)
+            buf = new byte[Math.max(n, 2 * buf.length)];
+    }
+
+    /** This writes the bytes in buf to outputStream (but doesn't flush outputStream). */
+    private void flushBuffer() throws IOException {
+        if (po > 0) {
+            outputStream.write(buf, 0, po);
+            po = 0;
+        }
+    }
+
+    /**
+     * This writes the buffered bytes to the outputStream and flushes the outputStream.
+     *
+     * @throws IOException if trouble
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        outputStream.flush();
+    }
+
+    /**
+     * This flushes and closes the outputStream.
+     * A high surrogate which is still waiting for its low surrogate
+     * is written as the charset's replacement (e.g., '?'), like a BufferedWriter does.
+     *
+     * @throws IOException if trouble
+     */
+    public void close() throws IOException {
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            writeEncoded(String.valueOf(high), 0, false);
+        }
+        flushBuffer();
+        outputStream.close();
+    }
+
+    /**
+     * This writes one char.
+     * Like a BufferedWriter, a high surrogate is held until the next char,
+     * so a surrogate pair written one char at a time is encoded as one code point
+     * (e.g., 4 bytes in UTF-8).
+     *
+     * @param ch the char
+     * @throws IOException if trouble
+     */
+    public void write(char ch) throws IOException {
+        if (ch < 128 && pendingHighSurrogate == 0) {
+            if (po == buf.length)
+                flushBuffer();
+            buf[po++] = (byte)ch;
+        } else {
+            writeNonAscii(ch);
+        }
+    }
+
+    /** This writes a char which isn't ASCII or which follows a high surrogate. */
+    private void writeNonAscii(char ch) throws IOException {
+        char high = pendingHighSurrogate;
+        pendingHighSurrogate = 0;
+        if (high != 0) {
+            if (Character.isLowSurrogate(ch)) {
+                if (utf8) {
+                    int cp = Character.toCodePoint(high, ch);
+                    ensureRoom(4);
+                    buf[po++] = (byte)(0xF0 | (cp >> 18));
+                    buf[po++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                    buf[po++] = (byte)(0x80 | ((cp >>  6) & 0x3F));
+                    buf[po++] = (byte)(0x80 | ( cp        & 0x3F));
+                } else {
+                    writeEncoded(new String(new char[]{high, ch}), 0, false);
+                }
+                return;
+            }
+            writeEncoded(String.valueOf(high), 0, false); //a lone high surrogate
+        }
+        if (Character.isHighSurrogate(ch)) {
+            pendingHighSurrogate = ch;
+        } else if (ch < 128) {
+            ensureRoom(1);
+            buf[po++] = (byte)ch;
+        } else if (utf8 && !Character.isSurrogate(ch)) {
+            ensureRoom(3);
+            if (ch < 0x800) {
+                buf[po++] = (byte)(0xC0 | (ch >> 6));
+            } else {
+                buf[po++] = (byte)(0xE0 | (ch >> 12));
+                buf[po++] = (byte)(0x80 | ((ch >> 6) & 0x3F));
+            }
+            buf[po++] = (byte)(0x80 | (ch & 0x3F));
+        } else {
+            writeEncoded(String.valueOf(ch), 0, false); //e.g., a lone low surrogate becomes '?'
+        }
+    }
+
+    /**
+     * This encodes s.substring(from) with the charset and writes the bytes.
+     *
+     * @param hold if true and s ends with a high surrogate, it is held for the next write
+     */
+    private void writeEncoded(String s, int from, boolean hold) throws IOException {
+        int to = s.length();
+        if (hold && to > from && Character.isHighSurrogate(s.charAt(to - 1))) 
+            pendingHighSurrogate = s.charAt(--to);
+        byte bar[] = s.substring(from, to).getBytes(charset);
+        if (bar.length > buf.length) {
+            flushBuffer();
+            outputStream.write(bar);
+            return;
+        }
+        ensureRoom(bar.length);
+        System.arraycopy(bar, 0, buf, po, bar.length);
+        po += bar.length;
+    }
+
+    /**
+     * This writes a String.
+     *
+     * @param s the String. If null, nothing is written.
+     * @throws IOException if trouble
+     */
+    public void write(String s) throws IOException {
+        if (s == null)
+            return;
+        int sLength = s.length();
+        int i = 0;
+        if (pendingHighSurrogate != 0 && sLength > 0) 
+            writeNonAscii(s.charAt(i++));
+        if (sLength - i > buf.length) {
+            //rare: a huge String
+            writeEncoded(s, i, true);
+            return;
+        }
+        ensureRoom(sLength - i);
+        for (; i < sLength; i++) {
+            char ch = s.charAt(i);
+            if (ch >= 128) {
+                //rare: encode the rest with the charset
+                writeEncoded(s, i, true);
+                return;
+            }
+            buf[po++] = (byte)ch;
+        }
+    }
+
+    /**
+     * This writes a long (e.g., 123 or -123) without making a String.
+     *
+     * @param l the long
+     * @throws IOException if trouble
+     */
+    public void writeLong(long l) throws IOException {
+        ensureRoom(20);
+        if (l < 0) {
+            if (l == Long.MIN_VALUE) {
+                write("-9223372036854775808");
+                return;
+            }
+            buf[po++] = '-';
+            l = -l;
+        }
+        //write the digits backwards, then reverse them
+        int start = po;
+        do {
+            buf[po++] = (byte)('0' + (int)(l % 10));
+            l /= 10;
+        } while (l > 0);
+        for (int i = start, j = po - 1; i < j; i++, j--) {
+            byte b = buf[i];
+            buf[i] = buf[j];
+            buf[j] = b;
+        }
+    }
+
+    /**
+     * This writes the JSON encoding of s (surrounded by double quotes),
+     * exactly like String2.toJson(s).
+     *
+     * @param s the String. If null, this writes null.
+     * @throws IOException if trouble
+     */
+    public void writeJson(String s) throws IOException {
+        if (s == null) {
+            write("null");
+            return;
+        }
+        int sLength = s.length();
+        ensureRoom(6 * sLength + 2);
+        writeJsonToBuf(s, sLength);
+    }
+
+    /**
+     * This writes the JSON encoding of s to buf. The caller must have ensured room for
+     * 6*sLength + 2 bytes.
+     */
+    private void writeJsonToBuf(String s, int sLength) {
+        byte tBuf[] = buf;
+        int tPo = po;
+        tBuf[tPo++] = '"';
+        for (int i = 0; i < sLength; i++) {
+            char ch = s.charAt(i);
+            //using 127 (not 255) means the output is 7bit ASCII and file encoding is irrelevant
+            if (ch < 32 || ch >= 127) {
+                if (ch == '\f') {
+                    tBuf[tPo++] = '\\'; tBuf[tPo++] = 'f';
+                } else if (ch == '\n') {
+                    tBuf[tPo++] = '\\'; tBuf[tPo++] = 'n';
+                } else if (ch == '\r') {
+                    tBuf[tPo++] = '\\'; tBuf[tPo++] = 'r';
+                } else if (ch == '\t') {
+                    tBuf[tPo++] = '\\'; tBuf[tPo++] = 't';
+                } else if (ch == '\b') {
+                    //remove it
+                } else {
+                    tBuf[tPo++] = '\\';
+                    tBuf[tPo++] = 'u';
+                    tBuf[tPo++] = HEX_DIGITS[(ch >> 12) & 0xF];
+                    tBuf[tPo++] = HEX_DIGITS[(ch >>  8) & 0xF];
+                    tBuf[tPo++] = HEX_DIGITS[(ch >>  4) & 0xF];
+                    tBuf[tPo++] = HEX_DIGITS[ ch        & 0xF];
+                }
+            } else if (ch == '\\' || ch == '"') {
+                tBuf[tPo++] = '\\'; tBuf[tPo++] = (byte)ch;
+            } else {
+                tBuf[tPo++] = (byte)ch;
+            }
+        }
+        tBuf[tPo++] = '"';
+        po = tPo;
+    }
+
+    /** Lowercase, like Integer.toHexString. */
+    private final static byte HEX_DIGITS[] = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    /**
+     * This writes the CSV/TSV encoding of s, exactly like String2.toSVString(s, 127)
+     * (optionally followed by String2.replaceAll(s, "\\\"", "\"\"")).
+     *
+     * @param s the String. If null, nothing is written.
+     * @param twoQuotes if true, each \" in the encoded String becomes ""
+     *   (as the TableWriterSeparatedValue .csv writers do).
+     * @throws IOException if trouble
+     */
+    public void writeSV(String s, boolean twoQuotes) throws IOException {
+        if (s == null)
+            return;
+        int sLength = s.length();
+        boolean json = sLength > 0 && (s.charAt(0) == ' ' || s.charAt(sLength - 1) == ' ');
+        if (!json) {
+            for (int i = 0; i < sLength; i++) {
+                char ch = s.charAt(i);
+                if (ch < 32 || ch == ',' || ch == '\\' || ch == '"' || ch >= 127) {
+                    json = true;
+                    break;
+                }
+            }
+        }
+        if (!json) {
+            //all chars are 32 - 126
+            write(s);
+            return;
+        }
+        ensureRoom(6 * sLength + 2);
+        int start = po;
+        writeJsonToBuf(s, sLength);
+        if (twoQuotes) {
+            //like String2.replaceAll(s, "\\\"", "\"\""): left to right, not overlapping
+            int end = po - 1;
+            for (int i = start; i < end; i++) {
+                if (buf[i] == '\\' && buf[i + 1] == '"')
+                    buf[i++] = '"';
+            }
+        }
+    }
+
+    /**
+     * This writes Calendar2.epochSecondsToLimitedIsoStringT(time_precision, seconds, nanString),
+     * but without making a String (or a GregorianCalendar).
+     *
+     * @param formatCode from Calendar2.limitedIsoFormatCode(time_precision)
+     * @param seconds the epochSeconds value
+     * @param nanString the String to write if seconds is not finite or is too big
+     * @throws IOException if trouble
+     */
+    public void writeIsoTime(int formatCode, double seconds, String nanString) throws IOException {
+        int maxLength = Calendar2.limitedIsoMaxLength(formatCode);
+        if (isoChars.length < maxLength)
+            isoChars = new char[maxLength];
+        int n = Calendar2.epochSecondsToIsoChars(formatCode, seconds, isoChars, 0);
+        if (n < 0) {
+            write(nanString);
+            return;
+        }
+        ensureRoom(n);
+        for (int i = 0; i < n; i++)
+            buf[po++] = (byte)isoChars[i];
+    }
+
+    /**
+     * This writes pa.getString(row) (or nanString if that is ""),
+     * but usually without making a String.
+     *
+     * @param pa a PrimitiveArray
+     * @param row the row number
+     * @param nanString the String to write for a missing value (e.g., "NaN" or "")
+     * @throws IOException if trouble
+     */
+    public void writeString(PrimitiveArray pa, int row, String nanString) throws IOException {
+        switch (pa.elementType()) {
+            case BYTE: case SHORT: case INT: case UBYTE: case USHORT: case UINT: {
+                //getLong returns Long.MAX_VALUE if maxIsMV and value is the missing value
+                long l = pa.getLong(row);
+                if (l == Long.MAX_VALUE) write(nanString);
+                else writeLong(l);
+                return;
+            }
+            case LONG: {
+                long l = ((LongArray)pa).get(row);
+                if (l == Long.MAX_VALUE && pa.getMaxIsMV()) write(nanString);
+                else writeLong(l);
+                return;
+            }
+            case STRING: {
+                String s = ((StringArray)pa).get(row);
+                write(s == null || s.length() == 0? nanString : s);
+                return;
+            }
+            case FLOAT: {
+                float f = ((FloatArray)pa).get(row);
+                if (Float.isFinite(f)) writeFinite(f);
+                else write(nanString);
+                return;
+            }
+            case DOUBLE: {
+                double d = ((DoubleArray)pa).get(row);
+                if (Double.isFinite(d)) writeFinite(d);
+                else write(nanString);
+                return;
+            }
+            default: {
+                //CHAR, ULONG
+                String s = pa.getString(row);
+                write(s.length() == 0? nanString : s);
+            }
+        }
+    }
+
+    /**
+     * This writes pa.getSVString(row)
+     * (optionally followed by String2.replaceAll(s, "\\\"", "\"\"")),
+     * but without making a String for STRING and CHAR pa's.
+     *
+     * @param pa a PrimitiveArray
+     * @param row the row number
+     * @param twoQuotes if true, each \" in the encoded String becomes ""
+     * @throws IOException if trouble
+     */
+    public void writeSVString(PrimitiveArray pa, int row, boolean twoQuotes) throws IOException {
+        PAType paType = pa.elementType();
+        if (paType == PAType.STRING) {
+            writeSV(((StringArray)pa).get(row), twoQuotes);
+        } else if (paType == PAType.CHAR) {
+            char ch = ((CharArray)pa).get(row);
+            if (ch != Character.MAX_VALUE)
+                writeSV(String.valueOf(ch), twoQuotes);
+        } else {
+            writeString(pa, row, "");
+        }
+    }
+
+    /**
+     * This writes pa.getJsonString(row), but usually without making a String.
+     *
+     * @param pa a PrimitiveArray
+     * @param row the row number
+     * @throws IOException if trouble
+     */
+    public void writeJsonString(PrimitiveArray pa, int row) throws IOException {
+        switch (pa.elementType()) {
+            case BYTE: case SHORT: case INT: case UBYTE: case USHORT: case UINT: {
+                long l = pa.getLong(row);
+                if (l == Long.MAX_VALUE) write("null");
+                else writeLong(l);
+                return;
+            }
+            case LONG: {
+                long l = ((LongArray)pa).get(row);
+                if (l == Long.MAX_VALUE && pa.getMaxIsMV()) write("null");
+                else writeLong(l);
+                return;
+            }
+            case FLOAT: {
+                float f = ((FloatArray)pa).get(row);
+                if (!Float.isFinite(f)) {
+                    write("null");
+                } else {
+                    ensureRoom(ShortestDecimal.MAX_LENGTH);
+                    writeFinite(f);
+                    removePoint0();
+                }
+                return;
+            }
+            case DOUBLE: {
+                double d = ((DoubleArray)pa).get(row);
+                if (!Double.isFinite(d)) {
+                    write("null");
+                } else {
+                    ensureRoom(ShortestDecimal.MAX_LENGTH);
+                    writeFinite(d);
+                    removePoint0();
+                }
+                return;
+            }
+            case STRING:
+                writeJson(((StringArray)pa).get(row));
+                return;
+            default:
+                //CHAR, ULONG
+                write(pa.getJsonString(row));
+        }
+    }
+
+    /** 
+     * This writes String.valueOf(f), without making a String. 
+     *
+     * @param f a finite float
+     */
+    private void writeFinite(float f) throws IOException {
+        ensureRoom(ShortestDecimal.MAX_LENGTH);
+        if (useShortestDecimal) {
+            po = ShortestDecimal.toBytes(f, buf, po);
+        } else {
+            numberSB.setLength(0);
+            numberSB.append(f); //the same code as Float.toString
+            writeNumberSB();
+        }
+    }
+
+    /** 
+     * This writes String.valueOf(d), without making a String. 
+     *
+     * @param d a finite double
+     */
+    private void writeFinite(double d) throws IOException {
+        ensureRoom(ShortestDecimal.MAX_LENGTH);
+        if (useShortestDecimal) {
+            po = ShortestDecimal.toBytes(d, buf, po);
+        } else {
+            numberSB.setLength(0);
+            numberSB.append(d); //the same code as Double.toString
+            writeNumberSB();
+        }
+    }
+
+    /** This writes the ASCII chars in numberSB. The caller must have ensured room for them. */
+    private void writeNumberSB() {
+        int n = numberSB.length();
+        for (int i = 0; i < n; i++)
+            buf[po++] = (byte)numberSB.charAt(i);
+    }
+
+    /** 
+     * This removes the ".0" at the end of the number just written, if there is one
+     * (like String2.toJson(d)). It must be called right after writeFinite(),
+     * which mustn't have flushed the buffer.
+     */
+    private void removePoint0() {
+        if (po >= 2 && buf[po - 2] == '.' && buf[po - 1] == '0')
+            po -= 2;
+    }
+
+
+    /**
+     * This writes all of the values in pa to a ByteWriter and
+     * (the old way) to a BufferedWriter, and ensures the bytes are the same.
+     */
+    private static void testSameBytes(PrimitiveArray pa, String charset) throws Exception {
+        ByteArrayOutputStream baos1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+        ByteWriter bw = new ByteWriter(baos1, charset);
+        BufferedWriter writer = File2.ISO_8859_1.equals(charset)?
+            File2.getBufferedWriter88591(baos2) : File2.getBufferedWriterUtf8(baos2);
+        int n = pa.size();
+        for (int twoQuotes = 0; twoQuotes < 2; twoQuotes++) {
+            for (int row = 0; row < n; row++) {
+                //like TableWriterSeparatedValue
+                String s = pa.getSVString(row);
+                if (twoQuotes == 1)
+                    s = String2.replaceAll(s, "\\\"", "\"\"");
+                writer.write(s);
+                bw.writeSVString(pa, row, twoQuotes == 1);
+                writer.write(',');
+                bw.write(',');
+
+                s = pa.getString(row);
+                writer.write(s.length() == 0? "NaN" : s);
+                bw.writeString(pa, row, "NaN");
+                writer.write("\t");
+                bw.write("\t");
+
+                //like TableWriterJson
+                writer.write(pa.getJsonString(row));
+                bw.writeJsonString(pa, row);
+                writer.write(", ");
+                bw.write(", ");
+                if (pa instanceof StringArray) {
+                    s = pa.getString(row);
+                    writer.write(String2.toJson(s));
+                    bw.writeJson(s);
+                    writer.write(String2.toSVString(s, 127));
+                    bw.writeSV(s, false);
+                    writer.write(s == null? "" : s);
+                    bw.write(s);
+                }
+                writer.write('\n');
+                bw.write('\n');
+            }
+        }
+        writer.flush();
+        bw.flush();
+        String msg = pa.elementTypeString() + " " + charset;
+        Test.ensureEqual(new String(baos1.toByteArray(), charset),
+                         new String(baos2.toByteArray(), charset), msg);
+        Test.ensureTrue(java.util.Arrays.equals(baos1.toByteArray(), baos2.toByteArray()), msg);
+    }
+
+    /** This tests the methods in this class.
+     */
+    public static void basicTest() throws Exception {
+        String2.log("\n*** ByteWriter.basicTest()");
+
+        //simple things
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ByteWriter bw = new ByteWriter(baos, File2.UTF_8);
+        bw.writeLong(0);
+        bw.write(' ');
+        bw.writeLong(-123);
+        bw.write(' ');
+        bw.writeLong(Long.MIN_VALUE);
+        bw.write(' ');
+        bw.writeLong(Long.MAX_VALUE);
+        bw.write(' ');
+        bw.writeJson("a\"b\\c\n\u00b5\u20ac\b");
+        bw.write(' ');
+        bw.writeJson(null);
+        bw.write(' ');
+        bw.writeSV("a\\", true);
+        bw.write(' ');
+        bw.writeSV(" a", false);
+        bw.write(" \u00b5\u20ac");
+        bw.flush();
+        Test.ensureEqual(new String(baos.toByteArray(), File2.UTF_8),
+            "0 -123 -9223372036854775808 9223372036854775807 " +
+            "\"a\\\"b\\\\c\\n\\u00b5\\u20ac\" null \"a\\\"\" \" a\" \u00b5\u20ac", "");
+
+        //writeIsoTime
+        baos = new ByteArrayOutputStream();
+        bw = new ByteWriter(baos, File2.ISO_8859_1);
+        StringBuilder sb = new StringBuilder();
+        String tps[] = {null, "1970-01-01", "1970-01-01T00:00:00.000Z", "1970-01-01T00:00:00.000000000Z"};
+        double times[] = {0, 1.5e9 + 0.123, -6.2304191937877E10, -1e14, Double.NaN, 1e300};
+        for (String tp : tps) {
+            for (double d : times) {
+                bw.writeIsoTime(Calendar2.limitedIsoFormatCode(tp), d, "NaN");
+                bw.write(',');
+                sb.append(Calendar2.epochSecondsToLimitedIsoStringT(tp, d, "NaN") + ",");
+            }
+        }
+        bw.flush();
+        Test.ensureEqual(new String(baos.toByteArray(), File2.ISO_8859_1), sb.toString(), "");
+
+        //the corpus: each type, with missing values, extremes, and troublesome Strings
+        StringBuilder longSB = new StringBuilder();
+        for (int i = 0; i < 3 * BUFFER_SIZE; i++)
+            longSB.append((char)(i % 300));
+        String strings[] = {"", " ", "a", " a", "a ", "a b", "a,b", "a\"b", "\"", "\"\"",
+            "a\\", "\\\"", "a\\\\\"", "\\", "\u00b5", "\u20ac", "\ud83d\ude00",
+            "\n\t\r\f\b", "\u0000", "\u001f", "\u007f", "~", "NaN", "null",
+            "It's a \"test\", isn't it?\n", longSB.toString()};
+        char chars[] = {' ', 'a', ',', '"', '\\', '\n', '\t', '\b', '\u0000', '\u007f', '\u00b5',
+            '\u20ac', '\uffff'};
+        double doubles[] = {0, -0.0, 1, -1, 0.1, 1.0/3, 1e-300, 1e300, 123456789012.0,
+            1e7, 1e-3, 0.001, 9.999999e-4, 2e22, Double.MIN_VALUE, Double.MAX_VALUE,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 2.0E-3, 1.0E23};
+        long longs[] = {0, 1, -1, 9, 10, -10, 99, 100, 127, -128, 255, 32767, -32768, 65535,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, 4294967295L, Long.MAX_VALUE, Long.MIN_VALUE,
+            Long.MAX_VALUE - 1, 1000000000000000000L};
+
+        StringArray sa = new StringArray(strings);
+        CharArray ca = new CharArray(chars);
+        DoubleArray da = new DoubleArray(doubles);
+        FloatArray fa = new FloatArray();
+        for (int i = 0; i < doubles.length; i++)
+            fa.add(Math2.doubleToFloatNaN(doubles[i]));
+        fa.add(Float.MIN_VALUE);
+        fa.add(Float.MAX_VALUE);
+        fa.add(0.1f);
+        fa.add(16777216f);
+        java.util.Random random = new java.util.Random(17);
+        for (int i = 0; i < 1000; i++) {
+            da.add(Double.longBitsToDouble(random.nextLong()));
+            da.add(random.nextDouble() * 1000);
+            fa.add(Float.intBitsToFloat(random.nextInt()));
+            fa.add(random.nextFloat() * 1000);
+        }
+        LongArray la = new LongArray(longs);
+
+        PrimitiveArray pas[] = new PrimitiveArray[]{sa, ca, da, fa, la};
+        for (PrimitiveArray pa : pas) {
+            testSameBytes(pa, File2.ISO_8859_1);
+            testSameBytes(pa, File2.UTF_8);
+        }
+
+        //floats and doubles via ShortestDecimal (on Java 17, Float/Double.toString
+        //sometimes use more digits, so the corpus is only compared on Java 19+)
+        boolean oUseShortestDecimal = useShortestDecimal;
+        try {
+            useShortestDecimal = true;
+            if (ShortestDecimal.SAME_AS_TO_STRING) {
+                testSameBytes(da, File2.UTF_8);
+                testSameBytes(fa, File2.UTF_8);
+            }
+            baos = new ByteArrayOutputStream();
+            bw = new ByteWriter(baos, File2.UTF_8);
+            DoubleArray da2 = new DoubleArray(new double[]{1, -0.0, 0.1, 1e23, 1e-5, Double.NaN});
+            FloatArray fa2 = new FloatArray(new float[]{1, 1.0E16f, Float.NaN});
+            for (PrimitiveArray pa : new PrimitiveArray[]{da2, fa2}) {
+                for (int row = 0; row < pa.size(); row++) {
+                    bw.writeString(pa, row, "NaN");
+                    bw.write(' ');
+                    bw.writeJsonString(pa, row);
+                    bw.write(',');
+                }
+            }
+            bw.flush();
+            Test.ensureEqual(new String(baos.toByteArray(), File2.UTF_8),
+                "1.0 1,-0.0 -0,0.1 0.1,1.0E23 1.0E23,1.0E-5 1.0E-5,NaN null," +
+                "1.0 1,1.0E16 1.0E16,NaN null,", "");
+        } finally {
+            useShortestDecimal = oUseShortestDecimal;
+        }
+
+        //surrogate pairs written one char at a time (and split across writes) are 
+        //encoded like a BufferedWriter does (4 bytes in UTF-8)
+        String surrogates = "a\ud83d\ude00b\ud83dc\ude00d\u00b5\u20ac\ud83d";
+        for (String charset : new String[]{File2.UTF_8, File2.ISO_8859_1}) {
+            baos = new ByteArrayOutputStream();
+            bw = new ByteWriter(baos, charset);
+            ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+            BufferedWriter writer = File2.ISO_8859_1.equals(charset)?
+                File2.getBufferedWriter88591(baos2) : File2.getBufferedWriterUtf8(baos2);
+            for (int i = 0; i < surrogates.length(); i++) {
+                bw.write(surrogates.charAt(i));
+                writer.write(surrogates.charAt(i));
+            }
+            bw.write("x\ud83d");
+            writer.write("x\ud83d");
+            bw.write("\ude00y");
+            writer.write("\ude00y");
+            bw.write("\ud83d");
+            writer.write("\ud83d");
+            bw.write('\ude00');
+            writer.write('\ude00');
+            bw.write('\ud83d');
+            writer.write('\ud83d');
+            bw.close();
+            writer.close();
+            Test.ensureEqual(new String(baos.toByteArray(), charset), 
+                new String(baos2.toByteArray(), charset), charset);
+            Test.ensureTrue(java.util.Arrays.equals(baos.toByteArray(), baos2.toByteArray()), charset);
+        }
+        Test.ensureEqual(new String(baos.toByteArray(), File2.ISO_8859_1), 
+            "a?b?c?d\u00b5??x?y??", ""); //ISO-8859-1 has no \u20ac
+
+        //integer types, with and without maxIsMV
+        for (PAType paType : new PAType[]{PAType.BYTE, PAType.SHORT, PAType.INT, PAType.LONG,
+                PAType.UBYTE, PAType.USHORT, PAType.UINT, PAType.ULONG}) {
+            for (int maxIsMV = 0; maxIsMV < 2; maxIsMV++) {
+                PrimitiveArray pa = PrimitiveArray.factory(paType, longs.length, false);
+                for (int i = 0; i < longs.length; i++) 
+                    pa.addLong(longs[i]); //out of range values are stored as the missing value
+                pa.setMaxIsMV(maxIsMV == 1);
+                testSameBytes(pa, File2.ISO_8859_1);
+                testSameBytes(pa, File2.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ ByteWriter.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -12,6 +12,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -1282,8 +1283,15 @@ public class CharArray extends PrimitiveArray {
      * @throws Exception if trouble
      */
     public int writeDos(DataOutputStream dos) throws Exception {
-        for (int i = 0; i < size; i++)
-            dos.writeChar(array[i]);
+        //convert chunks in bulk (much faster than writing one element at a time)
+        final byte bytes[] = new byte[Math.min(size, DOS_CHUNK) * 2];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < size; po += DOS_CHUNK) {
+            final int n = Math.min(DOS_CHUNK, size - po);
+            bb.clear();
+            bb.asCharBuffer().put(array, po, n);
+            dos.write(bytes, 0, n * 2);
+        }
         return size == 0? 0 : 2;
     }
 
@@ -1310,8 +1318,16 @@ public class CharArray extends PrimitiveArray {
      */
     public void readDis(final DataInputStream dis, final int n) throws Exception {
         ensureCapacity(size + (long)n);
-        for (int i = 0; i < n; i++)
-            array[size++] = dis.readChar();
+        //convert chunks in bulk (much faster than reading one element at a time)
+        final byte bytes[] = new byte[Math.min(n, DOS_CHUNK) * 2];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < n; po += DOS_CHUNK) {
+            final int tn = Math.min(DOS_CHUNK, n - po);
+            dis.readFully(bytes, 0, tn * 2);
+            bb.clear();
+            bb.asCharBuffer().get(array, size, tn);
+            size += tn;
+        }
     }
 
 
@@ -13,6 +13,8 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -1049,6 +1051,37 @@ public class DoubleArray extends PrimitiveArray {
                 Double.doubleToLongBits(array[i])));
     }
 
+    /**
+     * This is applyConstraint's test for DoubleArrays (op isn't REGEX_OP).
+     * The results are the same as testValueOpValue(double, op, double)
+     * (or testValueOpValueExtra if morePrecise).
+     */
+    protected int applyConstraintFast(boolean morePrecise, BitSet keep, String op, String value2) {
+        final int tOp = opCode(op);
+        if (tOp < 0)
+            return -1; //let applyConstraint handle it
+        final double value2d = String2.parseDouble(value2);
+        final boolean nan2 = Double.isNaN(value2d);
+        final int nDigits = morePrecise? 12 : 9;
+        final double tArray[] = array;
+        return applyConstraintMask(keep, (firstRow, nRows) -> {
+            long mask = 0;
+            switch (tOp) {
+                case OP_EQ: for (int i = 0; i < nRows; i++) {double a = tArray[firstRow + i]; 
+                    if ((nan2 && Double.isNaN(a)) || Math2.almostEqual(nDigits, a, value2d)) mask |= 1L << i;} break;
+                case OP_NE: for (int i = 0; i < nRows; i++) {double a = tArray[firstRow + i]; 
+                    mask |= (a != value2d & !(nan2 & a != a)? 1L : 0L) << i;} break;
+                case OP_LE: for (int i = 0; i < nRows; i++) {double a = tArray[firstRow + i]; 
+                    if (a <= value2d || Math2.almostEqual(nDigits, a, value2d)) mask |= 1L << i;} break;
+                case OP_GE: for (int i = 0; i < nRows; i++) {double a = tArray[firstRow + i]; 
+                    if (a >= value2d || Math2.almostEqual(nDigits, a, value2d)) mask |= 1L << i;} break;
+                case OP_LT: for (int i = 0; i < nRows; i++) mask |= (tArray[firstRow + i] < value2d? 1L : 0L) << i; break;
+                case OP_GT: for (int i = 0; i < nRows; i++) mask |= (tArray[firstRow + i] > value2d? 1L : 0L) << i; break;
+            }
+            return mask;
+        });
+    }
+
     /**
      * This writes 'size' elements to a DataOutputStream.
      *
@@ -1060,8 +1093,18 @@ public class DoubleArray extends PrimitiveArray {
      * @throws Exception if trouble
      */
     public int writeDos(final DataOutputStream dos) throws Exception {
-        for (int i = 0; i < size; i++)
-            dos.writeDouble(array[i]);
+        //convert chunks in bulk (much faster than writing one element at a time)
+        final byte bytes[] = new byte[Math.min(size, DOS_CHUNK) * 8];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < size; po += DOS_CHUNK) {
+            final int n = Math.min(DOS_CHUNK, size - po);
+            bb.clear();
+            //doubleToLongBits (not a DoubleBuffer put) so NaN is canonical, as with dos.writeDouble
+            final LongBuffer lb = bb.asLongBuffer();
+            for (int i = 0; i < n; i++)
+                lb.put(Double.doubleToLongBits(array[po + i]));
+            dos.write(bytes, 0, n * 8);
+        }
         return size == 0? 0 : 8;
     }
 
@@ -1088,8 +1131,16 @@ public class DoubleArray extends PrimitiveArray {
      */
     public void readDis(final DataInputStream dis, final int n) throws Exception {
         ensureCapacity(size + (long)n);
-        for (int i = 0; i < n; i++)
-            array[size++] = dis.readDouble();
+        //convert chunks in bulk (much faster than reading one element at a time)
+        final byte bytes[] = new byte[Math.min(n, DOS_CHUNK) * 8];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < n; po += DOS_CHUNK) {
+            final int tn = Math.min(DOS_CHUNK, n - po);
+            dis.readFully(bytes, 0, tn * 8);
+            bb.clear();
+            bb.asDoubleBuffer().get(array, size, tn);
+            size += tn;
+        }
     }
 
     /**
@@ -12,6 +12,8 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -1080,6 +1082,35 @@ public class FloatArray extends PrimitiveArray {
                 Float.floatToIntBits(array[i])));
     }
 
+    /**
+     * This is applyConstraint's test for FloatArrays (op isn't REGEX_OP).
+     * The results are the same as testValueOpValue(float, op, float).
+     */
+    protected int applyConstraintFast(boolean morePrecise, BitSet keep, String op, String value2) {
+        final int tOp = opCode(op);
+        if (tOp < 0)
+            return -1; //let applyConstraint handle it
+        final float value2f = String2.parseFloat(value2);
+        final boolean nan2 = Float.isNaN(value2f);
+        final float tArray[] = array;
+        return applyConstraintMask(keep, (firstRow, nRows) -> {
+            long mask = 0;
+            switch (tOp) {
+                case OP_EQ: for (int i = 0; i < nRows; i++) {float a = tArray[firstRow + i]; 
+                    if ((nan2 && Float.isNaN(a)) || Math2.almostEqual(6, a, value2f)) mask |= 1L << i;} break;
+                case OP_NE: for (int i = 0; i < nRows; i++) {float a = tArray[firstRow + i]; 
+                    mask |= (a != value2f & !(nan2 & a != a)? 1L : 0L) << i;} break;
+                case OP_LE: for (int i = 0; i < nRows; i++) {float a = tArray[firstRow + i]; 
+                    if (a <= value2f || Math2.almostEqual(6, a, value2f)) mask |= 1L << i;} break;
+                case OP_GE: for (int i = 0; i < nRows; i++) {float a = tArray[firstRow + i]; 
+                    if (a >= value2f || Math2.almostEqual(6, a, value2f)) mask |= 1L << i;} break;
+                case OP_LT: for (int i = 0; i < nRows; i++) mask |= (tArray[firstRow + i] < value2f? 1L : 0L) << i; break;
+                case OP_GT: for (int i = 0; i < nRows; i++) mask |= (tArray[firstRow + i] > value2f? 1L : 0L) << i; break;
+            }
+            return mask;
+        });
+    }
+
     /**
      * This writes 'size' elements to a DataOutputStream.
      *
@@ -1091,8 +1122,18 @@ public class FloatArray extends PrimitiveArray {
      * @throws Exception if trouble
      */
     public int writeDos(final DataOutputStream dos) throws Exception {
-        for (int i = 0; i < size; i++)
-            dos.writeFloat(array[i]);
+        //convert chunks in bulk (much faster than writing one element at a time)
+        final byte bytes[] = new byte[Math.min(size, DOS_CHUNK) * 4];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < size; po += DOS_CHUNK) {
+            final int n = Math.min(DOS_CHUNK, size - po);
+            bb.clear();
+            //floatToIntBits (not a FloatBuffer put) so NaN is canonical, as with dos.writeFloat
+            final IntBuffer ib = bb.asIntBuffer();
+            for (int i = 0; i < n; i++)
+                ib.put(Float.floatToIntBits(array[po + i]));
+            dos.write(bytes, 0, n * 4);
+        }
         return size == 0? 0 : 4;
     }
 
@@ -1119,8 +1160,16 @@ public class FloatArray extends PrimitiveArray {
      */
     public void readDis(final DataInputStream dis, final int n) throws Exception {
         ensureCapacity(size + (long)n);
-        for (int i = 0; i < n; i++)
-            array[size++] = dis.readFloat();
+        //convert chunks in bulk (much faster than reading one element at a time)
+        final byte bytes[] = new byte[Math.min(n, DOS_CHUNK) * 4];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < n; po += DOS_CHUNK) {
+            final int tn = Math.min(DOS_CHUNK, n - po);
+            dis.readFully(bytes, 0, tn * 4);
+            bb.clear();
+            bb.asFloatBuffer().get(array, size, tn);
+            size += tn;
+        }
     }
 
     /**
@@ -12,6 +12,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -1177,6 +1178,33 @@ public class IntArray extends PrimitiveArray {
             array[i] = Integer.reverseBytes(array[i]);
     }
 
+    /**
+     * This is applyConstraint's test for IntArrays, for the usual case: 
+     * value2 is an int and op isn't REGEX_OP.
+     * Like getInt, MAX_VALUE is always treated as NaN (see testValueOpValue(int, ...)).
+     */
+    protected int applyConstraintFast(boolean morePrecise, BitSet keep, String op, String value2) {
+        final int tOp = opCode(op);
+        final double value2d = String2.parseDouble(value2);
+        final int value2i = String2.parseInt(value2);
+        if (tOp < 0 || value2d != value2i || value2i == Integer.MAX_VALUE)
+            return -1; //let applyConstraint handle it
+        final int tArray[] = array;
+        final int mv = Integer.MAX_VALUE;
+        return applyConstraintMask(keep, (firstRow, nRows) -> {
+            long mask = 0;
+            switch (tOp) {
+                case OP_EQ: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a == value2i & a != mv? 1L : 0L) << i;} break;
+                case OP_NE: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a != value2i | a == mv? 1L : 0L) << i;} break;
+                case OP_LE: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a <= value2i & a != mv? 1L : 0L) << i;} break;
+                case OP_GE: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a >= value2i & a != mv? 1L : 0L) << i;} break;
+                case OP_LT: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a <  value2i & a != mv? 1L : 0L) << i;} break;
+                case OP_GT: for (int i = 0; i < nRows; i++) {int a = tArray[firstRow + i]; mask |= (a >  value2i & a != mv? 1L : 0L) << i;} break;
+            }
+            return mask;
+        });
+    }
+
     /**
      * This writes 'size' elements to a DataOutputStream.
      *
@@ -1188,8 +1216,15 @@ public class IntArray extends PrimitiveArray {
      * @throws Exception if trouble
      */
     public int writeDos(final DataOutputStream dos) throws Exception {
-        for (int i = 0; i < size; i++)
-            dos.writeInt(array[i]);
+        //convert chunks in bulk (much faster than writing one element at a time)
+        final byte bytes[] = new byte[Math.min(size, DOS_CHUNK) * 4];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < size; po += DOS_CHUNK) {
+            final int n = Math.min(DOS_CHUNK, size - po);
+            bb.clear();
+            bb.asIntBuffer().put(array, po, n);
+            dos.write(bytes, 0, n * 4);
+        }
         return size == 0? 0 : 4;
     }
 
@@ -1216,8 +1251,16 @@ public class IntArray extends PrimitiveArray {
      */
     public void readDis(final DataInputStream dis, final int n) throws Exception {
         ensureCapacity(size + (long)n);
-        for (int i = 0; i < n; i++)
-            array[size++] = dis.readInt();
+        //convert chunks in bulk (much faster than reading one element at a time)
+        final byte bytes[] = new byte[Math.min(n, DOS_CHUNK) * 4];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < n; po += DOS_CHUNK) {
+            final int tn = Math.min(DOS_CHUNK, n - po);
+            dis.readFully(bytes, 0, tn * 4);
+            bb.clear();
+            bb.asIntBuffer().get(array, size, tn);
+            size += tn;
+        }
     }
 
     /**
@@ -12,6 +12,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -1138,6 +1139,33 @@ public class LongArray extends PrimitiveArray {
             array[i] = Long.reverseBytes(array[i]);
     }
 
+    /**
+     * This is applyConstraint's test for LongArrays, for the usual case: 
+     * value2 is a long and op isn't REGEX_OP.
+     * MAX_VALUE is always treated as NaN (see testValueOpValue(long, ...)).
+     */
+    protected int applyConstraintFast(boolean morePrecise, BitSet keep, String op, String value2) {
+        final int tOp = opCode(op);
+        final double value2d = String2.parseDouble(value2);
+        final long value2l = String2.parseLong(value2);
+        if (tOp < 0 || value2d != value2l || value2l == Long.MAX_VALUE)
+            return -1; //let applyConstraint handle it
+        final long tArray[] = array;
+        final long mv = Long.MAX_VALUE;
+        return applyConstraintMask(keep, (firstRow, nRows) -> {
+            long mask = 0;
+            switch (tOp) {
+                case OP_EQ: for (int i = 0; i < nRows; i++) {long a = tArray[firstRow + i]; mask |= (a == value2l & a != mv? 1L : 0L) << i;} break;
+                case OP_NE: for (int i = 0; i < nRows; i++) {long a = tArray[firstRow + i]; mask |= (a != value2l | a == mv? 1L : 0L) << i;} break;
+                case OP_LE: for (int i = 0; i < nRows; i++) {long a = tArray[firstRow + i]; mask |= (a <= value2l & a != mv? 1L : 0L) << i;} break;
+                case OP_GE: for (int i = 0; i < nRows; i++) {long a = tArray[firstRow + i]; mask |= (a >= value2l & a != mv? 1L : 0L) << i;} break;
+                case OP_LT: for (int i = 0; i < nRows; i++) {long a = tArray[firstRow + i]; mask |= (a <  value2l & a != mv? 1L : 0L) << i;} break;
+                case OP_GT: for (int i = 0; i < nRows; i++) {long a = tArray[firstRow + i]; mask |= (a >  value2l & a != mv? 1L : 0L) << i;} break;
+            }
+            return mask;
+        });
+    }
+
     /**
      * This writes 'size' elements to a DataOutputStream.
      *
@@ -1149,8 +1177,15 @@ public class LongArray extends PrimitiveArray {
      * @throws Exception if trouble
      */
     public int writeDos(final DataOutputStream dos) throws Exception {
-        for (int i = 0; i < size; i++)
-            dos.writeLong(array[i]);
+        //convert chunks in bulk (much faster than writing one element at a time)
+        final byte bytes[] = new byte[Math.min(size, DOS_CHUNK) * 8];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < size; po += DOS_CHUNK) {
+            final int n = Math.min(DOS_CHUNK, size - po);
+            bb.clear();
+            bb.asLongBuffer().put(array, po, n);
+            dos.write(bytes, 0, n * 8);
+        }
         return size == 0? 0 : 8;
     }
 
@@ -1177,8 +1212,16 @@ public class LongArray extends PrimitiveArray {
      */
     public void readDis(final DataInputStream dis, final int n) throws Exception {
         ensureCapacity(size + (long)n);
-        for (int i = 0; i < n; i++)
-            array[size++] = dis.readLong();
+        //convert chunks in bulk (much faster than reading one element at a time)
+        final byte bytes[] = new byte[Math.min(n, DOS_CHUNK) * 8];
+        final ByteBuffer bb = ByteBuffer.wrap(bytes);
+        for (int po = 0; po < n; po += DOS_CHUNK) {
+            final int tn = Math.min(DOS_CHUNK, n - po);
+            dis.readFully(bytes, 0, tn * 8);
+            bb.clear();
+            bb.asLongBuffer().get(array, size, tn);
+            size += tn;
+        }
     }
 
     /**
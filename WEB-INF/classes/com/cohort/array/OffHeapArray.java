@@ -0,0 +1,370 @@
+/*
+ * OffHeapArray Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package com.cohort.array;
+
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * This holds the values of a numeric PrimitiveArray outside of the Java heap
+ * (in a direct ByteBuffer), so big intermediate results (e.g., in TableWriterAll
+ * and GridDataAllAccessor) don't add to the heap or to gc pauses.
+ * The values are stored in the PrimitiveArray writeDos format, so
+ * pa.readDis(offHeapArray.dataInputStream(), n) recreates the PrimitiveArray.
+ *
+ * <p>The bytes are reserved with Math2.reserveOffHeapMemory, so they count toward
+ * Math2.getTotalMemoryInUse() (and thus maxSafeMemory, dangerousMemory, and
+ * EDStatic.shedThisRequest). If a reservation fails, allocate and add return
+ * null/false and the caller should fall back to a temp file.
+ *
+ * <p>The caller should call close() (or use try-with-resources) when done.
+ * close() releases the reservation immediately.
+ * If the caller forgets, the reservation is released (by a Cleaner) when the 
+ * OffHeapArray is garbage collected.
+ * Java frees the direct buffer itself when it is garbage collected.
+ *
+ * <p>This is not thread-safe.
+ */
+public class OffHeapArray implements AutoCloseable {
+
+    /** The one thread (for all OffHeapArrays) which releases the reservations of forgotten OffHeapArrays. */
+    private final static Cleaner cleaner = Cleaner.create();
+
+    protected final PAType elementType;
+    protected final int elementSize;
+    protected ByteBuffer buffer;       //position is the end of the data. null if closed.
+    protected int size = 0;            //the number of elements
+    private final Reservation reservation = new Reservation();
+    private final Cleaner.Cleanable cleanable;
+
+    /** 
+     * The bytes reserved with Math2.reserveOffHeapMemory. 
+     * This mustn't refer to the OffHeapArray, so the Cleaner can release it
+     * after the OffHeapArray has become unreachable.
+     */
+    private static class Reservation implements Runnable {
+        private long nBytes = 0;
+
+        synchronized long get() {
+            return nBytes;
+        }
+
+        synchronized void set(long tNBytes) {
+            nBytes = tNBytes;
+        }
+
+        /** This releases the reservation. It is okay to call this more than once. */
+        public synchronized void run() {
+            Math2.releaseOffHeapMemory(nBytes);
+            nBytes = 0;
+        }
+    }
+
+    /**
+     * This indicates if an OffHeapArray can hold the specified type of data.
+     *
+     * @param tElementType a PAType
+     * @return true if tElementType is numeric (not CHAR, STRING, or BOOLEAN).
+     */
+    public static boolean isSupported(PAType tElementType) {
+        return tElementType != null &&
+            tElementType != PAType.CHAR &&
+            tElementType != PAType.STRING &&
+            tElementType != PAType.BOOLEAN;
+    }
+
+    /**
+     * This tries to make an OffHeapArray.
+     *
+     * @param tElementType a numeric PAType
+     * @param capacity the initial capacity (in elements). It grows as needed.
+     * @return a new OffHeapArray, or null if tElementType isn't supported or
+     *   the memory couldn't be reserved.
+     */
+    public static OffHeapArray allocate(PAType tElementType, long capacity) {
+        if (!isSupported(tElementType))
+            return null;
+        OffHeapArray oha = new OffHeapArray(tElementType);
+        if (!oha.ensureCapacity(Math.max(1, capacity) * oha.elementSize))
+            return null;
+        return oha;
+    }
+
+    /** Use allocate() to make an OffHeapArray. */
+    protected OffHeapArray(PAType tElementType) {
+        elementType = tElementType;
+        elementSize = PrimitiveArray.factory(tElementType, 1, false).elementSize();
+        buffer = ByteBuffer.allocateDirect(0);
+        cleanable = cleaner.register(this, reservation);
+    }
+
+    /** This returns the type of data. */
+    public PAType elementType() {
+        return elementType;
+    }
+
+    /** This returns the number of elements. */
+    public int size() {
+        return size;
+    }
+
+    /** This returns the number of off-heap bytes reserved by this OffHeapArray. */
+    public long reservedBytes() {
+        return reservation.get();
+    }
+
+    /**
+     * This ensures the buffer can hold nBytes, replacing it with a bigger one if needed.
+     *
+     * @param nBytes the number of bytes needed
+     * @return false if the memory couldn't be reserved or allocated
+     *   (then nothing was changed).
+     */
+    protected boolean ensureCapacity(long nBytes) {
+        if (nBytes <= buffer.capacity())
+            return true;
+        if (nBytes >= Integer.MAX_VALUE)
+            return false;
+
+        //grow by 2x (like PrimitiveArray), but not beyond what a ByteBuffer can hold.
+        //While the data is copied, both buffers exist, so reserve all of the new buffer.
+        long newCapacity = Math.max(nBytes, Math.min(2L * buffer.capacity(), Integer.MAX_VALUE - 8L));
+        if (!Math2.reserveOffHeapMemory(newCapacity))
+            return false;
+        ByteBuffer newBuffer;
+        try {
+            newBuffer = ByteBuffer.allocateDirect((int)newCapacity);
+        } catch (OutOfMemoryError e) { //e.g., beyond -XX:MaxDirectMemorySize
+            Math2.releaseOffHeapMemory(newCapacity);
+            return false;
+        }
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+        synchronized (reservation) {
+            Math2.releaseOffHeapMemory(reservation.get()); //the old buffer's
+            reservation.set(newCapacity);
+        }
+        return true;
+    }
+
+    /**
+     * This appends all of pa's values.
+     *
+     * @param pa a PrimitiveArray with the same elementType
+     * @return false if more memory was needed but couldn't be reserved
+     *   (then nothing was appended).
+     * @throws Exception if trouble (e.g., this was closed or pa is a different type)
+     */
+    public boolean add(PrimitiveArray pa) throws Exception {
+        if (buffer == null)
+            throw new IOException("OffHeapArray.add: the OffHeapArray was closed.");
+        if (pa.elementType() != elementType)
+            throw new IOException("OffHeapArray.add: pa's elementType=" + pa.elementType() +
+                " should have been " + elementType + ".");
+        if (!ensureCapacity((size + (long)pa.size()) * elementSize))
+            return false;
+        pa.writeDos(new DataOutputStream(new OutputStream() {
+            public void write(int b) {
+                buffer.put((byte)b);
+            }
+            public void write(byte b[], int off, int len) {
+                buffer.put(b, off, len);
+            }
+        }));
+        size += pa.size();
+        return true;
+    }
+
+    /**
+     * This writes all of the values to a DataOutputStream in the writeDos format.
+     *
+     * @param dos the stream to be written to
+     * @throws IOException if trouble
+     */
+    public void writeDos(DataOutputStream dos) throws IOException {
+        ByteBuffer tBuffer = readOnlyBuffer();
+        byte bytes[] = new byte[Math.min(tBuffer.remaining(), 65536)];
+        while (tBuffer.hasRemaining()) {
+            int n = Math.min(bytes.length, tBuffer.remaining());
+            tBuffer.get(bytes, 0, n);
+            dos.write(bytes, 0, n);
+        }
+    }
+
+    /**
+     * This returns a DataInputStream with all of the values in the writeDos format.
+     * Closing the stream doesn't close this OffHeapArray.
+     * The stream is only valid until this OffHeapArray is closed.
+     *
+     * @return a DataInputStream positioned at the first value
+     * @throws IOException if this was closed
+     */
+    public DataInputStream dataInputStream() throws IOException {
+        ByteBuffer tBuffer = readOnlyBuffer();
+        return new DataInputStream(new InputStream() {
+            public int read() {
+                return tBuffer.hasRemaining()? tBuffer.get() & 0xFF : -1;
+            }
+            public int read(byte b[], int off, int len) {
+                if (len == 0)
+                    return 0;
+                if (!tBuffer.hasRemaining())
+                    return -1;
+                len = Math.min(len, tBuffer.remaining());
+                tBuffer.get(b, off, len);
+                return len;
+            }
+            public int available() {
+                return tBuffer.remaining();
+            }
+        });
+    }
+
+    /** This returns a read-only view of the data (position=0, limit=the end of the data). */
+    protected ByteBuffer readOnlyBuffer() throws IOException {
+        if (buffer == null)
+            throw new IOException("OffHeapArray: the OffHeapArray was closed.");
+        ByteBuffer tBuffer = buffer.asReadOnlyBuffer();
+        tBuffer.flip();
+        return tBuffer;
+    }
+
+    /**
+     * This discards the data and releases the reserved memory.
+     * It is okay to call this more than once.
+     */
+    public void close() {
+        buffer = null;
+        size = 0;
+        cleanable.clean(); //releases the reservation (just once)
+    }
+
+    /**
+     * This tests the methods of this class.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** OffHeapArray.basicTest");
+        long oMaxOffHeapMemory = Math2.maxOffHeapMemory;
+        try {
+            long base = Math2.getOffHeapMemoryInUse();
+            Test.ensureEqual(allocate(PAType.STRING, 10), null, "");
+
+            //add, grow, read back, and close
+            OffHeapArray oha = allocate(PAType.INT, 10);
+            Test.ensureEqual(oha.reservedBytes(), 40, "");
+            Test.ensureEqual(Math2.getOffHeapMemoryInUse() - base, 40, "");
+            IntArray ia = new IntArray();
+            for (int i = 0; i < 1000; i++)
+                ia.add(i * 7 - 3000);
+            Test.ensureTrue(oha.add(ia), "");
+            Test.ensureTrue(oha.add(ia), "");
+            Test.ensureEqual(oha.size(), 2000, "");
+            Test.ensureTrue(oha.reservedBytes() >= 8000, "");
+            Test.ensureEqual(Math2.getOffHeapMemoryInUse() - base, oha.reservedBytes(), ""); //just the current buffer
+            IntArray ia2 = new IntArray();
+            try (DataInputStream dis = oha.dataInputStream()) {
+                ia2.readDis(dis, 2000);
+                Test.ensureEqual(dis.read(), -1, "");
+            }
+            ia.append(ia);
+            Test.ensureEqual(ia2.testEquals(ia), "", "");
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            oha.writeDos(new DataOutputStream(baos));
+            Test.ensureEqual(baos.size(), 8000, "");
+            oha.close();
+            Test.ensureEqual(oha.reservedBytes(), 0, "");
+            Test.ensureEqual(Math2.getOffHeapMemoryInUse(), base, "");
+            oha.close(); //a 2nd close is okay
+            Test.ensureEqual(Math2.getOffHeapMemoryInUse(), base, "");
+            try {
+                oha.add(ia);
+                throw new SimpleException("Shouldn't get here.");
+            } catch (IOException e) {
+            }
+
+            //while growing, the old and new buffers both count
+            Math2.maxOffHeapMemory = base + 4000;
+            oha = allocate(PAType.INT, 400); //1600 bytes
+            ia = new IntArray();
+            for (int i = 0; i < 500; i++) 
+                ia.add(i);
+            Test.ensureTrue(!oha.add(ia), ""); //it would need 1600 + 3200 bytes
+            Test.ensureEqual(oha.size(), 0, "");
+            Test.ensureEqual(Math2.getOffHeapMemoryInUse() - base, 1600, ""); 
+            oha.close();
+            Math2.maxOffHeapMemory = oMaxOffHeapMemory;
+
+            //if the caller forgets to close it, the reservation is released when it is garbage collected
+            oha = allocate(PAType.DOUBLE, 1000);
+            Test.ensureEqual(Math2.getOffHeapMemoryInUse() - base, 8000, "");
+            oha = null;
+            for (int i = 0; i < 50 && Math2.getOffHeapMemoryInUse() != base; i++) {
+                System.gc();
+                Math2.sleep(100);
+            }
+            Test.ensureEqual(Math2.getOffHeapMemoryInUse(), base, "");
+
+        } finally {
+            Math2.maxOffHeapMemory = oMaxOffHeapMemory;
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ OffHeapArray.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
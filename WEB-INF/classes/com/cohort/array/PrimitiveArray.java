@@ -7,6 +7,8 @@ package com.cohort.array;
 
 import com.cohort.util.*;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FileOutputStream;
@@ -21,6 +23,7 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -1841,6 +1844,12 @@ public abstract class PrimitiveArray {
      */
     abstract public void reverseBytes();
 
+    /**
+     * The number of elements that numeric subclasses' writeDos and readDis 
+     * convert to/from bytes at a time.
+     */
+    protected final static int DOS_CHUNK = 8192;
+
     /**
      * This writes 'size' elements to a DataOutputStream.
      *
@@ -2884,12 +2893,36 @@ public abstract class PrimitiveArray {
      *   second item in the sorted list, ...).
      */
     public static int[] rank(List<PrimitiveArray> table, int keys[], boolean[] ascending) {
-        return lowRank(new RowComparator(table, keys, ascending), table);
+        int dictionaryRank[] = dictionaryRank(table, keys, ascending, false);
+        if (dictionaryRank != null)
+            return dictionaryRank;
+        //low cardinality StringArray keys are compared via their StringDictionary codes
+        return lowRank(new RowComparator(
+            StringDictionary.encodeKeys(table, keys, false), keys, ascending), table);
     }
 
     /** This is like rank, but StringArrays are tested case insensitively.   */
     public static int[] rankIgnoreCase(List<PrimitiveArray> table, int keys[], boolean[] ascending) {
-        return lowRank(new RowComparatorIgnoreCase(table, keys, ascending), table);
+        int dictionaryRank[] = dictionaryRank(table, keys, ascending, true);
+        if (dictionaryRank != null)
+            return dictionaryRank;
+        return lowRank(new RowComparatorIgnoreCase(
+            StringDictionary.encodeKeys(table, keys, true), keys, ascending), table);
+    }
+
+    /**
+     * If there is just 1 key and it is a low cardinality StringArray,
+     * this ranks the rows with a counting sort of its StringDictionary codes.
+     *
+     * @return the rank array, or null if this approach can't be used
+     */
+    private static int[] dictionaryRank(List<PrimitiveArray> table, int keys[], boolean[] ascending, 
+        boolean ignoreCase) {
+        if (keys.length != 1 || ascending.length != 1 || keys[0] < 0 || keys[0] >= table.size() ||
+            !(table.get(keys[0]) instanceof StringArray sa))
+            return null;
+        StringDictionary dict = StringDictionary.lowCardinality(sa, ignoreCase);
+        return dict == null? null : dict.rank(ascending[0]);
     }
     
     private static int[] lowRank(RowComparator comparator, List<PrimitiveArray> table) {
@@ -4060,6 +4093,20 @@ public abstract class PrimitiveArray {
             return nStillGood;
         }
 
+        //numeric: try the subclass' type-specific loop first
+        int nFast = applyConstraintFast(morePrecise, keep, op, value2);
+        if (nFast >= 0)
+            return nFast;
+        return applyConstraintGeneral(morePrecise, keep, op, value2);
+    }
+
+    /**
+     * This is applyConstraint's general loop for numeric tests
+     * (used if applyConstraintFast doesn't handle the test).
+     * The parameters and return value are as for applyConstraint.
+     */
+    int applyConstraintGeneral(boolean morePrecise, BitSet keep, String op, String value2) {
+
         //ulong 
         if (elementType() == PAType.ULONG) {
             BigInteger value2l = String2.strictParseULongObject(value2);  //null if has decimal part or ...
@@ -4166,6 +4213,84 @@ public abstract class PrimitiveArray {
         return nStillGood;
     }
 
+    /** The numeric ops in EDDTable.OPERATORS as ints (see opCode), for applyConstraintFast. */
+    protected final static int OP_EQ = 0, OP_NE = 1, OP_LE = 2, OP_GE = 3, OP_LT = 4, OP_GT = 5;
+
+    /**
+     * This converts a numeric op to an int.
+     *
+     * @param op one of EDDTable.OPERATORS
+     * @return OP_EQ, ..., OP_GT, or -1 if op isn't a numeric op (e.g., REGEX_OP).
+     */
+    protected static int opCode(String op) {
+        switch (op) {
+            case "=":  return OP_EQ;
+            case "!=": return OP_NE;
+            case "<=": return OP_LE;
+            case ">=": return OP_GE;
+            case "<":  return OP_LT;
+            case ">":  return OP_GT;
+            default:   return -1;
+        }
+    }
+
+    /** 
+     * A type-specific test of up to 64 consecutive elements for applyConstraintMask.
+     */
+    protected interface ConstraintMask {
+        /**
+         * @param firstRow the first element to be tested
+         * @param nRows the number of elements to be tested (1..64)
+         * @return a mask with bit i set if element firstRow+i passes the test
+         */
+        long mask(int firstRow, int nRows);
+    }
+
+    /**
+     * This is used by applyConstraintFast. For each 64 elements with a keep=true
+     * element, it gets the test results for all 64 elements at once
+     * (so the subclass' loop has no per-element BitSet access or op lookups)
+     * and ANDs them into keep.
+     *
+     * @param keep   The test is only applied to keep=true elements.
+     *   If the test is false, the keep element is set to false.
+     * @param test the type-specific test
+     * @return nStillGood, or -1 if keep has an element &gt;= size 
+     *   (so the caller should use the general loop, which throws an exception)
+     */
+    protected int applyConstraintMask(BitSet keep, ConstraintMask test) {
+        if (keep.length() > size)
+            return -1;
+        long words[] = keep.toLongArray();
+        int nStillGood = 0;
+        for (int w = 0; w < words.length; w++) {
+            if (words[w] == 0)
+                continue;
+            int firstRow = w << 6;
+            words[w] &= test.mask(firstRow, Math.min(64, size - firstRow));
+            nStillGood += Long.bitCount(words[w]);
+        }
+        keep.and(BitSet.valueOf(words));
+        return nStillGood;
+    }
+
+    /**
+     * Subclasses with a fast, type-specific version of applyConstraint's 
+     * numeric tests override this. The results must be exactly the same as
+     * applyConstraint's general loop.
+     *
+     * @param morePrecise e.g., for tests of time values which are very precise.
+     * @param keep   The test is only applied to keep=true elements.
+     *   If the test is false, the keep element is set to false.
+     * @param op one of EDDTable.OPERATORS (but not REGEX_OP)
+     * @param value2
+     * @return nStillGood, or -1 if this wasn't handled here 
+     *   (e.g., an unusual value2), so applyConstraint should use its general loop.
+     */
+    protected int applyConstraintFast(boolean morePrecise, BitSet keep, String op, String value2) {
+        return -1;
+    }
+
     /**
      * This converts a StringArray with NCCSV attribute values into 
      * a typed PrimitiveArray.
@@ -5470,6 +5595,80 @@ public abstract class PrimitiveArray {
     }
 
 
+    /** 
+     * This tests writeDos and readDis for each PAType, with sizes on both sides 
+     * of the 8192-element chunks that the numeric types convert in bulk:
+     * the bulk writeDos must write the same bytes as element-by-element writeDos,
+     * and readDis must read them back (appending to the existing elements).
+     *
+     * @throws Exception if trouble
+     */
+    public static void testWriteDosReadDis() throws Exception {
+        String2.log("\n*** PrimitiveArray.testWriteDosReadDis()");
+        Random random = new Random(3);
+        int sizes[] = {0, 1, 8191, 8192, 8193, 3 * 8192 + 5};
+        for (PAType paType : PAType.values()) {
+            if (paType == PAType.BOOLEAN)
+                continue;
+            for (int n : sizes) {
+                String msg = "paType=" + paType + " n=" + n;
+                PrimitiveArray pa = factory(paType, n, false);
+                for (int i = 0; i < n; i++) {
+                    if (paType == PAType.STRING)
+                        pa.addString(i % 7 == 0? "" : "aü€" + random.nextInt(1000));
+                    else if (paType == PAType.FLOAT || paType == PAType.DOUBLE)
+                        pa.addDouble(i % 7 == 0? Double.NaN : random.nextGaussian() * 1e6);
+                    else pa.addLong(random.nextLong() >>> (64 - 8 * pa.elementSize() + 1));
+                }
+                //a NaN with a payload must be written as the canonical NaN, as writeFloat/writeDouble do
+                if (n > 2 && paType == PAType.FLOAT)
+                    ((FloatArray)pa).set(2, Float.intBitsToFloat(0x7fc00001));
+                if (n > 2 && paType == PAType.DOUBLE)
+                    ((DoubleArray)pa).set(2, Double.longBitsToDouble(0x7ff8000000000001L));
+
+                //bulk writeDos writes the same bytes as element-by-element writeDos
+                ByteArrayOutputStream baos1 = new ByteArrayOutputStream();
+                DataOutputStream dos1 = new DataOutputStream(baos1);
+                int nBytes = pa.writeDos(dos1);
+                dos1.close();
+                ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+                DataOutputStream dos2 = new DataOutputStream(baos2);
+                int nBytes2 = 0;
+                for (int i = 0; i < n; i++)
+                    nBytes2 += pa.writeDos(dos2, i);
+                dos2.close();
+                byte bytes[] = baos1.toByteArray();
+                Test.ensureEqual(nBytes2, bytes.length, msg);
+                Test.ensureTrue(Arrays.equals(bytes, baos2.toByteArray()), msg);
+                if (paType != PAType.STRING) {
+                    Test.ensureEqual(nBytes, n == 0? 0 : pa.elementSize(), msg); //bytes per element
+                    Test.ensureEqual(bytes.length, n * pa.elementSize(), msg);
+                }
+
+                //readDis all of them, appending to an existing element
+                PrimitiveArray pa2 = factory(paType, 1, false);
+                pa2.addInt(1);
+                DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+                pa2.readDis(dis, n);
+                Test.ensureEqual(dis.read(), -1, msg); //nothing left
+                dis.close();
+                Test.ensureEqual(pa2.size(), n + 1, msg);
+                Test.ensureEqual(pa2.getInt(0), 1, msg);
+                pa2.removeRange(0, 1);
+                Test.ensureEqual(pa2.testEquals(pa), "", msg);
+
+                //readDis in 2 pieces, split near a chunk boundary
+                int split = Math.min(n, 8191);
+                PrimitiveArray pa3 = factory(paType, n, false);
+                dis = new DataInputStream(new ByteArrayInputStream(bytes));
+                pa3.readDis(dis, split);
+                pa3.readDis(dis, n - split);
+                dis.close();
+                Test.ensureEqual(pa3.testEquals(pa), "", msg);
+            }
+        }
+    }
+
     /** 
      * @throws RuntimeException if trouble
      */
@@ -5811,6 +6010,59 @@ public abstract class PrimitiveArray {
     }
 
 
+    /**
+     * This tests that applyConstraintFast gets exactly the same results
+     * as applyConstraint's general loop, for all numeric types, ops, and tricky values.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void testApplyConstraintFast() throws Throwable {
+        String2.log("\n*** PrimitiveArray.testApplyConstraintFast");
+        Random random = new Random(11);
+        PAType paTypes[] = {PAType.BYTE, PAType.SHORT, PAType.INT, PAType.LONG, 
+            PAType.FLOAT, PAType.DOUBLE, PAType.UBYTE, PAType.USHORT, PAType.UINT, PAType.ULONG};
+        double values[] = {0, 1, -1, 5, 2.5, -3, 126, 127, 128, -128, 255, 
+            32767, 65535, 2147483647, -2147483648, 1e10, -1e10, 
+            5.0000001, 4.9999999, 5 + 1e-12, 1e-7, Double.NaN};
+        String value2s[] = {"0", "1", "-1", "5", "2.5", "-3", "127", "128", "255", "32767", 
+            "65535", "2147483647", "-2147483648", "1e10", "5.0000001", "4.9999999", 
+            "1.0e-7", "NaN", "", "9223372036854775807", "abc"};
+        String ops[] = {"=", "!=", "<", "<=", ">", ">="};
+        int n = 1000; //not a multiple of 64
+        int nFastTests = 0;
+        for (PAType paType : paTypes) {
+            for (int maxIsMV = 0; maxIsMV < 2; maxIsMV++) {
+                PrimitiveArray pa = factory(paType, n, false);
+                for (int i = 0; i < n; i++) 
+                    pa.addDouble(values[random.nextInt(values.length)]);
+                pa.setMaxIsMV(maxIsMV == 1);
+                BitSet keep = new BitSet(n);
+                for (int i = 0; i < n; i++) 
+                    if (i / 64 % 3 != 1 && random.nextInt(4) > 0) //some words with no kept rows
+                        keep.set(i);
+                for (String op : ops) {
+                    for (String value2 : value2s) {
+                        for (int mp = 0; mp < 2; mp++) {
+                            String msg = paType + " maxIsMV=" + maxIsMV + " " + op + value2 + " morePrecise=" + mp;
+                            BitSet fastKeep = (BitSet)keep.clone();
+                            int nFast = pa.applyConstraintFast(mp == 1, fastKeep, op, value2);
+                            BitSet generalKeep = (BitSet)keep.clone();
+                            int nGeneral = pa.applyConstraintGeneral(mp == 1, generalKeep, op, value2);
+                            if (nFast < 0) {
+                                Test.ensureEqual(fastKeep, keep, msg); //unchanged
+                                continue;
+                            }
+                            nFastTests++;
+                            Test.ensureEqual(nFast, nGeneral, msg);
+                            Test.ensureEqual(fastKeep, generalKeep, msg);
+                        }
+                    }
+                }
+            }
+        }
+        Test.ensureTrue(nFastTests > 1000, "nFastTests=" + nFastTests);
+    }
+
     /**
      * This runs all of the interactive or not interactive tests for this class.
      *
@@ -5825,7 +6077,7 @@ public abstract class PrimitiveArray {
     public static void test(StringBuilder errorSB, boolean interactive, 
         boolean doSlowTestsToo, int firstTest, int lastTest) {
         if (lastTest < 0)
-            lastTest = interactive? -1 : 2;
+            lastTest = interactive? -1 : 4;
         String msg = "\n^^^ PrimitiveArray.test(" + interactive + ") test=";
 
         for (int test = firstTest; test <= lastTest; test++) {
@@ -5840,6 +6092,8 @@ public abstract class PrimitiveArray {
                     if (test ==  0) basicTest();
                     if (test ==  1) testTestValueOpValue();
                     if (test ==  2) testNccsv();
+                    if (test ==  3) testWriteDosReadDis();
+                    if (test ==  4) testApplyConstraintFast();
                 }
 
                 String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
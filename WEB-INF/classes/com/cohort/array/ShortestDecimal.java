@@ -0,0 +1,570 @@
+/*
+ * ShortestDecimal Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package com.cohort.array;
+
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * This writes the shortest decimal which uniquely identifies a float or double
+ * (in the format of Float/Double.toString) as ASCII bytes, without making a String.
+ * The digits are selected as specified in Java 19+'s Double.toString:
+ * the shortest decimal which rounds to the value (at least 2 digits if there is a
+ * 1 digit decimal, e.g., 4.9E-324), and if there are several, the closest one
+ * (and if there is a tie, the one with an even last digit).
+ * This uses Raffaello Giulietti's Schubfach algorithm (as does Java 19+),
+ * which only needs long arithmetic and a table of 126-bit powers of 10.
+ *
+ * <p>Java 17's Float/Double.toString usually make the same decimal,
+ * but sometimes use more digits than needed (e.g., 9.999999999999999E22 for 1.0E23),
+ * so see SAME_AS_TO_STRING.
+ *
+ * <p>This is thread-safe.
+ */
+public final class ShortestDecimal {
+
+    /** 
+     * This is true if this Java's Float/Double.toString make the same decimals as this class
+     * (Java 19+, where the shortest decimal is part of their specification).
+     */
+    public final static boolean SAME_AS_TO_STRING = Runtime.version().feature() >= 19;
+
+    /** The most bytes that toBytes writes (e.g., -2.2250738585072014E-308). */
+    public final static int MAX_LENGTH = 24;
+
+    //doubles: value = c * 2^q
+    private final static int D_Q_MIN = -1074;
+    private final static long D_C_MIN = 1L << 52;
+    private final static long D_C_TINY = 3; //subnormals with c < this are multiplied by 10
+
+    //floats
+    private final static int F_Q_MIN = -149;
+    private final static long F_C_MIN = 1L << 23;
+    private final static long F_C_TINY = 8;
+
+    /** The range of k (the decimal exponent) for doubles (and floats). */
+    private final static int K_MIN = -324;
+    private final static int K_MAX = 292;
+
+    private final static long MASK_63 = (1L << 63) - 1;
+
+    /**
+     * g(k) = floor(10^-k * 2^(125 - flog2pow10(-k))) + 1, a 126-bit number
+     * (so 2^125 &lt;= g &lt; 2^126), stored as g1 = g &gt;&gt; 63 and g0 = g &amp; MASK_63.
+     */
+    private final static long G1[] = new long[K_MAX - K_MIN + 1];
+    private final static long G0[] = new long[K_MAX - K_MIN + 1];
+    static {
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int shift = 125 - flog2pow10(-k);
+            BigInteger g = k <= 0?
+                BigInteger.TEN.pow(-k).shiftLeft(Math.max(0, shift)).shiftRight(Math.max(0, -shift)) :
+                BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+            g = g.add(BigInteger.ONE);
+            G1[k - K_MIN] = g.shiftRight(63).longValue();
+            G0[k - K_MIN] = g.longValue() & MASK_63;
+        }
+    }
+
+    private ShortestDecimal() {
+    }
+
+    /** This returns floor(log10(2^e)) (for |e| &lt;= 5456721). */
+    static int flog10pow2(int e) {
+        return (int)(e * 661_971_961_083L >> 41);
+    }
+
+    /** This returns floor(log10(3/4 * 2^e)) (for |e| &lt;= 5456721). */
+    static int flog10threeQuartersPow2(int e) {
+        return (int)(e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    /** This returns floor(log2(10^e)) (for |e| &lt;= 1838394). */
+    static int flog2pow10(int e) {
+        return (int)(e * 913_124_641_741L >> 38);
+    }
+
+    /**
+     * This writes the shortest decimal for a double, in Double.toString's format.
+     *
+     * @param v a finite double (not NaN or infinite)
+     * @param buf the buffer, with room for MAX_LENGTH bytes at po
+     * @param po the position in buf where the first byte will be written
+     * @return the position after the last byte written
+     */
+    public static int toBytes(double v, byte buf[], int po) {
+        long bits = Double.doubleToRawLongBits(v);
+        if (bits < 0)
+            buf[po++] = '-';
+        long t = bits & (D_C_MIN - 1);
+        int bq = (int)(bits >>> 52) & 0x7ff;
+        if (bq != 0) {
+            int mq = 1075 - bq; //v = c * 2^-mq
+            long c = D_C_MIN | t;
+            if (0 < mq && mq < 53) {
+                long f = c >> mq;
+                if (f << mq == c) //an integer < 2^53: it is its own shortest decimal
+                    return toBytes(f, 0, buf, po);
+            }
+            return toDecimal(-mq, c, 0, c == D_C_MIN && bq > 1, buf, po);
+        }
+        if (t != 0)
+            return t < D_C_TINY?
+                toDecimal(D_Q_MIN, 10 * t, -1, false, buf, po) :
+                toDecimal(D_Q_MIN, t, 0, false, buf, po);
+        return zero(buf, po);
+    }
+
+    /**
+     * This writes the shortest decimal for a float, in Float.toString's format.
+     *
+     * @param v a finite float (not NaN or infinite)
+     * @param buf the buffer, with room for MAX_LENGTH bytes at po
+     * @param po the position in buf where the first byte will be written
+     * @return the position after the last byte written
+     */
+    public static int toBytes(float v, byte buf[], int po) {
+        int bits = Float.floatToRawIntBits(v);
+        if (bits < 0)
+            buf[po++] = '-';
+        long t = bits & (F_C_MIN - 1);
+        int bq = (bits >>> 23) & 0xff;
+        if (bq != 0) {
+            int mq = 150 - bq; //v = c * 2^-mq
+            long c = F_C_MIN | t;
+            if (0 < mq && mq < 24) {
+                long f = c >> mq;
+                if (f << mq == c)
+                    return toBytes(f, 0, buf, po);
+            }
+            return toDecimal(-mq, c, 0, c == F_C_MIN && bq > 1, buf, po);
+        }
+        if (t != 0)
+            return t < F_C_TINY?
+                toDecimal(F_Q_MIN, 10 * t, -1, false, buf, po) :
+                toDecimal(F_Q_MIN, t, 0, false, buf, po);
+        return zero(buf, po);
+    }
+
+    private static int zero(byte buf[], int po) {
+        buf[po++] = '0';
+        buf[po++] = '.';
+        buf[po++] = '0';
+        return po;
+    }
+
+    /**
+     * This finds the decimal for c * 2^q (times 10^-dk), then writes it.
+     *
+     * @param asymmetric true if c is C_MIN and q &gt; Q_MIN, so the next smaller
+     *   value is closer than the next larger value
+     */
+    private static int toDecimal(int q, long c, int dk, boolean asymmetric, byte buf[], int po) {
+        //The rounding interval (the values which round to c*2^q) is [cbl, cbr]/4 * 2^q,
+        //including the ends if c is even. Scale everything by 10^-k,
+        //so s = floor(v * 10^-k) has 1 more digit than the shortest decimal might have.
+        int out = (int)c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (asymmetric) {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        } else {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G1[k - K_MIN];
+        long g0 = G0[k - K_MIN];
+        long vb  = rop(g1, g0, cb  << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        //is exactly one of the multiples of 10 around s in the interval?
+        //(not for s < 100, so a 1 digit decimal can't be picked over a closer 2 digit one)
+        long s = vb >> 2;
+        if (s >= 100) {
+            long sp10 = 10 * (s / 10);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin)
+                return toBytes(upin? sp10 : tp10, k + dk, buf, po);
+        }
+
+        //else s or s+1 (at least one is in the interval): the one in the interval,
+        //else the closest, else the even one
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win)
+            return toBytes(uin? s : t, k + dk, buf, po);
+        long cmp = vb - (s + t << 1);
+        return toBytes(cmp < 0 || (cmp == 0 && (s & 1) == 0)? s : t, k + dk, buf, po);
+    }
+
+    /**
+     * This returns g * cp / 2^127 (g = g1*2^63 + g0), rounded to odd
+     * (the low bit is set if the result isn't exact).
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    /**
+     * This writes f * 10^e (f &gt; 0) in Double.toString's format:
+     * plain (e.g., 123.45 or 0.00123) if 10^-3 &lt;= value &lt; 10^7,
+     * else computerized scientific notation (e.g., 1.2345E7).
+     */
+    private static int toBytes(long f, int e, byte buf[], int po) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int n = 1; //the number of digits
+        for (long p = 10; n < 19 && f >= p; p *= 10)
+            n++;
+        int ex = e + n; //the value is 0.digits * 10^ex
+
+        if (0 < ex && ex <= 7) {
+            if (n <= ex) { //an integer: ddd00.0
+                po = digits(f, n, buf, po);
+                for (int i = n; i < ex; i++)
+                    buf[po++] = '0';
+                buf[po++] = '.';
+                buf[po++] = '0';
+            } else {       //dd.ddd
+                digits(f, n, buf, po + 1);
+                System.arraycopy(buf, po + 1, buf, po, ex);
+                buf[po + ex] = '.';
+                po += n + 1;
+            }
+            return po;
+        }
+
+        if (-3 < ex && ex <= 0) { //0.00ddd
+            buf[po++] = '0';
+            buf[po++] = '.';
+            for (int i = ex; i < 0; i++)
+                buf[po++] = '0';
+            return digits(f, n, buf, po);
+        }
+
+        //d.dddE-x
+        digits(f, n, buf, po + 1);
+        buf[po] = buf[po + 1];
+        buf[po + 1] = '.';
+        po += n + 1;
+        if (n == 1)
+            buf[po++] = '0';
+        buf[po++] = 'E';
+        int x = ex - 1;
+        if (x < 0) {
+            buf[po++] = '-';
+            x = -x;
+        }
+        if (x >= 100) {
+            buf[po++] = (byte)('0' + x / 100);
+            x %= 100;
+            buf[po++] = (byte)('0' + x / 10);
+        } else if (x >= 10) {
+            buf[po++] = (byte)('0' + x / 10);
+        }
+        buf[po++] = (byte)('0' + x % 10);
+        return po;
+    }
+
+    /** This writes the n digits of f at po and returns po + n. */
+    private static int digits(long f, int n, byte buf[], int po) {
+        for (int i = po + n - 1; i >= po; i--) {
+            buf[i] = (byte)('0' + (int)(f % 10));
+            f /= 10;
+        }
+        return po + n;
+    }
+
+    /**
+     * This is the slow, exact (BigDecimal) version of toBytes, for the tests:
+     * it finds the decimal (as specified by Java 19+'s Double.toString) 
+     * among the decimals in the rounding interval [lo, hi], then formats it.
+     *
+     * @param v the exact value (positive)
+     * @param lo the low end of the rounding interval
+     * @param hi the high end of the rounding interval
+     * @param inclusive true if the ends of the interval round to v
+     * @param maxDigits 17 for doubles, 9 for floats
+     */
+    private static String slowDecimal(BigDecimal v, BigDecimal lo, BigDecimal hi, boolean inclusive,
+        int maxDigits) {
+        //m = the length of the shortest decimals in the interval
+        int m = 1;
+        while (m < maxDigits && inInterval(v, m, lo, hi, inclusive).isEmpty())
+            m++;
+        ArrayList<BigDecimal> candidates = inInterval(v, m, lo, hi, inclusive);
+        if (m == 1)
+            candidates.addAll(inInterval(v, 2, lo, hi, inclusive));
+
+        //the closest (and if there is a tie, the one with an even last digit)
+        BigDecimal best = null;
+        for (BigDecimal d : candidates) {
+            int diff = best == null? -1 : d.subtract(v).abs().compareTo(best.subtract(v).abs());
+            if (diff < 0 || 
+                (diff == 0 && !d.stripTrailingZeros().unscaledValue().testBit(0)))
+                best = d;
+        }
+
+        //format it
+        best = best.stripTrailingZeros();
+        String digits = best.unscaledValue().toString();
+        int n = digits.length();
+        int ex = n - best.scale(); //the value is 0.digits * 10^ex
+        if (0 < ex && ex <= 7)
+            return n <= ex?
+                digits + "0".repeat(ex - n) + ".0" :
+                digits.substring(0, ex) + "." + digits.substring(ex);
+        if (-3 < ex && ex <= 0)
+            return "0." + "0".repeat(-ex) + digits;
+        return digits.charAt(0) + "." + (n == 1? "0" : digits.substring(1)) + "E" + (ex - 1);
+    }
+
+    /** This returns the decimals with nDigits digits next to v which are in the interval. */
+    private static ArrayList<BigDecimal> inInterval(BigDecimal v, int nDigits, 
+        BigDecimal lo, BigDecimal hi, boolean inclusive) {
+        ArrayList<BigDecimal> list = new ArrayList<>();
+        for (RoundingMode mode : new RoundingMode[]{RoundingMode.FLOOR, RoundingMode.CEILING}) {
+            BigDecimal d = v.round(new MathContext(nDigits, mode));
+            int cLo = d.compareTo(lo);
+            int cHi = d.compareTo(hi);
+            if (inclusive? cLo >= 0 && cHi <= 0 : cLo > 0 && cHi < 0)
+                list.add(d);
+        }
+        return list;
+    }
+
+    /** The slow, exact version of toBytes(double), for the tests. */
+    private static String slowDecimal(double v) {
+        String sign = Double.doubleToRawLongBits(v) < 0? "-" : "";
+        v = Math.abs(v);
+        if (v == 0)
+            return sign + "0.0";
+        BigDecimal bdV = new BigDecimal(v);
+        BigDecimal next = v == Double.MAX_VALUE? 
+            bdV.add(new BigDecimal(Math.ulp(v))) : new BigDecimal(Math.nextUp(v));
+        BigDecimal two = BigDecimal.valueOf(2);
+        return sign + slowDecimal(bdV, 
+            bdV.add(new BigDecimal(Math.nextDown(v))).divide(two), bdV.add(next).divide(two),
+            (Double.doubleToRawLongBits(v) & 1) == 0, 17);
+    }
+
+    /** The slow, exact version of toBytes(float), for the tests. */
+    private static String slowDecimal(float v) {
+        String sign = Float.floatToRawIntBits(v) < 0? "-" : "";
+        v = Math.abs(v);
+        if (v == 0)
+            return sign + "0.0";
+        BigDecimal bdV = new BigDecimal(v);
+        BigDecimal next = v == Float.MAX_VALUE? 
+            bdV.add(new BigDecimal(Math.ulp(v))) : new BigDecimal(Math.nextUp(v));
+        BigDecimal two = BigDecimal.valueOf(2);
+        return sign + slowDecimal(bdV, 
+            bdV.add(new BigDecimal(Math.nextDown(v))).divide(two), bdV.add(next).divide(two),
+            (Float.floatToRawIntBits(v) & 1) == 0, 9);
+    }
+
+    /** This returns floor(log10(bd)) for bd &gt; 0. */
+    private static int slowFloorLog10(BigDecimal bd) {
+        return bd.precision() - bd.scale() - 1;
+    }
+
+    /**
+     * This tests the flog functions against exact (BigDecimal and BigInteger) values
+     * for all of the exponents that toBytes uses.
+     */
+    public static void testFlog() {
+        String2.log("\n*** ShortestDecimal.testFlog()");
+        for (int e = -1100; e <= 1100; e++) {
+            BigDecimal pow2 = e >= 0? new BigDecimal(BigInteger.ONE.shiftLeft(e)) :
+                BigDecimal.ONE.divide(new BigDecimal(BigInteger.ONE.shiftLeft(-e)));
+            Test.ensureEqual(flog10pow2(e), slowFloorLog10(pow2), "e=" + e);
+            Test.ensureEqual(flog10threeQuartersPow2(e), 
+                slowFloorLog10(pow2.multiply(new BigDecimal("0.75"))), "e=" + e);
+        }
+        for (int e = -350; e <= 350; e++) {
+            BigInteger pow10 = BigInteger.TEN.pow(Math.abs(e));
+            Test.ensureEqual(flog2pow10(e), 
+                e >= 0? pow10.bitLength() - 1 : -pow10.subtract(BigInteger.ONE).bitLength(), "e=" + e);
+        }
+    }
+
+    /**
+     * This is the differential test: it ensures toBytes makes the same String as
+     * the slow, exact version (and as Float/Double.toString if SAME_AS_TO_STRING),
+     * and that the String is parsed back to the same value,
+     * for special values, powers of 2 and 10 (and their neighbors), and random values.
+     *
+     * @param nRandom the number of random values of each kind
+     */
+    public static void basicTest(int nRandom) {
+        String2.log("\n*** ShortestDecimal.basicTest(" + nRandom + ") SAME_AS_TO_STRING=" + 
+            SAME_AS_TO_STRING);
+        byte buf[] = new byte[MAX_LENGTH + 10];
+        Random random = new Random(17);
+
+        //doubles
+        ArrayList<Double> doubles = new ArrayList<>();
+        for (double d : new double[]{0, -0.0, 1, -1, 0.1, 1.0/3, 0.3, 123.456, 2.0E-3, 1e-3, 9.999999e-4,
+            1e7, 12345678.9, 123456789012.0, 2e22, 1e22, 1e23, 1e-300, 1e300, 
+            9007199254740991.0, 9007199254740992.0, 1e16, 1e17,
+            Double.MIN_VALUE, 2 * Double.MIN_VALUE, 3 * Double.MIN_VALUE, 20 * Double.MIN_VALUE,
+            Double.MIN_NORMAL, Double.MAX_VALUE})
+            doubles.add(d);
+        for (int e = -1074; e <= 1023; e++) {
+            double d = Math.scalb(1.0, e);
+            doubles.add(d);
+            doubles.add(Math.nextUp(d));
+            doubles.add(Math.nextDown(d));
+        }
+        for (int e = -323; e <= 308; e++) {
+            double d = Double.parseDouble("1e" + e);
+            doubles.add(d);
+            doubles.add(Math.nextUp(d));
+            doubles.add(Math.nextDown(d));
+        }
+        for (int i = 0; i < nRandom; i++) {
+            doubles.add(Double.longBitsToDouble(random.nextLong()));
+            doubles.add(Double.longBitsToDouble(random.nextLong() & 0x000fffffffffffffL)); //subnormal
+            doubles.add(random.nextDouble() * 1000);
+            doubles.add(Math.round(random.nextDouble() * 1e6) / 1000.0);
+            doubles.add((double)(random.nextFloat() * 100));
+        }
+        int nDifferentFromToString = 0;
+        for (double d : doubles) {
+            if (!Double.isFinite(d))
+                continue;
+            String s = new String(buf, 0, toBytes(d, buf, 0), java.nio.charset.StandardCharsets.US_ASCII);
+            String msg = "d=" + d + " bits=" + Double.doubleToRawLongBits(d);
+            Test.ensureEqual(s, slowDecimal(d), msg);
+            Test.ensureEqual(Double.doubleToRawLongBits(Double.parseDouble(s)), 
+                Double.doubleToRawLongBits(d), msg);
+            if (!s.equals(Double.toString(d))) {
+                Test.ensureTrue(!SAME_AS_TO_STRING, msg + " toString=" + Double.toString(d));
+                nDifferentFromToString++;
+            }
+        }
+        String2.log("nDoubles=" + doubles.size() + " nDifferentFromToString=" + nDifferentFromToString);
+
+        //floats
+        ArrayList<Float> floats = new ArrayList<>();
+        for (double d : doubles.subList(0, 29))
+            floats.add((float)d);
+        for (float f : new float[]{Float.MIN_VALUE, 7 * Float.MIN_VALUE, 8 * Float.MIN_VALUE, 
+            Float.MIN_NORMAL, Float.MAX_VALUE, 16777216f, 0.1f, 1.0E-5f, 1.0E16f})
+            floats.add(f);
+        for (int e = -149; e <= 127; e++) {
+            float f = Math.scalb(1.0f, e);
+            floats.add(f);
+            floats.add(Math.nextUp(f));
+            floats.add(Math.nextDown(f));
+        }
+        for (int e = -45; e <= 38; e++) {
+            float f = Float.parseFloat("1e" + e);
+            floats.add(f);
+            floats.add(Math.nextUp(f));
+            floats.add(Math.nextDown(f));
+        }
+        for (int i = 0; i < nRandom; i++) {
+            floats.add(Float.intBitsToFloat(random.nextInt()));
+            floats.add(Float.intBitsToFloat(random.nextInt() & 0x7fffff)); //subnormal
+            floats.add(random.nextFloat() * 1000);
+            floats.add(Math.round(random.nextFloat() * 1e5f) / 100f);
+        }
+        nDifferentFromToString = 0;
+        for (float f : floats) {
+            if (!Float.isFinite(f))
+                continue;
+            String s = new String(buf, 0, toBytes(f, buf, 0), java.nio.charset.StandardCharsets.US_ASCII);
+            String msg = "f=" + f + " bits=" + Float.floatToRawIntBits(f);
+            Test.ensureEqual(s, slowDecimal(f), msg);
+            Test.ensureEqual(Float.floatToRawIntBits(Float.parseFloat(s)), 
+                Float.floatToRawIntBits(f), msg);
+            if (!s.equals(Float.toString(f))) {
+                Test.ensureTrue(!SAME_AS_TO_STRING, msg + " toString=" + Float.toString(f));
+                nDifferentFromToString++;
+            }
+        }
+        String2.log("nFloats=" + floats.size() + " nDifferentFromToString=" + nDifferentFromToString);
+
+        //some known answers
+        String expected[] = {"1.0E23", "4.9E-324", "9.9E-324", "1.7976931348623157E308", 
+            "2.2250738585072014E-308", "0.001", "1.0E-4", "1234567.0", "1.0E7", "-0.0", "0.30000000000000004"};
+        double values[] = {1e23, Double.MIN_VALUE, 2 * Double.MIN_VALUE, Double.MAX_VALUE,
+            Double.MIN_NORMAL, 0.001, 0.0001, 1234567, 1e7, -0.0, 0.1 + 0.2};
+        for (int i = 0; i < values.length; i++)
+            Test.ensureEqual(new String(buf, 0, toBytes(values[i], buf, 0), 
+                java.nio.charset.StandardCharsets.US_ASCII), expected[i], "i=" + i);
+        Test.ensureEqual(new String(buf, 0, toBytes(1.0E16f, buf, 0), 
+            java.nio.charset.StandardCharsets.US_ASCII), "1.0E16", "");
+        Test.ensureEqual(new String(buf, 0, toBytes(Float.MIN_NORMAL, buf, 0), 
+            java.nio.charset.StandardCharsets.US_ASCII), "1.1754944E-38", "");
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ ShortestDecimal.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) testFlog();
+                    if (test ==  1) basicTest(doSlowTestsToo? 200000 : 10000);
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -1469,6 +1469,13 @@ public class StringArray extends PrimitiveArray {
      * to the beginning.
      */
     public void sort() {
+        //few distinct values? do a counting sort of the dictionary codes
+        StringDictionary dict = StringDictionary.lowCardinality(this, false);
+        if (dict != null) {
+            reorderHolders(dict.rank(true));
+            return;
+        }
+
         //see switchover point and speed comparison in 
         //  https://www.baeldung.com/java-arrays-sort-vs-parallelsort
         if (size < 8192)
@@ -1484,6 +1491,13 @@ public class StringArray extends PrimitiveArray {
      * E.g., all charAt(0) A's will sort by for all charAt(0) a's  (e.g., AA, Aa, aA, aa).
      */
     public void sortIgnoreCase() {
+        //few distinct values? do a counting sort of the dictionary codes
+        StringDictionary dict = StringDictionary.lowCardinality(this, true);
+        if (dict != null) {
+            reorderHolders(dict.rank(true));
+            return;
+        }
+
         //see switchover point and speed comparison in 
         //  https://www.baeldung.com/java-arrays-sort-vs-parallelsort
         if (size < 8192)
@@ -1491,6 +1505,18 @@ public class StringArray extends PrimitiveArray {
         else Arrays.parallelSort(array, 0, size, stringHolderComparatorIgnoreCase);
     }
 
+    /**
+     * This puts the elements in the order specified by rank (from a sort).
+     *
+     * @param rank has size values: the index of the element to go in each position
+     */
+    private void reorderHolders(final int rank[]) {
+        final StringHolder newArray[] = new StringHolder[array.length];
+        for (int i = 0; i < size; i++)
+            newArray[i] = array[rank[i]];
+        array = newArray;
+    }
+
     /**
      * This compares the values in this.row1 and otherPA.row2
      * and returns a negative integer, zero, or a positive integer if the 
@@ -1616,8 +1642,27 @@ public class StringArray extends PrimitiveArray {
      */
     public void readDis(final DataInputStream dis, final int n) throws Exception {
         ensureCapacity(size + (long)n);
-        for (int i = 0; i < n; i++)
-            add(dis.readUTF());
+        if (n < StringDictionary.MIN_SIZE) {
+            for (int i = 0; i < n; i++)
+                add(dis.readUTF());
+            return;
+        }
+
+        //Often (e.g., TableWriterAll's columns), there are few distinct values.
+        //A local dictionary of the canonical StringHolders is faster than
+        //finding each value in String2's (synchronized) canonical maps.
+        final HashMap<String, StringHolder> dictionary = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            final String s = dis.readUTF();
+            StringHolder sh = dictionary.get(s);
+            if (sh == null) {
+                add(s);
+                if (dictionary.size() < StringDictionary.MAX_N_VALUES)
+                    dictionary.put(s, array[size - 1]);
+            } else {
+                array[size++] = sh; //capacity was ensured above
+            }
+        }
     }
 
     /**
@@ -1846,6 +1891,26 @@ public class StringArray extends PrimitiveArray {
             return new StringArray();
         }
 
+        //few distinct values? the dictionary already has the unique values and the ranks
+        final StringDictionary dict = StringDictionary.lowCardinality(this, false);
+        if (dict != null) {
+            final int nValues = dict.nValues();
+            //special for StringArray: "" (missing value) sorts highest
+            final int shift = dict.valueHolder(0).length() == 0? 1 : 0;
+            final StringArray unique = new StringArray(nValues, false);
+            for (int v = shift; v < nValues; v++)
+                unique.array[unique.size++] = dict.valueHolder(v);
+            if (shift == 1)
+                unique.array[unique.size++] = dict.valueHolder(0);
+            final int ranks[] = new int[size];
+            for (int i = 0; i < size; i++) {
+                final int code = dict.code(i) - shift;
+                ranks[i] = code < 0? nValues - 1 : code;
+            }
+            indices.append(new IntArray(ranks));
+            return unique;
+        }
+
         //make a hashMap with all the unique values (associated values are initially all dummy)
         final Integer dummy = Integer.valueOf(-1);
         final HashMap hashMap = new HashMap(Math2.roundToInt(1.4 * size));
@@ -1919,6 +1984,49 @@ public class StringArray extends PrimitiveArray {
 
     }
 
+    /**
+     * This tests the keep=true elements to see if 'get(element) op value2' is true.
+     * See PrimitiveArray.applyConstraint.
+     * StringArray overwrites this so that if there are few distinct values,
+     * the test is done just once per distinct value.
+     *
+     * @param morePrecise not used by StringArray
+     * @param keep   The test is only applied to keep=true elements.
+     *   If the test is false, the keep element is set to false.
+     * @param op one of EDDTable.OPERATORS
+     * @param value2
+     * @return nStillGood
+     * @throws RuntimeException if trouble (e.g., invalid op or invalid keep element)
+     */
+    public int applyConstraint(final boolean morePrecise, final BitSet keep, final String op, final String value2) {
+        //encoding looks at every element, so it's only worthwhile if most elements will be tested
+        final StringDictionary dict = keep.cardinality() < size / 2? null : 
+            StringDictionary.lowCardinality(this, false);
+        if (dict == null)
+            return super.applyConstraint(morePrecise, keep, op, value2);
+
+        //test each distinct value
+        final int nValues = dict.nValues();
+        final boolean ok[] = new boolean[nValues];
+        if (op.equals(REGEX_OP)) {
+            final Pattern p = Pattern.compile(value2);  //big time savings
+            for (int v = 0; v < nValues; v++)
+                ok[v] = p.matcher(dict.value(v)).matches();
+        } else {
+            for (int v = 0; v < nValues; v++)
+                ok[v] = testValueOpValue(dict.value(v), op, value2);
+        }
+
+        //then just look up each element's result
+        int nStillGood = 0;
+        for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
+            if (ok[dict.code(row)]) 
+                nStillGood++;
+            else keep.clear(row);
+        }
+        return nStillGood;
+    }
+
     /**
      * This changes all instances of the first value to the second value.
      *
@@ -3433,6 +3541,148 @@ public class StringArray extends PrimitiveArray {
 
     }
 
+    /**
+     * This tests that sort, rank, makeIndices, applyConstraint, and readDis
+     * get the same results when they use a StringDictionary (many elements, few distinct values).
+     */
+    public static void testDictionary() throws Throwable {
+        String2.log("\n*** StringArray.testDictionary");
+        String values[] = {"", "a", "A", "b", "B b", "aA", "Aa", "zz", "\u00fc", "123", "a1"};
+        int n = 5000;
+        java.util.Random random = new java.util.Random(17);
+        StringArray sa = new StringArray(n, false);
+        IntArray ia = new IntArray(n, false);
+        for (int i = 0; i < n; i++) {
+            sa.add(values[random.nextInt(values.length)]);
+            ia.add(random.nextInt(4));
+        }
+        String sar[] = sa.toArray();
+        Test.ensureTrue(StringDictionary.lowCardinality(sa, false) != null, "");
+        Test.ensureTrue(StringDictionary.lowCardinality(new StringArray(Arrays.copyOf(sar, 900)), false) == null, "");
+        Test.ensureTrue(StringDictionary.encode(sa, 5, false) == null, "");
+
+        //large arrays: the sample rejects high cardinality arrays before they are encoded
+        int bigN = 100000;
+        StringArray big = new StringArray(bigN, false);
+        for (int i = 0; i < bigN; i++)
+            big.add("u" + i);
+        Test.ensureTrue(!StringDictionary.mightBeLowCardinality(big, bigN / 8), "");
+        Test.ensureTrue(StringDictionary.lowCardinality(big, false) == null, "");
+        big.clear();
+        for (int i = 0; i < bigN; i++)
+            big.add("v" + random.nextInt(bigN / 8)); //~11750 distinct values
+        Test.ensureTrue(StringDictionary.mightBeLowCardinality(big, bigN / 8), "");
+        Test.ensureTrue(StringDictionary.lowCardinality(big, false) != null, "");
+        big.clear();
+        for (int i = 0; i < bigN; i++)
+            big.add("w" + (i / 5000)); //sorted, 20 distinct values
+        Test.ensureTrue(StringDictionary.mightBeLowCardinality(big, bigN / 8), "");
+        Test.ensureEqual(StringDictionary.lowCardinality(big, false).nValues(), 20, "");
+
+        //if memory is short, no dictionary is made, and sort uses the usual approach
+        StringArray big2 = new StringArray(big);
+        big2.reverse();
+        long oMaxSafeMemory = Math2.maxSafeMemory;
+        try {
+            Math2.maxSafeMemory = 0;
+            Test.ensureTrue(StringDictionary.lowCardinality(big, false) == null, "");
+            big2.sort();
+            String bigExpected[] = big.toArray();
+            Arrays.sort(bigExpected);
+            Test.ensureEqual(big2.toArray(), bigExpected, "");
+        } finally {
+            Math2.maxSafeMemory = oMaxSafeMemory;
+        }
+
+        StringDictionary dict = StringDictionary.encode(sa, 100, false);
+        Test.ensureEqual(dict.nValues(), values.length, "");
+        for (int i = 0; i < n; i++)
+            Test.ensureEqual(dict.value(dict.code(i)), sar[i], "i=" + i);
+
+        //sort
+        java.util.Comparator<String> ignoreCase = (s1, s2) -> 
+            new StringHolder(s1).compareToIgnoreCase(new StringHolder(s2));
+        String expected[] = sar.clone();
+        Arrays.sort(expected);
+        StringArray sa2 = new StringArray(sa);
+        sa2.sort();
+        Test.ensureEqual(sa2.toArray(), expected, "");
+        Arrays.sort(expected, ignoreCase);
+        sa2 = new StringArray(sa);
+        sa2.sortIgnoreCase();
+        Test.ensureEqual(sa2.toArray(), expected, "");
+
+        //rank (1 key: counting sort; 2 keys: RowComparator with the codes)
+        ArrayList<PrimitiveArray> table = new ArrayList<>();
+        table.add(sa);
+        table.add(ia);
+        for (int asc = 0; asc < 2; asc++) {
+            final boolean ascending = asc == 1;
+            final int sign = ascending? 1 : -1;
+            Integer rows[] = new Integer[n];
+            for (int i = 0; i < n; i++)
+                rows[i] = i;
+            Arrays.sort(rows, (r1, r2) -> sign * sar[r1].compareTo(sar[r2]));
+            Test.ensureEqual(PrimitiveArray.rank(table, new int[]{0}, new boolean[]{ascending}), 
+                Arrays.stream(rows).mapToInt(Integer::intValue).toArray(), "ascending=" + ascending);
+
+            Arrays.sort(rows, (r1, r2) -> sign * ignoreCase.compare(sar[r1], sar[r2]));
+            Test.ensureEqual(PrimitiveArray.rankIgnoreCase(table, new int[]{0}, new boolean[]{ascending}), 
+                Arrays.stream(rows).mapToInt(Integer::intValue).toArray(), "ascending=" + ascending);
+
+            Arrays.sort(rows, (r1, r2) -> {
+                int c = sign * sar[r1].compareTo(sar[r2]);
+                return c != 0? c : ia.get(r2) - ia.get(r1);});
+            Test.ensureEqual(PrimitiveArray.rank(table, new int[]{0, 1}, new boolean[]{ascending, false}), 
+                Arrays.stream(rows).mapToInt(Integer::intValue).toArray(), "ascending=" + ascending);
+        }
+
+        //makeIndices: unique values are sorted, but "" (missing value) sorts highest
+        IntArray indices = new IntArray();
+        StringArray unique = (StringArray)sa.makeIndices(indices);
+        String expectedUnique[] = values.clone();
+        Arrays.sort(expectedUnique);
+        System.arraycopy(expectedUnique, 1, expectedUnique, 0, values.length - 1);
+        expectedUnique[values.length - 1] = "";
+        Test.ensureEqual(unique.toArray(), expectedUnique, "");
+        Test.ensureEqual(indices.size(), n, "");
+        for (int i = 0; i < n; i++)
+            Test.ensureEqual(unique.get(indices.get(i)), sar[i], "i=" + i);
+
+        //applyConstraint
+        String ops[]     = {"=", "!=", "<",  "<=", ">", ">=", "=~",     "=", "=~"};
+        String values2[] = {"a", "",   "aa", "B",  "",  "b",  "[aA].*", "q", ".*b"};
+        for (int op = 0; op < ops.length; op++) {
+            BitSet keep = new BitSet();
+            keep.set(0, n);
+            for (int i = 0; i < n; i += 3)
+                keep.clear(i);
+            int nExpected = 0;
+            BitSet expectedKeep = new BitSet();
+            for (int i = 0; i < n; i++) {
+                if (i % 3 != 0 && (ops[op].equals(REGEX_OP)? sar[i].matches(values2[op]) :
+                        testValueOpValue(sar[i], ops[op], values2[op]))) {
+                    expectedKeep.set(i);
+                    nExpected++;
+                }
+            }
+            Test.ensureEqual(sa.applyConstraint(false, keep, ops[op], values2[op]), nExpected, "op=" + ops[op]);
+            Test.ensureEqual(keep, expectedKeep, "op=" + ops[op]);
+        }
+
+        //readDis uses a local dictionary
+        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        sa.writeDos(dos);
+        dos.close();
+        sa2 = new StringArray();
+        sa2.readDis(new DataInputStream(new java.io.ByteArrayInputStream(baos.toByteArray())), n);
+        Test.ensureEqual(sa2.toArray(), sar, "");
+        for (int i = 1; i < n; i++) 
+            if (sar[i].equals(sar[0]))
+                Test.ensureTrue(sa2.getStringHolder(i) == sa2.getStringHolder(0), "i=" + i);
+    }
+
     /**
      * This runs all of the interactive or not interactive tests for this class.
      *
@@ -3447,7 +3697,7 @@ public class StringArray extends PrimitiveArray {
     public static void test(StringBuilder errorSB, boolean interactive, 
         boolean doSlowTestsToo, int firstTest, int lastTest) {
         if (lastTest < 0)
-            lastTest = interactive? -1 : 0;
+            lastTest = interactive? -1 : 1;
         String msg = "\n^^^ StringArray.test(" + interactive + ") test=";
 
         for (int test = firstTest; test <= lastTest; test++) {
@@ -3460,6 +3710,7 @@ public class StringArray extends PrimitiveArray {
 
                 } else {
                     if (test ==  0) basicTest();
+                    if (test ==  1) testDictionary();
                 }
 
                 String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
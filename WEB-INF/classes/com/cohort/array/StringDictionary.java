@@ -0,0 +1,257 @@
+/*
+ * StringDictionary Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package com.cohort.array;
+
+import com.cohort.util.Math2;
+import com.cohort.util.StringHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This is the dictionary encoding of a StringArray: the sorted distinct values,
+ * plus an int code for each element (the index of the element's value in the sorted values).
+ * Since the codes sort the same way as the strings, sort(), rank(), and makeIndices()
+ * can work with the codes (instead of comparing strings),
+ * and applyConstraint() can test each distinct value just once.
+ *
+ * <p>StringArray already stores one canonical StringHolder per distinct value,
+ * so this isn't needed to save memory. It is made on demand (see lowCardinality())
+ * and is a snapshot: it isn't updated if the StringArray is changed.
+ */
+public class StringDictionary {
+
+    /** Smaller StringArrays aren't encoded: it isn't worth the trouble. */
+    public final static int MIN_SIZE = 1000;
+
+    /** StringArrays with more distinct values than this (or than size/8) aren't low cardinality. */
+    public final static int MAX_N_VALUES = 100000;
+
+    private final StringHolder values[]; //sorted, distinct
+    private final int codes[];           //one per element
+
+    private StringDictionary(StringHolder tValues[], int tCodes[]) {
+        values = tValues;
+        codes = tCodes;
+    }
+
+    /** lowCardinality() looks at this many elements before trying to encode a large StringArray. */
+    public final static int SAMPLE_SIZE = 4096;
+
+    /**
+     * This encodes sa if it is worthwhile: if sa has at least MIN_SIZE elements,
+     * but at most MAX_N_VALUES (and at most size/8) distinct values.
+     * For large arrays, a sample of the elements is checked first
+     * (see mightBeLowCardinality), so high cardinality arrays are rejected cheaply.
+     * Since the dictionary is just an optimization, this also returns null
+     * (so the caller uses the usual approach) if memory is short.
+     *
+     * @param sa a StringArray
+     * @param ignoreCase if true, the values are sorted with sortIgnoreCase's order
+     * @return the StringDictionary or null if sa isn't low cardinality 
+     *   or there isn't enough memory to encode it
+     */
+    public static StringDictionary lowCardinality(StringArray sa, boolean ignoreCase) {
+        int n = sa.size();
+        if (n < MIN_SIZE)
+            return null;
+        int maxNValues = Math.min(MAX_N_VALUES, n / 8);
+        if (!mightBeLowCardinality(sa, maxNValues))
+            return null;
+        if (!Math2.isMemoryAvailable(encodeBytes(n, maxNValues)))
+            return null;
+        return encode(sa, maxNValues, ignoreCase);
+    }
+
+    /**
+     * This estimates the most memory that encode() will use (the codes, 
+     * the HashMap of the distinct values, and their sorted array).
+     *
+     * @param n the number of elements
+     * @param maxNValues the maximum number of distinct values
+     * @return the estimated number of bytes
+     */
+    static long encodeBytes(int n, int maxNValues) {
+        return 4L * n + 64L * maxNValues; //64 is a guess: HashMap entry + table slot + sorted array slot
+    }
+
+    /**
+     * This checks a sample of the elements to see if sa might have at most maxNValues distinct values.
+     * It picks one random element from each of SAMPLE_SIZE equal parts of sa
+     * and counts the duplicates. If sa has at most maxNValues distinct values,
+     * the sample is expected to have about SAMPLE_SIZE^2/(2*maxNValues) duplicates (or more)
+     * and this requires a quarter of that.
+     * Since this is just a heuristic, it may reject some arrays that encode() would accept
+     * (notably, sorted arrays with short runs of each value),
+     * but those are just handled the slower way.
+     *
+     * @param sa a StringArray
+     * @param maxNValues the maximum number of distinct values
+     * @return false if sa almost certainly has more than maxNValues distinct values.
+     *   Arrays with at most 4*SAMPLE_SIZE elements always return true.
+     */
+    public static boolean mightBeLowCardinality(StringArray sa, int maxNValues) {
+        int n = sa.size();
+        if (n <= 4 * SAMPLE_SIZE)
+            return true;
+        Random random = new Random(n); //repeatable
+        HashSet<StringHolder> sample = new HashSet<>();
+        int nDuplicates = 0;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            int from = (int)((long)i * n / SAMPLE_SIZE);
+            int to   = (int)((long)(i + 1) * n / SAMPLE_SIZE);
+            if (!sample.add(sa.getStringHolder(from + random.nextInt(to - from))))
+                nDuplicates++;
+        }
+        return nDuplicates >= (long)SAMPLE_SIZE * SAMPLE_SIZE / (8L * Math.max(1, maxNValues));
+    }
+
+    /**
+     * This encodes sa.
+     * The first pass just collects the distinct values, so the codes array is only
+     * allocated if sa turns out to have at most maxNValues distinct values.
+     *
+     * @param sa a StringArray
+     * @param maxNValues the maximum number of distinct values
+     * @param ignoreCase if true, the values are sorted with sortIgnoreCase's order
+     * @return the StringDictionary or null if sa has more than maxNValues distinct values
+     *   or has a null element.
+     */
+    public static StringDictionary encode(StringArray sa, int maxNValues, boolean ignoreCase) {
+        int n = sa.size();
+        HashMap<StringHolder, Integer> map = new HashMap<>();
+        StringHolder last = null; //since the canonical values are shared, the next value often == last
+        for (int i = 0; i < n; i++) {
+            StringHolder sh = sa.getStringHolder(i);
+            if (sh != last) {
+                if (sh.charArray() == null) //null doesn't compare consistently with ""
+                    return null;
+                if (!map.containsKey(sh)) {
+                    if (map.size() >= maxNValues)
+                        return null;
+                    map.put(sh, null);
+                }
+                last = sh;
+            }
+        }
+
+        //sort the distinct values, then store each value's code
+        int nValues = map.size();
+        StringHolder tValues[] = map.keySet().toArray(new StringHolder[nValues]);
+        Arrays.sort(tValues, ignoreCase?
+            StringArray.stringHolderComparatorIgnoreCase : StringArray.stringHolderComparator);
+        for (int v = 0; v < nValues; v++)
+            map.put(tValues[v], v);
+
+        int tCodes[] = new int[n];
+        last = null;
+        int lastCode = -1;
+        for (int i = 0; i < n; i++) {
+            StringHolder sh = sa.getStringHolder(i);
+            if (sh != last) {
+                last = sh;
+                lastCode = map.get(sh);
+            }
+            tCodes[i] = lastCode;
+        }
+        return new StringDictionary(tValues, tCodes);
+    }
+
+    /** This returns the number of elements. */
+    public int size() {
+        return codes.length;
+    }
+
+    /** This returns the number of distinct values. */
+    public int nValues() {
+        return values.length;
+    }
+
+    /** This returns the value with the specified code (0 ... nValues-1). */
+    public String value(int code) {
+        return values[code].string();
+    }
+
+    /** This returns the StringHolder of the value with the specified code (0 ... nValues-1). */
+    StringHolder valueHolder(int code) {
+        return values[code];
+    }
+
+    /** This returns the code of the element at index (0 ... size-1). */
+    public int code(int index) {
+        return codes[index];
+    }
+
+    /** This returns the codes as an IntArray (backed by this dictionary's int[], so don't change it!). */
+    public IntArray codes() {
+        return new IntArray(codes);
+    }
+
+    /**
+     * This makes a stable rank of the elements, as if they were sorted by their values.
+     * This is a counting sort, so it is O(size).
+     *
+     * @param ascending
+     * @return the rank array (see PrimitiveArray.rank)
+     */
+    public int[] rank(boolean ascending) {
+        int n = codes.length;
+        int nValues = values.length;
+        //start[code] = where the first element with code goes
+        int start[] = new int[nValues + 1];
+        for (int i = 0; i < n; i++)
+            start[codes[i] + 1]++;
+        if (ascending) {
+            for (int v = 1; v <= nValues; v++)
+                start[v] += start[v - 1];
+        } else {
+            int sum = 0;
+            for (int v = nValues; v > 0; v--) {
+                int count = start[v];
+                start[v] = sum;
+                sum += count;
+            }
+            System.arraycopy(start, 1, start, 0, nValues);
+        }
+        int rank[] = new int[n];
+        for (int i = 0; i < n; i++)
+            rank[start[codes[i]]++] = i;
+        return rank;
+    }
+
+    /**
+     * This returns a copy of table (or table itself if there is no change)
+     * where each key column which is a low cardinality StringArray is replaced
+     * by its codes, so rows can be compared without comparing strings.
+     *
+     * @param table a List of PrimitiveArrays
+     * @param keys the key column numbers
+     * @param ignoreCase if true, the codes sort like sortIgnoreCase
+     * @return table or a modified copy
+     */
+    public static List<PrimitiveArray> encodeKeys(List<PrimitiveArray> table, int keys[], boolean ignoreCase) {
+        List<PrimitiveArray> newTable = table;
+        for (int k = 0; k < keys.length; k++) {
+            if (keys[k] < 0 || keys[k] >= table.size())
+                continue; //RowComparator will complain
+            PrimitiveArray pa = newTable.get(keys[k]);
+            if (!(pa instanceof StringArray))
+                continue;
+            StringDictionary dict = lowCardinality((StringArray)pa, ignoreCase);
+            if (dict == null)
+                continue;
+            if (newTable == table)
+                newTable = new ArrayList<>(table);
+            newTable.set(keys[k], dict.codes());
+        }
+        return newTable;
+    }
+
+}
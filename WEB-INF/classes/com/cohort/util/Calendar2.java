@@ -2836,6 +2836,20 @@ public class Calendar2 {
         }
     }
 
+    /**
+     * This is like safeIsoStringToEpochSeconds, but converts all of the values in a StringArray.
+     *
+     * @param isoStrings the ISO dateTime strings
+     * @return a new DoubleArray with the epochSeconds values (NaN if trouble)
+     */
+    public static DoubleArray safeIsoStringToEpochSeconds(StringArray isoStrings) {
+        int n = isoStrings.size();
+        DoubleArray da = new DoubleArray(n, false);
+        for (int i = 0; i < n; i++)
+            da.add(safeIsoStringToEpochSeconds(isoStrings.get(i)));
+        return da;
+    }
+
     /**
      * This converts an EDDTable "now-nUnits" string to epochSeconds.
      * - can also be + or space.
@@ -3215,11 +3229,29 @@ public class Calendar2 {
         long millis = Math2.roundToLong(seconds * 1000);
         if (millis == Long.MAX_VALUE)
             return NaNString;
-        try {
-            return limitedFormatAsISODateTimeT(time_precision, newGCalendarZulu(millis)); 
-        } catch (Exception e) {
-            return NaNString;
+        return millisToIsoString(limitedIsoFormatCode(time_precision), millis); 
+    }
+
+    /**
+     * This is like epochSecondsToLimitedIsoStringT, but converts all of the values in a PrimitiveArray.
+     *
+     * @param time_precision see epochSecondsToLimitedIsoStringT
+     * @param seconds the epochSeconds values
+     * @param NaNString the value to use if a seconds value is not finite or is too big.
+     * @return a new StringArray with the formatted time strings
+     */
+    public static StringArray epochSecondsToLimitedIsoStringT(String time_precision,
+        PrimitiveArray seconds, String NaNString) {
+
+        int formatCode = limitedIsoFormatCode(time_precision);
+        char buf[] = new char[limitedIsoMaxLength(formatCode)];
+        int n = seconds.size();
+        StringArray sa = new StringArray(n, false);
+        for (int i = 0; i < n; i++) {
+            int po = epochSecondsToIsoChars(formatCode, seconds.getDouble(i), buf, 0);
+            sa.add(po < 0? NaNString : new String(buf, 0, po));
         }
+        return sa;
     }
 
     /**
@@ -5001,6 +5033,11 @@ public class Calendar2 {
      * @throws RuntimeException if trouble (e.g., s is null or not at least #)
      */
     public static long isoStringToMillis(String s, TimeZone timeZone) {
+        if (timeZone == null || timeZone == zuluTimeZone) {
+            long millis = simpleIsoStringToMillis(s); //fast, for the common, simple forms
+            if (millis != Long.MAX_VALUE)
+                return millis;
+        }
         GregorianCalendar gc = parseISODateTime(
             new GregorianCalendar(timeZone == null? zuluTimeZone : timeZone), s);
         return gc.getTimeInMillis();
@@ -5016,8 +5053,7 @@ public class Calendar2 {
     public static String millisToIsoDateString(long millis) {
         if (millis == Long.MAX_VALUE)
             throw new RuntimeException(String2.ERROR + ": millis value is MAX_VALUE.");
-        GregorianCalendar gc = newGCalendarZulu(millis); 
-        return formatAsISODate(gc);
+        return millisToIsoString(ISO_DATE_CODE, millis);
     }
 
     /**
@@ -5029,8 +5065,9 @@ public class Calendar2 {
      * @throws RuntimeException if trouble (e.g., millis is Long.MAX_VALUE)
      */
     public static String millisToIsoStringTZ(long millis) {
-        GregorianCalendar gc = newGCalendarZulu(millis); 
-        return formatAsISODateTimeTZ(gc);
+        if (millis == Long.MAX_VALUE)
+            Test.error(String2.ERROR + " in millisToIsoStringTZ: millis value is Long.MAX_VALUE!");
+        return millisToIsoString(ISO_TZ_CODE, millis);
     }
 
 
@@ -5042,8 +5079,9 @@ public class Calendar2 {
      * @throws RuntimeException if trouble (e.g., millis is Long.MAX_VALUE)
      */
     public static String millisToIsoStringT3Z(long millis) {
-        GregorianCalendar gc = newGCalendarZulu(millis); 
-        return formatAsISODateTimeT3Z(gc);
+        if (millis == Long.MAX_VALUE)
+            Test.error(String2.ERROR + " in millisToIsoStringT3Z: millis value is Long.MAX_VALUE!");
+        return millisToIsoString(ISO_T3Z_CODE, millis);
     }
 
     /**
@@ -5054,8 +5092,9 @@ public class Calendar2 {
      * @throws RuntimeException if trouble (e.g., millis is Long.MAX_VALUE)
      */
     public static String millisToIsoStringT6Z(long millis) {
-        GregorianCalendar gc = newGCalendarZulu(millis); 
-        return formatAsISODateTimeT6Z(gc);
+        if (millis == Long.MAX_VALUE)
+            Test.error(String2.ERROR + " in millisToIsoStringT6Z: millis value is Long.MAX_VALUE!");
+        return millisToIsoString(ISO_T6Z_CODE, millis);
     }
 
     /**
@@ -5066,10 +5105,316 @@ public class Calendar2 {
      * @throws RuntimeException if trouble (e.g., millis is Long.MAX_VALUE)
      */
     public static String millisToIsoStringT9Z(long millis) {
-        GregorianCalendar gc = newGCalendarZulu(millis); 
-        return formatAsISODateTimeT9Z(gc);
+        if (millis == Long.MAX_VALUE)
+            Test.error(String2.ERROR + " in millisToIsoStringT9Z: millis value is Long.MAX_VALUE!");
+        return millisToIsoString(ISO_T9Z_CODE, millis);
+    }
+
+    /** 
+     * GregorianCalendar's default cutover from the Julian to the Gregorian calendar
+     * (1582-10-15T00:00:00Z). GregorianCalendar (and so Calendar2) uses the
+     * Julian calendar for earlier times.
+     */
+    private final static long GREGORIAN_CUTOVER_MILLIS = -12219292800000L;
+    private final static long GREGORIAN_CUTOVER_DAYS = GREGORIAN_CUTOVER_MILLIS / MILLIS_PER_DAY;
+
+    /** The formatCodes (see limitedIsoFormatCode) for the standard ISO formats. */
+    private final static int ISO_DATE_CODE = 2 << 1;      //1970-01-01
+    private final static int ISO_TZ_CODE   = 5 << 1 | 1;  //1970-01-01T00:00:00Z
+    private final static int ISO_T3Z_CODE  = 8 << 1 | 1;  //1970-01-01T00:00:00.000Z
+    private final static int ISO_T6Z_CODE  = 11 << 1 | 1;
+    private final static int ISO_T9Z_CODE  = 14 << 1 | 1;
+
+    /**
+     * This converts a time_precision string to a formatCode for 
+     * epochMillisToIsoChars(), so the time_precision string only has to be 
+     * interpreted once (e.g., once per column, not once per value).
+     *
+     * @param time_precision see limitedFormatAsISODateTimeT
+     * @return the formatCode. 
+     *   It is level &lt;&lt; 1 | (Z? 1 : 0), where level is 0=year, 1=month, 2=date, 
+     *   3=hour, 4=minute, 5=second, 6+ = 5 + the number of decimal digits for the seconds.
+     */
+    public static int limitedIsoFormatCode(String time_precision) {
+        //this mimics limitedFormatAsISODateTimeT
+        if (time_precision == null || time_precision.length() == 0) 
+            return ISO_TZ_CODE;
+        int len = time_precision.length();
+        int z = 0;
+        if (time_precision.charAt(len - 1) == 'Z') {
+            len--;
+            z = 1;
+        }
+        String full = "1970-01-01T00:00:00";
+        switch (len) {
+            case 0:  return 5 << 1 | z;
+            case 4:  if (time_precision.regionMatches(0, full, 0, len)) return 0 << 1 | z; break;
+            case 7:  if (time_precision.regionMatches(0, full, 0, len)) return 1 << 1 | z; break;
+            case 10: if (time_precision.regionMatches(0, full, 0, len)) return 2 << 1 | z; break;
+            case 13: if (time_precision.regionMatches(0, full, 0, len)) return 3 << 1 | z; break;
+            case 16: if (time_precision.regionMatches(0, full, 0, len)) return 4 << 1 | z; break;
+            case 19: if (time_precision.regionMatches(0, full, 0, len)) return 5 << 1 | z; break;
+        }
+        if (len > 20 && time_precision.startsWith(full) && time_precision.charAt(19) == '.') {
+            int po = 20;
+            while (po < len && time_precision.charAt(po) == '0')
+                po++;
+            if (po == len)
+                return (5 + len - 20) << 1 | z; 
+        }
+        return ISO_TZ_CODE; //default has Z
+    }
+
+    /**
+     * This returns the maximum number of chars that epochMillisToIsoChars
+     * may write for this formatCode.
+     *
+     * @param formatCode from limitedIsoFormatCode
+     * @return the maximum number of chars
+     */
+    public static int limitedIsoMaxLength(int formatCode) {
+        //e.g., -292275055-08-17T07:12:55.807Z
+        return 30 + Math.max(0, (formatCode >> 1) - 5);
+    }
+
+    /**
+     * This converts epochSeconds to a (limited precision) ISO dateTime 
+     * string in buf, like epochSecondsToLimitedIsoStringT, but without making 
+     * a GregorianCalendar or any other objects.
+     *
+     * @param formatCode from limitedIsoFormatCode
+     * @param seconds the epochSeconds value 
+     * @param buf the char[] which will receive the chars.
+     *   It must have room for limitedIsoMaxLength(formatCode) chars after po.
+     * @param po the position in buf where the first char will be put
+     * @return the position in buf after the last char,
+     *   or -1 if seconds is not finite or is too big (and nothing was written).
+     */
+    public static int epochSecondsToIsoChars(int formatCode, double seconds, char buf[], int po) {
+        //should be floor(?), but round avoids issues with computer precision
+        long millis = Math2.roundToLong(seconds * 1000);
+        if (millis == Long.MAX_VALUE)
+            return -1;
+        return epochMillisToIsoChars(formatCode, millis, buf, po);
+    }
+
+    /**
+     * This converts epochMillis to a (limited precision) ISO dateTime 
+     * string in buf, without making a GregorianCalendar or any other objects.
+     * The results are the same as formatting newGCalendarZulu(millis) with
+     * limitedFormatAsISODateTimeT: the year is the astronomical year 
+     * (e.g., 1 BC is 0000, 2 BC is -0001),
+     * the Julian calendar is used before 1582-10-15,
+     * and (like GregorianCalendar) leap seconds are ignored.
+     *
+     * @param formatCode from limitedIsoFormatCode
+     * @param millis the epochMillis value (not Long.MAX_VALUE)
+     * @param buf the char[] which will receive the chars.
+     *   It must have room for limitedIsoMaxLength(formatCode) chars after po.
+     * @param po the position in buf where the first char will be put
+     * @return the position in buf after the last char
+     */
+    public static int epochMillisToIsoChars(int formatCode, long millis, char buf[], int po) {
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int msOfDay = (int)Math.floorMod(millis, MILLIS_PER_DAY);
+        long ymd = days >= GREGORIAN_CUTOVER_DAYS? 
+            gregorianYmd(days) : julianYmd(days);
+        long year = ymd >> 9;
+        int level = formatCode >> 1;
+
+        //year: -?uuuu  (like formatAsISOYear)
+        if (year < 0) {
+            buf[po++] = '-';
+            year = -year;
+        }
+        int nDigits = 1;
+        for (long tl = year; tl >= 10; tl /= 10)
+            nDigits++;
+        for (int i = nDigits; i < 4; i++)
+            buf[po++] = '0';
+        for (int i = nDigits - 1; i >= 0; i--) {
+            buf[po + i] = (char)('0' + year % 10);
+            year /= 10;
+        }
+        po += nDigits;
+
+        if (level >= 1) {
+            buf[po++] = '-';
+            po = twoDigits((int)(ymd >> 5) & 15, buf, po); 
+        }
+        if (level >= 2) {
+            buf[po++] = '-';
+            po = twoDigits((int)ymd & 31, buf, po); 
+        }
+        if (level >= 3) {
+            buf[po++] = 'T';
+            po = twoDigits(msOfDay / 3600000, buf, po);
+        }
+        if (level >= 4) {
+            buf[po++] = ':';
+            po = twoDigits(msOfDay / 60000 % 60, buf, po);
+        }
+        if (level >= 5) {
+            buf[po++] = ':';
+            po = twoDigits(msOfDay / 1000 % 60, buf, po);
+        }
+        if (level >= 6) {
+            //GregorianCalendar only has millis, so later digits are 0
+            int ms = msOfDay % 1000;
+            buf[po++] = '.';
+            buf[po++] = (char)('0' + ms / 100);
+            if (level >= 7) buf[po++] = (char)('0' + ms / 10 % 10);
+            if (level >= 8) buf[po++] = (char)('0' + ms % 10);
+            for (int i = 8; i < level; i++)
+                buf[po++] = '0';
+        }
+        if ((formatCode & 1) == 1)
+            buf[po++] = 'Z';
+        return po;
+    }
+
+    /** This puts 2 digits in buf and returns the new po. */
+    private static int twoDigits(int i, char buf[], int po) {
+        buf[po++] = (char)('0' + i / 10);
+        buf[po++] = (char)('0' + i % 10);
+        return po;
+    }
+
+    /** This is a convenience method: epochMillisToIsoChars, then make a String. */
+    private static String millisToIsoString(int formatCode, long millis) {
+        char buf[] = new char[limitedIsoMaxLength(formatCode)];
+        return new String(buf, 0, epochMillisToIsoChars(formatCode, millis, buf, 0));
+    }
+
+    /**
+     * This converts days since 1970-01-01 to the date in the proleptic Gregorian calendar.
+     * See Howard Hinnant's civil_from_days (http://howardhinnant.github.io/date_algorithms.html).
+     *
+     * @param days days since 1970-01-01
+     * @return (astronomicalYear &lt;&lt; 9) | (month(1..12) &lt;&lt; 5) | date(1..31)
+     */
+    private static long gregorianYmd(long days) {
+        long z = days + 719468;  //days since 0000-03-01
+        long era = Math.floorDiv(z, 146097); //400 year eras
+        long doe = z - era * 146097;         //[0, 146096]
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365; //[0, 399]
+        long year = yoe + era * 400;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100); //[0, 365], starting March 1
+        long mp = (5 * doy + 2) / 153;       //[0, 11], starting March
+        long date = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10? mp + 3 : mp - 9;
+        if (month <= 2) 
+            year++;
+        return (year << 9) | (month << 5) | date;
+    }
+
+    /**
+     * This converts days since 1970-01-01 to the date in the proleptic Julian calendar.
+     * See Richards' algorithm (Explanatory Supplement to the Astronomical Almanac).
+     *
+     * @param days days since 1970-01-01
+     * @return (astronomicalYear &lt;&lt; 9) | (month(1..12) &lt;&lt; 5) | date(1..31)
+     */
+    private static long julianYmd(long days) {
+        long c = days + 2440588 + 32082; //2440588 is the Julian Day Number of 1970-01-01
+        long d = Math.floorDiv(4 * c + 3, 1461);
+        long e = c - Math.floorDiv(1461 * d, 4);       //[0, 365], starting March 1
+        long m = (5 * e + 2) / 153;                    //[0, 11], starting March
+        long date = e - (153 * m + 2) / 5 + 1;
+        long month = m + 3 - 12 * (m / 10);
+        long year = d - 4800 + m / 10;
+        return (year << 9) | (month << 5) | date;
+    }
+
+    /**
+     * This converts a date in the proleptic Gregorian calendar to days since 1970-01-01.
+     * See Howard Hinnant's days_from_civil (http://howardhinnant.github.io/date_algorithms.html).
+     */
+    private static long gregorianDays(long year, int month, int date) {
+        if (month <= 2)
+            year--;
+        long era = Math.floorDiv(year, 400);
+        long yoe = year - era * 400;                                      //[0, 399]
+        long doy = (153 * (month > 2? month - 3 : month + 9) + 2) / 5 + date - 1; //[0, 365]
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;                 //[0, 146096]
+        return era * 146097 + doe - 719468;
+    }
+
+    /** 
+     * This parses n digits from s starting at po.
+     * @return the value, or -1 if any of the chars isn't a digit.
+     */
+    private static int parseDigits(String s, int po, int n) {
+        int i = 0;
+        for (int end = po + n; po < end; po++) {
+            char ch = s.charAt(po);
+            if (ch < '0' || ch > '9')
+                return -1;
+            i = i * 10 + (ch - '0');
+        }
+        return i;
     }
 
+    /**
+     * This quickly converts the common, simple forms of ISO dateTime strings
+     * to epochMillis, without making a GregorianCalendar or any other objects:
+     * uuuu-MM-dd, uuuu-MM-ddTHH:mm:ss, or uuuu-MM-ddTHH:mm:ss.S (1 - 9 digits), 
+     * each with an optional trailing Z. The year must be 1583 - 9999 and
+     * each field must be in its normal range (e.g., not a leap second).
+     * For anything else, this returns Long.MAX_VALUE and 
+     * the caller should use isoStringToMillis() (which is lenient).
+     * For the supported forms, the result is the same as isoStringToMillis().
+     *
+     * @param s an ISO dateTime string (Zulu)
+     * @return the epochMillis, or Long.MAX_VALUE if s isn't one of the simple forms
+     */
+    public static long simpleIsoStringToMillis(String s) {
+        if (s == null) 
+            return Long.MAX_VALUE;
+        int sLength = s.length();
+        if (sLength > 0 && s.charAt(sLength - 1) == 'Z')
+            sLength--;
+        if (sLength != 10 && sLength != 19 && (sLength < 21 || sLength > 29))
+            return Long.MAX_VALUE;
+        if (s.charAt(4) != '-' || s.charAt(7) != '-')
+            return Long.MAX_VALUE;
+        int year  = parseDigits(s, 0, 4);
+        int month = parseDigits(s, 5, 2);
+        int date  = parseDigits(s, 8, 2);
+        if (year < 1583 || month < 1 || month > 12 || date < 1 || 
+            date > (month == 2 && year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)? 29 : 
+                DAYS_PER_MONTH[month - 1]))
+            return Long.MAX_VALUE;
+        long millis = gregorianDays(year, month, date) * MILLIS_PER_DAY;
+        if (sLength == 10) 
+            return millis;
+
+        if (s.charAt(10) != 'T' || s.charAt(13) != ':' || s.charAt(16) != ':')
+            return Long.MAX_VALUE;
+        int hour   = parseDigits(s, 11, 2);
+        int minute = parseDigits(s, 14, 2);
+        int second = parseDigits(s, 17, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+            return Long.MAX_VALUE;
+        millis += hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * 1000L;
+        if (sLength == 19) 
+            return millis;
+
+        //fraction: like parseN: truncToInt(1000 * parseDouble("0." + digits))
+        //v / 10^n is exactly the same double as parseDouble (both are correctly rounded)
+        if (s.charAt(19) != '.')
+            return Long.MAX_VALUE;
+        int nDigits = sLength - 20;
+        int v = parseDigits(s, 20, nDigits);
+        if (v < 0)
+            return Long.MAX_VALUE;
+        return millis + (int)(1000 * (v / POWERS_OF_10[nDigits]));
+    }
+
+    private final static int DAYS_PER_MONTH[] = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private final static double POWERS_OF_10[] = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+
+
     /**
      * Remove any spaces, dashes (except optional initial dash), colons, and T's from s.
      *
@@ -10,6 +10,7 @@ import java.math.MathContext;
 import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The Math2 class has several static Math-related methods.
@@ -66,6 +67,11 @@ public class Math2 {
     public static long dangerousMemory = maxMemory * 9L / 10; //90%   this is really bad
 
     public static long alwaysOkayMemoryRequest = maxSafeMemory / 40;
+
+    //off-heap memory (e.g., com.cohort.array.OffHeapArray) isn't in getMemoryInUse(),
+    //so it is tracked here and added by getTotalMemoryInUse().
+    public static long maxOffHeapMemory = maxMemory / 8;      //12.5% the max that all OffHeapArrays can reserve
+    private static final AtomicLong offHeapMemoryInUse = new AtomicLong();
     public volatile static int  gcCallCount = 0;               //since last Major LoadDatasets
     public volatile static long timeGCLastCalled = 0;
 
@@ -348,6 +354,76 @@ public class Math2 {
         return getAllocatedMemory() - Runtime.getRuntime().freeMemory();
     }
 
+    /**
+     * This returns the number of bytes currently reserved outside of the Java heap
+     * (see reserveOffHeapMemory).
+     *
+     * @return the number of off-heap bytes currently reserved
+     */
+    public static long getOffHeapMemoryInUse() {
+        return offHeapMemoryInUse.get();
+    }
+
+    /**
+     * This returns getMemoryInUse() + getOffHeapMemoryInUse().
+     * This is what the memory checks (e.g., ensureMemoryAvailable and 
+     * EDStatic.shedThisRequest) compare to maxSafeMemory, dangerousMemory, etc.
+     *
+     * @return the number of bytes currently in use by this program
+     */
+    public static long getTotalMemoryInUse() {
+        return getMemoryInUse() + offHeapMemoryInUse.get();
+    }
+
+    /**
+     * This returns true if nBytes more memory could be used without pushing
+     * getTotalMemoryInUse() above maxSafeMemory.
+     * Unlike ensureMemoryAvailable, this doesn't call gc or throw an exception,
+     * so callers can use it to decide whether to keep optional data in memory
+     * or write it to a temporary file.
+     *
+     * @param nBytes the number of bytes the caller plans to keep in memory
+     * @return true if there is currently room for nBytes
+     */
+    public static boolean isMemoryAvailable(final long nBytes) {
+        return getTotalMemoryInUse() + nBytes <= maxSafeMemory;
+    }
+
+    /**
+     * This tries to reserve nBytes of off-heap memory.
+     * A reservation fails if it would push the off-heap total above maxOffHeapMemory
+     * or the total memory in use above maxSafeMemory.
+     * Callers should fall back to something else (e.g., a temp file) if this fails.
+     *
+     * @param nBytes the number of bytes the caller plans to allocate off-heap
+     * @return true if the bytes were reserved.
+     *   If true, the caller must call releaseOffHeapMemory(nBytes) when done.
+     */
+    public static boolean reserveOffHeapMemory(final long nBytes) {
+        if (nBytes <= 0)
+            return true;
+        if (nBytes >= alwaysOkayMemoryRequest && 
+            getTotalMemoryInUse() + nBytes > maxSafeMemory)
+            return false;
+        while (true) {
+            final long inUse = offHeapMemoryInUse.get();
+            if (inUse + nBytes > maxOffHeapMemory)
+                return false;
+            if (offHeapMemoryInUse.compareAndSet(inUse, inUse + nBytes))
+                return true;
+        }
+    }
+
+    /**
+     * This releases off-heap memory reserved with reserveOffHeapMemory.
+     *
+     * @param nBytes the number of bytes that were reserved
+     */
+    public static void releaseOffHeapMemory(final long nBytes) {
+        if (nBytes > 0)
+            offHeapMemoryInUse.addAndGet(-nBytes);
+    }
+
     /**
      * This returns a string indicating with the values from
      * getMemoryInUse (current being used) and the high-water mark
@@ -363,9 +439,11 @@ public class Math2 {
         final long using = getMemoryInUse();
         maxUsingMemory = Math.max(maxUsingMemory, using); //before gc
 
+        final long offHeap = offHeapMemoryInUse.get();
         return "MemoryInUse=" + String2.right("" + using/BytesPerMB, 6) + 
             " MB (highWaterMark=" + String2.right("" + maxUsingMemory/BytesPerMB, 6) + 
-            " MB)";
+            " MB)" +
+            (offHeap == 0? "" : " OffHeapInUse=" + (offHeap/BytesPerMB) + " MB");
     }
 
     /**
@@ -494,12 +572,13 @@ public class Math2 {
         }
 
         //request is fine
-        long memoryInUse = getMemoryInUse();
+        long memoryInUse = getTotalMemoryInUse();
         if (memoryInUse + nBytes <= maxSafeMemory)  //it'll work
             return;
 
         //Not enough memory. Try to free up memory 
-        memoryInUse = Math2.gcAndWait("ensureMemoryAvailable (" + attributeTo + ")"); //if gc just called by other thread, this just waits and returns
+        memoryInUse = Math2.gcAndWait("ensureMemoryAvailable (" + attributeTo + ")") + //if gc just called by other thread, this just waits and returns
+            offHeapMemoryInUse.get(); 
 
         //now enough memory?
         if (memoryInUse + nBytes <= maxSafeMemory)  //it'll work
@@ -4,6 +4,7 @@
  */
 package com.cohort.util;
 
+import com.cohort.array.DoubleArray;
 import com.cohort.array.StringArray;
 
 import java.awt.Color;
@@ -6014,6 +6015,145 @@ expected =
         Math2.gcAndWait("TestUtil (between tests)"); //in test
     }
 
+    /**
+     * This is a differential test of Calendar2's allocation-free ISO methods
+     * (epochMillisToIsoChars, simpleIsoStringToMillis, ...) vs. the
+     * GregorianCalendar-based methods.
+     */
+    public static void testCalendar2IsoChars() throws Throwable {
+        String2.log("\n*** TestUtil.testCalendar2IsoChars");
+        String tps[] = {null, "", "Z", "1970", "1970Z", "1970-01", "1970-01Z", 
+            "1970-01-01", "1970-01-01Z", "1970-01-01T00", "1970-01-01T00Z", 
+            "1970-01-01T00:00", "1970-01-01T00:00Z", "1970-01-01T00:00:00", "1970-01-01T00:00:00Z", 
+            "1970-01-01T00:00:00.", "1970-01-01T00:00:00.Z", 
+            "1970-01-01T00:00:00.0", "1970-01-01T00:00:00.0Z", 
+            "1970-01-01T00:00:00.00", "1970-01-01T00:00:00.00Z", 
+            "1970-01-01T00:00:00.000", "1970-01-01T00:00:00.000Z", 
+            "1970-01-01T00:00:00.000000Z", "1970-01-01T00:00:00.000000000", 
+            "1970-01-01T00:00:00.000000000000Z", "1970-01-01T00:00:00.001Z", 
+            "1970-01-01T00:00:00.01", "1970-01-01T00:00Q", "1980-01-01", "junk"};
+        Random random = new Random(17);
+        char buf[] = new char[100];
+
+        //format: random millis over various ranges, incl. negative years and the Julian/Gregorian cutover
+        long ranges[] = {1000L * 86400, 100L * 365 * 86400000, 
+            4000L * 365 * 86400000, 20000L * 365 * 86400000, 
+            Long.MAX_VALUE / 2, Long.MAX_VALUE};
+        long centers[] = {0, 0, 0, 0, 0, 0, -12219292800000L, -62135596800000L};
+        for (int c = 0; c < centers.length; c++) {
+            long range = c < ranges.length? ranges[c] : 10L * 86400000;
+            for (int i = 0; i < 2000; i++) {
+                long millis = i == 0? centers[c] : 
+                    centers[c] + (long)((random.nextDouble() * 2 - 1) * range);
+                if (i == 1) millis = centers[c] - 1;
+                if (millis == Long.MAX_VALUE)
+                    continue;
+                GregorianCalendar gc = Calendar2.newGCalendarZulu(millis);
+                for (String tp : tps) {
+                    String expected = Calendar2.limitedFormatAsISODateTimeT(tp, gc);
+                    int code = Calendar2.limitedIsoFormatCode(tp);
+                    int po = Calendar2.epochMillisToIsoChars(code, millis, buf, 3);
+                    String msg = "millis=" + millis + " tp=" + tp;
+                    Test.ensureEqual(new String(buf, 3, po - 3), expected, msg);
+                    Test.ensureTrue(po - 3 <= Calendar2.limitedIsoMaxLength(code), msg);
+                }
+                Test.ensureEqual(Calendar2.millisToIsoStringTZ(millis),  Calendar2.formatAsISODateTimeTZ(gc),  "");
+                Test.ensureEqual(Calendar2.millisToIsoStringT3Z(millis), Calendar2.formatAsISODateTimeT3Z(gc), "");
+                Test.ensureEqual(Calendar2.millisToIsoStringT6Z(millis), Calendar2.formatAsISODateTimeT6Z(gc), "");
+                Test.ensureEqual(Calendar2.millisToIsoStringT9Z(millis), Calendar2.formatAsISODateTimeT9Z(gc), "");
+                Test.ensureEqual(Calendar2.millisToIsoDateString(millis), Calendar2.formatAsISODate(gc), "");
+            }
+        }
+
+        //epochSeconds (incl. NaN, infinite, too big), single and bulk
+        DoubleArray da = new DoubleArray(new double[]{0, 0.0004, 0.0005, -0.0005, 1.9999, -1e-4, 
+            1e9 + 0.123, -1e11, 1e15, 1e16, 1e17, -1e17, Double.NaN, 
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e300});
+        for (int i = 0; i < 1000; i++)
+            da.add((random.nextDouble() * 2 - 1) * 1e11);
+        for (String tp : tps) {
+            StringArray sa = Calendar2.epochSecondsToLimitedIsoStringT(tp, da, "NaN");
+            for (int i = 0; i < da.size(); i++) {
+                double d = da.get(i);
+                long millis = Math2.roundToLong(d * 1000);
+                String expected = millis == Long.MAX_VALUE? "NaN" :
+                    Calendar2.limitedFormatAsISODateTimeT(tp, Calendar2.newGCalendarZulu(millis));
+                Test.ensureEqual(Calendar2.epochSecondsToLimitedIsoStringT(tp, d, "NaN"), expected, "d=" + d);
+                Test.ensureEqual(sa.get(i), expected, "d=" + d);
+            }
+        }
+        Test.ensureEqual(Calendar2.epochSecondsToIsoChars(Calendar2.limitedIsoFormatCode(null), 
+            Double.NaN, buf, 0), -1, "");
+
+        //parse: the simple forms
+        StringArray isoStrings = new StringArray();
+        for (int i = 0; i < 3000; i++) {
+            //1583 to 9999
+            long millis = -12212553600000L + (long)(random.nextDouble() * 2.6e14);
+            String s = Calendar2.millisToIsoStringT9Z(millis);
+            int form = i % 4;
+            if (form == 0) s = s.substring(0, 10);
+            else if (form == 1) s = s.substring(0, 19);
+            else if (form == 2) s = s.substring(0, 20 + 1 + random.nextInt(9));
+            if (random.nextBoolean() && !s.endsWith("Z"))
+                s += "Z";
+            else if (random.nextBoolean() && s.endsWith("Z"))
+                s = s.substring(0, s.length() - 1);
+            if (form == 2 && random.nextBoolean()) {
+                //random fraction digits
+                StringBuilder sb = new StringBuilder(s);
+                for (int po = 20; po < sb.length() && po < 29; po++)
+                    if (String2.isDigit(sb.charAt(po)))
+                        sb.setCharAt(po, (char)('0' + random.nextInt(10)));
+                s = sb.toString();
+            }
+            isoStrings.add(s);
+        }
+        //not simple: these must be handled by the lenient parser
+        String notSimple[] = {"2021-02-29", "2100-02-29T00:00:00Z", "2020-13-01", "2020-00-01", 
+            "2020-01-32", "2020-01-01T24:00:00Z", "2020-01-01T23:60:00", 
+            "2016-12-31T23:59:60Z", "1582-10-15", "1582-10-04T12:00:00Z", "0000-01-01", 
+            "-0001-06-15T00:00:00Z", "2020-01-01T00:00:00.", "2020-01-01T00:00:00.1234567890Z", 
+            "2020-01-01 00:00:00", "2020-01-01T00:00", "2020-1-1", " 2020-01-01", 
+            "2020-01-01z", "2020-01-01T00:00:00+01:00", "2020-01-01T00:00:00,5", "20200101", 
+            "2020", "2020-01", "99999-01-01", "2020-01-01T00:00:0a", "2020-0a-01", "",  
+            "a", null};
+        isoStrings.add(notSimple);
+        for (int i = 0; i < isoStrings.size(); i++) {
+            String s = isoStrings.get(i);
+            long expected;
+            try {
+                expected = Calendar2.parseISODateTime(Calendar2.newGCalendarZulu(), s).getTimeInMillis();
+            } catch (Exception e) {
+                expected = Long.MAX_VALUE;
+            }
+            long simple = Calendar2.simpleIsoStringToMillis(s);
+            Test.ensureTrue(simple == Long.MAX_VALUE || simple == expected, 
+                "s=" + s + " simple=" + simple + " expected=" + expected);
+            if (i < 3000)
+                Test.ensureEqual(simple, expected, "s=" + s);
+            long observed;
+            try {
+                observed = Calendar2.isoStringToMillis(s);
+            } catch (Exception e) {
+                observed = Long.MAX_VALUE;
+            }
+            Test.ensureEqual(observed, expected, "s=" + s);
+        }
+        for (String s : notSimple) {
+            if (s == null) continue;
+            Test.ensureEqual(Calendar2.simpleIsoStringToMillis(s), Long.MAX_VALUE, "s=" + s);
+        }
+        Test.ensureEqual(Calendar2.simpleIsoStringToMillis("2000-02-29T12:34:56.7Z"), 951827696700L, "");
+        Test.ensureEqual(Calendar2.simpleIsoStringToMillis("1970-01-01"), 0, "");
+
+        //bulk parse
+        DoubleArray parsed = Calendar2.safeIsoStringToEpochSeconds(isoStrings);
+        for (int i = 0; i < isoStrings.size(); i++) 
+            Test.ensureEqual(parsed.get(i), 
+                Calendar2.safeIsoStringToEpochSeconds(isoStrings.get(i)), "s=" + isoStrings.get(i));
+    }
+
     /**
      * Test the methods in MustBe.
      */
@@ -6777,6 +6917,7 @@ expected =
                     if (test == 12) testMustBe();
                     if (test == 13) testResourceBundle2();
                     if (test == 14) testCalendar2();
+                    if (test == 15) testCalendar2IsoChars();
                     if (test == 16) timeCurrentTimeMillis();
                     if (test == 17) timeString2Log();
 
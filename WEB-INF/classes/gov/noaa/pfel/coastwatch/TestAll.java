@@ -1128,6 +1128,9 @@ WaitThenTryAgainException wttae;
         ULongArray.test(                 errorSB, interactive, doSlowTestsToo, 0, -1);
         PrimitiveArray.test(             errorSB, interactive, doSlowTestsToo, 0, -1);
         PAOne.test(                      errorSB, interactive, doSlowTestsToo, 0, -1);
+        ShortestDecimal.test(            errorSB, interactive, doSlowTestsToo, 0, -1);
+        ByteWriter.test(                 errorSB, interactive, doSlowTestsToo, 0, -1);
+        OffHeapArray.test(               errorSB, interactive, doSlowTestsToo, 0, -1);
         Attributes.test(                 errorSB, interactive, doSlowTestsToo, 0, -1);
         ResourceBundle2.test(            errorSB, interactive, doSlowTestsToo, 0, -1);
 
@@ -1198,6 +1201,18 @@ WaitThenTryAgainException wttae;
         HtmlWidgets.test(                errorSB, interactive, doSlowTestsToo, 0, -1); 
         CfToFromGcmd.test(               errorSB, interactive, doSlowTestsToo, 0, -1); 
         EDStatic.test(                   errorSB, interactive, doSlowTestsToo, 0, -1); 
+        LoadDatasets.test(               errorSB, interactive, doSlowTestsToo, 0, -1);
+        AdmissionController.test(        errorSB, interactive, doSlowTestsToo, 0, -1);
+        ThreadedWorkManager.test(        errorSB, interactive, doSlowTestsToo, 0, -1);
+        SearchIndex.test(                errorSB, interactive, doSlowTestsToo, 0, -1);
+        GridChunkCache.test(             errorSB, interactive, doSlowTestsToo, 0, -1);
+        ResponseCache.test(              errorSB, interactive, doSlowTestsToo, 0, -1);
+        RequestCoalescer.test(           errorSB, interactive, doSlowTestsToo, 0, -1);
+        WmsTileCache.test(               errorSB, interactive, doSlowTestsToo, 0, -1);
+        TableWriterOrderByReduce.test(   errorSB, interactive, doSlowTestsToo, 0, -1);
+        TableWriterExternalSort.test(    errorSB, interactive, doSlowTestsToo, 0, -1);
+        GridDataRandomAccessor.test(     errorSB, interactive, doSlowTestsToo, 0, -1);
+        NcFileCache.test(                errorSB, interactive, doSlowTestsToo, 0, -1);
         EDV.test(                        errorSB, interactive, doSlowTestsToo, 0, -1); 
         EDVTimeStamp.test(               errorSB, interactive, doSlowTestsToo, 0, -1); 
         Units2.test(                     errorSB, interactive, doSlowTestsToo, 0, -1); 
@@ -1221,6 +1236,7 @@ WaitThenTryAgainException wttae;
                                          errorSB, interactive, doSlowTestsToo, 0, -1);  
         EDDGridFromNcFiles.test(         errorSB, interactive, doSlowTestsToo, 0, -1);  
         EDDGridFromNcFilesUnpacked.test( errorSB, interactive, doSlowTestsToo, 0, -1);  
+        GridOverviews.test(              errorSB, interactive, doSlowTestsToo, 0, -1);  
         EDDGridFromMergeIRFiles.test(    errorSB, interactive, doSlowTestsToo, 0, -1);  
         EDDGridFromAudioFiles.test(      errorSB, interactive, doSlowTestsToo, 0, -1);  
         EDDGridFromEDDTable.test(        errorSB, interactive, doSlowTestsToo, 0, -1);  
@@ -1235,6 +1251,7 @@ WaitThenTryAgainException wttae;
 
         //EDDTable
         EDDTableFromFiles.test(          errorSB, interactive, doSlowTestsToo, 0, -1); 
+        FileTableIndex.test(             errorSB, interactive, doSlowTestsToo, 0, -1);
         EDDTableFromNcFiles.test(        errorSB, interactive, doSlowTestsToo, 0, -1);
         EDDTableFromNcCFFiles.test(      errorSB, interactive, doSlowTestsToo, 0, -1);  
         EDDTableFromMultidimNcFiles.test(errorSB, interactive, doSlowTestsToo, 0, -1);
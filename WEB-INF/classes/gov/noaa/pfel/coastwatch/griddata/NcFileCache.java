@@ -0,0 +1,533 @@
+/*
+ * NcFileCache Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.coastwatch.griddata;
+
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import ucar.nc2.NetcdfFile;
+
+/**
+ * This is a bounded, LRU cache of open NetcdfFile handles, so repeated reads
+ * of the same file (e.g., by EDDGridFromNcFiles and EDDTableFromNcFiles)
+ * don't have to open the file and parse the header (and the HDF5 B-trees
+ * and the NcML) every time.
+ *
+ * <p>Use NcHelper.acquireFile() and NcHelper.releaseFile() (not NetcdfFile.close()).
+ * NetcdfFile isn't thread-safe, so a handle is only used by one thread at a time:
+ * concurrent readers of the same file share the file's cached handles
+ * (each takes an idle one or, if none are idle, the cache opens another one).
+ *
+ * <p>Entries are keyed by the file's name, lastModified, and length, so a changed
+ * file never gets a stale handle. The owner of a fileTable also calls
+ * invalidate() when it sees that a file has changed or been deleted.
+ * The total number of open handles (in use or idle) is at most maxOpen
+ * (beyond that, handles are opened and closed as before).
+ * Idle handles are closed when they are the least recently used and
+ * more handles are needed, or when they have been idle for IDLE_MILLIS
+ * (a background thread checks every SWEEP_MILLIS, so handles don't stay open
+ * (and keep deleted files on disk) when no one is reading files).
+ *
+ * <p>This is thread-safe.
+ */
+public class NcFileCache {
+
+    /** Idle handles are closed after this long. */
+    public final static long IDLE_MILLIS = 5 * 60 * 1000L;
+
+    /** How often the sweeper looks for handles which have been idle for IDLE_MILLIS. */
+    public final static long SWEEP_MILLIS = 60 * 1000L;
+
+    /** The default maxOpen. */
+    public final static int DEFAULT_MAX_OPEN = 100;
+
+    /** The maximum number of open handles (in use or idle). 0 turns the cache off. 
+     * ERDDAP sets this from datasets.xml's &lt;ncFileCacheMaxOpen&gt;. */
+    private static int maxOpen = DEFAULT_MAX_OPEN;
+
+    /** One cached handle. */
+    private static class Handle {
+        final String fullName;
+        final String key;
+        final NetcdfFile ncFile;
+        boolean valid = true; //false if it should be closed when released
+        long lastUsed;
+
+        Handle(String tFullName, String tKey, NetcdfFile tNcFile) {
+            fullName = tFullName;
+            key = tKey;
+            ncFile = tNcFile;
+        }
+    }
+
+    //all guarded by lock
+    private final static Object lock = new Object();
+    /** key -&gt; the idle handles for that key */
+    private final static HashMap<String, ArrayList<Handle>> idle = new HashMap<>();
+    /** the idle handles, least recently used first */
+    private final static LinkedHashMap<Handle, Handle> lru = new LinkedHashMap<>();
+    /** the handles which are in use */
+    private final static IdentityHashMap<NetcdfFile, Handle> inUse = new IdentityHashMap<>();
+    private static int nOpen = 0;
+    /** The background thread which closes idle handles. 
+     * null until the first handle is cached (and after shutdown()). */
+    private static ScheduledExecutorService sweeper = null;
+
+    //counters (since startup)
+    private static long nHits = 0, nMisses = 0, nUncached = 0, nEvictions = 0, nInvalidated = 0;
+
+    /**
+     * This sets the maximum number of open handles.
+     * If it is less than the current number of idle handles, the extra idle handles are closed.
+     *
+     * @param tMaxOpen 0 or more. 0 turns the cache off.
+     */
+    public static void setMaxOpen(int tMaxOpen) {
+        ArrayList<Handle> toClose = new ArrayList<>();
+        synchronized (lock) {
+            maxOpen = Math.max(0, tMaxOpen);
+            Iterator<Handle> it = lru.keySet().iterator();
+            while (nOpen > maxOpen && it.hasNext()) {
+                Handle h = it.next();
+                it.remove();
+                removeIdle(h);
+                toClose.add(h);
+            }
+        }
+        close(toClose);
+    }
+
+    /**
+     * This gets an open NetcdfFile for exclusive use by the calling thread.
+     * The caller MUST call release() when finished with it, preferably in a "finally" clause.
+     *
+     * @param fullName a local file name (If this is an .ncml file, the name must end in .ncml.)
+     * @return a NetcdfFile
+     * @throws Exception if trouble
+     */
+    public static NetcdfFile acquire(String fullName) throws Exception {
+        File file = new File(fullName);
+        String key = fullName + "\n" + file.lastModified() + "\n" + file.length();
+        ArrayList<Handle> toClose = new ArrayList<>();
+        boolean cacheIt;
+        synchronized (lock) {
+            cacheIt = maxOpen > 0 && file.isFile();
+            if (cacheIt) {
+                //an idle handle?
+                ArrayList<Handle> handles = idle.get(key);
+                if (handles != null) {
+                    Handle h = handles.remove(handles.size() - 1);
+                    if (handles.isEmpty())
+                        idle.remove(key);
+                    lru.remove(h);
+                    inUse.put(h.ncFile, h);
+                    nHits++;
+                    return h.ncFile;
+                }
+                nMisses++;
+
+                //make room for a new handle
+                Iterator<Handle> it = lru.keySet().iterator();
+                while (nOpen >= maxOpen && it.hasNext()) {
+                    Handle h = it.next();
+                    it.remove();
+                    removeIdle(h);
+                    toClose.add(h);
+                    nEvictions++;
+                }
+                if (nOpen < maxOpen) {
+                    nOpen++; //reserve it
+                    if (sweeper == null) 
+                        startSweeper();
+                } else {
+                    cacheIt = false; //all handles are in use
+                    nUncached++;
+                }
+            }
+        }
+        close(toClose);
+
+        if (!cacheIt)
+            return NcHelper.openFile(fullName);
+        NetcdfFile ncFile;
+        try {
+            ncFile = NcHelper.openFile(fullName);
+        } catch (Exception e) {
+            synchronized (lock) {
+                nOpen--;
+            }
+            throw e;
+        }
+        synchronized (lock) {
+            inUse.put(ncFile, new Handle(fullName, key, ncFile));
+        }
+        return ncFile;
+    }
+
+    /**
+     * This releases a NetcdfFile from acquire(), so another thread can use it.
+     * If it isn't from the cache (or is no longer valid), it is closed.
+     * This won't throw an exception.
+     *
+     * @param ncFile the NetcdfFile from acquire(). If null, nothing is done.
+     */
+    public static void release(NetcdfFile ncFile) {
+        if (ncFile == null)
+            return;
+        ArrayList<Handle> toClose = new ArrayList<>();
+        boolean closeIt;
+        synchronized (lock) {
+            Handle h = inUse.remove(ncFile);
+            closeIt = h == null;
+            if (h != null) {
+                h.lastUsed = System.currentTimeMillis();
+                if (h.valid && nOpen <= maxOpen) {
+                    idle.computeIfAbsent(h.key, k -> new ArrayList<>(2)).add(h);
+                    lru.put(h, h);
+                } else {
+                    nOpen--;
+                    closeIt = true;
+                }
+            }
+            closeIdle(toClose, IDLE_MILLIS);
+        }
+        close(toClose);
+        if (closeIt) {
+            try {
+                ncFile.close();
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    /**
+     * This closes the idle handles for a file and ensures the handles
+     * which are in use are closed when they are released.
+     * Call this when a file has changed or has been deleted.
+     *
+     * @param fullName the file's name
+     */
+    public static void invalidate(String fullName) {
+        ArrayList<Handle> toClose = new ArrayList<>();
+        synchronized (lock) {
+            Iterator<Handle> it = lru.keySet().iterator();
+            while (it.hasNext()) {
+                Handle h = it.next();
+                if (h.fullName.equals(fullName)) {
+                    it.remove();
+                    removeIdle(h);
+                    toClose.add(h);
+                }
+            }
+            for (Handle h : inUse.values()) {
+                if (h.fullName.equals(fullName))
+                    h.valid = false;
+            }
+            nInvalidated += toClose.size();
+        }
+        close(toClose);
+    }
+
+    /**
+     * This stops the sweeper, closes all of the idle handles, and ensures the
+     * handles which are in use are closed when they are released.
+     * EDStatic.destroy calls this when tomcat is stopped.
+     */
+    public static void shutdown() {
+        ScheduledExecutorService tSweeper;
+        ArrayList<Handle> toClose = new ArrayList<>();
+        synchronized (lock) {
+            tSweeper = sweeper;
+            sweeper = null;
+            toClose.addAll(lru.keySet());
+            lru.clear();
+            idle.clear();
+            nOpen -= toClose.size();
+            for (Handle h : inUse.values())
+                h.valid = false;
+        }
+        if (tSweeper != null)
+            tSweeper.shutdownNow();
+        close(toClose);
+    }
+
+    /** This closes all of the idle handles. */
+    public static void clear() {
+        ArrayList<Handle> toClose = new ArrayList<>();
+        synchronized (lock) {
+            toClose.addAll(lru.keySet());
+            lru.clear();
+            idle.clear();
+            nOpen -= toClose.size();
+        }
+        close(toClose);
+    }
+
+    /**
+     * This closes the handles which have been idle for idleMillis.
+     * The sweeper calls this (with IDLE_MILLIS) every SWEEP_MILLIS.
+     * This won't throw an exception.
+     *
+     * @param idleMillis close the handles which have been idle for at least this long
+     * @return the number of handles which were closed
+     */
+    static int sweep(long idleMillis) {
+        ArrayList<Handle> toClose = new ArrayList<>();
+        synchronized (lock) {
+            closeIdle(toClose, idleMillis);
+        }
+        close(toClose);
+        return toClose.size();
+    }
+
+    /**
+     * This starts the daemon thread which calls sweep() every SWEEP_MILLIS.
+     * Only call this while synchronized on lock.
+     */
+    private static void startSweeper() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "NcFileCache sweeper");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                int n = sweep(IDLE_MILLIS);
+                if (n > 0)
+                    String2.log("NcFileCache sweeper closed " + n + " idle handles.");
+            } catch (Throwable t) {
+                //an exception would cancel the schedule
+                String2.log(String2.ERROR + " in NcFileCache sweeper:\n" + t.toString());
+            }
+        }, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This removes an idle handle (which has already been removed from lru)
+     * from idle and nOpen. Only call this while synchronized on lock.
+     */
+    private static void removeIdle(Handle h) {
+        ArrayList<Handle> handles = idle.get(h.key);
+        if (handles != null) {
+            handles.remove(h);
+            if (handles.isEmpty())
+                idle.remove(h.key);
+        }
+        nOpen--;
+    }
+
+    /**
+     * This moves the handles which have been idle for idleMillis to toClose.
+     * Only call this while synchronized on lock.
+     */
+    private static void closeIdle(ArrayList<Handle> toClose, long idleMillis) {
+        long oldest = System.currentTimeMillis() - idleMillis;
+        Iterator<Handle> it = lru.keySet().iterator();
+        while (it.hasNext()) {
+            Handle h = it.next();
+            if (h.lastUsed > oldest)
+                break; //the rest are newer
+            it.remove();
+            removeIdle(h);
+            toClose.add(h);
+        }
+    }
+
+    /** This closes the handles (outside of the lock). This won't throw an exception. */
+    private static void close(ArrayList<Handle> handles) {
+        for (Handle h : handles) {
+            try {
+                h.ncFile.close();
+            } catch (Exception e) {
+                String2.log("NcFileCache couldn't close " + h.fullName + ": " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * This returns a one line summary of the cache's status (for status.html).
+     */
+    public static String statusString() {
+        synchronized (lock) {
+            return "NcFileCache: open=" + nOpen + " (of " + maxOpen + ")" +
+                " inUse=" + inUse.size() + " idle=" + lru.size() +
+                " hits=" + nHits + " misses=" + nMisses + " uncached=" + nUncached +
+                " evictions=" + nEvictions + " invalidated=" + nInvalidated + " (since startup)";
+        }
+    }
+
+    /**
+     * This returns the start of statusString() (which doesn't include the counters).
+     */
+    private static String openString() {
+        String s = statusString();
+        return s.substring(0, s.indexOf(" hits="));
+    }
+
+    /**
+     * This tests acquire(), release(), invalidate(), setMaxOpen(), and sweep().
+     *
+     * @throws Throwable if trouble
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** NcFileCache.basicTest");
+        int oMaxOpen = maxOpen;
+        String fullName = File2.getSystemTempDirectory() + 
+            "NcFileCache.basicTest_" + Math2.random(Integer.MAX_VALUE) + ".nc";
+        try {
+            //a copy of a test file (since this test changes its lastModified)
+            Test.ensureTrue(File2.copy(Grid.testDir + Grid.testName + ".nc", fullName), "");
+
+            clear();
+            setMaxOpen(2);
+            Test.ensureEqual(openString(), "NcFileCache: open=0 (of 2) inUse=0 idle=0", "");
+
+            //a released handle is reused
+            NetcdfFile nc1 = acquire(fullName);
+            Test.ensureEqual(openString(), "NcFileCache: open=1 (of 2) inUse=1 idle=0", "");
+            release(nc1);
+            Test.ensureEqual(openString(), "NcFileCache: open=1 (of 2) inUse=0 idle=1", "");
+            NetcdfFile nc2 = acquire(fullName);
+            Test.ensureTrue(nc1 == nc2, "");
+            Test.ensureEqual(nc2.findVariable("lat").getSize(), 113, "");
+
+            //concurrent readers get different handles
+            NetcdfFile nc3 = acquire(fullName);
+            Test.ensureTrue(nc2 != nc3, "");
+            Test.ensureEqual(openString(), "NcFileCache: open=2 (of 2) inUse=2 idle=0", "");
+            //all handles are in use, so this one isn't cached (and is closed when released)
+            NetcdfFile nc4 = acquire(fullName);
+            Test.ensureEqual(openString(), "NcFileCache: open=2 (of 2) inUse=2 idle=0", "");
+            release(nc4);
+            release(nc3);
+            release(nc2);
+            Test.ensureEqual(openString(), "NcFileCache: open=2 (of 2) inUse=0 idle=2", "");
+
+            //the sweeper is running
+            synchronized (lock) {
+                Test.ensureTrue(sweeper != null, "");
+            }
+
+            //sweep only closes handles which have been idle long enough
+            Test.ensureEqual(sweep(IDLE_MILLIS), 0, "");
+            Test.ensureEqual(openString(), "NcFileCache: open=2 (of 2) inUse=0 idle=2", "");
+            Test.ensureEqual(sweep(0), 2, "");
+            Test.ensureEqual(openString(), "NcFileCache: open=0 (of 2) inUse=0 idle=0", "");
+
+            //setMaxOpen closes the extra idle handles
+            nc1 = acquire(fullName);
+            nc2 = acquire(fullName);
+            release(nc1);
+            release(nc2);
+            setMaxOpen(1);
+            Test.ensureEqual(openString(), "NcFileCache: open=1 (of 1) inUse=0 idle=1", "");
+
+            //invalidate closes the idle handles and the in-use handles when they are released
+            setMaxOpen(2);
+            nc1 = acquire(fullName);   //the idle one
+            nc2 = acquire(fullName);   //a new one
+            release(nc2);
+            invalidate(fullName);
+            Test.ensureEqual(openString(), "NcFileCache: open=1 (of 2) inUse=1 idle=0", "");
+            release(nc1);
+            Test.ensureEqual(openString(), "NcFileCache: open=0 (of 2) inUse=0 idle=0", "");
+
+            //a changed file doesn't get the old handle
+            nc1 = acquire(fullName);
+            release(nc1);
+            File2.setLastModified(fullName, File2.getLastModified(fullName) + 2000);
+            nc2 = acquire(fullName);
+            Test.ensureTrue(nc1 != nc2, "");
+            release(nc2);
+            Test.ensureEqual(openString(), "NcFileCache: open=2 (of 2) inUse=0 idle=2", "");
+
+            //the cache is off
+            clear();
+            setMaxOpen(0);
+            nc1 = acquire(fullName);
+            release(nc1);
+            Test.ensureEqual(openString(), "NcFileCache: open=0 (of 0) inUse=0 idle=0", "");
+
+            //shutdown stops the sweeper, closes the idle handles, 
+            //and the in-use handles when they are released
+            setMaxOpen(2);
+            nc1 = acquire(fullName);
+            nc2 = acquire(fullName);
+            release(nc2);
+            synchronized (lock) {
+                Test.ensureTrue(sweeper != null, "");
+            }
+            shutdown();
+            synchronized (lock) {
+                Test.ensureTrue(sweeper == null, "");
+            }
+            Test.ensureEqual(openString(), "NcFileCache: open=1 (of 2) inUse=1 idle=0", "");
+            release(nc1);
+            Test.ensureEqual(openString(), "NcFileCache: open=0 (of 2) inUse=0 idle=0", "");
+            shutdown(); //it is okay to call this again
+
+        } finally {
+            shutdown();
+            setMaxOpen(oMaxOpen);
+            File2.delete(fullName);
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ NcFileCache.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
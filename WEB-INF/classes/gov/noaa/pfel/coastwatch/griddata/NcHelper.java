@@ -849,6 +849,43 @@ public class NcHelper  {
             NetcdfFiles.open(fullName);  //'s' is the new API
     }
 
+    /**
+     * This is like openFile, but gets the NetcdfFile from NcFileCache 
+     * (so the file's header usually doesn't have to be read and parsed again).
+     * The NetcdfFile is for exclusive use by the calling thread.
+     * ALWAYS call releaseFile (not netcdfFile.close()) when you are finished with it,
+     * preferably in a "finally" clause.
+     * Don't use this if you change the NetcdfFile (e.g., its attributes).
+     * 
+     * @param fullName a local file name.  
+     *    If this is an .ncml file, the name must end in .ncml.
+     * @return a NetcdfFile
+     * @throws Exception if trouble
+     */
+    public static NetcdfFile acquireFile(String fullName) throws Exception {
+        return NcFileCache.acquire(fullName);
+    }
+
+    /**
+     * This releases a NetcdfFile from acquireFile.
+     * This won't throw an exception.
+     *
+     * @param ncFile the NetcdfFile from acquireFile. If null, nothing is done.
+     */
+    public static void releaseFile(NetcdfFile ncFile) {
+        NcFileCache.release(ncFile);
+    }
+
+    /**
+     * Call this when a file has changed or been deleted, so NcFileCache
+     * doesn't keep its old NetcdfFile handles open.
+     *
+     * @param fullName the file's name
+     */
+    public static void invalidateFile(String fullName) {
+        NcFileCache.invalidate(fullName);
+    }
+
     /** 
      * This converts a List&lt;variable&gt; to a Variable[].
      *
@@ -6863,7 +6863,7 @@ Dataset {
         //get information
         Attributes gridMappingAtts = null;
         StringArray varsNotFound = new StringArray();
-        NetcdfFile ncFile = NcHelper.openFile(fullName);
+        NetcdfFile ncFile = NcHelper.acquireFile(fullName);
         try {
             //load the global metadata
             NcHelper.getGroupAttributes(ncFile.getRootGroup(), globalAttributes());
@@ -7206,7 +7206,7 @@ Dataset {
                 String2.log(msg + " finished. nRows=" + nRows() + 
                     " nCols=" + nColumns() + " time=" + (System.currentTimeMillis() - time) + "ms");
         } finally {
-            try {if (ncFile != null) ncFile.close(); } catch (Exception e9) {}
+            NcHelper.releaseFile(ncFile);
         }
     }
 
@@ -7314,7 +7314,7 @@ Dataset {
 
         //read the file
         Attributes gridMappingAtts = null;
-        NetcdfFile ncFile = NcHelper.openFile(fullName);
+        NetcdfFile ncFile = NcHelper.acquireFile(fullName);
         try {
 
             //load the global metadata
@@ -8056,7 +8056,7 @@ Dataset {
                     " finished. nRows=" + nRows() + " nCols=" + nColumns() + 
                     " time=" + (System.currentTimeMillis() - time) + "ms");
         } finally {
-            try {if (ncFile != null) ncFile.close(); } catch (Exception e9) {}
+            NcHelper.releaseFile(ncFile);
         }
     }
 
@@ -7,6 +7,7 @@ package gov.noaa.pfel.coastwatch.sgt;
 
 import com.cohort.array.DoubleArray;
 import com.cohort.array.IntArray;
+import com.cohort.array.PrimitiveArray;
 import com.cohort.array.StringArray;
 
 import com.cohort.util.Calendar2;
@@ -80,6 +81,19 @@ public class CompoundColorMap extends ColorMap {
     protected int halfI;
     protected double halfStart;
     protected Color color[];   //used only if !continuous
+    protected int colorRGB[];  //color[i].getRGB(), used only if !continuous
+
+    /** The lookup table used by getRGB(s): bin -&gt; the first piece which may have the bin's values. 
+     * The bins are evenly spaced from rangeMin to rangeMax (or from log10(rangeMin) to log10(rangeMax)
+     * if the pieces are log spaced, e.g., from makeCPT(..., "Log", ...)).
+     * Set in the constructor. 
+     * binPiece is null if there are few pieces (then a simple search is faster). */
+    protected final static int N_BINS = 4096;
+    protected final static int MIN_PIECES_FOR_BINS = 16;
+    protected int binPiece[];
+    protected boolean binLog;
+    protected double binMin;    //rangeMin or log10(rangeMin)
+    protected double binScale;  //N_BINS / (binMax - binMin)
 
     /** The cumulative variables are used to collect statistics. 
      * See resetStats() and getStats().
@@ -117,6 +131,11 @@ public class CompoundColorMap extends ColorMap {
         ccm.halfStart = halfStart;
         ccm.continuous = continuous;
         ccm.color = color;
+        ccm.colorRGB = colorRGB;
+        ccm.binPiece = binPiece;
+        ccm.binLog = binLog;
+        ccm.binMin = binMin;
+        ccm.binScale = binScale;
         return (ColorMap)ccm;
     }
     
@@ -459,6 +478,7 @@ public class CompoundColorMap extends ColorMap {
         gRange = new int[n];  
         bRange = new int[n];    
         color  = new Color[n];    
+        colorRGB = new int[n];
         continuous = false; //assume all r g b ranges are 0
         //use MAX_VALUE and -MAX_VALUE so any finite value will reset it
         rangeMin = Double.MAX_VALUE;
@@ -478,9 +498,32 @@ public class CompoundColorMap extends ColorMap {
             if (rRange[i] != 0 || gRange[i] != 0 || bRange[i] != 0)
                 continuous = true;
             color[i] = new Color(rLow[i], gLow[i], bLow[i]); //used if !continuous
+            colorRGB[i] = color[i].getRGB();
         }
         halfI = n / 2;
         halfStart = rangeLow[halfI];
+
+        //make the lookup table for getRGB(s)
+        binPiece = null;
+        if (n < MIN_PIECES_FOR_BINS)
+            return;
+        //Log palettes have narrow pieces at the low end and wide pieces at the high end.
+        double firstWidth = rangeHigh[0] - rangeLow[0];
+        double lastWidth = rangeHigh[n - 1] - rangeLow[n - 1];
+        binLog = rangeMin > 0 && lastWidth > 2 * firstWidth;
+        binMin = binLog? Math.log10(rangeMin) : rangeMin;
+        double binMax = binLog? Math.log10(rangeMax) : rangeMax;
+        binScale = binMax > binMin? N_BINS / (binMax - binMin) : 0;
+        binPiece = new int[N_BINS];
+        int piece = 0;
+        for (int bin = 0; bin < N_BINS; bin++) {
+            double edge = binMin + bin / binScale;
+            if (binLog) 
+                edge = Math.pow(10, edge);
+            while (piece < n - 1 && rangeHigh[piece] <= edge)
+                piece++;
+            binPiece[bin] = piece;
+        }
     }
     
     /**
@@ -581,6 +624,82 @@ public class CompoundColorMap extends ColorMap {
         }
     }
     
+    /**
+     * This is like getColor(inVal).getRGB(), but faster (it uses a lookup table 
+     * to find the piece) and it doesn't allocate a Color object.
+     *
+     * @param inVal the incoming value
+     * @return the appropriate color as an ARGB int (see getColor).
+     */
+    public int getRGB(double inVal) {
+
+        //deal with special cases quickly
+        if (Double.isNaN(inVal)) return NaNColor.getRGB();
+        if (inVal < rangeMin) return backgroundColor.getRGB();
+        if (inVal > rangeMax) return foregroundColor.getRGB();
+
+        //find the piece: start at the lookup table's piece (or like getColor), then check the neighbors
+        int lastPiece = rangeLow.length - 1;
+        int piece;
+        if (binPiece == null) {
+            piece = inVal >= halfStart? halfI : 0;
+        } else {
+            int bin = (int)(((binLog? Math.log10(inVal) : inVal) - binMin) * binScale);
+            piece = binPiece[bin < 0? 0 : bin >= N_BINS? N_BINS - 1 : bin];
+            while (piece > 0 && inVal < rangeLow[piece])
+                piece--;
+        }
+        while (piece < lastPiece && inVal >= rangeHigh[piece])  //note < for all except last range
+            piece++;
+        if (inVal < rangeLow[piece] || inVal > rangeHigh[piece] ||
+            (inVal == rangeHigh[piece] && piece < lastPiece))
+            return NaNColor.getRGB();
+
+        if (continuous) {
+            //same calculation as getColor
+            int val1024 = (int)Math.round((inVal - rangeLow[piece]) / range1024[piece]); 
+            return 0xFF000000 | 
+                ((rLow[piece] + ((val1024 * rRange[piece]) >> 10)) << 16) |
+                ((gLow[piece] + ((val1024 * gRange[piece]) >> 10)) << 8) |
+                 (bLow[piece] + ((val1024 * bRange[piece]) >> 10));
+        } else {
+            return colorRGB[piece];
+        }
+    }
+
+    /**
+     * This colorizes a slice of a double[] into an ARGB raster, without allocating any objects.
+     *
+     * @param values the values
+     * @param offset the index of the first value
+     * @param n the number of values
+     * @param argb receives the colors (see getRGB)
+     * @param argbOffset the index in argb of the first color
+     */
+    public void getRGBs(double values[], int offset, int n, int argb[], int argbOffset) {
+        for (int i = 0; i < n; i++)
+            argb[argbOffset + i] = getRGB(values[offset + i]);
+    }
+
+    /**
+     * This colorizes a slice of a PrimitiveArray into an ARGB raster.
+     * Missing values should already have been converted to NaN.
+     *
+     * @param pa the values
+     * @param offset the index of the first value
+     * @param n the number of values
+     * @param argb receives the colors (see getRGB)
+     * @param argbOffset the index in argb of the first color
+     */
+    public void getRGBs(PrimitiveArray pa, int offset, int n, int argb[], int argbOffset) {
+        if (pa instanceof DoubleArray da) {
+            getRGBs(da.array, offset, n, argb, argbOffset);
+            return;
+        }
+        for (int i = 0; i < n; i++)
+            argb[argbOffset + i] = getRGB(pa.getDouble(offset + i));
+    }
+
     /**
      * This specifies the color that will be returned by getColor(aValueLessThanAnyRange).
      *
@@ -989,6 +1108,41 @@ public class CompoundColorMap extends ColorMap {
         }
         /* */
 
+        //**** getRGBs must match getColor (for linear and log, continuous and not, few and many pieces)
+        {
+            String2.log("\n* Test CompoundColorMap.getRGBs");
+            Math2.random(5); //sets up Math2.random
+            for (int test = 0; test < 8; test++) {
+                boolean log = test % 2 == 1;
+                boolean continuous = (test / 2) % 2 == 1;
+                int nSections = test >= 4? 60 : -1;
+                double min = log? 0.03 : -5;
+                double max = log? 30 : 37;
+                String newPalette = makeCPT(basePaletteDir, "Rainbow", log? "Log" : "Linear",
+                    min, max, nSections, continuous, tempDir);
+                ccm = new CompoundColorMap(newPalette);
+                int nPieces = ccm.getNPieces();
+                double values[] = new double[4 * nPieces + 10000];
+                int po = 0;
+                for (int i = 0; i < nPieces; i++) {  //the edges of each piece
+                    values[po++] = ccm.rangeLow[i];
+                    values[po++] = ccm.rangeHigh[i];
+                    values[po++] = Math.nextUp(ccm.rangeLow[i]);
+                    values[po++] = Math.nextDown(ccm.rangeHigh[i]);
+                }
+                values[po++] = Double.NaN;
+                while (po < values.length)
+                    values[po++] = min - 1 + (max - min + 2) * Math2.random.nextDouble();
+                int argb[] = new int[values.length];
+                ccm.getRGBs(new DoubleArray(values), 0, values.length, argb, 0);
+                for (int i = 0; i < values.length; i++)
+                    Test.ensureEqual(Integer.toHexString(argb[i]),
+                        Integer.toHexString(ccm.getColor(values[i]).getRGB()),
+                        "test=" + test + " value=" + values[i]);
+                File2.delete(newPalette);
+            }
+        }
+
         //test date time
         {
             boolean continuous = false;
@@ -41,6 +41,7 @@ public class SimpleXMLReader {
     private String endWhiteSpace = "";
     private StringBuilder tagBuffer = new StringBuilder();
     private long lineNumber = 1, tagNumber = 0;
+    private StringBuilder recorder = null; //if not null, the raw characters read are appended
 
     /**
      * This constructor ensures that the first tag starts with "&lt;?xml " and 
@@ -133,6 +134,40 @@ public class SimpleXMLReader {
         return lineNumber;
     }
 
+    /**
+     * This sets the current line number, e.g., if this is reading a part of
+     * a bigger file, so the line numbers in error messages match the bigger file.
+     *
+     * @param tLineNumber the line number of the next character to be read.
+     */
+    public void setLineNumber(long tLineNumber) {
+        lineNumber = tLineNumber;
+    }
+
+    /**
+     * This starts (or stops) recording the raw characters which are read
+     * (from right after the last tag), e.g., to capture the source xml of
+     * one part of a file.
+     *
+     * @param sb the raw characters will be appended to sb.
+     *   Use null to stop recording.
+     */
+    public void setRecorder(StringBuilder sb) {
+        recorder = sb;
+    }
+
+    /**
+     * This reads the next character (and records it if recording).
+     *
+     * @return the character (or -1 if end of file)
+     */
+    private int read() throws Exception {
+        int iCh = reader.read();
+        if (recorder != null && iCh >= 0)
+            recorder.append((char)iCh);
+        return iCh;
+    }
+
     /**
      * This returns the number of times nextTag has been called.
      *
@@ -354,13 +389,13 @@ public class SimpleXMLReader {
                 tagBuffer.setLength(0); //must be inside the do loop
 
                 //read 'content' to start of tag "<"
-                int iCh = reader.read(); 
+                int iCh = read(); 
                 if (iCh < 0) throw new Exception("end of file"); 
                 else if (iCh == 10) lineNumber++;
                 char ch = (char)iCh;
                 while (ch != '<') {
                     if (ch != '\r') contentBuffer.append(ch);
-                    iCh = reader.read(); 
+                    iCh = read(); 
                     if (iCh < 0) throw new Exception("end of file");
                     else if (iCh == 10) lineNumber++;
                     ch = (char)iCh;
@@ -369,13 +404,13 @@ public class SimpleXMLReader {
                 //read to end of tag ">", or end of comment tag "-->", or end of cdata <![CDATA[  ]]> 
                 boolean done = false;
                 while (!done) {
-                    iCh = reader.read(); 
+                    iCh = read(); 
                     if (iCh < 0) throw new Exception("end of file");
                     else if (iCh == 10) lineNumber++;
                     ch = (char)iCh;
                     while (ch != '>') {
                         if (ch != '\r') tagBuffer.append(ch);
-                        iCh = reader.read(); 
+                        iCh = read(); 
                         if (iCh < 0) throw new Exception("end of file"); 
                         else if (iCh == 10) lineNumber++;
                         ch = (char)iCh;
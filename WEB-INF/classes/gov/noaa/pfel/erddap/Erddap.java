@@ -316,6 +316,9 @@ public class Erddap extends HttpServlet {
             categoryInfo.put(EDStatic.categoryAttributes[cat], 
                 new ConcurrentHashMap(16, 0.75f, 4));
 
+        //WmsTileCache preseeds tiles via this Erddap
+        WmsTileCache.setPreseedFunction(this::preseedWmsTiles);
+
         //start RunLoadDatasets
         runLoadDatasets = new RunLoadDatasets(this);
         EDStatic.runningThreads.put("runLoadDatasets", runLoadDatasets); 
@@ -454,16 +457,19 @@ public class Erddap extends HttpServlet {
     public void doGet(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException {
 
-        long doGetTime = System.currentTimeMillis();
-        int requestNumber = totalNRequests.incrementAndGet();
+        //is this a request which waited in the AdmissionController's queue and has now been dispatched again?
+        AdmissionController.Ticket ticket = AdmissionController.redispatchedTicket(request); //usually null
+        long doGetTime = ticket == null? System.currentTimeMillis() : ticket.arrivalMillis;
+        int requestNumber = ticket == null? totalNRequests.incrementAndGet() : ticket.requestNumber;
         int language = 0; //use English until known
         String ipAddress = EDStatic.ipAddressNotSetYet; //won't be null
+        boolean parked = false; //true if the request is waiting (async) in the AdmissionController's queue
 
         try {
 
             //get loggedInAs
             String loggedInAs = EDStatic.getLoggedInAs(request);
-            {
+            if (ticket == null) {
                 String tLoggedInAs = loggedInAs == null?          "no/http" : 
                     loggedInAs.equals(EDStatic.loggedInAsHttps)?  EDStatic.loggedInAsHttps : "yes";
                 EDStatic.tally.add("Requester Is Logged In (since startup)", tLoggedInAs);
@@ -480,15 +486,13 @@ public class Erddap extends HttpServlet {
                 queryString = "";
 
             //too many simultaneous requests from this user?
-            //FUTURE? If desired, you could also add a system to monitor total number
-            //  of active requests (for all users) and limit it to MaxNRequests
-            //  and block a request from processing until the number dips below MaxNRequests.
-            //  Such a system would need good assurance that the list was valid
-            //  (not old requests filling up the system but actually processed).
+            //  The AdmissionController also limits the total number (and estimated cost)
+            //  of active requests (for all users).
             ipAddress = EDStatic.getIPAddress(request); 
 
             //always log request as soon as all info known (even if request will soon be rejected)
-            String summary = "{{{{#" + requestNumber + " " +
+            String summary = ticket != null? ticket.summary : 
+                "{{{{#" + requestNumber + " " +
                 Calendar2.getCurrentISODateTimeStringLocalTZ() + " " + 
                 (loggedInAs == null? "(notLoggedIn)" : loggedInAs) + " " +
                 ipAddress + " " +
@@ -497,11 +501,20 @@ public class Erddap extends HttpServlet {
                 (requestUrl.endsWith("login.html") && queryString.indexOf("nonce=") >= 0?
                     "?[CONFIDENTIAL]" : 
                     EDStatic.questionQuery(queryString));
-            String2.log(summary);
+            if (ticket != null) {
+                //this request already passed the tests below, then waited in the AdmissionController's queue
+                if (!ticket.isAdmitted())
+                    throw new TimeoutException(EDStatic.timeoutOtherRequestsAr[language] + " " +
+                        EDStatic.oneRequestAtATimeAr[language]);
+                if (verbose) String2.log("#" + requestNumber + " was admitted after waiting " + 
+                    ticket.waitMillis() + "ms");
+            } else {
+                String2.log(summary);
+            }
 
             //then immediately test ipAddress (so little possible error in between)
             //This is the "on-ramp metering" system to limit requests from a given IP address.
-            if (!EDStatic.ipAddressUnlimited.contains(ipAddress)) {
+            if (ticket == null && !EDStatic.ipAddressUnlimited.contains(ipAddress)) {
                 //always add requestNumber to ipAddressQueue for this ipAddress
                 //Important: ipAddressQueue is thread-safe so only 1 thread will succeed in creating a new IntArray for this ipAddress
                 IntArray iaq = EDStatic.ipAddressQueue.putIfAbsent(ipAddress, 
@@ -538,32 +551,18 @@ public class Erddap extends HttpServlet {
                     //so don't wait
                     //if (debugMode) String2.log(">> requestUrl=" + requestUrl + " is exempt");
                 } else {
-                    //Wait up to 2 minutes until requestNumber is in top ipAddressMaxRequestsActive slots of this user's queue.
+                    //Wait up to 2 minutes until this request is admitted: until it is at the front of this 
+                    //user's queue, the user has < ipAddressMaxRequestsActive active requests, 
+                    //and there is room in the global budget (see AdmissionController).
                     //This automatically deals with users making multiple simultaneous requests (no blacklist needed).
                     //This is a really good approach because it disperses the burden on ERDDAP.
-                    long start = System.currentTimeMillis();
-                    boolean printMsg = reallyVerbose; //just print msg first time, if reallyVerbose
-                    TOP_N:
-                    while (true) { 
-                        synchronized (iaq) { //this takes very little time (~ 31 nanoseconds) (see IntArray.testSynchSpeed())
-                            for (int which = Math.min(iaq.size()-1, EDStatic.ipAddressMaxRequestsActive-1); which >= 0; which--) 
-                                if (iaq.get(which) == requestNumber) 
-                                    break TOP_N; //fall through and respond to this request
-                        }
-                        //getting here (multiple simultaneous requests) should be rare 
-                        //but there are legit reasons, e.g., WMS client, web pages like BloomWatch
-                        //FUTURE? Do tally of these IP addresses?
-                        if (printMsg) {
-                            String2.log(ipAddress + " has exceeded ipAddressMaxRequestsActive=" + 
-                                EDStatic.ipAddressMaxRequestsActive);
-                            printMsg = false;
-                        }
-                        //this number determines how ~max requests/second/user. 
-                        // 1000ms/200ms *2maxRequestsActive = 10/second = 9000/15minutes which is a lot for 1 user
-                        Thread.sleep(200); //millis. Not Math2.sleep() because we want to allow InterruptedException
-                        if (System.currentTimeMillis() - start > 120000)  //120s * 1000 millis/s
-                            throw new TimeoutException(EDStatic.timeoutOtherRequestsAr[language] + " " +
-                                EDStatic.oneRequestAtATimeAr[language]);
+                    //Waiting is rare, but there are legit reasons, e.g., WMS client, web pages like BloomWatch.
+                    //A waiting request is parked (async), so it doesn't use a thread.
+                    ticket = new AdmissionController.Ticket(requestNumber, ipAddress, doGetTime, summary,
+                        AdmissionController.isCheap(getUrlWithoutLang(request)));
+                    if (!AdmissionController.admit(ticket, request)) {
+                        parked = true; //it will be dispatched to doGet again
+                        return;
                     }
                 }
             }
@@ -786,19 +785,15 @@ public class Erddap extends HttpServlet {
         } finally {
 
             try {
-                //remove requestNumber from activeRequests
-                EDStatic.activeRequests.remove(requestNumber + "");  //shouldn't ever fail
-
-                //remove requestNumber from ipAddressQueue for this ipAddress
-                if (!EDStatic.ipAddressUnlimited.contains(ipAddress)) {
-                    IntArray iaq = EDStatic.ipAddressQueue.get(ipAddress);
-                    if (iaq != null) { //will be null if just added to ipAddressUnlimited
-                        synchronized (iaq) {
-                            int which = iaq.indexOf(requestNumber);
-                            if (which >= 0) //it should be
-                                iaq.remove(which);
-                        }
-                    }
+                if (!parked) {
+                    //remove requestNumber from activeRequests
+                    EDStatic.activeRequests.remove(requestNumber + "");  //shouldn't ever fail
+
+                    //remove requestNumber from ipAddressQueue for this ipAddress
+                    EDStatic.removeFromIpAddressQueue(ipAddress, requestNumber);
+
+                    //let the next waiting requests be admitted
+                    AdmissionController.release(ticket);
                 }
             } catch (Throwable t2) {
                 String2.log("Caught: " + MustBe.throwableToString(t2));
@@ -4741,7 +4736,36 @@ writer.write(EDStatic.dpf_congratulationAr[language]
                 extension);
         }
 
+        //small generated responses (e.g., .das) may be in ResponseCache's memory tier
+        ResponseCache.Capture capture = null;
+        if (EDStatic.awsS3OutputBucketUrl == null) {
+            String generatedKey = ResponseCache.generatedKey(language, loggedInAs, dataset, 
+                fileTypeName, queryString);
+            if (generatedKey != null) {
+                if (ResponseCache.sendGenerated(generatedKey, dataset.creationTimeMillis(), outputStreamSource))
+                    return;
+                capture = new ResponseCache.Capture(outputStreamSource, generatedKey, 
+                    dataset.creationTimeMillis());
+                outputStreamSource = capture;
+            }
+        }
+
+        //coalesce identical concurrent requests, so only the first (the leader) does the work
+        RequestCoalescer.Ticket ticket = 
+            EDStatic.awsS3OutputBucketUrl == null && request.getHeader("Range") == null?
+            RequestCoalescer.start(RequestCoalescer.key(language, loggedInAs, dataset, 
+                fileTypeName, queryString), cacheDir) : 
+            null;
+        if (ticket != null) {
+            if (ticket.isLeader()) {
+                outputStreamSource = ticket.leaderOutputStreamSource(outputStreamSource);
+            } else if (ticket.followerCopy(outputStreamSource)) { //waits for the leader
+                return;
+            } //else the leader failed, so make the response here
+        }
+
         //*** tell the dataset to send the data
+        boolean succeeded = false;
         try {
             //give the dataset the opportunity to update (DAP)
             dataset.update(language);
@@ -4751,6 +4775,7 @@ writer.write(EDStatic.dpf_congratulationAr[language]
                 ipAddress, loggedInAs, requestUrl, endOfRequest, queryString, 
                 outputStreamSource, 
                 cacheDir, fileName, fileTypeName);            
+            succeeded = true;
 
         } catch (WaitThenTryAgainException wttae) {
             String2.log("!!ERDDAP caught WaitThenTryAgainException");
@@ -4788,6 +4813,7 @@ writer.write(EDStatic.dpf_congratulationAr[language]
                             dataset2.cacheDirectory(), fileName, //dir is created by EDD.ensureValid
                             fileTypeName);
                         String2.log("!!ERDDAP successfully used dataset2 to respond to the request.");
+                        succeeded = true;
                         break; //success! jump out of for(sec) loop
                     } catch (Throwable t) {
                         String2.log("!!!!ERDDAP caught Exception while handling WaitThenTryAgainException:\n" +
@@ -4811,7 +4837,16 @@ writer.write(EDStatic.dpf_congratulationAr[language]
                 }
             } catch (Exception e2) {
                 String2.log(MustBe.throwableToString(e2));
+                succeeded = false;
             } //essential, to end compression  //hard to put in finally {}
+
+            //hold the response in the memory tier (if small enough)
+            if (capture != null)
+                capture.finished(succeeded);
+
+            //release the followers (if any)
+            if (ticket != null)
+                ticket.leaderFinished(succeeded); 
         }
     }
 
@@ -6380,6 +6415,11 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
             return;
         }
 
+        if (endEnd.startsWith("tiles/")) {
+            doWmsTile(language, requestNumber, request, response, loggedInAs, tDatasetID, endEnd, queryString);
+            return;
+        }
+
         if (endEnd.equals(EDD.WMS_SERVER)) {
             //if eddGrid instanceof EDDGridFromErddap, redirect the request
             if (eddGrid instanceof EDDGridFromErddap fe) {
@@ -6971,6 +7011,414 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
         }
     }
 
+    /**
+     * This returns the index of the value of a non-lat, non-lon axis 
+     * requested by a WMS GetMap request (via time=, elevation=, or dim_[name]=).
+     * The default is the last value.
+     *
+     * @param eddGrid the dataset
+     * @param avi the index of the axis variable
+     * @param queryMap the request's queryMap (the names are lowercase)
+     * @return the index, or -1 if the requested value is invalid or out of range
+     */
+    private static int wmsAxisIndex(EDDGrid eddGrid, int avi, HashMap<String, String> queryMap) {
+        EDVGridAxis av = eddGrid.axisVariables()[avi];
+        String tAvName = 
+            avi == eddGrid.altIndex()? "elevation" :
+            avi == eddGrid.depthIndex()? "elevation" :  //convert depth to elevation
+            avi == eddGrid.timeIndex()? "time" : 
+            "dim_" + av.destinationName().toLowerCase(); //make it case-insensitive for queryMap.get
+        String tValueS = queryMap.get(tAvName);
+        if (tValueS == null || 
+            (avi == eddGrid.timeIndex() && tValueS.toLowerCase().equals("current")))
+            //default is always the last value
+            return av.sourceValues().size() - 1;
+        double tValueD = av.destinationToDouble(tValueS); //needed in particular for iso time -> epoch seconds
+        if (avi == eddGrid.depthIndex())
+            tValueD = -tValueD;
+        if (Double.isNaN(tValueD) ||
+            tValueD < av.destinationCoarseMin() ||
+            tValueD > av.destinationCoarseMax()) 
+            return -1;
+        return av.destinationToClosestIndex(tValueD);
+    }
+
+    /**
+     * This returns the canonical key for a WMS GetMap image:
+     * requests with the same key make the same image 
+     * (regardless of the order of the parameters and how the times, elevations, ... are written).
+     *
+     * @param layers the layers
+     * @param styles the styles (one per layer)
+     * @param queryMap the request's queryMap (the names are lowercase)
+     * @param mainDatasetID the dataset whose cacheDirectory will have the image (or null)
+     * @param where the tile (e.g., tile=3/10/2) or the bbox (e.g., bbox=-180.0,-90.0,180.0,90.0)
+     * @param sliceTime receives the time (epochSeconds) of mainDatasetID's layers, or NaN if none
+     * @return the key
+     */
+    private String wmsImageKey(String layers[], String styles[], HashMap<String, String> queryMap,
+        String mainDatasetID, String where, int width, int height, boolean transparent, int bgColori,
+        double sliceTime[]) {
+
+        StringBuilder key = new StringBuilder(where + " w=" + width + " h=" + height +
+            " transparent=" + transparent + " bgcolor=" + bgColori);
+        sliceTime[0] = Double.NaN;
+        for (int layeri = 0; layeri < layers.length; layeri++) {
+            String style = styles[layeri].toLowerCase();
+            key.append(" layer=" + layers[layeri] + 
+                " style=" + (style.equals("default")? "" : style));
+            int spo = layers[layeri].indexOf(EDD.WMS_SEPARATOR);
+            EDDGrid eddGrid = spo <= 0? null : gridDatasetHashMap.get(layers[layeri].substring(0, spo));
+            if (eddGrid == null)
+                continue; //a non-data layer (or an invalid layer)
+            EDVGridAxis ava[] = eddGrid.axisVariables();
+            for (int avi = 0; avi < ava.length; avi++) {
+                if (avi == eddGrid.lonIndex() || avi == eddGrid.latIndex())
+                    continue;
+                int index = wmsAxisIndex(eddGrid, avi, queryMap);
+                key.append(" " + ava[avi].destinationName() + "=" + 
+                    (index < 0? "none" : ava[avi].destinationString(index)));
+                if (index >= 0 && avi == eddGrid.timeIndex() && eddGrid.datasetID().equals(mainDatasetID))
+                    sliceTime[0] = ava[avi].destinationDouble(index);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * This draws the image for a WMS GetMap request (for doWmsGetMap and preseedWmsTiles).
+     * The parameters have already been validated.
+     *
+     * @param language the index of the selected language
+     * @param requestNumber The requestNumber assigned to this request by doGet().
+     * @param response The response (just used to send an unauthorized error),
+     *   or null (then an exception is thrown instead).
+     * @param loggedInAs  the name of the logged in user (or null if not logged in)
+     * @param queryMap the request's queryMap (the names are lowercase)
+     * @return the image, or null if a response (e.g., unauthorized) has been sent
+     * @throws Throwable if trouble
+     */
+    private BufferedImage drawWmsImage(int language, int requestNumber, HttpServletResponse response,
+        String loggedInAs, String layers[], String styles[], HashMap<String, String> queryMap,
+        double minx, double maxx, double miny, double maxy, 
+        int width, int height, int bgColori) throws Throwable {
+
+        BufferedImage bufferedImage = new BufferedImage(width, height, 
+            BufferedImage.TYPE_INT_ARGB); //I need opacity "A"
+        Graphics g = bufferedImage.getGraphics(); 
+        Graphics2D g2 = (Graphics2D)g;
+        Color bgColor = new Color(0xFF000000 | bgColori); //0xFF000000 makes it opaque
+        g.setColor(bgColor);    
+        g.fillRect(0, 0, width, height);  
+
+        //add the layers
+        String roles[] = EDStatic.getRoles(loggedInAs);
+        LAYER:
+        for (int layeri = 0; layeri < layers.length; layeri++) {
+
+            //***deal with non-data layers
+            if (layers[layeri].equals(""))
+                continue; 
+            if (layers[layeri].equals("Land") || 
+                layers[layeri].equals("LandMask") || 
+                layers[layeri].equals("Coastlines") || 
+                layers[layeri].equals("LakesAndRivers") || 
+                layers[layeri].equals("Nations") ||
+                layers[layeri].equals("States")) {
+                SgtMap.makeCleanMap(minx, maxx, miny, maxy, 
+                    false,
+                    null, 1, 1, 0, null,
+                    layers[layeri].equals("Land") || 
+                    layers[layeri].equals("LandMask"), //no need to draw it twice; no distinction here
+                    layers[layeri].equals("Coastlines"), 
+                    layers[layeri].equals("LakesAndRivers")? 
+                        SgtMap.STROKE_LAKES_AND_RIVERS : //stroke (not fill) so, e.g., Great Lakes temp data not obscured by lakeColor
+                        SgtMap.NO_LAKES_AND_RIVERS,
+                    layers[layeri].equals("Nations"), 
+                    layers[layeri].equals("States"),
+                    g2, width, height,
+                    0, 0, width, height);  
+                //String2.log("WMS layeri="+ layeri + " request was for a non-data layer=" + layers[layeri]);
+                continue;
+            }
+
+            //*** deal with grid data
+            int spo = layers[layeri].indexOf(EDD.WMS_SEPARATOR);
+            if (spo <= 0 || spo >= layers[layeri].length() - 1)
+                throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
+                    "LAYER=" + layers[layeri] + " is invalid (invalid separator position).");
+            String datasetID = layers[layeri].substring(0, spo);
+            String destVar = layers[layeri].substring(spo + 1);
+            EDDGrid eddGrid = gridDatasetHashMap.get(datasetID);
+            if (eddGrid == null)
+                throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
+                    "LAYER=" + layers[layeri] + " is invalid (dataset not found).");
+            if (!eddGrid.isAccessibleTo(roles) &&
+                !eddGrid.graphsAccessibleToPublic()) {
+                //WMS: all requests are graphics requests
+                //listPrivateDatasets doesn't apply
+                if (response == null) //preseedWmsTiles
+                    throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
+                        "LAYER=" + layers[layeri] + " isn't accessible.");
+                EDStatic.sendHttpUnauthorizedError(language, requestNumber, loggedInAs, response, datasetID,
+                    false);
+                return null;
+            }
+            if (eddGrid.accessibleViaWMS().length() > 0)
+                throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
+                    "LAYER=" + layers[layeri] + " is invalid (not accessible via WMS).");
+            int dvi = String2.indexOf(eddGrid.dataVariableDestinationNames(), destVar);
+            if (dvi < 0)
+                throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
+                    "LAYER=" + layers[layeri] + " is invalid (variable not found).");
+            EDV tDataVariable = eddGrid.dataVariables()[dvi];
+            if (!tDataVariable.hasColorBarMinMax())
+                throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
+                    "LAYER=" + layers[layeri] + " is invalid (variable doesn't have valid colorBarMinimum/Maximum).");
+
+            //style  (currently just the default)
+            if (!styles[layeri].equals("") && 
+                !styles[layeri].toLowerCase().equals("default")) { //nonstandard?  but allow it
+                throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
+                    "For LAYER=" + layers[layeri] + ", STYLE=" + styles[layeri] + " is invalid (must be \"\").");
+            }
+
+            //get other dimension info
+            EDVGridAxis ava[] = eddGrid.axisVariables();
+            int nOverviewLevels = eddGrid instanceof EDDGridFromFiles eddGridFromFiles? 
+                eddGridFromFiles.nOverviewLevels() : 0;
+            StringBuilder tQuery = new StringBuilder(destVar);
+            for (int avi = 0; avi < ava.length; avi++) {
+                EDVGridAxis av = ava[avi];
+                if (avi == eddGrid.lonIndex()) {
+                    if (maxx <= av.destinationMinDouble() ||
+                        minx >= av.destinationMaxDouble()) {
+                        if (reallyVerbose) String2.log("  layer=" + layeri + 
+                            " rejected because request is out of lon range.");
+                        continue LAYER;
+                    }
+                    int first = av.destinationToClosestIndex(minx);
+                    int last = av.destinationToClosestIndex(maxx);
+                    if (first > last) {int ti = first; first = last; last = ti;}
+                    int stride = DataHelper.findStride(last - first + 1, width);
+                    if (nOverviewLevels > 0) { //so the data can be read from an overview
+                        int ss[] = GridOverviews.snap(first, stride, nOverviewLevels);
+                        first = ss[0];
+                        stride = ss[1];
+                    }
+                    tQuery.append("[" + first + ":" + stride + ":" + last + "]");
+                    continue;
+                }
+
+                if (avi == eddGrid.latIndex()) {
+                    if (maxy <= av.destinationMinDouble() ||
+                        miny >= av.destinationMaxDouble()) {
+                        if (reallyVerbose) String2.log("  layer=" + layeri + 
+                            " rejected because request is out of lat range.");
+                        continue LAYER;
+                    }
+                    int first = av.destinationToClosestIndex(miny);
+                    int last = av.destinationToClosestIndex(maxy);
+                    if (first > last) {int ti = first; first = last; last = ti;}
+                    int stride = DataHelper.findStride(last - first + 1, height);
+                    if (nOverviewLevels > 0) { //so the data can be read from an overview
+                        int ss[] = GridOverviews.snap(first, stride, nOverviewLevels);
+                        first = ss[0];
+                        stride = ss[1];
+                    }
+                    tQuery.append("[" + first + ":" + stride + ":" + last + "]");
+                    continue;
+                }
+
+                //all other axes
+                int index = wmsAxisIndex(eddGrid, avi, queryMap);
+                if (index < 0) {
+                    if (reallyVerbose) String2.log("  layer=" + layeri + 
+                        " rejected because the " + av.destinationName() + " value is invalid or out of range.");
+                    continue LAYER;
+                }
+                tQuery.append("[" + index + "]");
+            }
+
+            //get the data
+            GridDataAccessor gda = new GridDataAccessor(language, 
+                eddGrid, 
+                "/" + EDStatic.warName + "/griddap/" + datasetID + ".dods", tQuery.toString(), 
+                false, //Grid needs column-major order
+                true); //convertToNaN
+            long requestNL = gda.totalIndex().size();
+            Math2.ensureArraySizeOkay(requestNL, "doWmsGetMap");
+            int nBytesPerElement = 8;
+            int requestN = (int)requestNL; //safe since checked by ensureArraySizeOkay above
+            Math2.ensureMemoryAvailable(requestNL * nBytesPerElement, "doWmsGetMap");  
+            Grid grid = new Grid();
+            grid.data = new double[requestN];
+            int po = 0;
+            while (gda.increment()) 
+                grid.data[po++] = gda.getDataValueAsDouble(0);
+            grid.lon = gda.axisValues(eddGrid.lonIndex()).toDoubleArray();
+            grid.lat = gda.axisValues(eddGrid.latIndex()).toDoubleArray(); 
+            gda = null; //free up memory if possible
+
+            //make the palette
+            //I checked hasColorBarMinMax above.
+            //Note that EDV checks validity of values.
+            double minData = tDataVariable.combinedAttributes().getDouble("colorBarMinimum"); 
+            double maxData = tDataVariable.combinedAttributes().getDouble("colorBarMaximum"); 
+            String palette = tDataVariable.combinedAttributes().getString("colorBarPalette"); 
+            if (String2.indexOf(EDStatic.palettes, palette) < 0)
+                palette = Math2.almostEqual(3, -minData, maxData)? "BlueWhiteRed" : "Rainbow"; 
+            int nSections = tDataVariable.combinedAttributes().getInt("colorBarNSections"); 
+            if (nSections > 100)
+                nSections = -1;
+            boolean paletteContinuous = String2.parseBoolean( //defaults to true
+                tDataVariable.combinedAttributes().getString("colorBarContinuous")); 
+            String scale = tDataVariable.combinedAttributes().getString("colorBarScale"); 
+            if (String2.indexOf(EDV.VALID_SCALES, scale) < 0)
+                scale = "Linear";
+            String cptFullName = CompoundColorMap.makeCPT(EDStatic.fullPaletteDirectory, 
+                palette, scale, minData, maxData, nSections, paletteContinuous, 
+                EDStatic.fullCptCacheDirectory);
+
+            //draw the data on the map
+            //for now, just cartesian  -- BEWARE: it may be stretched!
+            SgtMap.makeCleanMap( 
+                minx, maxx, miny, maxy, 
+                false,
+                grid, 1, 1, 0, cptFullName, 
+                false, false, SgtMap.NO_LAKES_AND_RIVERS, false, false,
+                g2, width, height,
+                0, 0, width, height); 
+
+        }
+        return bufferedImage;
+    }
+
+    /**
+     * This handles an XYZ tile request, /wms/datasetID/tiles/[variable]/[z]/[x]/[y].png 
+     * (optionally with, e.g., ?time=...&amp;elevation=...&amp;transparent=false&amp;bgcolor=0x808080),
+     * by making the equivalent WMS 1.3.0 GetMap request (CRS:84, 256x256 pixels) for
+     * the tile of the EPSG:4326 tile grid (see WmsTileCache.zxy). 
+     *
+     * @param language the index of the selected language
+     * @param requestNumber The requestNumber assigned to this request by doGet().
+     * @param request The user's request.
+     * @param response The response to be written to.
+     * @param loggedInAs  the name of the logged in user (or null if not logged in)
+     * @param tDatasetID an EDDGrid datasetID 
+     * @param endEnd e.g., tiles/sst/3/10/2.png
+     * @param queryString post '?', still percentEncoded, may be null.
+     */
+    public void doWmsTile(int language, int requestNumber, HttpServletRequest request, HttpServletResponse response,
+        String loggedInAs, String tDatasetID, String endEnd, String queryString) throws Throwable {
+
+        String parts[] = String2.split(endEnd, '/'); 
+        boolean valid = parts.length == 5 && parts[4].endsWith(".png");
+        int  z = valid? String2.parseInt(parts[2]) : -1;
+        long x = valid? String2.parseLong(parts[3]) : -1;
+        long y = valid? String2.parseLong(File2.getNameNoExtension(parts[4])) : -1;
+        if (z < 0 || z > WmsTileCache.MAX_ZOOM || 
+            x < 0 || x == Long.MAX_VALUE || y < 0 || y >= (1L << z)) 
+            throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
+                "A tile request must be /wms/" + tDatasetID + "/tiles/[variable]/[z]/[x]/[y].png " +
+                "(z=0 to " + WmsTileCache.MAX_ZOOM + ").");
+
+        double bbox[] = WmsTileCache.tileBbox(z, x, y);
+        HashMap<String, String> queryMap = EDD.userQueryHashMap(queryString, true); //true=names toLowerCase
+        queryMap.put("service", "WMS");
+        queryMap.put("version", "1.3.0");
+        queryMap.put("request", "GetMap");
+        queryMap.put("crs", "CRS:84");
+        queryMap.remove("srs");
+        queryMap.put("layers", tDatasetID + EDD.WMS_SEPARATOR + parts[1]);
+        queryMap.put("styles", "");
+        queryMap.put("bbox", bbox[0] + "," + bbox[1] + "," + bbox[2] + "," + bbox[3]);
+        queryMap.put("width",  "" + WmsTileCache.TILE_SIZE);
+        queryMap.put("height", "" + WmsTileCache.TILE_SIZE);
+        queryMap.put("format", "image/png");
+        queryMap.putIfAbsent("transparent", "true");
+        queryMap.putIfAbsent("exceptions", "BLANK");
+        doWmsGetMap(language, requestNumber, request, response, loggedInAs, queryMap);
+    }
+
+    /**
+     * This makes (if they aren't already cached) the XYZ tiles (see doWmsTile)
+     * for the latest time (and the default elevation) of each data variable 
+     * (with colorBarMinimum and colorBarMaximum) of a public grid dataset, 
+     * for zoom levels 0 to EDStatic.wmsTilePreseedMaxZoom.
+     * WmsTileCache calls this (in its background thread) after a dataset is 
+     * (re)loaded or changed.
+     * This won't throw an exception.
+     *
+     * @param datasetID the datasetID
+     */
+    public void preseedWmsTiles(String datasetID) {
+        EDDGrid eddGrid = gridDatasetHashMap.get(datasetID);
+        int maxZoom = EDStatic.wmsTilePreseedMaxZoom;
+        if (eddGrid == null || maxZoom < 0 || !EDStatic.wmsActive ||
+            eddGrid.lonIndex() < 0 || eddGrid.latIndex() < 0 ||
+            eddGrid.accessibleViaWMS().length() > 0 ||
+            !eddGrid.graphsAccessibleToPublic())
+            return;
+
+        long time = System.currentTimeMillis();
+        int nMade = 0;
+        try {
+            String cacheDir = eddGrid.cacheDirectory();
+            EDVGridAxis lonAv = eddGrid.axisVariables()[eddGrid.lonIndex()];
+            EDVGridAxis latAv = eddGrid.axisVariables()[eddGrid.latIndex()];
+            HashMap<String, String> queryMap = new HashMap<>(); //all defaults, e.g., the latest time
+            int tileSize = WmsTileCache.TILE_SIZE;
+            int bgColori = 0xFFFFFF; //the default
+            EDV dataVariables[] = eddGrid.dataVariables();
+            for (int dvi = 0; dvi < dataVariables.length; dvi++) {
+                if (!dataVariables[dvi].hasColorBarMinMax())
+                    continue;
+                String layers[] = {datasetID + EDD.WMS_SEPARATOR + dataVariables[dvi].destinationName()};
+                String styles[] = {""};
+                for (int z = 0; z <= maxZoom; z++) {
+                    //the tiles which overlap the dataset's lon lat range
+                    double size = 180.0 / (1 << z);
+                    long x1 = (long)Math.floor((lonAv.destinationMinDouble() + 180) / size);
+                    long x2 = Math.max(x1, (long)Math.ceil((lonAv.destinationMaxDouble() + 180) / size) - 1);
+                    long y1 = Math.max(0, (long)Math.floor((90 - latAv.destinationMaxDouble()) / size));
+                    long y2 = Math.min((1L << z) - 1, 
+                        Math.max(y1, (long)Math.ceil((90 - latAv.destinationMinDouble()) / size) - 1));
+                    for (long y = y1; y <= y2; y++) {
+                        for (long x = Math.max(0, x1); x <= x2; x++) {
+                            if (Thread.currentThread().isInterrupted() || //see WmsTileCache.shutdown
+                                gridDatasetHashMap.get(datasetID) != eddGrid)
+                                return; //tomcat is stopping, or the dataset was reloaded or removed
+                            double sliceTime[] = new double[1];
+                            String key = wmsImageKey(layers, styles, queryMap, datasetID,
+                                "tile=" + z + "/" + x + "/" + y, 
+                                tileSize, tileSize, true, bgColori, sliceTime);
+                            String fileName = WmsTileCache.fileName(datasetID, 
+                                WmsTileCache.sliceName(sliceTime[0]), key);
+                            if (WmsTileCache.isCached(cacheDir + fileName + ".png"))
+                                continue;
+                            double bbox[] = WmsTileCache.tileBbox(z, x, y);
+                            BufferedImage bufferedImage = drawWmsImage(0, -1, null, null,
+                                layers, styles, queryMap, bbox[0], bbox[2], bbox[1], bbox[3], 
+                                tileSize, tileSize, bgColori);
+                            SgtUtil.saveAsTransparentPng(bufferedImage, 
+                                new Color(0xFF000000 | bgColori), cacheDir + fileName); 
+                            WmsTileCache.added(cacheDir + fileName + ".png");
+                            WmsTileCache.preseeded();
+                            nMade++;
+                        }
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            String2.log(String2.ERROR + " in Erddap.preseedWmsTiles for datasetID=" + datasetID + 
+                " after making " + nMade + " tiles:\n" + MustBe.throwableToString(t));
+            return;
+        }
+        if (verbose) String2.log("Erddap.preseedWmsTiles datasetID=" + datasetID + 
+            " made " + nMade + " tiles. time=" + (System.currentTimeMillis() - time) + "ms");
+    }
+
     /**
      * Respond to WMS GetMap request for doWms.
      *
@@ -7003,7 +7451,7 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
         String queryString = request.getQueryString(); //post "?", still encoded, may be null
         if (queryString == null)
             queryString = "";
-        String fileName = "wms_" + String2.md5Hex12(queryString); //no extension
+        String fileName = null; //no extension. set below
 
         int width = -1, height = -1, bgColori = 0xFFFFFF;
         String format = null, fileTypeName = null, exceptions = null;
@@ -7018,7 +7466,9 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
             String[] requestParts = String2.split(getUrlWithoutLang(request), '/');  //post EDD.baseUrl, pre "?"
             int wmsPart = String2.indexOf(requestParts, "wms");
             String mainDatasetID = null;
-            if (wmsPart >= 0 && wmsPart == requestParts.length - 3) { //it exists, and there are two more parts
+            boolean isTile = wmsPart >= 0 && wmsPart + 2 < requestParts.length && //from doWmsTile
+                requestParts[wmsPart + 2].equals("tiles");
+            if (wmsPart >= 0 && (wmsPart == requestParts.length - 3 || isTile)) { //it exists, and there are two more parts
                 mainDatasetID = requestParts[wmsPart + 1];
                 EDDGrid eddGrid = gridDatasetHashMap.get(mainDatasetID);
                 if (eddGrid == null) {
@@ -7030,7 +7480,7 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
                     EDStatic.sendHttpUnauthorizedError(language, requestNumber, loggedInAs, response, mainDatasetID,
                         false);
                     return;
-                } else if (eddGrid instanceof EDDGridFromErddap fromErddap) {
+                } else if (!isTile && eddGrid instanceof EDDGridFromErddap fromErddap) {
                     if (fromErddap.redirect() && 
                         //earlier versions of wms work ~differently
                         fromErddap.sourceErddapVersion() >= 1.23) {
@@ -7081,8 +7531,6 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
             }
             EDStatic.tally.add("WMS doWmsGetMap (since last daily report)", mainDatasetID);
             EDStatic.tally.add("WMS doWmsGetMap (since startup)", mainDatasetID);
-            if (mainDatasetID != null) 
-                fileName = mainDatasetID + "_" + fileName;
             String cacheDir = mainDatasetID == null? EDStatic.fullWmsCacheDirectory :
                 EDD.cacheDirectory(mainDatasetID);            
             if (reallyVerbose) String2.log("doWmsGetMap cacheDir=" + cacheDir);
@@ -7237,6 +7685,22 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
                     "BBOX miny=" + miny + " must be < maxy=" + maxy + ".");
 
 
+            //the canonical key for the image, so equivalent requests share the cached image
+            //If the bbox is a tile of the EPSG:4326 tile grid, draw exactly that tile.
+            String zxy = WmsTileCache.zxy(minx, miny, maxx, maxy);
+            if (zxy != null) {
+                double tileBbox[] = WmsTileCache.tileBbox(zxy);
+                minx = tileBbox[0];
+                miny = tileBbox[1];
+                maxx = tileBbox[2];
+                maxy = tileBbox[3];
+            }
+            double sliceTime[] = new double[1];
+            String key = wmsImageKey(layers, styles, queryMap, mainDatasetID,
+                zxy != null? "tile=" + zxy : "bbox=" + minx + "," + miny + "," + maxx + "," + maxy,
+                width, height, transparent, bgColori, sliceTime);
+            fileName = WmsTileCache.fileName(mainDatasetID, WmsTileCache.sliceName(sliceTime[0]), key);
+
             //if request is for JUST a transparent, non-data layer, use a _wms/... cache 
             //  so files can be shared by many datasets and no number of files in dataset dir is reduced
             boolean isNonDataLayer = false;
@@ -7259,7 +7723,8 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
             }
 
             //is the image in the cache?
-            if (File2.isFile(cacheDir + fileName + extension)) { 
+            if (isNonDataLayer? File2.isFile(cacheDir + fileName + extension) :
+                WmsTileCache.isCached(cacheDir + fileName + extension)) { 
                 //touch nonDataLayer files, since they don't change
                 if (isNonDataLayer)
                     File2.touch(cacheDir + fileName + extension);
@@ -7276,204 +7741,18 @@ Interesting IOOS DIF info c:/programs/sos/EncodingIOOSv0.6.0Observations.doc
             
 
             //*** params are basically ok; try to make the map
-            //make the image
-            BufferedImage bufferedImage = new BufferedImage(width, height, 
-                BufferedImage.TYPE_INT_ARGB); //I need opacity "A"
-            Graphics g = bufferedImage.getGraphics(); 
-            Graphics2D g2 = (Graphics2D)g;
-            Color bgColor = new Color(0xFF000000 | bgColori); //0xFF000000 makes it opaque
-            g.setColor(bgColor);    
-            g.fillRect(0, 0, width, height);  
-
-            //add the layers
-            String roles[] = EDStatic.getRoles(loggedInAs);
-            LAYER:
-            for (int layeri = 0; layeri < layers.length; layeri++) {
-
-                //***deal with non-data layers
-                if (layers[layeri].equals(""))
-                    continue; 
-                if (layers[layeri].equals("Land") || 
-                    layers[layeri].equals("LandMask") || 
-                    layers[layeri].equals("Coastlines") || 
-                    layers[layeri].equals("LakesAndRivers") || 
-                    layers[layeri].equals("Nations") ||
-                    layers[layeri].equals("States")) {
-                    SgtMap.makeCleanMap(minx, maxx, miny, maxy, 
-                        false,
-                        null, 1, 1, 0, null,
-                        layers[layeri].equals("Land") || 
-                        layers[layeri].equals("LandMask"), //no need to draw it twice; no distinction here
-                        layers[layeri].equals("Coastlines"), 
-                        layers[layeri].equals("LakesAndRivers")? 
-                            SgtMap.STROKE_LAKES_AND_RIVERS : //stroke (not fill) so, e.g., Great Lakes temp data not obscured by lakeColor
-                            SgtMap.NO_LAKES_AND_RIVERS,
-                        layers[layeri].equals("Nations"), 
-                        layers[layeri].equals("States"),
-                        g2, width, height,
-                        0, 0, width, height);  
-                    //String2.log("WMS layeri="+ layeri + " request was for a non-data layer=" + layers[layeri]);
-                    continue;
-                }
-
-                //*** deal with grid data
-                int spo = layers[layeri].indexOf(EDD.WMS_SEPARATOR);
-                if (spo <= 0 || spo >= layers[layeri].length() - 1)
-                    throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
-                        "LAYER=" + layers[layeri] + " is invalid (invalid separator position).");
-                String datasetID = layers[layeri].substring(0, spo);
-                String destVar = layers[layeri].substring(spo + 1);
-                EDDGrid eddGrid = gridDatasetHashMap.get(datasetID);
-                if (eddGrid == null)
-                    throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
-                        "LAYER=" + layers[layeri] + " is invalid (dataset not found).");
-                if (!eddGrid.isAccessibleTo(roles) &&
-                    !eddGrid.graphsAccessibleToPublic()) {
-                    //WMS: all requests are graphics requests
-                    //listPrivateDatasets doesn't apply
-                    EDStatic.sendHttpUnauthorizedError(language, requestNumber, loggedInAs, response, datasetID,
-                        false);
-                    return;
-                }
-                if (eddGrid.accessibleViaWMS().length() > 0)
-                    throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
-                        "LAYER=" + layers[layeri] + " is invalid (not accessible via WMS).");
-                int dvi = String2.indexOf(eddGrid.dataVariableDestinationNames(), destVar);
-                if (dvi < 0)
-                    throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
-                        "LAYER=" + layers[layeri] + " is invalid (variable not found).");
-                EDV tDataVariable = eddGrid.dataVariables()[dvi];
-                if (!tDataVariable.hasColorBarMinMax())
-                    throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
-                        "LAYER=" + layers[layeri] + " is invalid (variable doesn't have valid colorBarMinimum/Maximum).");
-
-                //style  (currently just the default)
-                if (!styles[layeri].equals("") && 
-                    !styles[layeri].toLowerCase().equals("default")) { //nonstandard?  but allow it
-                    throw new SimpleException(EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
-                        "For LAYER=" + layers[layeri] + ", STYLE=" + styles[layeri] + " is invalid (must be \"\").");
-                }
-
-                //get other dimension info
-                EDVGridAxis ava[] = eddGrid.axisVariables();
-                StringBuilder tQuery = new StringBuilder(destVar);
-                for (int avi = 0; avi < ava.length; avi++) {
-                    EDVGridAxis av = ava[avi];
-                    if (avi == eddGrid.lonIndex()) {
-                        if (maxx <= av.destinationMinDouble() ||
-                            minx >= av.destinationMaxDouble()) {
-                            if (reallyVerbose) String2.log("  layer=" + layeri + 
-                                " rejected because request is out of lon range.");
-                            continue LAYER;
-                        }
-                        int first = av.destinationToClosestIndex(minx);
-                        int last = av.destinationToClosestIndex(maxx);
-                        if (first > last) {int ti = first; first = last; last = ti;}
-                        int stride = DataHelper.findStride(last - first + 1, width);
-                        tQuery.append("[" + first + ":" + stride + ":" + last + "]");
-                        continue;
-                    }
-
-                    if (avi == eddGrid.latIndex()) {
-                        if (maxy <= av.destinationMinDouble() ||
-                            miny >= av.destinationMaxDouble()) {
-                            if (reallyVerbose) String2.log("  layer=" + layeri + 
-                                " rejected because request is out of lat range.");
-                            continue LAYER;
-                        }
-                        int first = av.destinationToClosestIndex(miny);
-                        int last = av.destinationToClosestIndex(maxy);
-                        if (first > last) {int ti = first; first = last; last = ti;}
-                        int stride = DataHelper.findStride(last - first + 1, height);
-                        tQuery.append("[" + first + ":" + stride + ":" + last + "]");
-                        continue;
-                    }
-
-                    //all other axes
-                    String tAvName = 
-                        avi == eddGrid.altIndex()? "elevation" :
-                        avi == eddGrid.depthIndex()? "elevation" :  //convert depth to elevation
-                        avi == eddGrid.timeIndex()? "time" : 
-                        "dim_" + ava[avi].destinationName().toLowerCase(); //make it case-insensitive for queryMap.get
-                    String tValueS = queryMap.get(tAvName);
-                    if (tValueS == null || 
-                        (avi == eddGrid.timeIndex() && tValueS.toLowerCase().equals("current")))
-                        //default is always the last value
-                        tQuery.append("[" + (ava[avi].sourceValues().size() - 1) + "]");
-                    else {
-                        double tValueD = av.destinationToDouble(tValueS); //needed in particular for iso time -> epoch seconds
-                        if (avi == eddGrid.depthIndex())
-                            tValueD = -tValueD;
-                        if (Double.isNaN(tValueD) ||
-                            tValueD < av.destinationCoarseMin() ||
-                            tValueD > av.destinationCoarseMax()) {
-                            if (reallyVerbose) String2.log("  layer=" + layeri + 
-                                " rejected because tValueD=" + tValueD + 
-                                " for " + tAvName);
-                            continue LAYER;
-                        }
-                        int first = av.destinationToClosestIndex(tValueD);
-                        tQuery.append("[" + first + "]");
-                    }
-                }
-
-                //get the data
-                GridDataAccessor gda = new GridDataAccessor(language, 
-                    eddGrid, 
-                    "/" + EDStatic.warName + "/griddap/" + datasetID + ".dods", tQuery.toString(), 
-                    false, //Grid needs column-major order
-                    true); //convertToNaN
-                long requestNL = gda.totalIndex().size();
-                Math2.ensureArraySizeOkay(requestNL, "doWmsGetMap");
-                int nBytesPerElement = 8;
-                int requestN = (int)requestNL; //safe since checked by ensureArraySizeOkay above
-                Math2.ensureMemoryAvailable(requestNL * nBytesPerElement, "doWmsGetMap");  
-                Grid grid = new Grid();
-                grid.data = new double[requestN];
-                int po = 0;
-                while (gda.increment()) 
-                    grid.data[po++] = gda.getDataValueAsDouble(0);
-                grid.lon = gda.axisValues(eddGrid.lonIndex()).toDoubleArray();
-                grid.lat = gda.axisValues(eddGrid.latIndex()).toDoubleArray(); 
-                gda = null; //free up memory if possible
-
-                //make the palette
-                //I checked hasColorBarMinMax above.
-                //Note that EDV checks validity of values.
-                double minData = tDataVariable.combinedAttributes().getDouble("colorBarMinimum"); 
-                double maxData = tDataVariable.combinedAttributes().getDouble("colorBarMaximum"); 
-                String palette = tDataVariable.combinedAttributes().getString("colorBarPalette"); 
-                if (String2.indexOf(EDStatic.palettes, palette) < 0)
-                    palette = Math2.almostEqual(3, -minData, maxData)? "BlueWhiteRed" : "Rainbow"; 
-                int nSections = tDataVariable.combinedAttributes().getInt("colorBarNSections"); 
-                if (nSections > 100)
-                    nSections = -1;
-                boolean paletteContinuous = String2.parseBoolean( //defaults to true
-                    tDataVariable.combinedAttributes().getString("colorBarContinuous")); 
-                String scale = tDataVariable.combinedAttributes().getString("colorBarScale"); 
-                if (String2.indexOf(EDV.VALID_SCALES, scale) < 0)
-                    scale = "Linear";
-                String cptFullName = CompoundColorMap.makeCPT(EDStatic.fullPaletteDirectory, 
-                    palette, scale, minData, maxData, nSections, paletteContinuous, 
-                    EDStatic.fullCptCacheDirectory);
-
-                //draw the data on the map
-                //for now, just cartesian  -- BEWARE: it may be stretched!
-                SgtMap.makeCleanMap( 
-                    minx, maxx, miny, maxy, 
-                    false,
-                    grid, 1, 1, 0, cptFullName, 
-                    false, false, SgtMap.NO_LAKES_AND_RIVERS, false, false,
-                    g2, width, height,
-                    0, 0, width, height); 
-
-            }
+            BufferedImage bufferedImage = drawWmsImage(language, requestNumber, response, loggedInAs,
+                layers, styles, queryMap, minx, maxx, miny, maxy, width, height, bgColori);
+            if (bufferedImage == null)
+                return; //the response (e.g., unauthorized) has been sent
 
             //save image as file in cache dir
             //(It saves as temp file, then renames if ok.)
             SgtUtil.saveAsTransparentPng(bufferedImage, 
-                transparent? bgColor : null, 
+                transparent? new Color(0xFF000000 | bgColori) : null, 
                 cacheDir + fileName); 
+            if (!isNonDataLayer)
+                WmsTileCache.added(cacheDir + fileName + extension);
 
             //copy image from file to client
             if (reallyVerbose) String2.log("  image created. copying to client: " + fileName + extension);
@@ -12482,6 +12761,10 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
             jumpB[w] = String2.makeJumpTable(searchWordsB[w]);
         }
 
+        //the index finds the candidate datasets, so searchRank needn't look at every dataset
+        HashSet<String> candidates = EDStatic.useLuceneSearchEngine? null :
+            EDStatic.originalSearchIndex.candidates(isNegative, searchWordsB); //null if it can't help
+
         for (int i = 0; i < ntDatasetIDs; i++) {
             String tId = tDatasetIDs.get(i);
             EDD edd = gridDatasetHashMap.get(tId);
@@ -12493,6 +12776,9 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                 !edd.isAccessibleTo(roles) &&
                 !edd.graphsAccessibleToPublic()) //search for datasets is always a metadata request
                 continue;
+            if (candidates != null && !candidates.contains(tId) &&
+                EDStatic.originalSearchIndex.isIndexed(tId, edd.searchBytes())) 
+                continue; //it can't match
             nDatasetsSearched++;
             int rank = edd.searchRank(isNegative, searchWordsB, jumpB);           
             if (rank < Integer.MAX_VALUE) {
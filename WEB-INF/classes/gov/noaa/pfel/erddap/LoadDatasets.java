@@ -12,10 +12,12 @@ import com.cohort.util.File2;
 import com.cohort.util.Math2;
 import com.cohort.util.MustBe;
 import com.cohort.util.String2;
+import com.cohort.util.Test;
 import com.cohort.util.XML;
 
 import com.sun.management.UnixOperatingSystemMXBean;
 
+import gov.noaa.pfel.coastwatch.griddata.NcFileCache;
 import gov.noaa.pfel.coastwatch.sgt.GSHHS;
 import gov.noaa.pfel.coastwatch.sgt.SgtMap;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
@@ -31,19 +33,28 @@ import gov.noaa.pfel.erddap.variable.EDVGridAxis;
 import java.awt.Color;
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -95,6 +106,49 @@ public class LoadDatasets extends Thread {
     private final static boolean ADD = true;
     private final static boolean REMOVE = false;
 
+    /** The changes to erddap (e.g., putting a dataset in place) are made while synchronized on this. */
+    private final Object publishLock = new Object();
+
+    /** datasetID -&gt; {the time (ms) to load it the last time it was loaded, 1 if that failed (else 0)} */
+    private final static ConcurrentHashMap<String, long[]> datasetLoadTimes = new ConcurrentHashMap();
+
+    /** A dataset from datasets.xml that is waiting to be loaded. */
+    private static class DatasetToLoad {
+        final String datasetID;
+        final String type;
+        final String xml;         //the <dataset> tag and its contents
+        final long lineNumber;    //of the <dataset> tag in datasets.xml
+        final int nTry;           //1.. in datasets.xml order
+        final HashSet<String> localSourceIDs; //the datasets on this ERDDAP that this dataset uses
+        final ArrayList<DatasetToLoad> dependents = new ArrayList(); //the datasets that use this dataset
+        int nWaitingFor = 0;      //the number of datasets that must be loaded first. guarded by publishLock
+        int nNotSorted = 0;       //just used while sorting
+
+        DatasetToLoad(String tDatasetID, String tType, String tXml, long tLineNumber, 
+            int tNTry, HashSet<String> tLocalSourceIDs) {
+            datasetID = tDatasetID;
+            type = tType;
+            xml = tXml;
+            lineNumber = tLineNumber;
+            nTry = tNTry;
+            localSourceIDs = tLocalSourceIDs;
+        }
+
+        /** This makes the dataset from the xml. */
+        EDD fromXml(Erddap erddap) throws Throwable {
+            SimpleXMLReader xmlReader = new SimpleXMLReader(new ByteArrayInputStream(String2.stringToUtf8Bytes(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<erddapDatasets>" + xml + "</erddapDatasets>\n")),
+                "erddapDatasets");
+            try {
+                xmlReader.setLineNumber(lineNumber); //so error messages have the line numbers in datasets.xml
+                xmlReader.nextTag(); //<erddapDatasets><dataset>
+                return EDD.fromXml(erddap, type, xmlReader);
+            } finally {
+                xmlReader.close();
+            }
+        }
+    }
+
     /* This is set by run if there is an unexpected error. */   
     public String unexpectedError = ""; 
 
@@ -166,11 +220,12 @@ public class LoadDatasets extends Thread {
                 orphanIDSet.remove(EDDTableFromAllDatasets.DATASET_ID);
             }
             EDStatic.cldMajor = majorLoad;
-            EDStatic.cldNTry  = 0; //that alone says none is currently active
+            EDStatic.cldDatasets.clear(); //none is currently active
             HashMap tUserHashMap = new HashMap(); //no need for thread-safe, all puts are here (1 thread); future gets are thread safe
             StringBuilder datasetsThatFailedToLoadSB = new StringBuilder();
             HashSet<String> datasetIDSet = new HashSet(); //to detect duplicates, just local use, no need for thread-safe
             StringArray duplicateDatasetIDs = new StringArray(); //list of duplicates
+            ArrayList<DatasetToLoad> datasetsToLoad = new ArrayList<>(); //in datasets.xml order
             EDStatic.suggestAddFillValueCSV.setLength(0);
 
 
@@ -351,146 +406,10 @@ public class LoadDatasets extends Thread {
                             tags = xmlReader.allTags();
                         }
                     } else {
-                        //try to load this dataset
+                        //read this dataset's xml now. The datasets are loaded 
+                        //(maybe in parallel) after all of datasets.xml has been read.
                         nTry++;
-                        String change = "";
-                        EDD dataset = null, oldDataset = null;
-                        boolean oldCatInfoRemoved = false;
-                        long timeToLoadThisDataset = System.currentTimeMillis();
-                        EDStatic.cldNTry = nTry;
-                        EDStatic.cldStartMillis = timeToLoadThisDataset;
-                        EDStatic.cldDatasetID = tId;
-                        try {
-                            dataset = EDD.fromXml(erddap, xmlReader.attributeValue("type"), xmlReader);
-
-                            //check for interruption right before making changes to Erddap
-                            if (isInterrupted()) { //this is a likely place to catch interruption
-                                String2.log("*** The LoadDatasets thread was interrupted at " + 
-                                    Calendar2.getCurrentISODateTimeStringLocalTZ());
-                                updateLucene(erddap, changedDatasetIDs);
-                                lastLuceneUpdate = System.currentTimeMillis();
-                                return;
-                            }
-
-                            //do several things in quick succession...
-                            //(??? synchronize on (?) if really need avoid inconsistency)
-
-                            //was there a dataset with the same datasetID?
-                            oldDataset = erddap.gridDatasetHashMap.get(tId);
-                            if (oldDataset == null)
-                                oldDataset = erddap.tableDatasetHashMap.get(tId);
-
-                            //if oldDataset existed, remove its info from categoryInfo
-                            //(check now, before put dataset in place, in case EDDGrid <--> EDDTable)
-                            if (oldDataset != null) {
-                                addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
-                                oldCatInfoRemoved = true;
-                            }
-
-                            //put dataset in place
-                            //(hashMap.put atomically replaces old version with new)
-                            if ((oldDataset == null || oldDataset instanceof EDDGrid) &&
-                                                          dataset instanceof EDDGrid eddGrid) {
-                                erddap.gridDatasetHashMap.put(tId, eddGrid);  //was/is grid
-
-                            } else if ((oldDataset == null || oldDataset instanceof EDDTable) &&
-                                                                 dataset instanceof EDDTable eddTable) {
-                                erddap.tableDatasetHashMap.put(tId, eddTable); //was/is table 
-
-                            } else if (dataset instanceof EDDGrid eddGrid) {
-                                if (oldDataset != null)
-                                    erddap.tableDatasetHashMap.remove(tId);   //was table
-                                erddap.gridDatasetHashMap.put(tId, eddGrid);  //now grid
-
-                            } else if (dataset instanceof EDDTable eddTable) {
-                                if (oldDataset != null)
-                                    erddap.gridDatasetHashMap.remove(tId);     //was grid
-                                erddap.tableDatasetHashMap.put(tId, eddTable); //now table
-                            }
-
-                            //add new info to categoryInfo
-                            addRemoveDatasetInfo(ADD, erddap.categoryInfo, dataset); 
-
-                            //clear the dataset's cache 
-                            //since axis values may have changed and "last" may have changed
-                            File2.deleteAllFiles(dataset.cacheDirectory());                           
-                       
-                            change = dataset.changed(oldDataset);
-                            if (change.length() == 0 && dataset instanceof EDDTable)
-                                change = "The dataset was reloaded.";
-
-                        } catch (Throwable t) {
-                            dataset = null;
-                            timeToLoadThisDataset = System.currentTimeMillis() - timeToLoadThisDataset;
-
-                            //check for interruption right before making changes to Erddap
-                            if (isInterrupted()) { //this is a likely place to catch interruption
-                                String tError2 = "*** The LoadDatasets thread was interrupted at " + 
-                                    Calendar2.getCurrentISODateTimeStringLocalTZ();
-                                String2.log(tError2);
-                                warningsFromLoadDatasets.append(tError2 + "\n\n");
-                                updateLucene(erddap, changedDatasetIDs);
-                                lastLuceneUpdate = System.currentTimeMillis();
-                                return;
-                            }
-
-
-                            //actually remove old dataset (if any existed)
-                            EDD tDataset = erddap.gridDatasetHashMap.remove(tId); //always ensure it was removed
-                            if (tDataset == null)
-                                tDataset = erddap.tableDatasetHashMap.remove(tId);
-                            if (oldDataset == null)
-                                oldDataset = tDataset;
-
-                            //if oldDataset existed, remove it from categoryInfo
-                            if (oldDataset != null && !oldCatInfoRemoved)
-                                addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
-
-                            String tError = startError + xmlReader.lineNumber() + "\n" + 
-                                "While trying to load datasetID=" + tId + " (after " +
-                                    timeToLoadThisDataset + " ms)\n" +
-                                MustBe.throwableToString(t);
-                            String2.log(tError);
-                            warningsFromLoadDatasets.append(tError + "\n\n");
-                            datasetsThatFailedToLoadSB.append(tId + ", ");
-
-                            //stop???
-                            if (!xmlReader.isOpen()) { //error was really serious
-                                throw new RuntimeException(startError + xmlReader.lineNumber() + 
-                                    ": " + t.toString(), t);
-                            }
-           
-                            //skip over the remaining tags for this dataset
-                            try {
-                                while (!xmlReader.allTags().equals("<erddapDatasets></dataset>")) 
-                                    xmlReader.nextTag();
-                            } catch (Throwable t2) {
-                                throw new RuntimeException(startError + xmlReader.lineNumber() + 
-                                    ": " + t2.toString(), t2);
-                            }
-
-                            //change      (if oldDataset=null and new one failed to load, no change)
-                            if (oldDataset != null)  
-                                change = tError;
-                        }
-                        if (verbose) String2.log("change=" + change);
-                        EDStatic.cldNTry = nTry;
-                        EDStatic.cldStartMillis = 0;
-                        EDStatic.cldDatasetID = null;
-
-                        //whether succeeded (new or swapped in) or failed (removed), it was changed
-                        changedDatasetIDs.add(tId);
-                        if (System.currentTimeMillis() - lastLuceneUpdate >
-                            MAX_MILLIS_BEFORE_LUCENE_UPDATE) {
-                            updateLucene(erddap, changedDatasetIDs);
-                            lastLuceneUpdate = System.currentTimeMillis();
-                        }
-
-                        //trigger subscription and dataset.onChange actions (after new dataset is in place)
-                        EDD cooDataset = dataset == null? oldDataset : dataset; //currentOrOld, may be null
-                        tryToDoActions(erddap, tId, cooDataset, 
-                            startError + xmlReader.lineNumber() + " with Subscriptions",
-                            change);
+                        datasetsToLoad.add(readDatasetToLoad(xmlReader, tId, nTry));
                     }
 
                 } else if (tags.equals("<erddapDatasets><angularDegreeUnits>")) {
@@ -526,6 +445,13 @@ public class LoadDatasets extends Thread {
                         EDStatic.DEFAULT_cacheMinutes : tnt) * Calendar2.MILLIS_PER_MINUTE; 
                     String2.log("cacheMinutes=" + EDStatic.cacheMillis/Calendar2.MILLIS_PER_MINUTE);
 
+                } else if (tags.equals("<erddapDatasets><cacheMaxGB>")) {
+                } else if (tags.equals("<erddapDatasets></cacheMaxGB>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.cacheMaxGB = tnt < 1 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_cacheMaxGB : tnt; 
+                    String2.log("cacheMaxGB=" + EDStatic.cacheMaxGB);
+
                 } else if (tags.equals("<erddapDatasets><commonStandardNames>")) {
                 } else if (tags.equals("<erddapDatasets></commonStandardNames>")) {
                     String ts = xmlReader.content();
@@ -577,6 +503,22 @@ public class LoadDatasets extends Thread {
                     EDStatic.graphBackgroundColor = new Color(tnt, true); //hasAlpha
                     String2.log("graphBackgroundColor=" + String2.to0xHexString(tnt, 8));
 
+                } else if (tags.equals("<erddapDatasets><gridChunkCacheMB>")) {
+                } else if (tags.equals("<erddapDatasets></gridChunkCacheMB>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.gridChunkCacheMB = tnt < 0 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_gridChunkCacheMB : tnt;  //0 is valid: no cache
+                    if (EDStatic.gridChunkCacheMB == 0)
+                        GridChunkCache.clear();
+                    String2.log("gridChunkCacheMB=" + EDStatic.gridChunkCacheMB);
+
+                } else if (tags.equals("<erddapDatasets><gridRandomAccessInMemoryMB>")) {
+                } else if (tags.equals("<erddapDatasets></gridRandomAccessInMemoryMB>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.gridRandomAccessInMemoryMB = tnt < 0 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_gridRandomAccessInMemoryMB : tnt;  //0 is valid: always use files
+                    String2.log("gridRandomAccessInMemoryMB=" + EDStatic.gridRandomAccessInMemoryMB);
+
                 } else if (tags.equals("<erddapDatasets><ipAddressMaxRequests>")) {
                 } else if (tags.equals("<erddapDatasets></ipAddressMaxRequests>")) {
                     int tnt = String2.parseInt(xmlReader.content());
@@ -623,6 +565,51 @@ public class LoadDatasets extends Thread {
                 } else if (tags.equals("<erddapDatasets></logLevel>")) {                    
                     EDStatic.setLogLevel(xmlReader.content()); //""->"info".  It prints diagnostic to log.txt.
 
+                } else if (tags.equals("<erddapDatasets><maxActiveRequests>")) {
+                } else if (tags.equals("<erddapDatasets></maxActiveRequests>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.maxActiveRequests = tnt < 0 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_maxActiveRequests : tnt;  //0 is valid: no limit
+                    String2.log("maxActiveRequests=" + EDStatic.maxActiveRequests);
+
+                } else if (tags.equals("<erddapDatasets><maxActiveRequestsMB>")) {
+                } else if (tags.equals("<erddapDatasets></maxActiveRequestsMB>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.maxActiveRequestsMB = tnt < 0 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_maxActiveRequestsMB : tnt;  //0 is valid: no limit
+                    String2.log("maxActiveRequestsMB=" + EDStatic.maxActiveRequestsMB);
+
+                } else if (tags.equals("<erddapDatasets><memoryCacheMB>")) {
+                } else if (tags.equals("<erddapDatasets></memoryCacheMB>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.memoryCacheMB = tnt < 0 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_memoryCacheMB : tnt;  //0 is valid: no memory tier
+                    if (EDStatic.memoryCacheMB == 0)
+                        ResponseCache.clear();
+                    String2.log("memoryCacheMB=" + EDStatic.memoryCacheMB);
+
+                } else if (tags.equals("<erddapDatasets><nLoadDatasetsThreads>")) {
+                } else if (tags.equals("<erddapDatasets></nLoadDatasetsThreads>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.nLoadDatasetsThreads = tnt < 1 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_nLoadDatasetsThreads : tnt; 
+                    String2.log("nLoadDatasetsThreads=" + EDStatic.nLoadDatasetsThreads);
+
+                } else if (tags.equals("<erddapDatasets><ncFileCacheMaxOpen>")) {
+                } else if (tags.equals("<erddapDatasets></ncFileCacheMaxOpen>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.ncFileCacheMaxOpen = tnt < 0 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_ncFileCacheMaxOpen : tnt;  //0 is valid: no cache
+                    NcFileCache.setMaxOpen(EDStatic.ncFileCacheMaxOpen);
+                    String2.log("ncFileCacheMaxOpen=" + EDStatic.ncFileCacheMaxOpen);
+
+                } else if (tags.equals("<erddapDatasets><nGridPrefetchChunks>")) {
+                } else if (tags.equals("<erddapDatasets></nGridPrefetchChunks>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.nGridPrefetchChunks = tnt < 0 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_nGridPrefetchChunks : tnt;  //0 is valid: no prefetch
+                    String2.log("nGridPrefetchChunks=" + EDStatic.nGridPrefetchChunks);
+
                 } else if (tags.equals("<erddapDatasets><nGridThreads>")) {
                 } else if (tags.equals("<erddapDatasets></nGridThreads>")) {
                     int tnt = String2.parseInt(xmlReader.content());
@@ -637,6 +624,13 @@ public class LoadDatasets extends Thread {
                         EDStatic.DEFAULT_nTableThreads : tnt; 
                     String2.log("nTableThreads=" + EDStatic.nTableThreads);
 
+                } else if (tags.equals("<erddapDatasets><orderByInMemoryMB>")) {
+                } else if (tags.equals("<erddapDatasets></orderByInMemoryMB>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.orderByInMemoryMB = tnt < 0 || tnt == Integer.MAX_VALUE?
+                        EDStatic.DEFAULT_orderByInMemoryMB : tnt;  //0 is valid: always use files
+                    String2.log("orderByInMemoryMB=" + EDStatic.orderByInMemoryMB);
+
                 } else if (tags.equals("<erddapDatasets><palettes>")) {
                 } else if (tags.equals("<erddapDatasets></palettes>")) {
                     String tContent = xmlReader.content();
@@ -682,6 +676,13 @@ public class LoadDatasets extends Thread {
                     EDStatic.slowDownTroubleMillis = tms < 0 || tms > 1000000? 1000 : tms; 
                     String2.log("slowDownTroubleMillis=" + EDStatic.slowDownTroubleMillis);
 
+                } else if (tags.equals("<erddapDatasets><sortInMemoryMB>")) {
+                } else if (tags.equals("<erddapDatasets></sortInMemoryMB>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.sortInMemoryMB = tnt < 0 || tnt == Integer.MAX_VALUE?
+                        EDStatic.DEFAULT_sortInMemoryMB : tnt;  //0 is valid: always sort in memory
+                    String2.log("sortInMemoryMB=" + EDStatic.sortInMemoryMB);
+
                 } else if (tags.equals("<erddapDatasets><subscriptionEmailBlacklist>")) {
                 } else if (tags.equals("<erddapDatasets></subscriptionEmailBlacklist>")) {
                     if (EDStatic.subscriptionSystemActive)
@@ -795,6 +796,19 @@ public class LoadDatasets extends Thread {
                         EDStatic.DEFAULT_updateMaxEvents : tnt; 
                     String2.log("updateMaxEvents=" + EDStatic.updateMaxEvents);
 
+                } else if (tags.equals("<erddapDatasets><wmsTileCacheMB>")) {
+                } else if (tags.equals("<erddapDatasets></wmsTileCacheMB>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.wmsTileCacheMB = tnt < 0 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_wmsTileCacheMB : tnt;  //0 is valid: no limit
+                    String2.log("wmsTileCacheMB=" + EDStatic.wmsTileCacheMB);
+
+                } else if (tags.equals("<erddapDatasets><wmsTilePreseedMaxZoom>")) {
+                } else if (tags.equals("<erddapDatasets></wmsTilePreseedMaxZoom>")) {
+                    EDStatic.wmsTilePreseedMaxZoom = WmsTileCache.validPreseedMaxZoom(
+                        String2.parseInt(xmlReader.content()));  //-1 is valid: off. >6 becomes 6
+                    String2.log("wmsTilePreseedMaxZoom=" + EDStatic.wmsTilePreseedMaxZoom);
+
                 //<user username="bsimons" password="..." roles="admin, role1" />
                 //this mimics tomcat syntax
                 } else if (tags.equals("<erddapDatasets><user>")) { 
@@ -864,6 +878,17 @@ public class LoadDatasets extends Thread {
             xmlReader.close();
             xmlReader = null;
 
+            //load the datasets
+            if (!loadDatasets(datasetsToLoad, changedDatasetIDs, datasetsThatFailedToLoadSB)) {
+                String tError2 = "*** The LoadDatasets thread was interrupted at " + 
+                    Calendar2.getCurrentISODateTimeStringLocalTZ();
+                String2.log(tError2);
+                warningsFromLoadDatasets.append(tError2 + "\n\n");
+                updateLucene(erddap, changedDatasetIDs);
+                lastLuceneUpdate = System.currentTimeMillis();
+                return;
+            }
+
             updateLucene(erddap, changedDatasetIDs);
             lastLuceneUpdate = System.currentTimeMillis();
 
@@ -1163,6 +1188,7 @@ public class LoadDatasets extends Thread {
                     EDStatic.emailThreadFailedDistribution24    = new int[String2.TimeDistributionSize];
                     EDStatic.emailThreadSucceededDistribution24 = new int[String2.TimeDistributionSize];
                     EDStatic.emailThreadNEmailsDistribution24   = new int[String2.CountDistributionSize]; //count, not time
+                    EDStatic.datasetLoadTimesDistribution24     = new int[String2.TimeDistributionSize];
                     EDStatic.failureTimesDistribution24         = new int[String2.TimeDistributionSize];
                     EDStatic.majorLoadDatasetsDistribution24    = new int[String2.TimeDistributionSize];
                     EDStatic.minorLoadDatasetsDistribution24    = new int[String2.TimeDistributionSize];
@@ -1171,6 +1197,8 @@ public class LoadDatasets extends Thread {
                     EDStatic.taskThreadSucceededDistribution24  = new int[String2.TimeDistributionSize];
                     EDStatic.touchThreadFailedDistribution24    = new int[String2.TimeDistributionSize];
                     EDStatic.touchThreadSucceededDistribution24 = new int[String2.TimeDistributionSize];
+                    EDStatic.workQueueWaitDistribution24        = new int[String2.TimeDistributionSize];
+                    EDStatic.admissionWaitDistribution24        = new int[String2.TimeDistributionSize];
 
                     String2.log("\n" + stars);
                     String2.log(contentSB.toString());
@@ -1298,6 +1326,377 @@ public class LoadDatasets extends Thread {
         }
     }
 
+    /**
+     * This reads the xml for one dataset from datasets.xml, so it can be loaded later.
+     *
+     * @param xmlReader which has just read the &lt;erddapDatasets&gt;&lt;dataset&gt; tag.
+     *    When this returns, xmlReader will have just read &lt;erddapDatasets&gt;&lt;/dataset&gt; .
+     * @param tId the datasetID
+     * @param nTry the number of this attempt to load a dataset (for status.html)
+     * @return a DatasetToLoad
+     * @throws Exception if trouble (e.g., invalid xml)
+     */
+    private static DatasetToLoad readDatasetToLoad(SimpleXMLReader xmlReader, String tId, 
+        int nTry) throws Exception {
+
+        long lineNumber = xmlReader.lineNumber();
+        StringBuilder xml = new StringBuilder("<dataset");
+        String names[] = xmlReader.attributeNames();
+        for (int i = 0; i < names.length; i++)
+            xml.append(" " + names[i] + "=\"" + XML.encodeAsXML(xmlReader.attributeValue(names[i])) + "\"");
+        xml.append('>');
+        int startLength = xml.length();
+
+        //record the rest of the dataset's xml and 
+        //find the datasets on this ERDDAP that it uses (e.g., via an EDDGridFromErddap child)
+        HashSet<String> localSourceIDs = new HashSet();
+        xmlReader.setRecorder(xml);
+        try {
+            String tags = xmlReader.allTags();
+            while (!tags.equals("<erddapDatasets></dataset>")) {
+                xmlReader.nextTag();
+                tags = xmlReader.allTags();
+                if (tags.endsWith("</sourceUrl>")) {
+                    String tUrl = xmlReader.content();
+                    if ((tUrl.indexOf("/griddap/") > 0 || tUrl.indexOf("/tabledap/") > 0) &&
+                        EDStatic.urlIsThisComputer(tUrl))
+                        localSourceIDs.add(File2.getNameNoExtension(tUrl));
+                }
+            }
+        } finally {
+            xmlReader.setRecorder(null);
+        }
+        if (xml.length() == startLength) //it was <dataset ... />
+            xml.append("</dataset>");
+        localSourceIDs.remove(tId);
+        return new DatasetToLoad(tId, xmlReader.attributeValue("type"), xml.toString(), 
+            lineNumber, nTry, localSourceIDs);
+    }
+
+    /**
+     * This loads the datasets, in parallel if EDStatic.nLoadDatasetsThreads &gt; 1.
+     * Each dataset is put in place as soon as it has been loaded.
+     * A dataset that uses another dataset in the list (e.g., an EDDTableFromEDDGrid
+     * whose child is an EDDGridFromErddap that refers to a dataset on this ERDDAP)
+     * is loaded after that dataset has been loaded.
+     * Otherwise, the datasets are started in datasets.xml order.
+     *
+     * @param toLoad the datasets to be loaded, in datasets.xml order
+     * @param changedDatasetIDs the datasetIDs of datasets that were changed are added to this
+     * @param failedSB the datasetIDs of datasets that failed to load are added to this
+     * @return false if this thread was interrupted
+     */
+    private boolean loadDatasets(ArrayList<DatasetToLoad> toLoad, 
+        StringArray changedDatasetIDs, StringBuilder failedSB) {
+
+        return loadInOrder(makeLoadOrder(toLoad), EDStatic.nLoadDatasetsThreads,
+            d -> loadDataset(d, changedDatasetIDs, failedSB));
+    }
+
+    /**
+     * This makes the dependency graph of the datasets (DatasetToLoad.dependents and nWaitingFor)
+     * and sorts the datasets so each dataset is after the datasets it uses 
+     * (else in datasets.xml order).
+     * Datasets that use each other (directly or indirectly) don't wait for each other.
+     *
+     * @param toLoad the datasets to be loaded, in datasets.xml order
+     * @return the datasets in the order they should be started
+     */
+    private ArrayList<DatasetToLoad> makeLoadOrder(ArrayList<DatasetToLoad> toLoad) {
+
+        //make the dependency graph
+        HashMap<String, DatasetToLoad> idToDataset = new HashMap();
+        for (DatasetToLoad d : toLoad) 
+            idToDataset.put(d.datasetID, d);
+        for (DatasetToLoad d : toLoad) {
+            for (String sourceID : d.localSourceIDs) {
+                DatasetToLoad source = idToDataset.get(sourceID);
+                if (source != null) {
+                    source.dependents.add(d);
+                    d.nWaitingFor++;
+                }
+            }
+        }
+
+        //sort it, so each dataset is after the datasets it uses (else in datasets.xml order)
+        PriorityQueue<DatasetToLoad> ready = new PriorityQueue<DatasetToLoad>(
+            Math.max(1, toLoad.size()), (a, b) -> Integer.compare(a.nTry, b.nTry));
+        for (DatasetToLoad d : toLoad) {
+            d.nNotSorted = d.nWaitingFor;
+            if (d.nNotSorted == 0)
+                ready.add(d);
+        }
+        ArrayList<DatasetToLoad> order = new ArrayList(toLoad.size());
+        while (!ready.isEmpty()) {
+            DatasetToLoad d = ready.poll();
+            order.add(d);
+            for (DatasetToLoad dependent : d.dependents)
+                if (--dependent.nNotSorted == 0)
+                    ready.add(dependent);
+        }
+        if (order.size() < toLoad.size()) {
+            //the rest use each other (directly or indirectly), so just load them in datasets.xml order
+            StringArray cycleIDs = new StringArray();
+            for (DatasetToLoad d : toLoad) {
+                if (d.nNotSorted > 0) {
+                    d.nWaitingFor = 0; //don't wait
+                    order.add(d);
+                    cycleIDs.add(d.datasetID);
+                }
+            }
+            String msg = "datasets.xml warning: These datasets use each other (directly or indirectly), " +
+                "so they were loaded in datasets.xml order:\n    " + cycleIDs.toString();
+            String2.log(msg);
+            warningsFromLoadDatasets.append(msg + "\n\n");
+        }
+        return order;
+    }
+
+    /**
+     * This loads the datasets, nThreads at a time, 
+     * each after the datasets it is waiting for (see makeLoadOrder).
+     *
+     * @param order the datasets, from makeLoadOrder
+     * @param nThreads the number of worker threads. If &lt;= 1, the datasets 
+     *   are loaded one at a time in this thread.
+     * @param load This loads one dataset. It returns false if this thread was interrupted.
+     * @return false if this thread was interrupted
+     */
+    private boolean loadInOrder(ArrayList<DatasetToLoad> order, int nThreads, 
+        Predicate<DatasetToLoad> load) {
+
+        //load them one at a time (in this thread)
+        nThreads = Math.min(nThreads, order.size());
+        if (nThreads <= 1) {
+            for (DatasetToLoad d : order) {
+                if (!load.test(d))
+                    return false;
+            }
+            return true;
+        }
+
+        //or nThreads at a time
+        if (verbose) String2.log("LoadDatasets is loading " + order.size() + 
+            " datasets with nThreads=" + nThreads);
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads, runnable -> {
+            Thread thread = new Thread(runnable, "LoadDatasets worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CountDownLatch nRemaining = new CountDownLatch(order.size());
+        try {
+            //find the ready datasets before submitting any, since the workers 
+            //change nWaitingFor (and submit the dependents themselves)
+            ArrayList<DatasetToLoad> ready = new ArrayList();
+            synchronized (publishLock) {
+                for (DatasetToLoad d : order) {
+                    if (d.nWaitingFor == 0)
+                        ready.add(d);
+                }
+            }
+            for (DatasetToLoad d : ready) 
+                submitLoad(pool, d, load, nRemaining);
+            nRemaining.await();
+        } catch (InterruptedException e) {
+            interrupt(); //set the flag again, so the worker threads see it
+            return false;
+        } finally {
+            pool.shutdownNow();
+        }
+        return !isInterrupted();
+    }
+
+    /**
+     * This submits a dataset to the pool of worker threads.
+     * When it has been loaded, the datasets that were waiting for it are submitted.
+     */
+    private void submitLoad(ExecutorService pool, DatasetToLoad d, 
+        Predicate<DatasetToLoad> load, CountDownLatch nRemaining) {
+        try {
+            pool.execute(() -> {
+                try {
+                    if (!isInterrupted()) 
+                        load.test(d);
+                } catch (Throwable t) {
+                    String2.log(String2.ERROR + " in LoadDatasets while loading datasetID=" + 
+                        d.datasetID + ":\n" + MustBe.throwableToString(t));
+                } finally {
+                    synchronized (publishLock) {
+                        for (DatasetToLoad dependent : d.dependents) 
+                            if (--dependent.nWaitingFor == 0)
+                                submitLoad(pool, dependent, load, nRemaining);
+                    }
+                    nRemaining.countDown(); //after submitting its dependents
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //the pool was shut down because this thread was interrupted
+        }
+    }
+
+    /**
+     * This loads one dataset and puts it in place, 
+     * or, if it fails to load, removes the old version (if any).
+     * This is thread-safe: the changes to erddap are made while synchronized on publishLock.
+     *
+     * @param d the dataset to be loaded
+     * @param changedDatasetIDs the datasetID is added to this 
+     * @param failedSB if the dataset fails to load, the datasetID is added to this 
+     * @return false if this thread was interrupted (then nothing was changed)
+     */
+    private boolean loadDataset(DatasetToLoad d, StringArray changedDatasetIDs, 
+        StringBuilder failedSB) {
+
+        String tId = d.datasetID;
+        String startError = "datasets.xml error on line #";
+        String change = "";
+        EDD dataset = null, oldDataset = null;
+        boolean oldCatInfoRemoved = false;
+        long startMillis = System.currentTimeMillis();
+        long timeToLoadThisDataset = -1;
+        EDStatic.cldDatasets.put(tId, new long[]{d.nTry, startMillis});
+        try {
+            dataset = d.fromXml(erddap);
+            timeToLoadThisDataset = System.currentTimeMillis() - startMillis;
+
+            //do several things in quick succession...
+            synchronized (publishLock) {
+
+                //check for interruption right before making changes to Erddap
+                if (isInterrupted()) { //this is a likely place to catch interruption
+                    EDStatic.cldDatasets.remove(tId);
+                    return false;
+                }
+
+                //was there a dataset with the same datasetID?
+                oldDataset = erddap.gridDatasetHashMap.get(tId);
+                if (oldDataset == null)
+                    oldDataset = erddap.tableDatasetHashMap.get(tId);
+
+                //if oldDataset existed, remove its info from categoryInfo
+                //(check now, before put dataset in place, in case EDDGrid <--> EDDTable)
+                if (oldDataset != null) {
+                    addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
+                    oldCatInfoRemoved = true;
+                }
+
+                //put dataset in place
+                //(hashMap.put atomically replaces old version with new)
+                if ((oldDataset == null || oldDataset instanceof EDDGrid) &&
+                                              dataset instanceof EDDGrid eddGrid) {
+                    erddap.gridDatasetHashMap.put(tId, eddGrid);  //was/is grid
+
+                } else if ((oldDataset == null || oldDataset instanceof EDDTable) &&
+                                                     dataset instanceof EDDTable eddTable) {
+                    erddap.tableDatasetHashMap.put(tId, eddTable); //was/is table 
+
+                } else if (dataset instanceof EDDGrid eddGrid) {
+                    if (oldDataset != null)
+                        erddap.tableDatasetHashMap.remove(tId);   //was table
+                    erddap.gridDatasetHashMap.put(tId, eddGrid);  //now grid
+
+                } else if (dataset instanceof EDDTable eddTable) {
+                    if (oldDataset != null)
+                        erddap.gridDatasetHashMap.remove(tId);     //was grid
+                    erddap.tableDatasetHashMap.put(tId, eddTable); //now table
+                }
+
+                //add new info to categoryInfo
+                addRemoveDatasetInfo(ADD, erddap.categoryInfo, dataset); 
+            }
+
+            //clear the dataset's cache 
+            //since axis values may have changed and "last" may have changed
+            File2.deleteAllFiles(dataset.cacheDirectory());                           
+            ResponseCache.removeDirectory(dataset.cacheDirectory());
+            WmsTileCache.removeDirectory(dataset.cacheDirectory());
+            if (dataset instanceof EDDGrid)
+                WmsTileCache.requestPreseed(tId); //after the cache is cleared
+       
+            change = dataset.changed(oldDataset);
+            if (change.length() == 0 && dataset instanceof EDDTable)
+                change = "The dataset was reloaded.";
+
+        } catch (Throwable t) {
+            dataset = null;
+            if (timeToLoadThisDataset < 0)
+                timeToLoadThisDataset = System.currentTimeMillis() - startMillis;
+
+            synchronized (publishLock) {
+                //check for interruption right before making changes to Erddap
+                if (isInterrupted()) //this is a likely place to catch interruption
+                    return false;
+
+                //actually remove old dataset (if any existed)
+                EDD tDataset = erddap.gridDatasetHashMap.remove(tId); //always ensure it was removed
+                if (tDataset == null)
+                    tDataset = erddap.tableDatasetHashMap.remove(tId);
+                if (oldDataset == null)
+                    oldDataset = tDataset;
+
+                //if oldDataset existed, remove it from categoryInfo
+                if (oldDataset != null && !oldCatInfoRemoved)
+                    addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
+
+                String tError = startError + d.lineNumber + "\n" + 
+                    "While trying to load datasetID=" + tId + " (after " +
+                        timeToLoadThisDataset + " ms)\n" +
+                    MustBe.throwableToString(t);
+                String2.log(tError);
+                warningsFromLoadDatasets.append(tError + "\n\n");
+                failedSB.append(tId + ", ");
+
+                //change      (if oldDataset=null and new one failed to load, no change)
+                if (oldDataset != null)  
+                    change = tError;
+            }
+        }
+        if (verbose) String2.log("change=" + change);
+        EDStatic.cldDatasets.remove(tId);
+
+        synchronized (publishLock) {
+            String2.distributeTime(timeToLoadThisDataset, EDStatic.datasetLoadTimesDistribution24);
+            String2.distributeTime(timeToLoadThisDataset, EDStatic.datasetLoadTimesDistributionTotal);
+            datasetLoadTimes.put(tId, new long[]{timeToLoadThisDataset, dataset == null? 1 : 0});
+
+            //whether succeeded (new or swapped in) or failed (removed), it was changed
+            changedDatasetIDs.add(tId);
+            if (System.currentTimeMillis() - lastLuceneUpdate >
+                MAX_MILLIS_BEFORE_LUCENE_UPDATE) {
+                updateLucene(erddap, changedDatasetIDs);
+                lastLuceneUpdate = System.currentTimeMillis();
+            }
+        }
+
+        //trigger subscription and dataset.onChange actions (after new dataset is in place)
+        EDD cooDataset = dataset == null? oldDataset : dataset; //currentOrOld, may be null
+        tryToDoActions(erddap, tId, cooDataset, 
+            startError + d.lineNumber + " with Subscriptions",
+            change);
+        return true;
+    }
+
+    /**
+     * This returns a summary of the dataset load times (for status.html): 
+     * the slowest datasets, based on the most recent load of each dataset.
+     */
+    public static String statusString() {
+        ArrayList<Map.Entry<String, long[]>> list = new ArrayList(datasetLoadTimes.entrySet());
+        list.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        int n = Math.min(10, list.size());
+        StringBuilder sb = new StringBuilder(
+            "LoadDatasets: nLoadDatasetsThreads=" + EDStatic.nLoadDatasetsThreads + 
+            "  The slowest datasets to load (most recent load of each dataset):" +
+            (n == 0? " (none yet)" : ""));
+        for (int i = 0; i < n; i++) {
+            Map.Entry<String, long[]> entry = list.get(i);
+            sb.append("\n  " + String2.left(entry.getKey(), 40) + 
+                String2.right(entry.getValue()[0] + " ms", 12) +
+                (entry.getValue()[1] == 1? " (failed)" : ""));
+        }
+        return sb.toString();
+    }
+
     /**
      * If change is something, this tries to do the actions /notify the subscribers
      * to this dataset.
@@ -1407,8 +1806,24 @@ public class LoadDatasets extends Thread {
      */
     public static void updateLucene(Erddap erddap, StringArray datasetIDs) {
 
-        //update dataset's Document in Lucene Index
+        //update the original search engine's index
         int nDatasetIDs = datasetIDs.size();
+        if (!EDStatic.useLuceneSearchEngine && nDatasetIDs > 0) {
+            long tTime = System.currentTimeMillis();
+            for (int idi = 0; idi < nDatasetIDs; idi++) {
+                String tDatasetID = datasetIDs.get(idi); 
+                EDD edd = erddap.gridDatasetHashMap.get(tDatasetID);
+                if (edd == null) 
+                    edd = erddap.tableDatasetHashMap.get(tDatasetID);
+                if (edd == null) 
+                     EDStatic.originalSearchIndex.remove(tDatasetID);
+                else EDStatic.originalSearchIndex.add(tDatasetID, edd.searchBytes());
+            }
+            if (verbose) String2.log("originalSearchIndex updated nChanged=" + nDatasetIDs + 
+                " time=" + (System.currentTimeMillis() - tTime) + "ms");
+        }
+
+        //update dataset's Document in Lucene Index
         if (EDStatic.useLuceneSearchEngine && nDatasetIDs > 0) {
 
             try {
@@ -1528,8 +1943,11 @@ public class LoadDatasets extends Thread {
         //it was active; finish removing it
         //do in quick succession...   (???synchronized on ?)
         String2.log("*** unloading datasetID=" + tId);
+        datasetLoadTimes.remove(tId);
         addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldEdd); 
         File2.deleteAllFiles(EDD.cacheDirectory(tId));
+        ResponseCache.removeDirectory(EDD.cacheDirectory(tId));
+        WmsTileCache.removeDirectory(EDD.cacheDirectory(tId));
         changedDatasetIDs.add(tId);
         if (needToUpdateLucene)
             updateLucene(erddap, changedDatasetIDs);
@@ -1676,5 +2094,100 @@ public class LoadDatasets extends Thread {
         }
     }
 
+    /**
+     * This tests makeLoadOrder and loadInOrder with a dependency chain:
+     * each dataset must be loaded exactly once and after the datasets it uses,
+     * and loadInOrder mustn't return until all of them have been loaded.
+     */
+    public static void testLoadOrder() throws Throwable {
+        String2.log("\n*** LoadDatasets.testLoadOrder()");
+        //datasetID, the datasetIDs it uses (in datasets.xml order). 
+        //chainA loads quickly, so its dependents become ready while the others are being submitted.
+        ArrayList<String[]> spec = new ArrayList();
+        spec.add(new String[]{"chainA"});
+        for (int i = 0; i < 30; i++)
+            spec.add(new String[]{"ind" + i});
+        spec.add(new String[]{"chainD", "chainC", "ind5"});
+        spec.add(new String[]{"chainB", "chainA"});
+        spec.add(new String[]{"chainC", "chainB"});
+        spec.add(new String[]{"cycleP", "cycleQ"});
+        spec.add(new String[]{"cycleQ", "cycleP"});
+
+        for (int nThreads : new int[]{1, 2, 4, 8}) {
+            for (int rep = 0; rep < 20; rep++) {
+                LoadDatasets ld = new LoadDatasets(null, ".*", null, false);
+                ArrayList<DatasetToLoad> toLoad = new ArrayList();
+                for (int i = 0; i < spec.size(); i++) {
+                    String ids[] = spec.get(i);
+                    toLoad.add(new DatasetToLoad(ids[0], "EDDGridFromErddap", "", i, i + 1, 
+                        new HashSet(Arrays.asList(ids).subList(1, ids.length))));
+                }
+
+                ConcurrentHashMap<String, Integer> nLoads = new ConcurrentHashMap();
+                Set<String> done = ConcurrentHashMap.newKeySet();
+                StringBuffer errors = new StringBuffer();
+                boolean result = ld.loadInOrder(ld.makeLoadOrder(toLoad), nThreads, d -> {
+                    if (!d.datasetID.startsWith("cycle")) {
+                        for (String sourceID : d.localSourceIDs)
+                            if (!done.contains(sourceID))
+                                errors.append(d.datasetID + " was loaded before " + sourceID + ".\n");
+                    }
+                    nLoads.merge(d.datasetID, 1, Integer::sum);
+                    if (d.datasetID.startsWith("ind"))
+                        Math2.sleep(1);
+                    done.add(d.datasetID);
+                    return true;
+                });
+                String msg = "nThreads=" + nThreads + " rep=" + rep;
+                Test.ensureTrue(result, msg);
+                Test.ensureEqual(errors.toString(), "", msg);
+                for (String ids[] : spec) 
+                    Test.ensureEqual(nLoads.get(ids[0]), Integer.valueOf(1), msg + " datasetID=" + ids[0]);
+                Test.ensureTrue(ld.warningsFromLoadDatasets.indexOf("cycleP, cycleQ") > 0, 
+                    msg + "\n" + ld.warningsFromLoadDatasets);
+            }
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ LoadDatasets.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) testLoadOrder();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
 
 }
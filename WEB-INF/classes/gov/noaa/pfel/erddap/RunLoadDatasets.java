@@ -108,6 +108,8 @@ public class RunLoadDatasets extends Thread {
                 String2.log( 
                     nPublicFiles + " files remain in " + EDStatic.fullPublicDirectory + "\n" +
                     nCacheFiles + " files remain in " + EDStatic.fullCacheDirectory + " and subdirectories.");
+                //then delete the least recently made files if the cache is over cacheMaxGB
+                ResponseCache.pruneDisk(EDStatic.fullCacheDirectory); //won't throw exception
 
                 //start a new loadDatasets thread
                 lastMajorLoadDatasetsStartTimeMillis = System.currentTimeMillis();
@@ -2904,6 +2904,49 @@ public abstract class EDD {
             EDStatic.queryErrorAr[language] + MessageFormat.format(EDStatic.queryErrorFileTypeAr[language], fileTypeName)));
     }
 
+    /**
+     * This returns a canonical form of a userDapQuery, so that requests which
+     * only differ in percent-encoding or in the order of the constraints
+     * get the same suggestFileName (and so reuse the same cached file).
+     * Each part is percent-decoded. The first part (the variables) is unchanged.
+     * The other parts without '(' (constraints and .graphics settings, 
+     * whose order doesn't matter) are sorted. 
+     * Then the parts with '(' (e.g., orderBy(...), distinct(), regex constraints)
+     * are added, in their original order.
+     *
+     * @param userDapQuery the part of the user's request after the '?', still percent-encoded.
+     * @return the canonical query ("" if userDapQuery is null)
+     */
+    public static String canonicalQuery(String userDapQuery) {
+        if (userDapQuery == null || userDapQuery.length() == 0)
+            return "";
+        String parts[] = String2.splitNoTrim(userDapQuery, '&'); //still encoded, so & in a value is %26
+        StringArray sortable = new StringArray();
+        StringArray ordered = new StringArray();
+        for (int i = 1; i < parts.length; i++) {
+            String part = canonicalQueryPart(parts[i]);
+            if (part.indexOf('(') >= 0)
+                 ordered.add(part);
+            else sortable.add(part);
+        }
+        sortable.sort();
+        StringBuilder sb = new StringBuilder(canonicalQueryPart(parts[0]));
+        for (int i = 0; i < sortable.size(); i++)
+            sb.append('&').append(sortable.get(i));
+        for (int i = 0; i < ordered.size(); i++)
+            sb.append('&').append(ordered.get(i));
+        return sb.toString();
+    }
+
+    /** This percent-decodes one part of a userDapQuery (or returns it unchanged if trouble). */
+    private static String canonicalQueryPart(String part) {
+        try {
+            return SSR.percentDecode(part);
+        } catch (Exception e) {
+            return part; //shouldn't happen
+        }
+    }
+
     /**
      * This returns a suggested fileName (no dir or extension).
      * It doesn't add a random number, so will return the same results 
@@ -2918,12 +2961,9 @@ public abstract class EDD {
      */
     public String suggestFileName(String loggedInAs, String userDapQuery, String fileTypeName) {
 
-        //decode userDapQuery to a canonical form to avoid slight differences in percent-encoding 
-        try {
-            userDapQuery = SSR.percentDecode(userDapQuery);
-        } catch (Exception e) {
-            //shouldn't happen
-        }
+        //convert userDapQuery to a canonical form to avoid slight differences 
+        //in percent-encoding and in the order of the constraints
+        userDapQuery = canonicalQuery(userDapQuery);
 
         if (".fgdc".equals(fileTypeName))     return datasetID + fgdcSuffix;    //without trailing .xml
         if (".iso19115".equals(fileTypeName)) return datasetID + iso19115Suffix;//without trailing .xml
@@ -13167,7 +13207,7 @@ if ((lineNumber % 1000) == 0) break;
      * @return a more limited tnThreads based on currently available memory.
      */
     public static int adjustNThreads(int tnThreads) {
-        return adjustNThreads(tnThreads, Math2.getMemoryInUse(), Math2.maxMemory);
+        return adjustNThreads(tnThreads, Math2.getTotalMemoryInUse(), Math2.maxMemory); //includes off-heap memory
     }
 
     /**
@@ -13175,7 +13215,7 @@ if ((lineNumber % 1000) == 0) break;
 
      * @param tnThreads the number of threads to use if there is tons of memory available.
      *   It should initially be 1..someReasonableNumber (e.g., 5).
-     * @param memoryInUse from Math2.getMemoryInUse()
+     * @param memoryInUse from Math2.getTotalMemoryInUse() (heap + off-heap)
      * @param maxMemory from Math2.maxMemory
      * @return a more limited tnThreads based on currently available memory.
      */
@@ -13248,6 +13288,27 @@ if ((lineNumber % 1000) == 0) break;
         Test.ensureEqual(adjustNThreads( 3, 6000L * Math2.BytesPerMB, 10000L * Math2.BytesPerMB),  1, "m");  //120% of maxMemory/2 is inUse 
     }
 
+    /**
+     * This tests canonicalQuery.
+     * @throws a RuntimeException if trouble
+     */
+    public static void testCanonicalQuery() {
+        Test.ensureEqual(canonicalQuery(null), "", "");
+        Test.ensureEqual(canonicalQuery(""), "", "");
+        Test.ensureEqual(canonicalQuery("sst[(last)][0:10][0:10]"), "sst[(last)][0:10][0:10]", "");
+
+        //constraint order and percent-encoding don't matter
+        String expected = "time,sst&station=\"a&b\"&time>=2020-01-01&orderBy(\"time\")&distinct()";
+        Test.ensureEqual(canonicalQuery(
+            "time,sst&time>=2020-01-01&station=%22a%26b%22&orderBy(%22time%22)&distinct()"), expected, "");
+        Test.ensureEqual(canonicalQuery(
+            "time%2Csst&orderBy(\"time\")&station=%22a%26b%22&distinct()&time%3E=2020-01-01"), expected, "");
+
+        //but the order of the variables and of the filters does
+        Test.ensureEqual(canonicalQuery("sst,time&distinct()&orderBy(%22time%22)"), 
+            "sst,time&distinct()&orderBy(\"time\")", "");
+    }
+
     /**
      * This runs all of the interactive or not interactive tests for this class.
      *
@@ -13262,7 +13323,7 @@ if ((lineNumber % 1000) == 0) break;
     public static void test(StringBuilder errorSB, boolean interactive, 
         boolean doSlowTestsToo, int firstTest, int lastTest) {
         if (lastTest < 0)
-            lastTest = interactive? -1 : 4;
+            lastTest = interactive? -1 : 5;
         String msg = "\n^^^ EDD.test(" + interactive + ") test=";
 
         for (int test = firstTest; test <= lastTest; test++) {
@@ -13279,6 +13340,7 @@ if ((lineNumber % 1000) == 0) break;
                     if (test ==  2) testAddMvFvAttsIfNeeded();
                     if (test ==  3) testAddFillValueAttributes();
                     if (test ==  4) testAdjustNThreads();
+                    if (test ==  5) testCanonicalQuery();
                 }
 
                 String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
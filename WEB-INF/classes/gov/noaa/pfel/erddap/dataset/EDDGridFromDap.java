@@ -3380,37 +3380,46 @@ EDStatic.endBodyHtml(language, EDStatic.erddapUrl((String)null, language), (Stri
         //just comment out to work on some other test
 
         //******************************************** test GridDataRandomAccessor
-        //set up GridDataRandomAccessor
-        GridDataAccessor gda = new GridDataAccessor(language, gridDataset, "", userDapQuery, true, true); //rowMajor toNaN
-        GridDataRandomAccessor gdra = new GridDataRandomAccessor(gda);
-        //maka a new rowMajor gda and test if same data
-        gda = new GridDataAccessor(language, gridDataset, "", userDapQuery, true, true); //rowMajor toNaN
-        PAOne gdaPAOne  = new PAOne(gda.dataVariables()[0].sourceDataPAType());
-        PAOne gdraPAOne = new PAOne(gdra.dataPAType(0));
-        int current[] = gda.totalIndex().getCurrent(); //the internal object that changes
-        int count = 0;
-        while (gda.increment()) {
-            //String2.log(String2.toCSSVString(current));  //to prove that access is rowMajor
-            Test.ensureEqual(gda.getDataValueAsPAOne(0, gdaPAOne), 
-                            gdra.getDataValueAsPAOne(current, 0, gdraPAOne), "count=" + count);
-            count++;
-        }
-        String2.log("Test of GridDataRandomAccess rowMajor succeeded. count=" + count);
-        //maka a new columnMajor gda and test if same data
-        gda = new GridDataAccessor(language, gridDataset, "", userDapQuery, false, true); //rowMajor toNaN
-        gdaPAOne  = new PAOne(gda.dataVariables()[0].sourceDataPAType());
-        gdraPAOne = new PAOne(gdra.dataPAType(0));
-        current = gda.totalIndex().getCurrent(); //the internal object that changes
-        count = 0;
-        while (gda.increment()) {
-            //String2.log(String2.toCSSVString(current)); //to prove that access is columnMajor
-            Test.ensureEqual(gda.getDataValueAsPAOne(0, gdaPAOne), 
-                            gdra.getDataValueAsPAOne(current, 0, gdraPAOne), "count=" + count);
-            count++;
+        //in memory (mode=0) and in memory-mapped files (mode=1)
+        int oInMemoryMB = EDStatic.gridRandomAccessInMemoryMB;
+        try {
+            for (int mode = 0; mode < 2; mode++) {
+                EDStatic.gridRandomAccessInMemoryMB = mode == 0? 1000 : 0;
+                //set up GridDataRandomAccessor
+                GridDataAccessor gda = new GridDataAccessor(language, gridDataset, "", userDapQuery, true, true); //rowMajor toNaN
+                GridDataRandomAccessor gdra = new GridDataRandomAccessor(gda);
+                //maka a new rowMajor gda and test if same data
+                gda = new GridDataAccessor(language, gridDataset, "", userDapQuery, true, true); //rowMajor toNaN
+                PAOne gdaPAOne  = new PAOne(gda.dataVariables()[0].sourceDataPAType());
+                PAOne gdraPAOne = new PAOne(gdra.dataPAType(0));
+                int current[] = gda.totalIndex().getCurrent(); //the internal object that changes
+                int count = 0;
+                while (gda.increment()) {
+                    //String2.log(String2.toCSSVString(current));  //to prove that access is rowMajor
+                    Test.ensureEqual(gda.getDataValueAsPAOne(0, gdaPAOne), 
+                                    gdra.getDataValueAsPAOne(current, 0, gdraPAOne), "count=" + count);
+                    count++;
+                }
+                String2.log("Test of GridDataRandomAccess mode=" + mode + " rowMajor succeeded. count=" + count);
+                //maka a new columnMajor gda and test if same data
+                gda = new GridDataAccessor(language, gridDataset, "", userDapQuery, false, true); //rowMajor toNaN
+                gdaPAOne  = new PAOne(gda.dataVariables()[0].sourceDataPAType());
+                gdraPAOne = new PAOne(gdra.dataPAType(0));
+                current = gda.totalIndex().getCurrent(); //the internal object that changes
+                count = 0;
+                while (gda.increment()) {
+                    //String2.log(String2.toCSSVString(current)); //to prove that access is columnMajor
+                    Test.ensureEqual(gda.getDataValueAsPAOne(0, gdaPAOne), 
+                                    gdra.getDataValueAsPAOne(current, 0, gdraPAOne), "count=" + count);
+                    count++;
+                }
+                String2.log("Test of GridDataRandomAccess mode=" + mode + " columnMajor succeeded. count=" + count);
+                gdra.releaseResources();
+                gda.releaseResources();
+            }
+        } finally {
+            EDStatic.gridRandomAccessInMemoryMB = oInMemoryMB;
         }
-        String2.log("Test of GridDataRandomAccess columnMajor succeeded. count=" + count);
-        gdra.releaseResources();
-        gda.releaseResources();
 
 
         //********************************************** test getting grid data
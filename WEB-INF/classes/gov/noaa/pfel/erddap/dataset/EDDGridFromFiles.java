@@ -23,6 +23,7 @@ import com.cohort.util.String2;
 import com.cohort.util.Test;
 import com.cohort.util.Units2;
 
+import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
 import gov.noaa.pfel.coastwatch.util.RegexFilenameFilter;
@@ -33,6 +34,7 @@ import gov.noaa.pfel.coastwatch.util.WatchDirectory;
 import gov.noaa.pfel.erddap.Erddap;
 import gov.noaa.pfel.erddap.util.EDStatic;
 import gov.noaa.pfel.erddap.util.ThreadedWorkManager;
+import gov.noaa.pfel.erddap.util.WmsTileCache;
 import gov.noaa.pfel.erddap.variable.*;
 
 import java.io.FileNotFoundException;
@@ -153,6 +155,9 @@ public abstract class EDDGridFromFiles extends EDDGrid{
     /** When threshold size is reached, prune cache to fraction*threshold. */
     protected double cacheFraction = FileVisitorDNLS.PRUNE_CACHE_DEFAULT_FRACTION; 
 
+    /** The overviews of the files (see GridOverviews). null if inactive (the default). */
+    protected volatile GridOverviews overviews = null;
+
     //a system for deriving the source axis values without opening the file
     protected String sourceAxisValuesDataType;
     protected String sourceAxisValuesExtractRegex;
@@ -200,6 +205,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         String tCacheFromUrl = null;
         int tCacheSizeGB = -1;
         String tCachePartialPathRegex = null;
+        int tnOverviewLevels = 0;
 
         //process the tags
         String startOfTags = xmlReader.allTags();
@@ -271,6 +277,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
             else if (localTags.equals("</cacheSizeGB>")) tCacheSizeGB = String2.parseInt(content); 
             else if (localTags.equals( "<cachePartialPathRegex>")) {}
             else if (localTags.equals("</cachePartialPathRegex>")) tCachePartialPathRegex = content; 
+            else if (localTags.equals( "<nOverviewLevels>")) {}
+            else if (localTags.equals("</nOverviewLevels>")) tnOverviewLevels = String2.parseInt(content); 
             else xmlReader.unexpectedTagException();
         }
         int nav = tAxisVariables.size();
@@ -285,8 +293,9 @@ public abstract class EDDGridFromFiles extends EDDGrid{
 
         if (tType == null)
             tType = "";
+        EDDGridFromFiles result;
         if (tType.equals("EDDGridFromAudioFiles")) 
-            return new EDDGridFromAudioFiles(tDatasetID, 
+            result = new EDDGridFromAudioFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
                 tOnChange, tFgdcFile, tIso19115File,
                 tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -299,7 +308,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                 tnThreads, tDimensionValuesInMemory, 
                 tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
         else if (tType.equals("EDDGridFromNcFiles")) 
-            return new EDDGridFromNcFiles(tDatasetID, 
+            result = new EDDGridFromNcFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
                 tOnChange, tFgdcFile, tIso19115File,
                 tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -312,7 +321,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                 tnThreads, tDimensionValuesInMemory, 
                 tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
         else if (tType.equals("EDDGridFromNcFilesUnpacked")) 
-            return new EDDGridFromNcFilesUnpacked(tDatasetID, 
+            result = new EDDGridFromNcFilesUnpacked(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
                 tOnChange, tFgdcFile, tIso19115File,
                 tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -325,7 +334,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                 tnThreads, tDimensionValuesInMemory, 
                 tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
         else if (tType.equals("EDDGridFromMergeIRFiles")) 
-            return new EDDGridFromMergeIRFiles(tDatasetID, 
+            result = new EDDGridFromMergeIRFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
                 tOnChange, tFgdcFile, tIso19115File,
                 tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -340,6 +349,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         else throw new Exception("type=\"" + tType + 
             "\" needs to be added to EDDGridFromFiles.fromXml at end.");
 
+        result.setNOverviewLevels(tnOverviewLevels);
+        return result;
     }
 
     /**
@@ -1594,6 +1605,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
 
         //for each changed file
         int nChanges = 0; //BadFiles or FileTable
+        double changedMin =  Double.MAX_VALUE; //the range of axis0 source values in new/changed files
+        double changedMax = -Double.MAX_VALUE;
         int nav = sourceAxisAttributes.length;
         int ndv = sourceDataAttributes.length;
         for (int evi = 0; evi < nEvents; evi++) {
@@ -1604,6 +1617,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
             String fullName = contexts.get(evi);
             String dirName = File2.getDirectory(fullName);
             String fileName = File2.getNameAndExtension(fullName);  //matched to fileNameRegex above
+            NcHelper.invalidateFile(fullName); //close its stale NetcdfFile handles
 
             //dirIndex   (dirName may not be in dirList!)
             int dirIndex = dirList.indexOf(dirName); //linear search, but should be short list
@@ -1690,6 +1704,10 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                     ftMax.set(fileListPo, tSourceAxisValues[0].getNiceDouble(tnValues - 1));
                     ftCsvValues.set(fileListPo, tSourceAxisValues[0].toString());
                     //ftStartIndex is updated when file is saved                    
+                    if (overviews != null)
+                        overviews.submit(dirName, fileName, ftLastMod.get(fileListPo), tnValues);
+                    changedMin = Math.min(changedMin, ftMin.get(fileListPo));
+                    changedMax = Math.max(changedMax, ftMax.get(fileListPo));
 
                 } else {
                     //File exists and is bad.
@@ -1784,6 +1802,20 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                 fileTable = tFileTable; 
             }
 
+            //delete the cached WMS images with the new/changed data
+            //(if axis0 is time, just the images for those times)
+            if (changedMin <= changedMax) {
+                if (timeIndex == 0 && av0 instanceof EDVTimeStampGridAxis tsav0) {
+                    double t1 = tsav0.sourceTimeToEpochSeconds(changedMin);
+                    double t2 = tsav0.sourceTimeToEpochSeconds(changedMax);
+                    WmsTileCache.invalidate(cacheDirectory(), datasetID, 
+                        Math.min(t1, t2), Math.max(t1, t2));
+                } else {
+                    WmsTileCache.invalidate(cacheDirectory(), datasetID, Double.NaN, Double.NaN);
+                }
+                WmsTileCache.requestPreseed(datasetID); //e.g., for a new latest time
+            }
+
             //after changes all in place
 //Currently, update() doesn't trigger these changes.
 //The problem is that some datasets might update every second, others every day.
@@ -1829,8 +1861,29 @@ public abstract class EDDGridFromFiles extends EDDGrid{
             false); //dirsToo
     }
 
-    /** 
-     * This gets the dirTable (perhaps the private copy) for read-only use. 
+    /**
+     * This sets the number of overview levels (from datasets.xml's &lt;nOverviewLevels&gt;)
+     * and queues the building of the files' missing overviews (see GridOverviews).
+     *
+     * @param tnOverviewLevels 0 (the default) to GridOverviews.MAX_LEVELS.
+     *    0 turns overviews off.
+     */
+    public void setNOverviewLevels(int tnOverviewLevels) {
+        overviews = GridOverviews.make(this, tnOverviewLevels);
+        if (overviews != null)
+            overviews.submitAll();
+    }
+
+    /**
+     * This returns the number of overview levels that are in use (0 if none).
+     */
+    public int nOverviewLevels() {
+        GridOverviews tOverviews = overviews;
+        return tOverviews == null? 0 : tOverviews.nLevels();
+    }
+
+    /**
+     * This gets the dirTable (perhaps the private copy) for read-only use.
      *
      * @throw Throwable if trouble
      */
@@ -2273,6 +2326,14 @@ public abstract class EDDGridFromFiles extends EDDGrid{
     public PrimitiveArray[] getSourceDataFromFile(String tFileDir, String tFileName, 
         EDV tDataVariables[], IntArray tConstraints) throws Throwable {
 
+        //can the request (e.g., with lat and lon strides of 4) be read from an overview?
+        GridOverviews tOverviews = overviews;
+        if (tOverviews != null) {
+            PrimitiveArray pas[] = tOverviews.read(tFileDir, tFileName, tDataVariables, tConstraints);
+            if (pas != null)
+                return pas;
+        }
+
         //if using temporary cache system, ensure file is in cache
         ensureInCache(tFileDir + tFileName); //throws Exception 
         String decompFullName = FileVisitorDNLS.decompressIfNeeded(
@@ -2390,48 +2451,53 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                     //String2.log("!merged tResults[1stDV]=" + results[nav].toString());
                 });
         
-        while (axis0Start <= axis0Stop) {
-            if (Thread.currentThread().isInterrupted()) {
-                if (workManager != null)
-                    workManager.forceShutdown();
-                throw new SimpleException("EDDGridFromFiles.getDataForDapQuery" + 
-                    EDStatic.caughtInterruptedAr[0]);
-            }
+        try {
+            while (axis0Start <= axis0Stop) {
+                if (Thread.currentThread().isInterrupted()) {
+                    if (workManager != null)
+                        workManager.forceShutdown();
+                    throw new SimpleException("EDDGridFromFiles.getDataForDapQuery" + 
+                        EDStatic.caughtInterruptedAr[0]);
+                }
 
-            //find next relevant file
-            ftRow = ftStartIndex.binaryFindLastLE(ftRow, nFiles - 1, PAOne.fromInt(axis0Start));
-            int tNValues = ftNValues.get(ftRow);
-            int tStart = axis0Start - ftStartIndex.get(ftRow);
-            int tStop = tStart;
-            //get as many axis0 values as possible from this file
-            //                    (in this file, if this file had all the remaining values)
-            int lookMax = Math.min(tNValues - 1, axis0Stop - ftStartIndex.get(ftRow));
-            while (tStop + axis0Stride <= lookMax) 
-                tStop += axis0Stride;          
-            //String2.log("!tStart=" + tStart + " stride=" + axis0Stride + " tStop=" + tStop + " tNValues=" + tNValues);
-
-            //set ttConstraints
-            ttConstraints.set(0, tStart);
-            ttConstraints.set(2, tStop);
-            String tFileDir  = dirList.get(ftDirIndex.get(ftRow));
-            String tFileName = ftFileList.get(ftRow);
-            if (reallyVerbose)
-                String2.log("ftRow=" + ftRow + " axis0Start=" + axis0Start +
-                    " local=" + tStart + ":" + axis0Stride + ":" + tStop +
-                    " " + tFileDir + tFileName);
-
-            workManager.addTask(new GetGridFromFileCallable(this,
-                    tFileDir, tFileName, //it calls ensureInCache()
-                   tDataVariables, ttConstraints, ftDirIndex.get(ftRow), ftLastMod.get(ftRow)));
-
-            //set up for next while-iteration
-            axis0Start += (tStop - tStart) + axis0Stride; 
-            ftRow++; //first possible file is next file
-        }
+                //find next relevant file
+                ftRow = ftStartIndex.binaryFindLastLE(ftRow, nFiles - 1, PAOne.fromInt(axis0Start));
+                int tNValues = ftNValues.get(ftRow);
+                int tStart = axis0Start - ftStartIndex.get(ftRow);
+                int tStop = tStart;
+                //get as many axis0 values as possible from this file
+                //                    (in this file, if this file had all the remaining values)
+                int lookMax = Math.min(tNValues - 1, axis0Stop - ftStartIndex.get(ftRow));
+                while (tStop + axis0Stride <= lookMax) 
+                    tStop += axis0Stride;          
+                //String2.log("!tStart=" + tStart + " stride=" + axis0Stride + " tStop=" + tStop + " tNValues=" + tNValues);
+
+                //set ttConstraints
+                ttConstraints.set(0, tStart);
+                ttConstraints.set(2, tStop);
+                String tFileDir  = dirList.get(ftDirIndex.get(ftRow));
+                String tFileName = ftFileList.get(ftRow);
+                if (reallyVerbose)
+                    String2.log("ftRow=" + ftRow + " axis0Start=" + axis0Start +
+                        " local=" + tStart + ":" + axis0Stride + ":" + tStop +
+                        " " + tFileDir + tFileName);
+
+                workManager.addTask(new GetGridFromFileCallable(this,
+                        tFileDir, tFileName, //it calls ensureInCache()
+                       tDataVariables, (IntArray)ttConstraints.clone(), //task may run after ttConstraints changes
+                       ftDirIndex.get(ftRow), ftLastMod.get(ftRow)));
+
+                //set up for next while-iteration
+                axis0Start += (tStop - tStart) + axis0Stride; 
+                ftRow++; //first possible file is next file
+            }
         
-        workManager.finishedEnqueing();
-        // Make sure all of the work has been processed.
-        workManager.processResults();
+            workManager.finishedEnqueing();
+            // Make sure all of the work has been processed.
+            workManager.processResults();
+        } finally {
+            workManager.forceShutdown(); //cancel any unfinished tasks (e.g., if trouble)
+        }
 
         return results;
     }
@@ -32,6 +32,7 @@ import gov.noaa.pfel.coastwatch.util.SSR;
 
 import gov.noaa.pfel.erddap.GenerateDatasetsXml;
 import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.util.GridChunkCache;
 import gov.noaa.pfel.erddap.variable.*;
 
 import java.text.MessageFormat;
@@ -135,7 +136,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
         String getWhat = "globalAttributes";
         String group = "";
         int groupSlashCount = 0;
-        NetcdfFile ncFile = NcHelper.openFile(tFullName);
+        NetcdfFile ncFile = NcHelper.acquireFile(tFullName);
         try {
 
             //This is cognizant of special axis0         
@@ -209,7 +210,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
                 "\nCause: " + MustBe.throwableToShortString(t),
                 t);
         } finally {
-            try {if (ncFile != null) ncFile.close(); } catch (Exception e9) {}
+            NcHelper.releaseFile(ncFile);
         }
     }
 
@@ -233,7 +234,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
         StringArray sourceAxisNames, StringArray sourceDataNames) throws Throwable {
 
         String getWhat = "?";
-        NetcdfFile ncFile = NcHelper.openFile(tFullName);
+        NetcdfFile ncFile = NcHelper.acquireFile(tFullName);
         try {
             PrimitiveArray[] avPa = new PrimitiveArray[sourceAxisNames.size()];
 
@@ -280,7 +281,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
                 "\nCause: " + MustBe.throwableToShortString(t),
                 t);
         } finally {
-            try {if (ncFile != null) ncFile.close(); } catch (Exception e9) {}
+            NcHelper.releaseFile(ncFile);
         }
     }
 
@@ -320,7 +321,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
         int nValues = -1; //not yet calculated
         EDV edv = null;
 
-        NetcdfFile ncFile = NcHelper.openFile(tFullName);
+        NetcdfFile ncFile = NcHelper.acquireFile(tFullName);
         try {
 
             for (int dvi = 0; dvi < ndv; dvi++) {
@@ -348,10 +349,14 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
                     //is it a regular variable?
                     Variable var = ncFile.findVariable(edv.sourceName());  
                     if (var != null) {
-                        String tSel = selection;
-                        if (edv.sourceDataPAType() == PAType.STRING) 
-                            tSel += ",0:" + (var.getShape(var.getRank() - 1) - 1);
-                        paa[dvi] = NcHelper.getPrimitiveArray(var.read(tSel), true, NcHelper.isUnsigned(var));
+                        //try the decoded chunk cache first
+                        paa[dvi] = GridChunkCache.read(tFullName, var, tConstraints);
+                        if (paa[dvi] == null) {
+                            String tSel = selection;
+                            if (edv.sourceDataPAType() == PAType.STRING) 
+                                tSel += ",0:" + (var.getShape(var.getRank() - 1) - 1);
+                            paa[dvi] = NcHelper.getPrimitiveArray(var.read(tSel), true, NcHelper.isUnsigned(var));
+                        }
                         //2020-02-27 WARNING: in netcdf-java 5+, when reading nc3 file,
                         //  variable with _Unsigned="true" behaves in raw way
                         /* 
@@ -407,7 +412,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
                 "[" + selection + "] (start:STOP:stride).");                
             throw t;
         } finally {
-            try {if (ncFile != null) ncFile.close(); } catch (Exception e9) {}
+            NcHelper.releaseFile(ncFile);
         }
     }
 
@@ -2838,7 +2838,7 @@ public abstract class EDDTable extends EDD {
             if (accessibleViaFGDC.length() == 0) {                
                 OutputStream out = outputStreamSource.outputStream(File2.UTF_8);
                 try {
-                    if (!File2.copy(datasetDir() + datasetID + fgdcSuffix + ".xml", out))
+                    if (!ResponseCache.copy(datasetDir() + datasetID + fgdcSuffix + ".xml", out))
                         throw new SimpleException(String2.ERROR + " while transmitting file.");
                 } finally {
                     try {out.close();} catch (Exception e) {} //downloads of e.g., erddap2.css don't work right if not closed. (just if gzip'd?)
@@ -2978,7 +2978,7 @@ public abstract class EDDTable extends EDD {
             if (accessibleViaISO19115.length() == 0) {                
                 OutputStream out = outputStreamSource.outputStream(File2.UTF_8);
                 try {
-                    if (!File2.copy(datasetDir() + datasetID + iso19115Suffix + ".xml", out))
+                    if (!ResponseCache.copy(datasetDir() + datasetID + iso19115Suffix + ".xml", out))
                         throw new SimpleException(String2.ERROR + " while transmitting file.");
                 } finally {
                     try {out.close();} catch (Exception e) {} //downloads of e.g., erddap2.css don't work right if not closed. (just if gzip'd?)
@@ -3191,9 +3191,11 @@ public abstract class EDDTable extends EDD {
         ReentrantLock lock = String2.canonicalLock(cacheFullName);
         if (!lock.tryLock(String2.longTimeoutSeconds, TimeUnit.SECONDS))
             throw new TimeoutException("Timeout waiting for lock on EDDTable .ncHeader cacheFullName.");
+        boolean cached = false;
         try {
 
-            if (File2.isFile(cacheFullName)) { //don't 'touch()'; files for latest data will change
+            cached = File2.isFile(cacheFullName);
+            if (cached) { //don't 'touch()'; files for latest data will change
                 if (verbose) String2.log("  reusing cached " + cacheFullName);
 
             } else if (fileTypeName.equals(".nc") || 
@@ -3326,6 +3328,8 @@ public abstract class EDDTable extends EDD {
         } finally {
             lock.unlock();
         }
+        if (!cached && File2.isFile(cacheFullName))
+            ResponseCache.diskFileAdded(cacheFullName); //and prune the cache if it is too big
 
         //if ncXHeader (.ncHeader, .nc4Header, .ncCFHeader, .ncCFMAHeader), create the underlying .nc file
         if (ncXHeader) {
@@ -3362,7 +3366,7 @@ public abstract class EDDTable extends EDD {
                 ncXHeader? File2.UTF_8 : 
                 fileTypeName.equals(".kml")? File2.UTF_8 : "");
             try {
-                if (!File2.copy(fullName, out)) { 
+                if (!ResponseCache.copy(fullName, out)) { 
                     //outputStream contentType already set,
                     //so I can't go back to html and display error message
                     //note than the message is thrown if user cancels the transmission; so don't email to me
@@ -250,6 +250,7 @@ import com.datastax.driver.core.*;
 
 import java.io.BufferedReader;
 import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -299,6 +300,12 @@ public class EDDTableFromCassandra extends EDDTable{
     protected String columnNameQuotes = "";  // empty string (default) or "
     protected boolean isListDV[]; //true if this dataVariable is a list dataType, e.g., doubleList
 
+    /** The default and maximum number of partition queries which are executed at once. */
+    public final static int DEFAULT_MAX_CONCURRENT_QUERIES = 4;
+    public final static int MAX_MAX_CONCURRENT_QUERIES = 100;
+    protected int maxConcurrentQueries = DEFAULT_MAX_CONCURRENT_QUERIES; 
+    protected int fetchSize = -1; //-1 = use the session's fetchSize (see connectionProperty fetchSize)
+
     //public static String testUser = "postgres";
     //public static String testUrl = "jdbc:postgresql://localhost:5432/mydatabase";
     //public static String testDriver = "org.postgresql.Driver";
@@ -353,6 +360,8 @@ public class EDDTableFromCassandra extends EDDTable{
         String tDefaultGraphQuery = null;
         String tAddVariablesWhere = null;
         String tPartitionKeyCSV = null;
+        int tMaxConcurrentQueries = DEFAULT_MAX_CONCURRENT_QUERIES;
+        int tFetchSize = -1;
 
         //process the tags
         String startOfTags = xmlReader.allTags();
@@ -398,6 +407,10 @@ public class EDDTableFromCassandra extends EDDTable{
             else if (localTags.equals("</columnNameQuotes>")) tColumnNameQuotes = content; 
             else if (localTags.equals( "<partitionKeyCSV>")) {}
             else if (localTags.equals("</partitionKeyCSV>")) tPartitionKeyCSV = content; 
+            else if (localTags.equals( "<maxConcurrentQueries>")) {}
+            else if (localTags.equals("</maxConcurrentQueries>")) tMaxConcurrentQueries = String2.parseInt(content); 
+            else if (localTags.equals( "<fetchSize>")) {}
+            else if (localTags.equals("</fetchSize>")) tFetchSize = String2.parseInt(content); 
             else if (localTags.equals( "<sourceNeedsExpandedFP_EQ>")) {}
             else if (localTags.equals("</sourceNeedsExpandedFP_EQ>")) tSourceNeedsExpandedFP_EQ = String2.parseBoolean(content); 
             else if (localTags.equals( "<onChange>")) {}
@@ -436,7 +449,8 @@ public class EDDTableFromCassandra extends EDDTable{
                 tIndexColumnSourceNames,
                 tPartitionKeyCSV,
                 tMaxRequestFraction, tColumnNameQuotes,
-                tSourceNeedsExpandedFP_EQ);
+                tSourceNeedsExpandedFP_EQ,
+                tMaxConcurrentQueries, tFetchSize);
     }
 
 
@@ -461,7 +475,8 @@ public class EDDTableFromCassandra extends EDDTable{
         String tIndexColumnSourceNames,
         String tPartitionKeyCSV,
         double tMaxRequestFraction, String tColumnNameQuotes,
-        boolean tSourceNeedsExpandedFP_EQ
+        boolean tSourceNeedsExpandedFP_EQ,
+        int tMaxConcurrentQueries, int tFetchSize
         ) throws Throwable {
 
         if (verbose) String2.log(
@@ -561,6 +576,12 @@ public class EDDTableFromCassandra extends EDDTable{
               "".equals(columnNameQuotes), 
             "<columnNameQuotes> must be \" or an empty string (the default).");
 
+        maxConcurrentQueries = tMaxConcurrentQueries == Integer.MAX_VALUE? 
+            DEFAULT_MAX_CONCURRENT_QUERIES : tMaxConcurrentQueries;
+        Test.ensureBetween(maxConcurrentQueries, 1, MAX_MAX_CONCURRENT_QUERIES, 
+            "Invalid maxConcurrentQueries");
+        fetchSize = tFetchSize == Integer.MAX_VALUE || tFetchSize <= 0? -1 : tFetchSize;
+
         //cql can support everything except != and regex constraints
         //PARTIAL because CQL treats > like >=, and < like <=
         //  and because constraints on list variables are non-sensical until expanded in ERDDAP.
@@ -1315,89 +1336,43 @@ public class EDDTableFromCassandra extends EDDTable{
         Table table = makeEmptySourceTable(rvToResultsEDV, triggerNRows + 1000); 
 
         //make a call to Cassandra for each row in pkdTable 
-        //(each relevant distinct combination of partitionKey values)
+        //(each relevant distinct combination of partitionKey values).
+        //Up to maxConcurrentQueries queries are executed asynchronously (at once), 
+        //but the results are processed in pkdRow order, so the chunks are still in sorted order.
         int stats[] = new int[4]; //all 0's
-        for (int pkdRow = 0; pkdRow < pkdTableNRows; pkdRow++) { //chunks will be in sorted order, yea!
+        long latencyStats[] = new long[2]; //sum and max of the partition queries' latency (ms)
+        ArrayDeque<PartitionQuery> inFlight = new ArrayDeque<>();
+        int nextPkdRow = 0; //the next pkdRow to be queried
+        try {
+            for (int pkdRow = 0; pkdRow < pkdTableNRows; pkdRow++) { //chunks will be in sorted order, yea!
 
-            if (Thread.currentThread().isInterrupted())
-                throw new SimpleException("EDDTableFromCassandra.getDataForDapQuery" + 
-                    EDStatic.caughtInterruptedAr[0]);
-        
-            //Make the BoundStatement
-            //***!!! This method avoids CQL/SQL Injection Vulnerability !!!***
-            //(see https://en.wikipedia.org/wiki/SQL_injection) by using
-            //preparedStatements (so String values are properly escaped and
-            //numbers are assured to be numbers).
-            //*** Plus, the statement is reused many times (so Prepared is recommended).
-            BoundStatement boundStatement = new BoundStatement(preparedStatement);
-
-            //assign values to nPartitionKeys constraints then nCon constraints
-            StringBuilder requestSB = reallyVerbose? 
-                new StringBuilder(">> statement: pkdRow=" + pkdRow + ", ") : 
-                null;
-            for (int i = 0; i < nPartitionKeys + nCon; i++) { 
-                boolean usePK = i < nPartitionKeys;
-                int coni = i - nPartitionKeys; //which con to use: only used if not !usePK
-
-                EDV edv = usePK? partitionKeyEDV[i] : conEDV[coni];
-                PrimitiveArray pa = usePK? pkdPA[i] : null;
-                PAType tPAType = edv.sourceDataPAType();
-                String conVal = usePK? null : constraintValues.get(coni);
-                if (requestSB != null)
-                    requestSB.append(edv.sourceName() + " is " + 
-                        (usePK? pa.getDouble(pkdRow) : conVal) + ", ");
-
-                //handle special cases first
-                if (edv instanceof EDVTimeStamp) {
-                    boundStatement.setTimestamp(i, //partition key value won't be nan/null                
-                        new Date(Math.round(
-                            (usePK? pa.getDouble(pkdRow) : String2.parseDouble(conVal)) 
-                            * 1000))); //round to nearest milli
-
-                } else if (edv.isBoolean()) {
-                    boundStatement.setBool(i, 
-                        (usePK? pa.getInt(pkdRow) == 1 : String2.parseBoolean(conVal)));
-                } else if (tPAType == PAType.DOUBLE ||
-                           tPAType == PAType.ULONG) {  //trouble: loss of precision
-                    boundStatement.setDouble(i, 
-                        (usePK? pa.getDouble(pkdRow) : String2.parseDouble(conVal)));
-                } else if (tPAType == PAType.FLOAT) {
-                    boundStatement.setFloat(i, 
-                        (usePK? pa.getFloat(pkdRow) : String2.parseFloat(conVal)));
-                } else if (tPAType == PAType.LONG ||
-                           tPAType == PAType.UINT) {  //???
-                    boundStatement.setLong(i, 
-                        (usePK? pa.getLong(pkdRow) : String2.parseLong(conVal)));
-                } else if (tPAType == PAType.INT  ||    
-                           tPAType == PAType.SHORT  || 
-                           tPAType == PAType.USHORT ||  //???
-                           tPAType == PAType.BYTE   ||
-                           tPAType == PAType.UBYTE) {   //???
-                    boundStatement.setInt(i, 
-                        (usePK? pa.getInt(pkdRow) : String2.parseInt(conVal))); 
-                } else {
-                    String val = usePK? pa.getString(pkdRow) : conVal;
-                    if (tPAType == PAType.STRING)   
-                        boundStatement.setString(i, val);
-                    else if (tPAType == PAType.CHAR)
-                        boundStatement.setString(i, 
-                            val.length() == 0? "\u0000" : val.substring(0, 1)); //FFFF??? 
-                    else throw new RuntimeException(
-                        "Unexpected dataType=" + edv.sourceDataType() + 
-                        "for var=" + edv.destinationName() + ".");            
+                if (Thread.currentThread().isInterrupted())
+                    throw new SimpleException("EDDTableFromCassandra.getDataForDapQuery" + 
+                        EDStatic.caughtInterruptedAr[0]);
+
+                //start more queries
+                while (nextPkdRow < pkdTableNRows && inFlight.size() < maxConcurrentQueries) {
+                    inFlight.add(new PartitionQuery(session, makeBoundStatement(preparedStatement,
+                        nextPkdRow, pkdPA, conEDV, constraintValues)));
+                    nextPkdRow++;
                 }
+
+                //get the data
+                PartitionQuery pq = inFlight.remove();
+                ResultSet rs = pq.future.getUninterruptibly(); //throws the query's exception, if any
+                long latency = pq.latency();
+                latencyStats[0] += latency;
+                latencyStats[1] = Math.max(latencyStats[1], latency);
+                table = getDataForCassandraResultSet(language, loggedInAs, requestUrl, userDapQuery,
+                    resultsDVI, rvToResultsEDV, rs, 
+                    table, tableWriter, stats);
+                if (tableWriter.noMoreDataPlease) 
+                    break;
             }
-            //boundStatement.toString() is useless
-            if (requestSB != null)
-                String2.log(requestSB.toString());
-
-            //get the data
-            //FUTURE: I think this could be parallelized. See EDDTableFromFiles.
-            table = getDataForCassandraQuery(language, loggedInAs, requestUrl, userDapQuery,
-                resultsDVI, rvToResultsEDV, session, boundStatement, 
-                table, tableWriter, stats);
-            if (tableWriter.noMoreDataPlease) 
-                break;
+        } finally {
+            //cancel the queries which won't be used (e.g., after an error or noMoreDataPlease)
+            while (!inFlight.isEmpty())
+                inFlight.remove().future.cancel(true);
         }
 
         //write any data remaining in table
@@ -1416,11 +1391,125 @@ public class EDDTableFromCassandra extends EDDTable{
             pkdTableNRows + "/" + oPkdTableNRows + "=" + fraction + " <= " + 
                 maxRequestFraction +
             " nCassRows=" + stats[1] + " nErddapRows=" + stats[2] + 
-            " nRowsToUser=" + stats[3]);
+            " nRowsToUser=" + stats[3] +
+            "\n  nPartitionQueries=" + stats[0] + " (maxConcurrent=" + maxConcurrentQueries + 
+            (fetchSize > 0? " fetchSize=" + fetchSize : "") + ")" +
+            " partitionQueryLatency avg=" + 
+                (stats[0] == 0? "?" : "" + (latencyStats[0] / stats[0])) + 
+                "ms max=" + latencyStats[1] + "ms");
         tableWriter.finish();
     }
 
 
+    /** 
+     * This holds an asynchronous query for one combination of partition key values.
+     */
+    private static class PartitionQuery {
+        final long startMillis = System.currentTimeMillis();
+        volatile long latency = -1; //ms until the first page of results arrived
+        final ResultSetFuture future;
+
+        PartitionQuery(Session session, Statement statement) {
+            future = session.executeAsync(statement);
+            future.addListener(() -> latency = System.currentTimeMillis() - startMillis, 
+                Runnable::run);
+        }
+
+        /** This returns the latency (ms). Call this after future.get...(). */
+        long latency() {
+            long tLatency = latency;
+            return tLatency >= 0? tLatency : System.currentTimeMillis() - startMillis;
+        }
+    }
+
+    /** 
+     * This makes the BoundStatement for one row of the pkdTable
+     * (one relevant distinct combination of partitionKey values) for getDataForDapQuery.
+     *
+     * @param preparedStatement the preparedStatement with nPartitionKeys then nCon '?' placeholders
+     * @param pkdRow the row in pkdTable
+     * @param pkdPA the pkdTable's columns
+     * @param conEDV the EDV for each constraint
+     * @param constraintValues the value for each constraint
+     * @return the BoundStatement
+     */
+    private BoundStatement makeBoundStatement(PreparedStatement preparedStatement, int pkdRow,
+        PrimitiveArray pkdPA[], EDV conEDV[], StringArray constraintValues) {
+
+        int nCon = conEDV.length;
+
+        //Make the BoundStatement
+        //***!!! This method avoids CQL/SQL Injection Vulnerability !!!***
+        //(see https://en.wikipedia.org/wiki/SQL_injection) by using
+        //preparedStatements (so String values are properly escaped and
+        //numbers are assured to be numbers).
+        //*** Plus, the statement is reused many times (so Prepared is recommended).
+        BoundStatement boundStatement = new BoundStatement(preparedStatement);
+
+        //assign values to nPartitionKeys constraints then nCon constraints
+        StringBuilder requestSB = reallyVerbose? 
+            new StringBuilder(">> statement: pkdRow=" + pkdRow + ", ") : 
+            null;
+        for (int i = 0; i < nPartitionKeys + nCon; i++) { 
+            boolean usePK = i < nPartitionKeys;
+            int coni = i - nPartitionKeys; //which con to use: only used if not !usePK
+
+            EDV edv = usePK? partitionKeyEDV[i] : conEDV[coni];
+            PrimitiveArray pa = usePK? pkdPA[i] : null;
+            PAType tPAType = edv.sourceDataPAType();
+            String conVal = usePK? null : constraintValues.get(coni);
+            if (requestSB != null)
+                requestSB.append(edv.sourceName() + " is " + 
+                    (usePK? pa.getDouble(pkdRow) : conVal) + ", ");
+
+            //handle special cases first
+            if (edv instanceof EDVTimeStamp) {
+                boundStatement.setTimestamp(i, //partition key value won't be nan/null                
+                    new Date(Math.round(
+                        (usePK? pa.getDouble(pkdRow) : String2.parseDouble(conVal)) 
+                        * 1000))); //round to nearest milli
+
+            } else if (edv.isBoolean()) {
+                boundStatement.setBool(i, 
+                    (usePK? pa.getInt(pkdRow) == 1 : String2.parseBoolean(conVal)));
+            } else if (tPAType == PAType.DOUBLE ||
+                       tPAType == PAType.ULONG) {  //trouble: loss of precision
+                boundStatement.setDouble(i, 
+                    (usePK? pa.getDouble(pkdRow) : String2.parseDouble(conVal)));
+            } else if (tPAType == PAType.FLOAT) {
+                boundStatement.setFloat(i, 
+                    (usePK? pa.getFloat(pkdRow) : String2.parseFloat(conVal)));
+            } else if (tPAType == PAType.LONG ||
+                       tPAType == PAType.UINT) {  //???
+                boundStatement.setLong(i, 
+                    (usePK? pa.getLong(pkdRow) : String2.parseLong(conVal)));
+            } else if (tPAType == PAType.INT  ||    
+                       tPAType == PAType.SHORT  || 
+                       tPAType == PAType.USHORT ||  //???
+                       tPAType == PAType.BYTE   ||
+                       tPAType == PAType.UBYTE) {   //???
+                boundStatement.setInt(i, 
+                    (usePK? pa.getInt(pkdRow) : String2.parseInt(conVal))); 
+            } else {
+                String val = usePK? pa.getString(pkdRow) : conVal;
+                if (tPAType == PAType.STRING)   
+                    boundStatement.setString(i, val);
+                else if (tPAType == PAType.CHAR)
+                    boundStatement.setString(i, 
+                        val.length() == 0? "\u0000" : val.substring(0, 1)); //FFFF??? 
+                else throw new RuntimeException(
+                    "Unexpected dataType=" + edv.sourceDataType() + 
+                    "for var=" + edv.destinationName() + ".");            
+            }
+        }
+        //boundStatement.toString() is useless
+        if (requestSB != null)
+            String2.log(requestSB.toString());
+        if (fetchSize > 0)
+            boundStatement.setFetchSize(fetchSize);
+        return boundStatement;
+    }
+
     /** 
      * This executes the query statement and may write some data to the tablewriter. 
      * This doesn't call tableWriter.finish();
@@ -1443,6 +1532,28 @@ public class EDDTableFromCassandra extends EDDTable{
 
         //execute the statement
         ResultSet rs = session.execute(statement);
+        return getDataForCassandraResultSet(language, loggedInAs, requestUrl, userDapQuery,
+            resultsDVI, rvToResultsEDV, rs, table, tableWriter, stats);
+    }
+
+    /** 
+     * This processes the results of a query and may write some data to the tablewriter. 
+     * This doesn't call tableWriter.finish();
+     *
+     * @param language the index of the selected language
+     * @param resultsDVI dataVariables[i] (DVI) for each resultsVariable
+     * @param rs the results of a query
+     * @param table May have some not-yet-tableWritten data when coming in.
+     *   May have some not-yet-tableWritten data when returning.
+     * @param stats is int[4]. stats[0]++; stats[1]+=nRows; stats[2]+=nExpandedRows; 
+     *    stats[3]+=nRowsAfterStandardize
+     * @return the same or a different table (usually with some results rows)
+     */
+    public Table getDataForCassandraResultSet(int language, 
+        String loggedInAs, String requestUrl, String userDapQuery, 
+        int resultsDVI[], EDV rvToResultsEDV[], ResultSet rs, 
+        Table table, TableWriter tableWriter, int[] stats) throws Throwable {
+
         ColumnDefinitions columnDef = rs.getColumnDefinitions();
         int nColumnDef = columnDef.size();
         stats[0]++;
@@ -83,6 +83,7 @@ public class EDDTableFromDatabase extends EDDTable{
     protected String tableName;
     protected String columnNameQuotes = "\"";  //may also be ' or empty string
     protected String orderBy[];
+    protected int fetchSize = -1; //-1=use the JDBC driver's default
     protected HashMap<String,HashSet<String>> scriptNeedsColumns = new HashMap(); //<sourceName, otherSourceColumnNames>
 
     protected String catalogSeparator;
@@ -144,6 +145,7 @@ public class EDDTableFromDatabase extends EDDTable{
         boolean tSourceNeedsExpandedFP_EQ = true;
         String tSourceCanOrderBy = "no";
         String tSourceCanDoDistinct = "no";
+        int tFetchSize = -1;
         String tDefaultDataQuery = null;
         String tDefaultGraphQuery = null;
         String tAddVariablesWhere = null;
@@ -201,6 +203,8 @@ public class EDDTableFromDatabase extends EDDTable{
             else if (localTags.equals("</sourceCanOrderBy>")) tSourceCanOrderBy = content; 
             else if (localTags.equals( "<sourceCanDoDistinct>")) {}
             else if (localTags.equals("</sourceCanDoDistinct>")) tSourceCanDoDistinct = content; 
+            else if (localTags.equals( "<fetchSize>")) {}
+            else if (localTags.equals("</fetchSize>")) tFetchSize = String2.parseInt(content); 
             else if (localTags.equals( "<onChange>")) {}
             else if (localTags.equals("</onChange>")) tOnChange.add(content); 
             else if (localTags.equals( "<fgdcFile>")) {}
@@ -247,7 +251,8 @@ public class EDDTableFromDatabase extends EDDTable{
                 tLocalSourceUrl, tDriverName, 
                 tConnectionProperties.toArray(),
                 tCatalogName, tSchemaName, tTableName, tColumnNameQuotes, tOrderBy,
-                tSourceNeedsExpandedFP_EQ, tSourceCanOrderBy, tSourceCanDoDistinct);
+                tSourceNeedsExpandedFP_EQ, tSourceCanOrderBy, tSourceCanDoDistinct,
+                tFetchSize);
 
     }
 
@@ -400,6 +405,9 @@ public class EDDTableFromDatabase extends EDDTable{
      *    ORDER BY clause.
      *    The leftmost sourceName is most important; subsequent sourceNames are only used to break ties.
      * @param tSourceNeedsExpandedFP_EQ
+     * @param tFetchSize the number of rows the JDBC driver should get from the
+     *    database at a time (see Statement.setFetchSize), 
+     *    or -1 (or any value &lt;= 0) to use the driver's default. 
      * @throws Throwable if trouble
      */
     public EDDTableFromDatabase(String tDatasetID, 
@@ -416,7 +424,8 @@ public class EDDTableFromDatabase extends EDDTable{
         String tCatalogName, String tSchemaName, String tTableName,
         String tColumnNameQuotes, String tOrderBy[],
         boolean tSourceNeedsExpandedFP_EQ, 
-        String tSourceCanOrderBy, String tSourceCanDoDistinct
+        String tSourceCanOrderBy, String tSourceCanDoDistinct,
+        int tFetchSize
         ) throws Throwable {
 
         if (verbose) String2.log(
@@ -473,6 +482,7 @@ public class EDDTableFromDatabase extends EDDTable{
             getNoPartialYes(tSourceCanOrderBy));
         sourceCanDoDistinct = Math2.minMax(0, 1, //so default=no
             getNoPartialYes(tSourceCanDoDistinct));
+        fetchSize = tFetchSize < 1 || tFetchSize == Integer.MAX_VALUE? -1 : tFetchSize;
 
         //try to get the dataSource
         if (dataSourceName != null && dataSourceName.length() > 0) {
@@ -719,6 +729,7 @@ public class EDDTableFromDatabase extends EDDTable{
         //but orderBy may be slow/hard for database (faster to do it in erddap?)
         boolean distinct = false; 
         StringArray queryOrderBy = null;  //the query orderBy or distinct source variable names 
+        String queryOrderByPart = null;   //the orderBy...() part that queryOrderBy came from
         int nDistinctOrOrderBy = 0;
         String[] parts = Table.getDapQueryParts(userDapQuery); //decoded.  
         for (int pi = 0; pi < parts.length; pi++) {
@@ -767,12 +778,25 @@ public class EDDTableFromDatabase extends EDDTable{
                     if (!foundScript) {
                         //no =script variables, so we can pass this orderBy to the database
                         queryOrderBy = tQueryOrderBy;
+                        queryOrderByPart = p;
                         nDistinctOrOrderBy++;
                     }
                 }
             }
         }
 
+        //can the database do an orderByCount|Sum|Mean|Min|Max via a GROUP BY query?
+        //If so, the database returns just 1 row per group (instead of all of the matching rows).
+        //The tableWriter still applies the filter, but to far fewer rows.
+        GroupBy groupBy = queryOrderByPart == null? null :
+            makeGroupBy(language, userDapQuery, queryOrderByPart, tableWriter);
+        if (groupBy != null) {
+            resultsVariables = groupBy.resultsVariables;
+            queryOrderBy = groupBy.keys;
+            if (groupBy.function.equals("COUNT"))
+                ((TableWriterOrderByCount)tableWriter).alreadyCounted = true;
+        }
+
         if (scriptNames != null) {
             //this works and can be done here because getSourceQueryFromDapQuery
             //made sure all constraint variables and orderBy variables
@@ -840,8 +864,9 @@ public class EDDTableFromDatabase extends EDDTable{
             }
         }
 
-        //try/catch to ensure connection and statement are closed at the end
+        //try/catch/finally to ensure connection and statement are closed at the end
         PreparedStatement statement = null;
+        boolean autoCommitOff = false;
         try {
 
             //build the sql query
@@ -854,7 +879,8 @@ public class EDDTableFromDatabase extends EDDTable{
                 //Note that I tried to use '?' for resultsVariables, but never got it to work: wierd results.
                 //Quotes around colNames avoid trouble when colName is a SQL reserved word.
                 query.append((rv == 0? "SELECT " + distinctString : ", ") + 
-                    columnNameQuotes + resultsVariables.get(rv) + columnNameQuotes); 
+                    (groupBy == null? columnNameQuotes + resultsVariables.get(rv) + columnNameQuotes :
+                        groupBy.selectColumn(rv, columnNameQuotes))); 
             //Lack of quotes around table names means they can't be SQL reserved words.
             //(If do quote in future, quote individual parts.)
             query.append(" FROM " + 
@@ -915,6 +941,12 @@ public class EDDTableFromDatabase extends EDDTable{
                 query.append(ts + " ?"); //? is the place holder for a value
                 humanQuery.append(ts + " '" + constraintValues.get(cv) + "'");
             }
+            if (groupBy != null) {
+                //the keys are the orderBySB columns
+                String ts = " GROUP BY " + orderBySB.toString();
+                query.append(ts);
+                humanQuery.append(ts);
+            }
             if (orderBySB.length() > 0) {
                 String ts = " ORDER BY " + orderBySB.toString();
                 query.append(ts);
@@ -927,6 +959,12 @@ public class EDDTableFromDatabase extends EDDTable{
             //preparedStatements (so String values are properly escaped and
             //numbers are assured to be numbers).
             statement = connection.prepareStatement(query.toString());
+            if (fetchSize > 0) {
+                //some drivers (e.g., PostgreSQL's) only get the rows in chunks if autoCommit is off
+                connection.setAutoCommit(false);
+                autoCommitOff = true;
+                statement.setFetchSize(fetchSize);
+            }
             EDV constraintEDVs[] = new EDV[nCv];
             nActiveCV = 0;
             for (int cv = 0; cv < nCv; cv++) {
@@ -977,6 +1015,8 @@ public class EDDTableFromDatabase extends EDDTable{
             }
             int triggerNRows = EDStatic.partialRequestMaxCells / resultsEDVs.length;
             Table table = makeEmptySourceTable(resultsEDVs, triggerNRows);
+            if (groupBy != null)
+                groupBy.setAggregateColumns(table, triggerNRows);
             PrimitiveArray paArray[] = new PrimitiveArray[nRv];
             for (int rv = 0; rv < nRv; rv++) 
                 paArray[rv] = table.getColumn(rv);
@@ -991,7 +1031,10 @@ public class EDDTableFromDatabase extends EDDTable{
                         EDV edv = resultsEDVs[rv];
                         PAType tPAType = edv.sourceDataPAType();
                         if (debugMode) String2.log(rv + " " + rs.getString(rsCol));
-                        if (edv.isBoolean()) { //special case
+                        if (groupBy != null && groupBy.paTypes[rv] != null) { //a COUNT, SUM, or AVG
+                            double d = rs.getDouble(rsCol);
+                            paArray[rv].addDouble(rs.wasNull()? Double.NaN : d); 
+                        } else if (edv.isBoolean()) { //special case
                             boolean tb = rs.getBoolean(rsCol);
                             paArray[rv].addInt(rs.wasNull()? Integer.MAX_VALUE : tb? 1 : 0);
                         } else if (edv instanceof EDVTimeStamp) {
@@ -1042,12 +1085,16 @@ public class EDDTableFromDatabase extends EDDTable{
                     //String2.log(table.toString("rows",5));
                     preStandardizeResultsTable(loggedInAs, table); 
                     if (table.nRows() > 0) {
-                        standardizeResultsTable(language, requestUrl, userDapQuery, table); //changes sourceNames to destinationNames
+                        if (groupBy == null)
+                            standardizeResultsTable(language, requestUrl, userDapQuery, table); //changes sourceNames to destinationNames
+                        else standardizeGroupByResultsTable(requestUrl, userDapQuery, table, groupBy);
                         tableWriter.writeSome(table); //okay if 0 rows
                     }
 
                     if (hasNext) {
                         table = makeEmptySourceTable(resultsEDVs, triggerNRows);
+                        if (groupBy != null)
+                            groupBy.setAggregateColumns(table, triggerNRows);
                         for (int rv = 0; rv < nRv; rv++) 
                             paArray[rv] = table.getColumn(rv);
                     }
@@ -1062,11 +1109,7 @@ public class EDDTableFromDatabase extends EDDTable{
             tableWriter.finish();
             statement.close();
 
-            //last thing
-            connection.close();
-
         } catch (Throwable t) {
-            try {connection.close();} catch (Exception e) {}
             try {if (statement != null) statement.close();} catch (Exception e) {}
 
             EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
@@ -1081,6 +1124,14 @@ public class EDDTableFromDatabase extends EDDTable{
                 //all other errors probably from database
                 throw new Throwable(EDStatic.errorFromDataSource + t.toString(), t);
             }
+        } finally {
+            //last thing. Even if there was an error, end the (read-only) transaction
+            //and turn autoCommit back on, so a pooled connection is returned in its original state.
+            if (autoCommitOff) {
+                try {connection.rollback();}         catch (Exception e) {}
+                try {connection.setAutoCommit(true);} catch (Exception e) {}
+            }
+            try {connection.close();} catch (Exception e) {}
         }
     }
 
@@ -1091,6 +1142,271 @@ public class EDDTableFromDatabase extends EDDTable{
     public void preStandardizeResultsTable(String loggedInAs, Table table) {
         //this base version does nothing
     }
+
+    /**
+     * This has the information needed to make the database do an
+     * orderByCount|Sum|Mean|Min|Max filter via a GROUP BY query. See makeGroupBy.
+     */
+    private static class GroupBy {
+        String function;  //the SQL aggregate function: COUNT, SUM, AVG, MIN, or MAX
+        StringArray keys = new StringArray();             //the sourceNames of the GROUP BY columns
+        StringArray resultsVariables = new StringArray(); //the sourceNames of the columns to be requested
+        PAType paTypes[];  //parallel to resultsVariables: the type of the COUNT, SUM, or AVG columns, else null
+        //the user's resultsVariables and the constraints on the keys (destinationNames) 
+        StringArray userResultsVariables = new StringArray();
+        StringArray keyConstraintVariables = new StringArray();
+        StringArray keyConstraintOps       = new StringArray();
+        StringArray keyConstraintValues    = new StringArray();
+
+        /**
+         * This returns the SELECT clause's item for resultsVariables[rv], 
+         * e.g., AVG("sst" * 1.0) AS "sst".
+         */
+        String selectColumn(int rv, String quotes) {
+            String name = quotes + resultsVariables.get(rv) + quotes;
+            if (keys.indexOf(resultsVariables.get(rv)) >= 0)
+                return name;
+            //* 1.0 so that integer columns are summed and averaged as floating point numbers (in all databases)
+            return function + "(" + name + 
+                (function.equals("SUM") || function.equals("AVG")? " * 1.0" : "") + 
+                ") AS " + name;
+        }
+
+        /** This replaces the table's COUNT, SUM, and AVG columns with empty IntArrays and DoubleArrays. */
+        void setAggregateColumns(Table table, int capacity) {
+            for (int col = 0; col < paTypes.length; col++) {
+                if (paTypes[col] != null)
+                    table.setColumn(col, PrimitiveArray.factory(paTypes[col], capacity, false));
+            }
+        }
+    }
+
+    /**
+     * This determines if the database can do a query's orderByCount, orderBySum, 
+     * orderByMean, orderByMin, or orderByMax filter via a GROUP BY query,
+     * so that the database returns just one row per group
+     * (instead of all of the rows that match the constraints).
+     * The tableWriter still applies the filter (to the far fewer rows), so this is 
+     * only done if the results will be exactly the same as without the GROUP BY.
+     * For example, the orderBy variables can't have a rounding interval (e.g., time/1day),
+     * the aggregated variables must be numeric and not have a scale_factor, add_offset, 
+     * or a missing_value or _FillValue other than the value that NULLs are stored as
+     * (so missing values must be stored in the database as NULLs),
+     * the orderByMean and orderBySum variables can't be float, time, or angular degree variables 
+     * (which ERDDAP treats in a special way),
+     * and the constraints on non-orderBy variables must be handled exactly by the database.
+     *
+     * @param language the index of the selected language
+     * @param userDapQuery the part of the user's request after the '?', still percentEncoded, may be null.
+     * @param filter the query's orderBy...() part which the database will handle,
+     *    e.g., orderByMean("stationID")
+     * @param tableWriter the tableWriter that getDataForDapQuery will write to.
+     *    It must be the tableWriter for the filter (it will apply the filter again).
+     * @return a GroupBy or null if the database shouldn't do the filter via a GROUP BY query
+     * @throws Throwable if trouble
+     */
+    private GroupBy makeGroupBy(int language, String userDapQuery, String filter, 
+        TableWriter tableWriter) throws Throwable {
+
+        GroupBy groupBy = new GroupBy();
+        if      (filter.startsWith("orderByCount(\"") && tableWriter instanceof TableWriterOrderByCount) 
+            groupBy.function = "COUNT";
+        else if (filter.startsWith("orderBySum(\"")   && tableWriter instanceof TableWriterOrderBySum) 
+            groupBy.function = "SUM";
+        else if (filter.startsWith("orderByMean(\"")  && tableWriter instanceof TableWriterOrderByMean) 
+            groupBy.function = "AVG";
+        else if (filter.startsWith("orderByMin(\"")   && tableWriter instanceof TableWriterOrderByMin) 
+            groupBy.function = "MIN";
+        else if (filter.startsWith("orderByMax(\"")   && tableWriter instanceof TableWriterOrderByMax) 
+            groupBy.function = "MAX";
+        else return null;
+        boolean minMax = groupBy.function.equals("MIN") || groupBy.function.equals("MAX");
+
+        //the keys (destinationNames)
+        //For orderByMin|Max, the last variable is the one that is aggregated.
+        StringArray keys = StringArray.fromCSV(
+            filter.substring(filter.indexOf("(\"") + 2, filter.length() - 2));
+        String minMaxName = minMax && keys.size() > 0? keys.get(keys.size() - 1) : null;
+        if (minMaxName != null)
+            keys.remove(keys.size() - 1);
+        if (keys.size() == 0) //then the database would return a row even if no rows match
+            return null;
+        for (int k = 0; k < keys.size(); k++) {
+            if (keys.get(k).indexOf('/') >= 0) //e.g., time/1day
+                return null;
+            EDV edv = findDataVariableByDestinationName(keys.get(k));
+            if (edv.isFixedValue())
+                return null;
+            groupBy.keys.add(edv.sourceName());
+        }
+
+        //the user's resultsVariables and constraints
+        StringArray constraintVariables = new StringArray();
+        StringArray constraintOps       = new StringArray();
+        StringArray constraintValues    = new StringArray();
+        parseUserDapQuery(language, userDapQuery, groupBy.userResultsVariables,
+            constraintVariables, constraintOps, constraintValues, //non-regex EDVTimeStamp conValues will be ""+epochSeconds
+            false);
+
+        //all of the keys must be resultsVariables (else the tableWriter will throw an exception)
+        for (int k = 0; k < keys.size(); k++) {
+            if (groupBy.userResultsVariables.indexOf(keys.get(k)) < 0)
+                return null;
+        }
+
+        //are all of the other resultsVariables aggregatable?
+        int nRv = groupBy.userResultsVariables.size();
+        groupBy.paTypes = new PAType[nRv];
+        for (int rv = 0; rv < nRv; rv++) {
+            String destName = groupBy.userResultsVariables.get(rv);
+            EDV edv = findDataVariableByDestinationName(destName);
+            if (edv.isFixedValue())
+                return null;
+            groupBy.resultsVariables.add(edv.sourceName());
+            if (keys.indexOf(destName) >= 0)
+                continue;
+            if (minMax && !destName.equals(minMaxName)) //e.g., the other columns in the row with the max value
+                return null;
+            if (!databaseCanAggregate(edv, groupBy.function))
+                return null;
+            groupBy.paTypes[rv] = 
+                groupBy.function.equals("COUNT")? PAType.INT :
+                minMax? null : PAType.DOUBLE;
+        }
+
+        //ERDDAP can't apply the constraints on the other variables to the aggregated values,
+        //so they must be handled exactly by the database. 
+        //ERDDAP applies the constraints on the keys (e.g., the regex constraints) again.
+        for (int cv = 0; cv < constraintVariables.size(); cv++) {
+            String destName = constraintVariables.get(cv);
+            if (keys.indexOf(destName) >= 0) {
+                groupBy.keyConstraintVariables.add(destName);
+                groupBy.keyConstraintOps.add(      constraintOps.get(cv));
+                groupBy.keyConstraintValues.add(   constraintValues.get(cv));
+            } else if (!databaseDoesConstraintExactly(findDataVariableByDestinationName(destName), 
+                constraintOps.get(cv), constraintValues.get(cv))) {
+                return null;
+            }
+        }
+        return groupBy;
+    }
+
+    /**
+     * This returns true if the database can apply the SQL aggregate function to the
+     * variable and the result is the same as ERDDAP's orderByCount|Sum|Mean|Min|Max.
+     *
+     * @param edv a non-key variable 
+     * @param function COUNT, SUM, AVG, MIN, or MAX
+     */
+    private static boolean databaseCanAggregate(EDV edv, String function) {
+        //ERDDAP does the calculations with the destination values
+        if (edv.scaleAddOffset() || !onlyNullsAreMissing(edv))
+            return false;
+
+        //ERDDAP doesn't count "" or whitespace, and databases sort strings differently than ERDDAP
+        PAType tPAType = edv.sourceDataPAType();
+        if (tPAType == PAType.STRING || tPAType == PAType.CHAR) 
+            return false;
+
+        if (function.equals("COUNT"))
+            return true;
+        if (edv.isBoolean())
+            return false;
+        if (function.equals("MIN") || function.equals("MAX"))
+            return true;
+
+        //SUM and AVG: ERDDAP uses the nice double values of floats (e.g., 83.2, not 83.19999694824219)
+        //and averages time and angular degree variables in a special way
+        String units = edv.units();
+        return tPAType != PAType.FLOAT &&
+            !(edv instanceof EDVTimeStamp) &&
+            !edv.destinationName().equals(EDV.TIME_NAME) &&
+            !(units != null && 
+              (EDStatic.angularDegreeUnitsSet.contains(units) || 
+               EDStatic.angularDegreeTrueUnitsSet.contains(units)));
+    }
+
+    /**
+     * This returns true if the variable's missing_value and _FillValue (if any) are just 
+     * the value that getDataForDapQuery stores NULLs as (e.g., Integer.MAX_VALUE),
+     * so the database (which just knows about NULLs) and ERDDAP agree about 
+     * which values are missing values.
+     */
+    private static boolean onlyNullsAreMissing(EDV edv) {
+        double nullValue = PrimitiveArray.factory(edv.sourceDataPAType(), 1, false)
+            .missingValue().getRawDouble(); //NaN for float and double
+        double mv = edv.sourceMissingValue();
+        double fv = edv.sourceFillValue();
+        return (Double.isNaN(mv) || mv == nullValue) &&
+               (Double.isNaN(fv) || fv == nullValue);
+    }
+
+    /**
+     * This returns true if the database applies a constraint exactly like ERDDAP would
+     * (e.g., in the database, a != constraint never matches NULLs, but in ERDDAP
+     * it matches missing values).
+     *
+     * @param edv the constraint variable 
+     * @param op the constraint operator (destination, e.g., from parseUserDapQuery)
+     * @param value the constraint value (destination, e.g., from parseUserDapQuery)
+     */
+    private boolean databaseDoesConstraintExactly(EDV edv, String op, String value) {
+        if (edv.isFixedValue()) //getSourceQueryFromDapQuery already tested it
+            return true;
+        if (op.equals(PrimitiveArray.REGEX_OP) || //the database doesn't do regex constraints
+            op.equals("!=") || 
+            edv.scaleAddOffset() || 
+            !onlyNullsAreMissing(edv))
+            return false;
+        PAType tPAType = edv.sourceDataPAType();
+        if (tPAType == PAType.STRING || tPAType == PAType.CHAR) //databases sort strings differently than ERDDAP
+            return op.equals("=") && value.length() > 0 && edv.safeStringMissingValue().length() == 0;
+        if (edv.isBoolean())
+            return op.equals("=");
+        double d = String2.parseDouble(value);
+        if (Double.isNaN(d))
+            return false;
+        //the database did an expanded query (see getSourceQueryFromDapQuery)
+        return !(sourceNeedsExpandedFP_EQ && 
+            (tPAType == PAType.FLOAT || tPAType == PAType.DOUBLE) &&
+            d != Math2.roundToDouble(d));
+    }
+
+    /**
+     * For GROUP BY queries, getDataForDapQuery calls this instead of standardizeResultsTable.
+     * This is like standardizeResultsTable, but the COUNT, SUM, and AVG columns 
+     * aren't converted to the destination data type and only the constraints on the keys 
+     * are applied (the database applied the others exactly).
+     *
+     * @param requestUrl the part of the user's request, after EDStatic.baseUrl, before '?'.
+     * @param userDapQuery the part of the user's request after the '?', still percentEncoded, may be null.
+     * @param table the table from the GROUP BY query, with the source columns
+     * @param groupBy from makeGroupBy
+     * @throws Throwable if trouble
+     */
+    private void standardizeGroupByResultsTable(String requestUrl, String userDapQuery, 
+        Table table, GroupBy groupBy) throws Throwable {
+
+        //set the globalAttributes (this takes care of title, summary, ...)
+        setResponseGlobalAttributes(requestUrl, userDapQuery, table);
+
+        //change the column names from sourceName to destinationName
+        //and convert the source values to destination values
+        int nCols = table.nColumns();
+        for (int col = 0; col < nCols; col++) {
+            EDV edv = findDataVariableBySourceName(table.getColumnName(col));
+            table.setColumnName(col, edv.destinationName());
+            table.columnAttributes(col).clear(); //remove any existing atts
+            table.columnAttributes(col).set(edv.combinedAttributes()); //make a copy
+            if (groupBy.paTypes[col] == null)
+                table.setColumn(col, edv.toDestination(table.getColumn(col))); 
+        }
+
+        //apply the constraints on the keys and finish up
+        applyConstraints(table, false, 
+            groupBy.userResultsVariables, 
+            groupBy.keyConstraintVariables, groupBy.keyConstraintOps, groupBy.keyConstraintValues);
+    }
   
 
     /** 
@@ -2135,6 +2451,34 @@ expected =
         Test.ensureEqual(results, expected, "\nresults=\n" + results);
         String2.log("  orderByMax + orderBy time=" + (System.currentTimeMillis() - eTime) + "ms"); 
 
+        //orderByCount()  (with sourceCanOrderBy=partial|yes, the database does it via GROUP BY)
+        eTime = System.currentTimeMillis();
+        tName = tedd.makeNewFileForDapQuery(language, null, null, 
+            "category,height,weight_lb&height>0&orderByCount(\"category\")",
+            dir, tedd.className() + "_orderBy7", ".csv"); 
+        results = File2.directReadFrom88591File(dir + tName);
+expected = 
+"category,height,weight_lb\n" +
+",count,count\n" + //units
+"A,2,2\n" +
+"B,2,2\n";
+        Test.ensureEqual(results, expected, "\nresults=\n" + results);
+        String2.log("  orderByCount time=" + (System.currentTimeMillis() - eTime) + "ms"); 
+
+        //orderByMax()  (with sourceCanOrderBy=partial|yes, the database does it via GROUP BY)
+        eTime = System.currentTimeMillis();
+        tName = tedd.makeNewFileForDapQuery(language, null, null, 
+            "category,height&height>0&orderByMax(\"category,height\")",
+            dir, tedd.className() + "_orderBy8", ".csv"); 
+        results = File2.directReadFrom88591File(dir + tName);
+expected = 
+"category,height\n" +
+",cm\n" + //units
+"A,191\n" +
+"B,177\n";
+        Test.ensureEqual(results, expected, "\nresults=\n" + results);
+        String2.log("  orderByMax time=" + (System.currentTimeMillis() - eTime) + "ms"); 
+
         //no matching data (database determined)
         eTime = System.currentTimeMillis();
         try {
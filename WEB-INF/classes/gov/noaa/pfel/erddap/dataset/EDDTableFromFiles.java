@@ -35,6 +35,7 @@ import gov.noaa.pfel.coastwatch.util.WatchDirectory;
 
 import gov.noaa.pfel.erddap.Erddap;
 import gov.noaa.pfel.erddap.dataset.NoMoreDataPleaseException;
+import gov.noaa.pfel.erddap.util.AdmissionController;
 import gov.noaa.pfel.erddap.util.EDStatic;
 import gov.noaa.pfel.erddap.util.ThreadedWorkManager;
 import gov.noaa.pfel.erddap.variable.*;
@@ -155,6 +156,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
     protected boolean fileTableInMemory = false;
     protected Table dirTable; //one column with dir names
     protected Table fileTable;
+    //index of fileTable's per-file min/max (only if fileTableInMemory, else null)
+    protected FileTableIndex fileTableIndex;
 
     //things just for EDDTableFromHttpGet
     public final static String HTTP_GET_REQUIRED_VARIABLES  = "httpGetRequiredVariables";
@@ -1936,7 +1939,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
         //    " type=" + edv.sourceDataType() + " min=" + edv.destinationMinDouble());
 
         //dirTable and fileTable InMemory?
-        if (!fileTableInMemory) {
+        if (fileTableInMemory) {
+            fileTableIndex = new FileTableIndex(fileTable, dataVariables, dv0);
+        } else {
             dirTable = null;
             fileTable = null;
         }
@@ -2541,6 +2546,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
             String fullName = contexts.get(evi);
             String dirName = File2.getDirectory(fullName);
             String fileName = File2.getNameAndExtension(fullName);  //matched to fileNameRegex above
+            NcHelper.invalidateFile(fullName); //close its stale NetcdfFile handles
 
             //dirIndex   (dirName may not be in dirList!)
             int dirIndex = dirList.indexOf(dirName); //linear search, but should be short list
@@ -2702,6 +2708,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
             }
             //make the new minMaxTable
             Table tMinMaxTable = makeMinMaxTable(dirList, tFileTable);
+            FileTableIndex tFileTableIndex = fileTableInMemory?
+                new FileTableIndex(tFileTable, dataVariables, dv0) : null;
             
             //then, change secondary parts of instance variables
             //e.g., update all variable destinationMinMax
@@ -2715,6 +2723,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 //quickly swap into place
                 dirTable  = tDirTable;
                 fileTable = tFileTable; 
+                fileTableIndex = tFileTableIndex;
             }
 
             //after changes all in place
@@ -3691,12 +3700,47 @@ public abstract class EDDTableFromFiles extends EDDTable{
         Table distinctTable = null;
         int task = 0;       //number for next task to be created
         long nNotRead = 0;  //either don't have matching data or do ('distinct' and 1 value matches)
+
+        //if fileTableIndex is for this fileTable, use it to quickly find the candidate files
+        //(the same isOK tests are still applied to each candidate file below)
+        BitSet candidateFiles = null; //null = test all files
+        FileTableIndex tFileTableIndex = fileTableIndex;
+        if (tFileTableIndex != null && tFileTableIndex.fileTable() == tFileTable) {
+            for (int con = 0; con < nCon; con++) {
+                BitSet conCandidates = tFileTableIndex.candidateFiles(
+                    cdvi[con], conOps.get(con), conValuesD[con]);
+                if (conCandidates == null)
+                    continue;
+                if (candidateFiles == null)
+                     candidateFiles = conCandidates;
+                else candidateFiles.and(conCandidates);
+            }
+            if (candidateFiles != null) {
+                nNotRead += nFiles - candidateFiles.cardinality();
+                if (reallyVerbose) String2.log("fileTableIndex: nCandidateFiles=" + 
+                    candidateFiles.cardinality() + " of nFiles=" + nFiles);
+            }
+        }
+
+        //the cost of this request (for the AdmissionController) is the size of the candidate files
+        long candidateNBytes = 0;
+        for (int f = FileTableIndex.nextCandidate(candidateFiles, 0); 
+             f >= 0 && f < nFiles; 
+             f = FileTableIndex.nextCandidate(candidateFiles, f + 1)) {
+            long size = ftSize.get(f);
+            if (size > 0 && size < Long.MAX_VALUE) //MAX_VALUE=missing
+                candidateNBytes += size;
+        }
+        AdmissionController.charge(candidateNBytes);
+
         ResultStatisticsAccumulator accumulator = new ResultStatisticsAccumulator();
         int tnThreads = nThreads >= 1 && nThreads < Integer.MAX_VALUE? nThreads : EDStatic.nTableThreads; 
         //reduce tnThreads based on memory available
         tnThreads = adjustNThreads(tnThreads);
+        //if the results will be sorted by all columns (distinct()), 
+        //  write each file's results as soon as they are ready, else write them in file order
         ThreadedWorkManager<Table> workManager = new ThreadedWorkManager<>(
-                tnThreads,
+                tnThreads, !(tableWriter instanceof TableWriterDistinct),
                 result -> {
                     if (result == null) {
                         accumulator.incrementNoMatch();
@@ -3715,7 +3759,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
         
         try {
             FILE_LOOP:
-            for (int f = 0; f < nFiles; f++) {
+            for (int f = FileTableIndex.nextCandidate(candidateFiles, 0); 
+                 f >= 0 && f < nFiles; 
+                 f = FileTableIndex.nextCandidate(candidateFiles, f + 1)) {
                 if (Thread.interrupted()) { 
                     if (workManager != null)
                         workManager.forceShutdown();
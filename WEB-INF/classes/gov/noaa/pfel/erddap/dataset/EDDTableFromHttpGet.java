@@ -671,6 +671,9 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
             throw new SimpleException("dirTable and/or fileTable are null!");
         }
 
+        //fileTable is changed in place, so the fileTableIndex is no longer valid
+        fileTableIndex = null;
+
         String response = insertOrDelete(language, fileDir, 
             httpGetDirectoryStructureColumnNames, 
             httpGetDirectoryStructureNs, 
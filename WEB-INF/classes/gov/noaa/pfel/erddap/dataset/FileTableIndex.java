@@ -0,0 +1,388 @@
+/*
+ * FileTableIndex Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.Attributes;
+import com.cohort.array.DoubleArray;
+import com.cohort.array.IntArray;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.variable.EDV;
+import gov.noaa.pfel.erddap.variable.EDVTimeStamp;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * This is an index of the per-file min and max values in an EDDTableFromFiles fileTable.
+ * For each indexable variable (numeric variables and numeric or yyyy... String
+ * timestamp variables), it holds the file rows sorted by file min
+ * and the file rows sorted by file max.
+ * With that, the files which may have data matching a constraint like
+ * var&lt;value, var&gt;=value, or var=value are found with a binary search,
+ * instead of by testing every file's min and max.
+ *
+ * <p>The candidate files are found with the same EDDTableFromFiles.isOK tests
+ * that getDataForDapQuery applies to each file, so the index never rejects
+ * a file that isOK would accept.
+ *
+ * <p>Each variable's index (24 bytes per file) is only made the first time
+ * a constraint on that variable is tested, so variables which are never
+ * constrained cost nothing.
+ *
+ * <p>An index doesn't change the fileTable. It is only valid for the fileTable it was made from
+ * (see fileTable()).
+ */
+public class FileTableIndex {
+
+    /** The fileTable this index was made from. */
+    private final Table fileTable;
+    private final int nRows;
+    private final EDV dataVariables[];
+    private final int dv0;
+
+    /** These have one element per dataVariable. Elements are null if the var isn't indexable. */
+    private final PAType testPAType[];
+    /** Elements are null until the var's index is needed (see varIndex). */
+    private final VarIndex varIndex[];
+
+    /** The index of one variable. */
+    private static class VarIndex {
+        double sortedMin[], sortedMax[]; //sorted non-NaN file min (or max) values
+        int    minRows[],   maxRows[];   //the corresponding fileTable rows
+        int    nanRows[];                //rows where file min or max is NaN
+    }
+
+    /**
+     * This makes an index for a fileTable.
+     * This is fast: the variables are indexed later, when needed.
+     *
+     * @param tFileTable the fileTable
+     * @param tDataVariables the dataset's dataVariables
+     * @param tDv0 the fileTable column number of the first dataVariable's min column
+     *   (then 3 columns (min, max, hasNaN) for each dataVariable)
+     */
+    public FileTableIndex(Table tFileTable, EDV tDataVariables[], int tDv0) {
+        fileTable = tFileTable;
+        nRows = tFileTable.nRows();
+        dataVariables = tDataVariables;
+        dv0 = tDv0;
+        int ndv = tDataVariables.length;
+        testPAType = new PAType[ndv];
+        varIndex   = new VarIndex[ndv];
+        for (int dv = 0; dv < ndv; dv++) {
+            EDV edv = tDataVariables[dv];
+            PAType sourcePAType = edv.sourceDataPAType();
+            if (edv instanceof EDVTimeStamp tdv) {
+                //see getDataForDapQuery: strings sorted by e.g., MM/dd/yyyy can't be tested
+                if (sourcePAType == PAType.STRING &&
+                    !tdv.sourceTimeFormat().toLowerCase().startsWith("yyyy"))
+                    continue;
+                testPAType[dv] = PAType.STRING; //test all times with full precision
+            } else if (sourcePAType != PAType.CHAR && sourcePAType != PAType.STRING) {
+                testPAType[dv] = sourcePAType;
+            }
+        }
+    }
+
+    /**
+     * This returns the index for dataVariable #dv, making it if it hasn't been made yet.
+     *
+     * @param dv the number of an indexable dataVariable
+     * @return the index for dv
+     */
+    private synchronized VarIndex varIndex(int dv) {
+        if (varIndex[dv] != null)
+            return varIndex[dv];
+        long time = System.currentTimeMillis();
+        EDV edv = dataVariables[dv];
+        double fMin[] = new double[nRows];
+        double fMax[] = new double[nRows];
+        if (edv instanceof EDVTimeStamp tdv) {
+            for (int row = 0; row < nRows; row++) {
+                //if min/max String times are invalid, act as if far in past/future
+                fMin[row] = tdv.sourceTimeToEpochSeconds(fileTable.getStringData(dv0 + dv*3 + 0, row));
+                fMax[row] = tdv.sourceTimeToEpochSeconds(fileTable.getStringData(dv0 + dv*3 + 1, row));
+                if (Double.isNaN(fMin[row])) fMin[row] = -1e100;
+                if (Double.isNaN(fMax[row])) fMax[row] =  1e100;
+            }
+        } else {
+            for (int row = 0; row < nRows; row++) {
+                fMin[row] = fileTable.getDoubleData(dv0 + dv*3 + 0, row);
+                fMax[row] = fileTable.getDoubleData(dv0 + dv*3 + 1, row);
+            }
+        }
+
+        //separate the NaN rows
+        IntArray    goodRows = new IntArray(nRows, false);
+        IntArray    badRows  = new IntArray();
+        DoubleArray goodMin  = new DoubleArray(nRows, false);
+        DoubleArray goodMax  = new DoubleArray(nRows, false);
+        for (int row = 0; row < nRows; row++) {
+            if (Double.isNaN(fMin[row]) || Double.isNaN(fMax[row])) {
+                badRows.add(row);
+            } else {
+                goodRows.add(row);
+                goodMin.add(fMin[row]);
+                goodMax.add(fMax[row]);
+            }
+        }
+        VarIndex vi = new VarIndex();
+        vi.nanRows = badRows.toArray();
+
+        //sort the good rows by min and by max
+        int nGood = goodRows.size();
+        int rank[] = goodMin.rank(true);
+        vi.sortedMin = new double[nGood];
+        vi.minRows   = new int[nGood];
+        for (int i = 0; i < nGood; i++) {
+            vi.sortedMin[i] = goodMin.get(rank[i]);
+            vi.minRows[i]   = goodRows.get(rank[i]);
+        }
+        rank = goodMax.rank(true);
+        vi.sortedMax = new double[nGood];
+        vi.maxRows   = new int[nGood];
+        for (int i = 0; i < nGood; i++) {
+            vi.sortedMax[i] = goodMax.get(rank[i]);
+            vi.maxRows[i]   = goodRows.get(rank[i]);
+        }
+        varIndex[dv] = vi;
+        if (EDDTableFromFiles.reallyVerbose) String2.log("FileTableIndex nFiles=" + nRows +
+            " indexed " + edv.destinationName() + " time=" + (System.currentTimeMillis() - time) + "ms");
+        return vi;
+    }
+
+    /** This returns the number of variables which have been indexed so far. */
+    synchronized int nIndexedVariables() {
+        int n = 0;
+        for (int dv = 0; dv < varIndex.length; dv++)
+            if (varIndex[dv] != null)
+                n++;
+        return n;
+    }
+
+    /**
+     * This returns the fileTable this index was made from.
+     * The index is only valid for that exact table.
+     */
+    public Table fileTable() {
+        return fileTable;
+    }
+
+    /**
+     * This returns true if constraints on dataVariable #dv can be tested with this index.
+     */
+    public boolean isIndexed(int dv) {
+        return dv >= 0 && dv < testPAType.length && testPAType[dv] != null;
+    }
+
+    /**
+     * This finds the fileTable rows of the files which may have data matching a constraint.
+     *
+     * @param dv the dataVariable number
+     * @param conOp the constraint operator
+     * @param conValue the constraint value as a source value
+     *   (or epochSeconds if the variable is an EDVTimeStamp)
+     * @return a BitSet with the candidate rows set,
+     *   or null if this constraint can't be tested with the index
+     *   (e.g., the variable isn't indexed, conOp is != or =~, or conValue is NaN).
+     */
+    public BitSet candidateFiles(int dv, String conOp, double conValue) {
+        if (!isIndexed(dv) || Double.isNaN(conValue))
+            return null;
+        boolean testMin = conOp.equals("<") || conOp.equals("<=") || conOp.equals("=");
+        boolean testMax = conOp.equals(">") || conOp.equals(">=") || conOp.equals("=");
+        if (!testMin && !testMax)
+            return null;
+
+        VarIndex vi = varIndex(dv);
+        BitSet bitSet = new BitSet(nRows);
+        if (testMin && testMax) {
+            //"=": files with min<=conValue and max>=conValue
+            String minOp = "<=", maxOp = ">=";
+            int nMin = nMinOk(dv, vi, minOp, conValue);
+            int firstMax = firstMaxOk(dv, vi, maxOp, conValue);
+            BitSet maxSet = new BitSet(nRows);
+            for (int i = firstMax; i < vi.maxRows.length; i++)
+                maxSet.set(vi.maxRows[i]);
+            for (int i = 0; i < nMin; i++)
+                bitSet.set(vi.minRows[i]);
+            bitSet.and(maxSet);
+        } else if (testMin) {
+            int nMin = nMinOk(dv, vi, conOp, conValue);
+            for (int i = 0; i < nMin; i++)
+                bitSet.set(vi.minRows[i]);
+        } else {
+            int firstMax = firstMaxOk(dv, vi, conOp, conValue);
+            for (int i = firstMax; i < vi.maxRows.length; i++)
+                bitSet.set(vi.maxRows[i]);
+        }
+
+        //files with NaN min or max are always candidates (let isOK decide)
+        int tNanRows[] = vi.nanRows;
+        for (int i = 0; i < tNanRows.length; i++)
+            bitSet.set(tNanRows[i]);
+        return bitSet;
+    }
+
+    /**
+     * This returns the number of files (at the start of vi.sortedMin)
+     * whose min passes conOp ("&lt;" or "&lt;=") conValue.
+     * isOK is true for a prefix of the files sorted by min.
+     */
+    private int nMinOk(int dv, VarIndex vi, String conOp, double conValue) {
+        double tSorted[] = vi.sortedMin;
+        int lo = 0, hi = tSorted.length; //answer is in lo..hi
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (EDDTableFromFiles.isOK(testPAType[dv], tSorted[mid], tSorted[mid], 0, conOp, conValue))
+                 lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * This returns the position of the first file in vi.sortedMax
+     * whose max passes conOp ("&gt;" or "&gt;=") conValue.
+     * isOK is true for a suffix of the files sorted by max.
+     */
+    private int firstMaxOk(int dv, VarIndex vi, String conOp, double conValue) {
+        double tSorted[] = vi.sortedMax;
+        int lo = 0, hi = tSorted.length; //answer is in lo..hi
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (EDDTableFromFiles.isOK(testPAType[dv], tSorted[mid], tSorted[mid], 0, conOp, conValue))
+                 hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /**
+     * This returns the next candidate row &gt;= row.
+     *
+     * @param candidates the candidate rows, or null if all rows are candidates
+     * @param row the first row to be considered
+     * @return the next candidate row (or -1 if none, if candidates!=null)
+     */
+    public static int nextCandidate(BitSet candidates, int row) {
+        return candidates == null? row : candidates.nextSetBit(row);
+    }
+
+    /**
+     * This tests that candidateFiles() finds the same files as testing each file with isOK
+     * (plus the files with NaN min or max, which isOK tests later),
+     * and that variables are only indexed when they are first constrained.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** FileTableIndex.basicTest");
+        Random random = new Random(7);
+        int nFiles = 500;
+        String types[] = {"double", "int", "String"};
+        EDV edvs[] = new EDV[types.length];
+        Table table = new Table();
+        for (int dv = 0; dv < types.length; dv++) {
+            edvs[dv] = new EDV("testFileTableIndex", "v" + dv, "v" + dv, 
+                new Attributes(), new Attributes(), types[dv]);
+            PAType paType = PAType.fromCohortString(types[dv]);
+            PrimitiveArray mins = PrimitiveArray.factory(paType, nFiles, false);
+            PrimitiveArray maxs = PrimitiveArray.factory(paType, nFiles, false);
+            for (int f = 0; f < nFiles; f++) {
+                int min = random.nextInt(1000) - 500;
+                int max = min + random.nextInt(100);
+                if (random.nextInt(20) == 0) {
+                    mins.addString(""); //NaN
+                    maxs.addString("");
+                } else {
+                    mins.addInt(min);
+                    maxs.addInt(max);
+                }
+            }
+            table.addColumn("v" + dv + "_min_", mins);
+            table.addColumn("v" + dv + "_max_", maxs);
+            table.addColumn("v" + dv + "_hasNaN_", PrimitiveArray.factory(PAType.BYTE, nFiles, "0"));
+        }
+
+        FileTableIndex index = new FileTableIndex(table, edvs, 0);
+        Test.ensureEqual(index.fileTable() == table, true, "");
+        Test.ensureEqual(index.isIndexed(0), true, "");
+        Test.ensureEqual(index.isIndexed(1), true, "");
+        Test.ensureEqual(index.isIndexed(2), false, "");
+        Test.ensureEqual(index.nIndexedVariables(), 0, "");
+        Test.ensureEqual(index.candidateFiles(2, "=", 5), null, "");
+        Test.ensureEqual(index.candidateFiles(0, "!=", 5), null, "");
+        Test.ensureEqual(index.candidateFiles(0, "=", Double.NaN), null, "");
+        Test.ensureEqual(index.nIndexedVariables(), 0, "");
+
+        String ops[] = {"<", "<=", "=", ">=", ">"};
+        for (int dv = 0; dv < 2; dv++) {
+            PAType paType = edvs[dv].sourceDataPAType();
+            for (int t = 0; t < 200; t++) {
+                String op = ops[random.nextInt(ops.length)];
+                double value = random.nextInt(1300) - 650 + (dv == 0 && t % 2 == 0? 0.5 : 0);
+                BitSet candidates = index.candidateFiles(dv, op, value);
+                for (int f = 0; f < nFiles; f++) {
+                    double min = table.getDoubleData(dv*3 + 0, f);
+                    double max = table.getDoubleData(dv*3 + 1, f);
+                    boolean nan = Double.isNaN(min) || Double.isNaN(max);
+                    boolean ok = EDDTableFromFiles.isOK(paType, min, max, 0, op, value);
+                    Test.ensureEqual(candidates.get(f), ok || nan, 
+                        "dv=" + dv + " f=" + f + " min=" + min + " max=" + max + " " + op + value);
+                }
+            }
+            Test.ensureEqual(index.nIndexedVariables(), dv + 1, "");
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ FileTableIndex.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -21,7 +21,9 @@ import com.cohort.util.MustBe;
 import com.cohort.util.String2;
 
 import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.util.AdmissionController;
 import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.util.ThreadedWorkManager;
 import gov.noaa.pfel.erddap.variable.EDV;
 import gov.noaa.pfel.erddap.variable.EDVGridAxis;
 
@@ -97,6 +99,13 @@ public class GridDataAccessor {
     protected long totalNBytes;
     protected int chunk = 0; //the next chunk to be gotten by getChunk
 
+    //If nPrefetch > 0, the next nPrefetch chunks are gotten (by the shared pool's threads)
+    //while the caller is using the current chunk.
+    protected int nPrefetch = 0;
+    protected ThreadedWorkManager<PrimitiveArray[]> prefetchManager = null; //made by the first getChunk
+    protected NDimensionalIndex prefetchIndex = null; //the driverIndex of the last chunk submitted
+    protected int nSubmitted = 0; //the number of chunks submitted to prefetchManager
+
     protected Table tDirTable, tFileTable; //null, unless eddGrid is EDDGridFromFiles
 
     /**
@@ -348,12 +357,19 @@ public class GridDataAccessor {
         Math2.ensureArraySizeOkay(driverIndex.size(), "GridDataAccessor");  //ensure not >Integer.MAX_VALUE chunks (will never finish!)
         Math2.ensureArraySizeOkay(partialIndex.size(), "GridDataAccessor"); //ensure each chunk size() is ok
         totalNBytes = driverIndex.size() * nBytesPerPartialRequest; //driverIndex.size() is a long
+        AdmissionController.charge(totalNBytes); //so big requests delay the admission of other requests
+
+        //prefetch? The prefetched chunks must fit in partialRequestMaxBytes.
+        if (EDStatic.nGridPrefetchChunks > 0 && driverIndex.size() > 1)
+            nPrefetch = (int)Math.min(Math.min(EDStatic.nGridPrefetchChunks, driverIndex.size() - 1), 
+                tPartialRequestMaxBytes / Math.max(1, nBytesPerPartialRequest));
         if (reallyVerbose) String2.log("      getAllOfNAxes=" + getAllOfNAxes + 
             //driverShape e.g., [15][1][1][1],  note getAllOfNAxes 1's on right if row-major
             "\n      driverShape=" + String2.toCSSVString(driverShape) +  
             //partialShape e.g., [1][1][43][45],  note 1's on left if row-major
                   "  partialShape=" + String2.toCSSVString(partialShape) +  
-            "\n      nBytesPerPartialRequest=" + nBytesPerPartialRequest + " totalNBytes=" + totalNBytes);
+            "\n      nBytesPerPartialRequest=" + nBytesPerPartialRequest + " totalNBytes=" + totalNBytes +
+            " nPrefetch=" + nPrefetch);
         
     }
 
@@ -562,11 +578,15 @@ public class GridDataAccessor {
         }
         
         try {
-            System.arraycopy(getChunk(this, driverIndex.getCurrent()), 0, partialDataValues, 0, partialDataValues.length);
+            PrimitiveArray results[] = nPrefetch > 0?
+                getPrefetchedChunk() : 
+                getChunk(this, driverIndex.getCurrent());
+            System.arraycopy(results, 0, partialDataValues, 0, partialDataValues.length);
 
         } catch (Throwable t) {
             //throwable while getting a chunk
             //shut everything down
+            releasePrefetch();
 
             while (t instanceof ExecutionException) //may be doubly wrapped
                 t = t.getCause();
@@ -597,6 +617,58 @@ public class GridDataAccessor {
         //String2.pressEnterToContinue("chunk=" + chunk + " task=" + task + " at end of getChunk.");
     }
     
+    /**
+     * This returns the data for the chunk at driverIndex (which was submitted 
+     * to prefetchManager earlier or is submitted now),
+     * and ensures that the next nPrefetch chunks are being gotten 
+     * while the caller uses this chunk.
+     *
+     * @throws Throwable if trouble (e.g., an ExecutionException)
+     */
+    private PrimitiveArray[] getPrefetchedChunk() throws Throwable {
+        if (prefetchManager == null) {
+            prefetchManager = new ThreadedWorkManager<>(nPrefetch, results -> {}); //results are gotten below
+            if (!prefetchManager.isThreaded()) {
+                //e.g., this is one of the shared pool's threads, so don't prefetch
+                prefetchManager = null;
+                nPrefetch = 0;
+                return getChunk(this, driverIndex.getCurrent());
+            }
+            prefetchIndex = new NDimensionalIndex(driverIndex.shape());
+        }
+
+        //this chunk and the next ones are in flight (total <= nPrefetch) while waiting for this chunk
+        submitPrefetches(chunk + nPrefetch);
+        PrimitiveArray results[] = prefetchManager.getNextTaskResult(); //in order, so it's this chunk
+
+        //the next nPrefetch chunks are in flight while the caller uses this chunk
+        submitPrefetches(chunk + 1 + nPrefetch);
+        return results;
+    }
+
+    /**
+     * This submits the next chunks to prefetchManager until nSubmitted is upTo
+     * (or there are no more chunks).
+     */
+    private void submitPrefetches(int upTo) throws Throwable {
+        while (nSubmitted < upTo) {
+            if (!(rowMajor? prefetchIndex.increment() : prefetchIndex.incrementCM())) 
+                return; //no more chunks
+            int tDriverCurrent[] = prefetchIndex.getCurrent().clone();
+            prefetchManager.addTask(() -> getChunk(this, tDriverCurrent));
+            nSubmitted++;
+        }
+    }
+
+    /** This cancels (and interrupts) the getting of chunks that are being prefetched. */
+    protected void releasePrefetch() {
+        nPrefetch = 0;
+        ThreadedWorkManager<PrimitiveArray[]> tManager = prefetchManager;
+        prefetchManager = null;
+        if (tManager != null)
+            tManager.forceShutdown();
+    }
+
     private PrimitiveArray[] getChunk(GridDataAccessor gda, int[] driverCurrent) throws Exception  {
         try {
             long time = System.currentTimeMillis();
@@ -825,6 +897,7 @@ public class GridDataAccessor {
 
     /** Call this when done getting data to release resources related to initially getting data (e.g., threads). */
     public void releaseGetResources() {
+        releasePrefetch();
         tDirTable = null;
         tFileTable = null;
     }
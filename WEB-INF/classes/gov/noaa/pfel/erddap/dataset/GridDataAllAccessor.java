@@ -5,6 +5,7 @@
 package gov.noaa.pfel.erddap.dataset;
 
 import com.cohort.array.NDimensionalIndex;
+import com.cohort.array.OffHeapArray;
 import com.cohort.array.PAType;
 import com.cohort.array.PrimitiveArray;
 import com.cohort.util.File2;
@@ -28,6 +29,8 @@ import java.io.FileOutputStream;
  * grid data query to an EDDGrid and makes it accessible one variable at a time
  * as a PrimitiveArray or DataInputStream.
  * This works with all data types (even Strings).
+ * While there is room (see Math2.reserveOffHeapMemory), numeric data variables are 
+ * kept in OffHeapArrays (outside of the Java heap) instead of in temp files.
  *
  * @author Bob Simons (was bob.simons@noaa.gov, now BobSimons2.00@gmail.com) 2010-09-03
  */
@@ -47,6 +50,7 @@ public class GridDataAllAccessor {
     //things the constructor sets
     protected String baseFileName; //to which the dv number is added
     protected PAType dataPAType[]; //1 per data variable  e.g., float.class
+    protected OffHeapArray dataOffHeap[]; //1 per data variable. null if the data is in a file.
 
     /**
      * This sets everything up (i.e., gets all the data and stores it in 
@@ -75,19 +79,42 @@ public class GridDataAllAccessor {
                 Math2.random(Integer.MAX_VALUE) + "_"; //so two identical queries don't interfere with each other
 
             dataPAType = new PAType[nDv];
+            dataOffHeap = new OffHeapArray[nDv];
             dos = new DataOutputStream[nDv]; //1 per data variable        
+            long n = gridDataAccessor.totalIndex().size();
             for (int dv = 0; dv < nDv; dv++) {
                 dataPAType[dv] = dataVars[dv].destinationDataPAType();
-                dos[dv] = new DataOutputStream(new BufferedOutputStream(
-                    new FileOutputStream(baseFileName + dv)));            
+                dataOffHeap[dv] = OffHeapArray.allocate(dataPAType[dv], n); //the final size
+                if (dataOffHeap[dv] == null)
+                    dos[dv] = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(baseFileName + dv)));            
             }
 
             //get all the data
             while (gridDataAccessor.incrementChunk()) {
                 for (int dv = 0; dv < nDv; dv++) {
-                    gridDataAccessor.getPartialDataValues(dv).writeDos(dos[dv]);
+                    PrimitiveArray pa = gridDataAccessor.getPartialDataValues(dv);
+                    if (dataOffHeap[dv] != null) {
+                        if (dataOffHeap[dv].add(pa))
+                            continue;
+                        //no more off-heap memory is available, so move this dv to a file
+                        dos[dv] = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(baseFileName + dv)));            
+                        dataOffHeap[dv].writeDos(dos[dv]);
+                        dataOffHeap[dv].close();
+                        dataOffHeap[dv] = null;
+                    }
+                    pa.writeDos(dos[dv]);
                 }
             }
+        } catch (Throwable t) {
+            //the caller won't get this object, so release the off-heap memory now
+            if (dataOffHeap != null) {
+                for (int dv = 0; dv < nDv; dv++) 
+                    if (dataOffHeap[dv] != null) 
+                        dataOffHeap[dv].close();
+            }
+            throw t;
         } finally {
             if (dos != null) {
                 for (int dv = 0; dv < nDv; dv++) 
@@ -107,6 +134,8 @@ public class GridDataAllAccessor {
      * @param throws RuntimeException if trouble
      */
     public DataInputStream getDataInputStream(int dv) throws Exception {
+        if (dataOffHeap != null && dataOffHeap[dv] != null)
+            return dataOffHeap[dv].dataInputStream();
         return new DataInputStream(File2.getDecompressedBufferedInputStream(baseFileName + dv));            
     }
 
@@ -155,6 +184,13 @@ public class GridDataAllAccessor {
     public void releaseResources() {
         releaseGetResources();
         try {
+            OffHeapArray tDataOffHeap[] = dataOffHeap;
+            dataOffHeap = null;
+            if (tDataOffHeap != null) {
+                for (int dv = 0; dv < tDataOffHeap.length; dv++) 
+                    if (tDataOffHeap[dv] != null) 
+                        tDataOffHeap[dv].close();
+            }
             if (dataPAType != null) {
                 int nDv = dataPAType.length;
                 for (int dv = 0; dv < nDv; dv++) {
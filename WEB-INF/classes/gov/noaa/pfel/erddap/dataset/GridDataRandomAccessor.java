@@ -12,30 +12,35 @@ import com.cohort.util.File2;
 import com.cohort.util.Math2;
 import com.cohort.util.MustBe;
 import com.cohort.util.String2;
+import com.cohort.util.Test;
 
 import gov.noaa.pfel.erddap.util.EDStatic;
 import gov.noaa.pfel.erddap.variable.EDV;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
 
 
 /** 
  * This class provides random access to the grid data requested by a 
  * grid data query to an EDDGrid.
- * It first stores all of the data in RandomAccessFiles.
- * Then it allows random access to those files.
- * This doesn't work for String data (the Strings are treated as doubles internally,
- * so become the values from String2.parseDouble(s)).
- *
- * <p>[FUTURE: This could be revised to work with Strings:
- * 1) make isString[nDv]
- * 2) store isString columns to 2 files: 
- *   bytes byte[] with utf8 bytes from the string, appended one after another 
- *      (StringArray.writeDos)
- *   offset long[] with offset of end of string. (beginning of first string is offset=0)
- * 3) add  public String getDataValueAsPAOne(int current[], int dv)
- *   which uses a variant of StringArray.readDis (but from RandomAccessFile).
- * ]
+ * It first gets all of the data, one chunk (see GridDataAccessor.incrementChunk) at a time.
+ * If the data is small (see EDStatic.gridRandomAccessInMemoryMB),
+ * it is stored in memory (like GridDataRandomAccessorInMemory).
+ * Otherwise, each chunk's PrimitiveArray is written (in bulk) to a file
+ * (1 per data variable, in the PrimitiveArray writeDos format),
+ * and then the files are memory-mapped, so random access is just a
+ * get from a MappedByteBuffer (not a seek and a read of a RandomAccessFile).
+ * Data variables with String data are always stored in memory
+ * (so the total number of values must be &lt; Integer.MAX_VALUE).
  *
  * @author Bob Simons (was bob.simons@noaa.gov, now BobSimons2.00@gmail.com) 2007-07-06
  */
@@ -49,52 +54,172 @@ public class GridDataRandomAccessor {
      */
     public static boolean verbose = false; 
 
+    /** The size of each MappedByteBuffer (a power of 2, so a multiple of every elementSize). */
+    protected final static int SEGMENT_SHIFT = 30; 
     
     //things the constructor generates
     protected NDimensionalIndex gdaTotalIndex;
     protected String rafName;
     protected PAType dataPAType[]; //1 per data variable
-    protected RandomAccessFile dataRaf[]; //1 per data variable
+    protected int dataElementSize[]; //1 per data variable
+    protected PrimitiveArray dataPA[]; //1 per data variable. null if in a file
+    protected ByteBuffer dataBuffers[][]; //[dv][segment]. [dv] is null if in memory
+    protected boolean inFile[]; //1 per data variable. true if rafName + dv exists
 
     /**
      * This sets everything up (i.e., gets all the data and stores it in 
-     * RandomAccessFiles).
+     * memory or in memory-mapped files).
      *
      * @param tGridDataAccessor a rowMajor gridDataAccessor
      * @throws Throwable if trouble
      */
     public GridDataRandomAccessor(GridDataAccessor gridDataAccessor) throws Throwable {
+        long time = System.currentTimeMillis();
         try {
             if (!gridDataAccessor.rowMajor())
                 throw new Exception("GridDataRandomAccessor.constructor requires the gridDataAccessor to be rowMajor.");
 
-            //make the dataRaf's
+            //decide where to store each dv's data
             EDV dataVars[] = gridDataAccessor.dataVariables();
             int nDv = dataVars.length;
-            dataRaf = new RandomAccessFile[nDv];
             dataPAType = new PAType[nDv];
+            dataElementSize = new int[nDv];
+            dataPA = new PrimitiveArray[nDv];
+            dataBuffers = new ByteBuffer[nDv][];
+            inFile = new boolean[nDv];
+            long nValues = gridDataAccessor.totalIndex().size();
+            long nBytes = 0;
+            for (int dv = 0; dv < nDv; dv++) {
+                dataPAType[dv] = dataVars[dv].destinationDataPAType();
+                dataElementSize[dv] = dataPAType[dv] == PAType.STRING? 8 : //a guess
+                    PrimitiveArray.factory(dataPAType[dv], 1, false).elementSize();
+                nBytes += nValues * dataElementSize[dv];
+            }
+            boolean allInMemory = nValues < Integer.MAX_VALUE &&
+                nBytes <= EDStatic.gridRandomAccessInMemoryMB * (long)Math2.BytesPerMB;
+            DataOutputStream dos[] = new DataOutputStream[nDv];
             String tQuery = gridDataAccessor.userDapQuery();
             rafName = gridDataAccessor.eddGrid().cacheDirectory() + //dir created by EDD.ensureValid
                 String2.md5Hex12(tQuery == null? "" : tQuery) + "_" +
                 Math2.random(Integer.MAX_VALUE) + "_";
-            for (int dv = 0; dv < nDv; dv++) {
-                dataPAType[dv] = dataVars[dv].destinationDataPAType();
-                dataRaf[dv] = new RandomAccessFile(rafName + dv, "rw");            
+            try {
+                for (int dv = 0; dv < nDv; dv++) {
+                    if (allInMemory || dataPAType[dv] == PAType.STRING) {
+                        if (nValues >= Integer.MAX_VALUE)
+                            throw new RuntimeException("GridDataRandomAccessor.constructor requires totalIndex.size=" + 
+                                nValues + " to be <" + Integer.MAX_VALUE + " for String data.");
+                        dataPA[dv] = PrimitiveArray.factory(dataPAType[dv], Math2.narrowToInt(nValues), false); //active?
+                    } else {
+                        inFile[dv] = true;
+                        dos[dv] = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(rafName + dv)));
+                    }
+                }
+
+                //get all the data, 1 chunk at a time
+                //In rowMajor order, the chunks are consecutive runs of the totalIndex.
+                while (gridDataAccessor.incrementChunk()) {
+                    for (int dv = 0; dv < nDv; dv++) {
+                        PrimitiveArray pa = gridDataAccessor.getPartialDataValues(dv);
+                        if (pa.elementType() != dataPAType[dv]) 
+                            pa = PrimitiveArray.factory(dataPAType[dv], pa);
+                        if (inFile[dv]) pa.writeDos(dos[dv]);
+                        else            dataPA[dv].append(pa);
+                    }
+                }
+            } finally {
+                for (int dv = 0; dv < nDv; dv++) 
+                    if (dos[dv] != null) 
+                        dos[dv].close();
             }
 
-            //get all the data
-            while (gridDataAccessor.increment()) {
-                for (int dv = 0; dv < nDv; dv++)
-                    gridDataAccessor.writeToRAF(dv, dataRaf[dv]); //this doesn't work for Strings
-                    //2020-03-12 was PrimitiveArray.rafWriteDouble( //this doesn't work for Strings
-                    //   dataRaf[dv], dataPAType[dv], gridDataAccessor.getDataValueAsDouble(dv));
+            //map the files
+            for (int dv = 0; dv < nDv; dv++) {
+                if (inFile[dv]) 
+                    dataBuffers[dv] = map(rafName + dv);
             }
             gdaTotalIndex = gridDataAccessor.totalIndex();
+            if (verbose)
+                String2.log("GridDataRandomAccessor nValues=" + nValues + 
+                    " nBytes=" + nBytes + (allInMemory? " inMemory" : " memoryMapped") + 
+                    " time=" + (System.currentTimeMillis() - time) + "ms");
+        } catch (Throwable t) {
+            releaseResources();
+            throw t;
         } finally {
             gridDataAccessor.releaseGetResources();
         }
     }
 
+    /**
+     * This memory-maps a file as read-only ByteBuffers (each up to 2^SEGMENT_SHIFT bytes).
+     * The mapping remains valid after the channel is closed.
+     *
+     * @param fullName the file's name
+     * @return the ByteBuffers (big endian, like the writeDos format)
+     * @throws Exception if trouble
+     */
+    protected static ByteBuffer[] map(String fullName) throws Exception {
+        return map(fullName, SEGMENT_SHIFT);
+    }
+
+    /**
+     * This is like map(fullName), but with the segment size specified 
+     * (so tests can use small segments).
+     *
+     * @param fullName the file's name
+     * @param segmentShift each ByteBuffer has up to 2^segmentShift bytes
+     *   (a multiple of every elementSize, so at least 3)
+     * @return the ByteBuffers (big endian, like the writeDos format)
+     * @throws Exception if trouble
+     */
+    static ByteBuffer[] map(String fullName, int segmentShift) throws Exception {
+        long segmentMask = (1L << segmentShift) - 1;
+        try (RandomAccessFile raf = new RandomAccessFile(fullName, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            int nSegments = Math.max(1, Math2.narrowToInt((size + segmentMask) >> segmentShift));
+            ByteBuffer buffers[] = new ByteBuffer[nSegments];
+            for (int seg = 0; seg < nSegments; seg++) {
+                long start = (long)seg << segmentShift;
+                buffers[seg] = channel.map(FileChannel.MapMode.READ_ONLY, start, 
+                    Math.min(segmentMask + 1, size - start));
+            }
+            return buffers;
+        }
+    }
+
+    /**
+     * This gets a value from memory-mapped ByteBuffers (from map()).
+     *
+     * @param buffers the ByteBuffers
+     * @param segmentShift the segmentShift used by map()
+     * @param paType the PAType of the data (not STRING)
+     * @param elementSize the number of bytes per value
+     * @param index the index of the value
+     * @param paOne receives the value
+     * @return paOne (for convenience)
+     */
+    static PAOne readFrom(ByteBuffer buffers[], int segmentShift, PAType paType, 
+        int elementSize, long index, PAOne paOne) {
+        long po = index * elementSize;
+        ByteBuffer bb = buffers[(int)(po >> segmentShift)];
+        int bbPo = (int)(po & ((1L << segmentShift) - 1));
+        switch (paType) {
+            case BYTE:   return paOne.setInt(bb.get(bbPo));
+            case UBYTE:  return paOne.setInt(bb.get(bbPo) & 0xFF);
+            case SHORT:  return paOne.setInt(bb.getShort(bbPo));
+            case USHORT: return paOne.setInt(bb.getShort(bbPo) & 0xFFFF);
+            case CHAR:   return paOne.setInt(bb.getChar(bbPo));
+            case INT:    return paOne.setInt(bb.getInt(bbPo));
+            case UINT:   return paOne.setLong(bb.getInt(bbPo) & 0xFFFFFFFFL);
+            case LONG:   return paOne.setLong(bb.getLong(bbPo));
+            case ULONG:  return paOne.setULong(new BigInteger(Long.toUnsignedString(bb.getLong(bbPo))));
+            case FLOAT:  return paOne.setFloat(bb.getFloat(bbPo));
+            default:     return paOne.setDouble(bb.getDouble(bbPo));
+        }
+    }
+
     /**
      * This returns the PAType of the specified data variable.
      */
@@ -113,30 +238,19 @@ public class GridDataRandomAccessor {
      * @param throws Throwable if trouble
      */
     public PAOne getDataValueAsPAOne(int current[], int dv, PAOne paOne) throws Throwable {
-        return paOne.readFromRAF(dataRaf[dv], 0, gdaTotalIndex.setCurrent(current));
-    }
-
-    /**
-     * Call this after increment() to get a data value (as a double) 
-     * from the specified dataVariable and add it to the specified PrimitiveArray.
-     *
-     * @param current  from gridDataAccessor.totalIndex().getCurrent() (or compatible),
-     *   but with values changed to what you want.
-     * @param dv a dataVariable number (within the request, not the EDD dataVariable number).
-     * @param throws Throwable if trouble
-     */
-    /* public void getDataValue(int current[], int dv, PrimitiveArray pa) throws Throwable {
-        gdaTotalIndex.setCurrent(current);
-        dataRaf[dv].seek(gdaTotalIndex.getIndex() * (long)pa.elementSize());
-        pa.readFromRAF(dataRaf[dv]);
-    } */
+        long index = gdaTotalIndex.setCurrent(current);
+        if (dataBuffers[dv] == null) 
+            //index will be int -- constructor checked totalIndex.size < Integer.MAX_VALUE
+            return paOne.readFrom(dataPA[dv], (int)index);
 
+        return readFrom(dataBuffers[dv], SEGMENT_SHIFT, dataPAType[dv], dataElementSize[dv], 
+            index, paOne);
+    }
 
     /** 
-     * This closes the files.
+     * This releases the in-memory data and the memory-mapped buffers.
      * It is recommended, but not required, that users of this class call this 
-     * (or closeAndDelete) when they are done using this instance.
-     * This is also called by finalize. 
+     * (or releaseResources) when they are done using this instance.
      * This won't throw an Exception.
      * 
      */
@@ -145,21 +259,9 @@ public class GridDataRandomAccessor {
         //leave files for the fullCacheDirectory cleaner to catch,
         //and reuse the data (File2.touch() the files) 
         //if another identical request arrives before files are deleted.
-        try {
-            if (dataRaf != null) {
-                int nDv = dataRaf.length;
-                for (int dv = 0; dv < nDv; dv++) {
-                    try {
-                        if (dataRaf[dv] != null)
-                            dataRaf[dv].close(); //will already by closed if this method already called           
-                        dataRaf[dv] = null;
-                    } catch (Throwable t2) {
-                        //String2.log(MustBe.throwableToString(t2));
-                    }
-                }
-            }
-        } catch (Throwable t) {
-        }
+        //The mapped buffers are unmapped when they are garbage collected.
+        dataPA = null;
+        dataBuffers = null;
     }
 
     /** 
@@ -167,21 +269,24 @@ public class GridDataRandomAccessor {
      * It is recommended, but not required, that users of this class call this 
      * (or close) when they are done using this instance.
      * This won't throw an Exception.
+     * On Windows, a file can't be deleted while it is still mapped,
+     * so it is left for the cache cleaner (see EDStatic.cacheMillis).
      * 
      */
     public void releaseResources() {
         close();
         try {
-            if (dataRaf != null) {
-                int nDv = dataRaf.length;
+            if (inFile != null) {
+                int nDv = inFile.length;
                 for (int dv = 0; dv < nDv; dv++) {
                     try {
-                        File2.delete(rafName + dv);
+                        if (inFile[dv]) 
+                            File2.delete(rafName + dv);
                     } catch (Throwable t2) {
                         //String2.log(MustBe.throwableToString(t2));
                     }
                 }
-                dataRaf = null;
+                inFile = null;
             }
         } catch (Throwable t) {
         }
@@ -196,4 +301,105 @@ public class GridDataRandomAccessor {
         releaseResources();
         super.finalize();
     }
+
+    /**
+     * This tests that the memory-mapped values (with small segments, so the values are
+     * in several segments) are the same as the in-memory values and the values
+     * read from the file with a RandomAccessFile (as this class used to do), for all PATypes
+     * except STRING (which are always in memory).
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** GridDataRandomAccessor.basicTest");
+        Random random = new Random(17);
+        int n = 5000;
+        int segmentShift = 10; //1024 bytes
+        String fullName = File2.getSystemTempDirectory() + 
+            "GridDataRandomAccessor.basicTest_" + Math2.random(Integer.MAX_VALUE);
+        PAType paTypes[] = {PAType.BYTE, PAType.UBYTE, PAType.SHORT, PAType.USHORT, PAType.CHAR, 
+            PAType.INT, PAType.UINT, PAType.LONG, PAType.ULONG, PAType.FLOAT, PAType.DOUBLE};
+        try {
+            for (int pat = 0; pat < paTypes.length; pat++) {
+                PAType paType = paTypes[pat];
+
+                //random bit patterns (so all values, e.g., negative, NaN, max) 
+                int elementSize = PrimitiveArray.factory(paType, 1, false).elementSize();
+                byte bytes[] = new byte[n * elementSize];
+                random.nextBytes(bytes);
+                PrimitiveArray pa = PrimitiveArray.factory(paType, n, false);
+                pa.readDis(new DataInputStream(new ByteArrayInputStream(bytes)), n);
+
+                //write the file in chunks (like the constructor does) and map it
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(fullName)));
+                try {
+                    for (int start = 0; start < n; start += 700)
+                        pa.subset(start, 1, start + 699).writeDos(dos);
+                } finally {
+                    dos.close();
+                }
+                ByteBuffer buffers[] = map(fullName, segmentShift);
+                Test.ensureEqual(buffers.length, (bytes.length + 1023) / 1024, "paType=" + paType);
+
+                //compare the values, in order and in random order
+                PAOne inMemory   = new PAOne(paType);
+                PAOne mapped     = new PAOne(paType);
+                PAOne fileBacked = new PAOne(paType);
+                try (RandomAccessFile raf = new RandomAccessFile(fullName, "r")) {
+                    for (int i = 0; i < 2 * n; i++) {
+                        int index = i < n? i : random.nextInt(n);
+                        String msg = "paType=" + paType + " index=" + index;
+                        inMemory.readFrom(pa, index);
+                        readFrom(buffers, segmentShift, paType, elementSize, index, mapped);
+                        fileBacked.readFromRAF(raf, 0, index);
+                        Test.ensureEqual(mapped.toString(), inMemory.toString(), msg);
+                        Test.ensureEqual(mapped.toString(), fileBacked.toString(), msg);
+                    }
+                }
+            }
+        } finally {
+            File2.delete(fullName); //on Windows, this may fail while the file is mapped
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ GridDataRandomAccessor.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
 }
@@ -0,0 +1,704 @@
+/*
+ * GridOverviews Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.variable.EDV;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This manages the overviews (reduced resolution copies) of the files
+ * of an EDDGridFromFiles dataset with latitude and longitude axes
+ * (see &lt;nOverviewLevels&gt; in datasets.xml).
+ * Overview level k of a file has every 2^k-th latitude and longitude value
+ * (starting at index 0) of each data variable, so a request with
+ * latitude and longitude strides of 2^k (e.g., from a WMS client or
+ * a Make A Graph map of a large region) reads 4^k times fewer values
+ * (and doesn't read and decompress the whole source file).
+ *
+ * <p>The overview values are exactly the source values (not averages),
+ * so responses are identical with or without overviews.
+ * Each level of each data variable is stored as a raw (row major, DataOutputStream)
+ * file in the dataset's datasetDir()/overviews/ directory.
+ * The file names include the source file's name (hashed) and lastModified,
+ * so a changed file's old overviews are never used.
+ *
+ * <p>A level is only used if the request's latitude and longitude starts and strides
+ * are multiples of 2^k. Since WMS chooses a stride that gives about the right 
+ * number of pixels (which is rarely a power of 2), Erddap's WMS uses snap()
+ * to adjust its latitude and longitude start and stride for datasets with overviews.
+ * Other requests (e.g., from Make A Graph) only use overviews if their strides happen to be suitable.
+ *
+ * <p>Overviews are built by one low priority background thread
+ * (shared by all datasets): for all the dataset's files when the dataset is loaded,
+ * and for each new or changed file found by EDDGridFromFiles.lowUpdate.
+ * Level k is built from level k-1 (if available).
+ * Until a file's overviews are built, requests read the source file as usual.
+ *
+ * <p>This is thread-safe.
+ */
+public class GridOverviews {
+
+    /** The maximum nOverviewLevels (level 8 has every 256th lat and lon value). */
+    public final static int MAX_LEVELS = 8;
+
+    /** The name of the subdirectory of the dataset's datasetDir(). */
+    public final static String DIR_NAME = "overviews/";
+
+    /** The one background thread which builds the overviews (for all datasets). 
+     * null until it is needed (and after shutdown()). guarded by GridOverviews.class */
+    private static ExecutorService builder = null;
+
+    /** The keys of the files which are queued or being built. */
+    private final static Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    //counters (since startup)
+    private final static AtomicLong nBuilt = new AtomicLong();
+    private final static AtomicLong nBuildErrors = new AtomicLong();
+    private final static AtomicLong nReads = new AtomicLong();
+    private final static AtomicLong nReadErrors = new AtomicLong();
+
+    private final EDDGridFromFiles edd;
+    private final int nLevels;
+    private final String dir;
+    private final int axis1, axis2; //the lat and lon axes (axis1 &lt; axis2)
+    private final int shape[];      //the source shape (for axis0, [0] is ignored)
+    private final boolean specialAxis0;
+    /** the data variables -&gt; the end of their overview file names */
+    private final IdentityHashMap<EDV, String> dvSuffix = new IdentityHashMap<>();
+
+    /**
+     * This makes the GridOverviews for a dataset, if the dataset supports them.
+     *
+     * @param edd the dataset
+     * @param tnLevels the number of overview levels (0 (the default) to MAX_LEVELS)
+     * @return the GridOverviews, or null if tnLevels is 0 or the dataset
+     *    doesn't support overviews (the reason is logged).
+     */
+    public static GridOverviews make(EDDGridFromFiles edd, int tnLevels) {
+        if (tnLevels <= 0 || tnLevels == Integer.MAX_VALUE)
+            return null;
+        String reason =
+            edd.latIndex <= 0 || edd.lonIndex <= 0? "it doesn't have latitude and longitude axes (after axis0)" :
+            edd.cacheFromUrl != null?               "it uses <cacheFromUrl>" : null;
+        EDV dvs[] = edd.dataVariables();
+        for (int dv = 0; dv < dvs.length && reason == null; dv++) {
+            if (dvs[dv].sourceDataPAType() == PAType.STRING)
+                reason = "it has a String data variable";
+        }
+        if (reason != null) {
+            String2.log("WARNING: datasetID=" + edd.datasetID() +
+                " won't use <nOverviewLevels> because " + reason + ".");
+            return null;
+        }
+        return new GridOverviews(edd, Math.min(tnLevels, MAX_LEVELS));
+    }
+
+    private GridOverviews(EDDGridFromFiles tEdd, int tnLevels) {
+        edd = tEdd;
+        nLevels = tnLevels;
+        dir = edd.datasetDir() + DIR_NAME;
+        axis1 = Math.min(edd.latIndex, edd.lonIndex);
+        axis2 = Math.max(edd.latIndex, edd.lonIndex);
+        int nav = edd.axisVariables().length;
+        shape = new int[nav];
+        for (int av = 1; av < nav; av++)
+            shape[av] = edd.axisVariables()[av].sourceValues().size();
+        specialAxis0 = edd.axis0Type != EDDGridFromFiles.AXIS0_REGULAR &&
+                       edd.axis0Type != EDDGridFromFiles.AXIS0_REPLACE_FROM_FILENAME;
+        for (EDV edv : edd.dataVariables())
+            dvSuffix.put(edv, "_" + String2.md5Hex12(edv.sourceName()) + "_" + edv.sourceDataType());
+    }
+
+    /** This returns the nOverviewLevels. */
+    public int nLevels() {
+        return nLevels;
+    }
+
+    /** The start of the names of a source file's overview files. */
+    private String filePrefix(String fullName) {
+        return String2.md5Hex12(fullName) + "_";
+    }
+
+    /** The start of the names of a version of a source file's overview files. */
+    private String versionPrefix(String fullName, long lastMod) {
+        return filePrefix(fullName) + lastMod + "_";
+    }
+
+    /** The size of an axis in level k (factor=2^k). */
+    private int levelSize(int av, int nAxis0, int factor) {
+        int n = av == 0? nAxis0 : shape[av];
+        return av == axis1 || av == axis2? (n - 1) / factor + 1 : n;
+    }
+
+    /**
+     * This queues the building of the overviews of all of the dataset's files
+     * (that don't have them yet) and deletes the overview files of
+     * files which are no longer in the dataset.
+     * This won't throw an exception.
+     */
+    public void submitAll() {
+        try {
+            Table tDirTable  = edd.getDirTable();
+            Table tFileTable = edd.getFileTable();
+            StringArray dirList    = (StringArray)tDirTable.getColumn(0);
+            ShortArray  ftDirIndex = (ShortArray)tFileTable.getColumn(EDDGridFromFiles.FT_DIR_INDEX_COL);
+            StringArray ftFileList = (StringArray)tFileTable.getColumn(EDDGridFromFiles.FT_FILE_LIST_COL);
+            LongArray   ftLastMod  = (LongArray) tFileTable.getColumn(EDDGridFromFiles.FT_LAST_MOD_COL);
+            IntArray    ftNValues  = (IntArray)  tFileTable.getColumn(EDDGridFromFiles.FT_N_VALUES_COL);
+            int nFiles = tFileTable.nRows();
+            HashSet<String> keep = new HashSet<>(Math.max(16, 2 * nFiles));
+            for (int row = 0; row < nFiles; row++) {
+                String tDir = dirList.get(ftDirIndex.get(row));
+                String tName = ftFileList.get(row);
+                keep.add(versionPrefix(tDir + tName, ftLastMod.get(row)));
+                submit(tDir, tName, ftLastMod.get(row), ftNValues.get(row));
+            }
+
+            //delete the orphans (but not another thread's files in progress)
+            long tooOld = System.currentTimeMillis() - Calendar2.MILLIS_PER_HOUR;
+            String names[] = new File(dir).list();
+            int nDeleted = 0;
+            for (int i = 0; names != null && i < names.length; i++) {
+                //name is e.g., [md5Hex12(fullName)]_[lastMod]_[level]_[md5Hex12(sourceName)]_[type]
+                String name = names[i];
+                String parts[] = String2.splitNoTrim(name, '_');
+                boolean orphan = name.endsWith(".tmp")?
+                    File2.getLastModified(dir + name) < tooOld :
+                    parts.length < 3 || !keep.contains(parts[0] + "_" + parts[1] + "_") ||
+                    String2.parseInt(parts[2]) > nLevels;
+                if (orphan && File2.delete(dir + name))
+                    nDeleted++;
+            }
+            if (EDD.verbose && nDeleted > 0)
+                String2.log("GridOverviews datasetID=" + edd.datasetID() +
+                    " deleted " + nDeleted + " obsolete overview files.");
+        } catch (Throwable t) {
+            String2.log(String2.ERROR + " in GridOverviews.submitAll for datasetID=" +
+                edd.datasetID() + ":\n" + MustBe.throwableToString(t));
+        }
+    }
+
+    /**
+     * This queues the building of a file's overviews (if they aren't already built).
+     *
+     * @param tDir the file's directory (with a trailing slash)
+     * @param tName the file's name
+     * @param lastMod the file's lastModified (as in the fileTable)
+     * @param nAxis0 the number of axis0 values in the file (ignored if axis0 is special)
+     */
+    public void submit(String tDir, String tName, long lastMod, int nAxis0) {
+        String fullName = tDir + tName;
+        if (isBuilt(versionPrefix(fullName, lastMod), nLevels))
+            return;
+        String key = dir + "\n" + fullName + "\n" + lastMod;
+        if (!pending.add(key))
+            return;
+        builder().execute(() -> {
+            try {
+                build(tDir, tName, lastMod, specialAxis0? 1 : nAxis0);
+            } catch (InterruptedException e) {
+                //shutdown() (tomcat is stopping). build() deleted the partial files.
+            } catch (Throwable t) {
+                nBuildErrors.incrementAndGet();
+                String2.log(String2.ERROR + " in GridOverviews.build for datasetID=" +
+                    edd.datasetID() + " file=" + fullName + ":\n" + MustBe.throwableToString(t));
+            } finally {
+                pending.remove(key);
+            }
+        });
+    }
+
+    /** This returns the builder (making it if needed). */
+    private static synchronized ExecutorService builder() {
+        if (builder == null) {
+            builder = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "GridOverviews builder");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return builder;
+    }
+
+    /**
+     * This interrupts the builder thread (build() stops and deletes its partial
+     * files when it sees the interrupt), discards the queued builds, 
+     * and waits (up to 10 seconds) for the current build to stop.
+     * EDStatic.destroy calls this when tomcat is stopped.
+     */
+    public static void shutdown() {
+        ExecutorService tBuilder;
+        synchronized (GridOverviews.class) {
+            tBuilder = builder;
+            builder = null;
+        }
+        if (tBuilder == null)
+            return;
+        tBuilder.shutdownNow();
+        pending.clear();
+        try {
+            if (!tBuilder.awaitTermination(10, TimeUnit.SECONDS))
+                String2.log(String2.WARNING + ": GridOverviews builder didn't stop within 10 seconds.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** This returns true if all of the data variables' level k files exist. */
+    private boolean isBuilt(String prefix, int level) {
+        for (String suffix : dvSuffix.values()) {
+            if (!File2.isFile(dir + prefix + level + suffix))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * This builds the missing levels of a file's overviews.
+     * Each level is built (from the previous level, via getSourceDataFromFile)
+     * in bands of rows (along axis1) with up to partialRequestMaxCells values.
+     */
+    private void build(String tDir, String tName, long lastMod, int nAxis0) throws Throwable {
+        String fullName = tDir + tName;
+        if (File2.getLastModified(fullName) != lastMod)
+            return; //the file has changed (and will be resubmitted) or was deleted
+        String prefix = versionPrefix(fullName, lastMod);
+        File2.makeDirectory(dir);
+
+        //delete the overviews of the file's previous versions
+        String filePrefix = filePrefix(fullName);
+        String names[] = new File(dir).list();
+        for (int i = 0; names != null && i < names.length; i++) {
+            if (names[i].startsWith(filePrefix) && !names[i].startsWith(prefix) &&
+                !names[i].endsWith(".tmp"))
+                File2.delete(dir + names[i]);
+        }
+
+        EDV dvs[] = edd.dataVariables();
+        int ndv = dvs.length;
+        int nav = shape.length;
+        for (int level = 1; level <= nLevels; level++) {
+            if (isBuilt(prefix, level))
+                continue;
+            long time = System.currentTimeMillis();
+            int factor = 1 << level;
+
+            //rows (along axis1) per band
+            long cellsPerRow = 1;
+            for (int av = axis1 + 1; av < nav; av++)
+                cellsPerRow *= levelSize(av, nAxis0, factor);
+            int rowsPerBand = Math2.narrowToInt(Math.max(1, EDStatic.partialRequestMaxCells / cellsPerRow));
+            int nRows = levelSize(axis1, nAxis0, factor);
+
+            String tmpNames[] = new String[ndv];
+            DataOutputStream dos[] = new DataOutputStream[ndv];
+            boolean ok = false;
+            try {
+                for (int dv = 0; dv < ndv; dv++) {
+                    tmpNames[dv] = dir + prefix + level + dvSuffix.get(dvs[dv]) +
+                        "_" + Math2.random(Integer.MAX_VALUE) + ".tmp";
+                    dos[dv] = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(tmpNames[dv])));
+                }
+
+                //for each combination of the axes before axis1 (e.g., time and depth)
+                int current[] = new int[axis1];
+                while (true) {
+                    for (int row = 0; row < nRows; row += rowsPerBand) {
+                        if (Thread.currentThread().isInterrupted())
+                            throw new InterruptedException(); //see shutdown()
+                        IntArray constraints = new IntArray(nav * 3, false);
+                        for (int av = 0; av < nav; av++) {
+                            int n = av == 0? nAxis0 : shape[av];
+                            if (av < axis1) {
+                                constraints.add(current[av]); constraints.add(1); constraints.add(current[av]);
+                            } else if (av == axis1) {
+                                constraints.add(row * factor);
+                                constraints.add(factor);
+                                constraints.add(Math.min(n - 1, (row + rowsPerBand - 1) * factor));
+                            } else if (av == axis2) {
+                                constraints.add(0); constraints.add(factor); constraints.add(n - 1);
+                            } else {
+                                constraints.add(0); constraints.add(1); constraints.add(n - 1);
+                            }
+                        }
+                        PrimitiveArray pas[] = edd.getSourceDataFromFile(tDir, tName, dvs, constraints);
+                        for (int dv = 0; dv < ndv; dv++)
+                            PrimitiveArray.factory(dvs[dv].sourceDataPAType(), pas[dv]).writeDos(dos[dv]);
+                    }
+
+                    //increment current[]
+                    int av = axis1 - 1;
+                    while (av >= 0 && ++current[av] >= levelSize(av, nAxis0, factor))
+                        current[av--] = 0;
+                    if (av < 0)
+                        break;
+                }
+
+                for (int dv = 0; dv < ndv; dv++) {
+                    dos[dv].close();
+                    dos[dv] = null;
+                }
+                if (File2.getLastModified(fullName) != lastMod)
+                    return; //the file changed while the overview was being built
+                for (int dv = 0; dv < ndv; dv++)
+                    File2.rename(tmpNames[dv], dir + prefix + level + dvSuffix.get(dvs[dv]));
+                ok = true;
+                nBuilt.incrementAndGet();
+                if (EDD.reallyVerbose)
+                    String2.log("GridOverviews datasetID=" + edd.datasetID() + " built level " +
+                        level + " of " + fullName + " time=" +
+                        (System.currentTimeMillis() - time) + "ms");
+            } finally {
+                for (int dv = 0; dv < ndv; dv++) {
+                    if (dos[dv] != null)
+                        try {dos[dv].close();} catch (Exception e) {}
+                    if (!ok && tmpNames[dv] != null)
+                        File2.delete(tmpNames[dv]);
+                }
+            }
+        }
+    }
+
+    /**
+     * This reads data from the best (coarsest) usable overview level of a file.
+     * A level is usable if the request's latitude and longitude start and stride
+     * are multiples of 2^level and the level has been built for the current
+     * version of the file.
+     * This won't throw an exception.
+     *
+     * @param tDir the file's directory (with a trailing slash)
+     * @param tName the file's name
+     * @param tDataVariables the desired data variables
+     * @param tConstraints the start, stride, stop for each axis
+     *    (the axis0 constraints have been customized for this file)
+     * @return the values (one PrimitiveArray (using the sourceDataPAType)
+     *    for each tDataVariable), or null if there is no usable level
+     *    (so the caller should read the source file as usual).
+     */
+    public PrimitiveArray[] read(String tDir, String tName, EDV tDataVariables[],
+        IntArray tConstraints) {
+
+        int bits = tConstraints.get(axis1 * 3) | tConstraints.get(axis1 * 3 + 1) |
+                   tConstraints.get(axis2 * 3) | tConstraints.get(axis2 * 3 + 1);
+        int level = Math.min(nLevels, Integer.numberOfTrailingZeros(bits)); //strides are >= 1, so bits != 0
+        if (level == 0)
+            return null;
+        String fullName = tDir + tName;
+        long lastMod = File2.getLastModified(fullName);
+        if (lastMod == 0)
+            return null;
+        String prefix = versionPrefix(fullName, lastMod);
+        while (level > 0 && !isBuilt(prefix, level))
+            level--;
+        if (level == 0)
+            return null;
+
+        //the level's shape and constraints
+        int factor = 1 << level;
+        int nav = shape.length;
+        int lShape[] = new int[nav];
+        int start[] = new int[nav], stride[] = new int[nav], stop[] = new int[nav];
+        long nValues = 1;
+        for (int av = 0; av < nav; av++) {
+            boolean latLon = av == axis1 || av == axis2;
+            lShape[av] = levelSize(av, 1, factor); //[0] is ignored
+            start[av]  = tConstraints.get(av * 3)     / (latLon? factor : 1);
+            stride[av] = tConstraints.get(av * 3 + 1) / (latLon? factor : 1);
+            stop[av]   = tConstraints.get(av * 3 + 2) / (latLon? factor : 1);
+            nValues *= (stop[av] - start[av]) / stride[av] + 1;
+        }
+        if (nValues >= Integer.MAX_VALUE)
+            return null;
+
+        try {
+            PrimitiveArray results[] = new PrimitiveArray[tDataVariables.length];
+            for (int dv = 0; dv < tDataVariables.length; dv++) {
+                String suffix = dvSuffix.get(tDataVariables[dv]);
+                if (suffix == null) //shouldn't happen
+                    return null;
+                results[dv] = readLevel(dir + prefix + level + suffix,
+                    tDataVariables[dv].sourceDataPAType(), lShape, start, stride, stop, (int)nValues);
+            }
+            nReads.incrementAndGet();
+            return results;
+        } catch (Exception e) {
+            //e.g., the file's overviews were just deleted because the file changed
+            nReadErrors.incrementAndGet();
+            String2.log("GridOverviews.read for datasetID=" + edd.datasetID() +
+                " failed (so the source file will be used): " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * This reads the requested values from an overview file
+     * (one run along the last axis at a time).
+     *
+     * @param fullName the overview file's name
+     * @param paType the data type of the values in the file
+     * @param lShape the level's shape ([0] is ignored)
+     * @param nValues the number of values which will be read
+     */
+    static PrimitiveArray readLevel(String fullName, PAType paType, int lShape[],
+        int start[], int stride[], int stop[], int nValues) throws Exception {
+
+        PrimitiveArray results = PrimitiveArray.factory(paType, nValues, false);
+        int elementSize = results.elementSize();
+        int rank = lShape.length;
+        int last = rank - 1;
+        long mult[] = new long[rank];
+        mult[last] = 1;
+        for (int av = last - 1; av >= 0; av--)
+            mult[av] = mult[av + 1] * lShape[av + 1];
+        int nRun = (stop[last] - start[last]) / stride[last] + 1;
+        int span = (nRun - 1) * stride[last] + 1;
+        byte bytes[] = new byte[span * elementSize];
+        PrimitiveArray run = stride[last] == 1? null : PrimitiveArray.factory(paType, span, false);
+        int current[] = start.clone();
+        try (RandomAccessFile raf = new RandomAccessFile(fullName, "r")) {
+            while (true) {
+                long offset = 0;
+                for (int av = 0; av < rank; av++)
+                    offset += current[av] * mult[av];
+                raf.seek(offset * elementSize);
+                raf.readFully(bytes);
+                DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+                if (run == null) {
+                    results.readDis(dis, span);
+                } else {
+                    run.clear();
+                    run.readDis(dis, span);
+                    for (int i = 0; i < nRun; i++)
+                        results.addFromPA(run, i * stride[last]);
+                }
+
+                //increment current[] (except the last axis)
+                int av = last - 1;
+                while (av >= 0 && (current[av] += stride[av]) > stop[av])
+                    current[av] = start[av--];
+                if (av < 0)
+                    return results;
+            }
+        }
+    }
+
+    /**
+     * This snaps a latitude or longitude [start:stride:stop] request
+     * (e.g., from WMS, where any stride that gives about the right number of pixels is fine)
+     * so that it can be read from an overview level:
+     * the stride is rounded down to a multiple of 2^k 
+     * (2^k is the largest power of 2 &lt;= stride, up to 2^nLevels),
+     * and the start is rounded down to a multiple of 2^k.
+     * So the request gets at most 2 times as many values along the axis.
+     *
+     * @param start the start index
+     * @param stride the stride (&gt;= 1)
+     * @param nLevels the dataset's nOverviewLevels
+     * @return {start, stride}
+     */
+    public static int[] snap(int start, int stride, int nLevels) {
+        int factor = Math.min(Integer.highestOneBit(Math.max(1, stride)), 1 << Math.max(0, Math.min(nLevels, MAX_LEVELS)));
+        return new int[]{(start / factor) * factor, (stride / factor) * factor};
+    }
+
+    /**
+     * This returns a one line summary of the overviews' status (for status.html).
+     */
+    public static String statusString() {
+        return "GridOverviews: pending=" + pending.size() +
+            " levelsBuilt=" + nBuilt.get() + " buildErrors=" + nBuildErrors.get() +
+            " reads=" + nReads.get() + " readErrors=" + nReadErrors.get() + " (since startup)";
+    }
+
+    /** This tests snap(). */
+    public static void testSnap() throws Throwable {
+        String2.log("\n*** GridOverviews.testSnap()");
+        //start, stride, nLevels -> expected start, stride
+        int tests[][] = {
+            {0,   1, 3,    0, 1},
+            {5,   1, 3,    5, 1},
+            {5,   2, 3,    4, 2},
+            {5,   3, 3,    4, 2},
+            {17,  7, 3,   16, 4},
+            {17, 12, 3,   16, 8},
+            {17, 12, 2,   16, 12},  //stride is a multiple of 4
+            {17, 13, 2,   16, 12},
+            {3, 300, 8,    0, 256},
+            {3, 300, 0,    3, 300}};
+        for (int t[] : tests) {
+            int ss[] = snap(t[0], t[1], t[2]);
+            String msg = "start=" + t[0] + " stride=" + t[1] + " nLevels=" + t[2];
+            Test.ensureEqual(ss[0], t[3], msg);
+            Test.ensureEqual(ss[1], t[4], msg);
+            //the snapped request is usable by level min(nLevels, log2(largest power of 2 <= stride))
+            int level = Math.min(t[2], 31 - Integer.numberOfLeadingZeros(t[1]));
+            Test.ensureEqual(Integer.numberOfTrailingZeros(ss[0] | ss[1] | (1 << 30)) >= level, true, msg);
+        }
+    }
+
+    /**
+     * This tests readLevel() by comparing its results with the values 
+     * picked directly from the level's values.
+     */
+    public static void testReadLevel() throws Throwable {
+        String2.log("\n*** GridOverviews.testReadLevel()");
+        String fullName = File2.getSystemTempDirectory() + 
+            "GridOverviews.testReadLevel_" + Math2.random(Integer.MAX_VALUE);
+        int lShape[] = {3, 5, 7}; //e.g., time, lat, lon
+        int n = lShape[0] * lShape[1] * lShape[2];
+        try {
+            for (PAType paType : new PAType[]{PAType.DOUBLE, PAType.FLOAT, PAType.SHORT, PAType.UBYTE}) {
+                //the level file has value = index (row major)
+                PrimitiveArray values = PrimitiveArray.factory(paType, n, false);
+                for (int i = 0; i < n; i++)
+                    values.addInt(i % 200);
+                try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(fullName)))) {
+                    values.writeDos(dos);
+                }
+
+                //start, stride, stop for each axis
+                int sss[][] = {
+                    {0, 1, 2,  0, 1, 4,  0, 1, 6},  //all
+                    {1, 1, 1,  2, 1, 2,  3, 1, 3},  //one value
+                    {0, 2, 2,  1, 3, 4,  0, 3, 6},
+                    {2, 1, 2,  0, 4, 4,  1, 5, 6},
+                    {0, 1, 1,  1, 1, 3,  6, 1, 6},  //last lon only
+                    {1, 1, 2,  0, 2, 4,  2, 2, 5}}; //stop isn't on the stride
+                for (int t[] : sss) {
+                    int start[]  = {t[0], t[3], t[6]};
+                    int stride[] = {t[1], t[4], t[7]};
+                    int stop[]   = {t[2], t[5], t[8]};
+                    PrimitiveArray expected = PrimitiveArray.factory(paType, n, false);
+                    for (int i0 = start[0]; i0 <= stop[0]; i0 += stride[0])
+                        for (int i1 = start[1]; i1 <= stop[1]; i1 += stride[1])
+                            for (int i2 = start[2]; i2 <= stop[2]; i2 += stride[2])
+                                expected.addFromPA(values, (i0 * lShape[1] + i1) * lShape[2] + i2);
+                    PrimitiveArray results = readLevel(fullName, paType, lShape, 
+                        start, stride, stop, expected.size());
+                    Test.ensureEqual(results.elementType(), paType, "");
+                    Test.ensureEqual(results.toString(), expected.toString(), 
+                        "paType=" + paType + " sss=" + String2.toCSSVString(t));
+                }
+            }
+        } finally {
+            File2.delete(fullName);
+        }
+    }
+
+    /**
+     * This tests that shutdown() interrupts the build which is running,
+     * discards the queued builds, and that a later build starts a new builder.
+     */
+    public static void testShutdown() throws Throwable {
+        String2.log("\n*** GridOverviews.testShutdown()");
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        AtomicBoolean queuedRan = new AtomicBoolean(false);
+        builder().execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        builder().execute(() -> queuedRan.set(true));
+        Test.ensureTrue(started.await(10, TimeUnit.SECONDS), "");
+        long time = System.currentTimeMillis();
+        shutdown();
+        Test.ensureTrue(System.currentTimeMillis() - time < 10000, "");
+        Test.ensureTrue(interrupted.get(), "");
+        Test.ensureTrue(!queuedRan.get(), "");
+        synchronized (GridOverviews.class) {
+            Test.ensureTrue(builder == null, "");
+        }
+        shutdown(); //it is okay to call this again
+
+        //a later build starts a new builder
+        CountDownLatch ran = new CountDownLatch(1);
+        builder().execute(() -> ran.countDown());
+        Test.ensureTrue(ran.await(10, TimeUnit.SECONDS), "");
+        shutdown();
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 2;
+        String msg = "\n^^^ GridOverviews.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) testSnap();
+                    if (test ==  1) testReadLevel();
+                    if (test ==  2) testShutdown();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
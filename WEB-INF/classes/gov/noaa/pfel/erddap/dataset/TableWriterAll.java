@@ -8,6 +8,7 @@ import com.cohort.array.Attributes;
 import com.cohort.array.DoubleArray;
 import com.cohort.array.FloatArray;
 import com.cohort.array.IntArray;
+import com.cohort.array.OffHeapArray;
 import com.cohort.array.PrimitiveArray;
 import com.cohort.array.ShortArray;
 import com.cohort.array.StringArray;
@@ -37,6 +38,8 @@ import java.util.Arrays;
  * DataOutputStreams (one per column) 
  * in chunks so that the whole table is available but doesn't have to be in memory 
  * at one time.
+ * While there is room (see Math2.reserveOffHeapMemory), numeric columns are 
+ * kept in OffHeapArrays (outside of the Java heap) instead of in temp files.
  * This is used by EDDTable.
  *
  * <p>This is different from most TableWriters in that finish() doesn't 
@@ -59,6 +62,7 @@ public class TableWriterAll extends TableWriter {
     //POLICY: because this class may be used in more than one thread,
     //each instance makes unique temp files names by adding randomInt to name.
     protected volatile DataOutputStream[] columnStreams;
+    protected volatile OffHeapArray[] columnOffHeap; //a column's element is null if it is in a file
     protected volatile long totalNRows = 0; 
 
     protected Table cumulativeTable; //set by writeAllAndFinish, if used
@@ -107,21 +111,24 @@ public class TableWriterAll extends TableWriter {
             return;
 
         //ensure the table's structure is the same as before
-        boolean firstTime = columnNames == null;
+        //(firstTime is based on columnStreams, since a subclass, e.g., TableWriterOrderByReduce,
+        //may have already called ensureCompatible)
+        boolean firstTime = columnStreams == null;
         ensureCompatible(table);
 
         //do firstTime stuff
         int nColumns = table.nColumns();
         if (firstTime) {
             columnStreams = new DataOutputStream[nColumns];
+            columnOffHeap = new OffHeapArray[nColumns];
             for (int col = 0; col < nColumns; col++) {
-                String tFileName = columnFileName(col);
-                columnStreams[col] = new DataOutputStream(new BufferedOutputStream(
-                    new FileOutputStream(tFileName)));
-                if (col == 0 && reallyVerbose) 
-                    String2.log("TableWriterAll nColumns=" + nColumns + 
-                        " colNames=" + table.getColumnNamesCSVString() + " col0 file=" + tFileName);
+                columnOffHeap[col] = OffHeapArray.allocate(columnType(col), table.nRows());
+                if (columnOffHeap[col] == null)
+                    openColumnStream(col);
             }
+            if (reallyVerbose) 
+                String2.log("TableWriterAll nColumns=" + nColumns + 
+                    " colNames=" + table.getColumnNamesCSVString() + " col0 file=" + columnFileName(0));
         }
 
         //avoid gathering more data than can be processed
@@ -133,13 +140,33 @@ public class TableWriterAll extends TableWriter {
         //do everyTime stuff
         //write the data
         for (int col = 0; col < nColumns; col++) {
-            Test.ensureNotNull(columnStreams[col], "columnStreams[" + col + "] is null! nColumns=" + nColumns);
             PrimitiveArray pa = table.getColumn(col);
+            if (columnOffHeap[col] != null) {
+                if (columnOffHeap[col].add(pa))
+                    continue;
+                //no more off-heap memory is available, so move this column to a file
+                openColumnStream(col);
+                columnOffHeap[col].writeDos(columnStreams[col]);
+                columnOffHeap[col].close();
+                columnOffHeap[col] = null;
+            }
+            Test.ensureNotNull(columnStreams[col], "columnStreams[" + col + "] is null! nColumns=" + nColumns);
             pa.writeDos(columnStreams[col]);
         }
         totalNRows = newTotalNRows;
     }
 
+    /**
+     * This opens the temp file for a column.
+     *
+     * @param col   0..
+     * @throws Throwable if trouble
+     */
+    protected void openColumnStream(int col) throws Throwable {
+        columnStreams[col] = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(columnFileName(col))));
+    }
+
     
     /**
      * This writes any end-of-file info to the stream and flushes the stream.
@@ -252,6 +279,9 @@ public class TableWriterAll extends TableWriter {
      * @throws Throwable if trouble  (e.g., totalNRows > Integer.MAX_VALUE)
      */
     public DataInputStream dataInputStream(int col) throws Throwable {
+        OffHeapArray[] tColumnOffHeap = columnOffHeap;
+        if (tColumnOffHeap != null && tColumnOffHeap[col] != null)
+            return tColumnOffHeap[col].dataInputStream();
         DataInputStream dis = new DataInputStream(File2.getDecompressedBufferedInputStream(
             columnFileName(col)));
         return dis;
@@ -321,6 +351,15 @@ public class TableWriterAll extends TableWriter {
                 columnStreams = null;
             }
 
+            //release the off-heap memory
+            OffHeapArray[] tColumnOffHeap = columnOffHeap;
+            columnOffHeap = null;
+            if (tColumnOffHeap != null) {
+                for (int col = 0; col < tColumnOffHeap.length; col++) 
+                    if (tColumnOffHeap[col] != null) 
+                        tColumnOffHeap[col].close();
+            }
+
             //delete the files
             if (columnNames == null)
                 return;
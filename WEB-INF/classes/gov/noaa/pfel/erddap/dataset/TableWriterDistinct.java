@@ -5,6 +5,7 @@
 package gov.noaa.pfel.erddap.dataset;
 
 import com.cohort.array.IntArray;
+import com.cohort.array.PrimitiveArray;
 import com.cohort.util.File2;
 import com.cohort.util.Math2;
 import com.cohort.util.MustBe;
@@ -27,6 +28,9 @@ import java.util.HashSet;
  * sort them, then write to some other TableWriter.
  * This functions like SQL's DISTINCT.
  *
+ * <p>If there are lots of rows, this does an external merge sort
+ * and removes duplicates during the merge (see TableWriterExternalSort).
+ *
  * <p>This doesn't do anything to missing values and doesn't assume they are
  * stored as NaN or fake missing values.
  *
@@ -36,11 +40,7 @@ import java.util.HashSet;
  *
  * @author Bob Simons (was bob.simons@noaa.gov, now BobSimons2.00@gmail.com) 2009-05-08
  */
-public class TableWriterDistinct extends TableWriterAll {
-
-
-    //set by constructor
-    protected TableWriter otherTableWriter;
+public class TableWriterDistinct extends TableWriterExternalSort {
 
     /**
      * The constructor.
@@ -57,59 +57,9 @@ public class TableWriterDistinct extends TableWriterAll {
     public TableWriterDistinct(int tLanguage, EDD tEdd, String tNewHistory, String tDir, String tFileNameNoExt, 
         TableWriter tOtherTableWriter) {
 
-        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt); 
-        otherTableWriter = tOtherTableWriter;
-    }
-
-
-    /**
-     * This adds the current contents of table (a chunk of data) to the OutputStream.
-     * This calls ensureCompatible each time it is called.
-     * If this is the first time this is called, this does first time things
-     *   (e.g., call OutputStreamSource.outputStream() and write file header).
-     * The number of columns, the column names, and the types of columns 
-     *   must be the same each time this is called.
-     *
-     * @param table with destinationValues.
-     *   The table should have missing values stored as destinationMissingValues
-     *   or destinationFillValues.
-     *   This implementation doesn't change them.
-     * @throws Throwable if trouble
-     */
-    public void writeSome(Table table) throws Throwable {
-        if (table.nRows() == 0) 
-            return;
-
-        //to save memory, this just does a feeble job (remove duplicates from this partial table)
-        //  and leaves perfect job to finish()
-        sortAndRemoveDuplicates(table);
-
-        //ensure the table's structure is the same as before
-        //and write to dataOutputStreams
-        super.writeSome(table);
+        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt, tOtherTableWriter); 
     }
 
-    
-    /**
-     * This reconstructs the table, sorts and removes duplicates, and sends table to otherTableWriter.
-     * If ignoreFinish=true, nothing will be done.
-     *
-     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
-     */
-    public void finish() throws Throwable {
-        if (ignoreFinish)
-            return;
-
-        //close the dataOutputStreams
-        super.finish();  //this throws Throwable if no data
-
-        //makeCumulativeTable
-        Table table = cumulativeTable();   
-        releaseResources();
-
-        //sorts and remove duplicates, and sends table to otherTableWriter.
-        lowFinish(table);
-    }
 
     /**
      * If caller has the entire table, use this instead of repeated writeSome() + finish().
@@ -144,6 +94,33 @@ public class TableWriterDistinct extends TableWriterAll {
         otherTableWriter = null;
     }
 
+    /**
+     * This sorts the rows of a table in memory and removes duplicates.
+     *
+     * @param table with destinationValues
+     */
+    protected void sortInMemory(Table table) {
+        sortAndRemoveDuplicates(table);
+    }
+
+    /**
+     * This compares two rows (like leftToRightSortIgnoreCase).
+     */
+    protected int compareRows(PrimitiveArray pas1[], int row1,
+        PrimitiveArray pas2[], int row2) {
+        for (int col = 0; col < pas1.length; col++) {
+            int result = pas1[col].compareIgnoreCase(row1, pas2[col], row2);
+            if (result != 0)
+                return result;
+        }
+        return 0;
+    }
+
+    /** This returns true. */
+    protected boolean removeDuplicates() {
+        return true;
+    }
+
     private void sortAndRemoveDuplicates(Table table) {
         //sort
         table.leftToRightSortIgnoreCase(table.nColumns()); 
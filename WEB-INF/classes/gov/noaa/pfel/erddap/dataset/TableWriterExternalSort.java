@@ -0,0 +1,607 @@
+/*
+ * TableWriterExternalSort Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.util.EDStatic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * TableWriterExternalSort is the superclass of the TableWriters
+ * (TableWriterOrderBy and TableWriterDistinct) which gather all rows,
+ * sort them, then write them to some other TableWriter.
+ *
+ * <p>The rows are gathered in memory. Whenever they need more than
+ * EDStatic.sortInMemoryMB, they are sorted (see sortInMemory())
+ * and written to a temporary file (a "run").
+ * If there are no runs, finish() sorts the rows in memory (as before).
+ * Otherwise, finish() does a k-way merge of the runs (see compareRows()) and
+ * streams the results to otherTableWriter in chunks, so memory use
+ * is limited no matter how many rows there are.
+ * If there are more than MAX_MERGE_RUNS runs, groups of runs are first merged into
+ * bigger runs. If removeDuplicates() is true, duplicate rows are removed during the merge.
+ * If EDStatic.sortInMemoryMB is 0, all rows are gathered via TableWriterAll
+ * and sorted in memory in finish().
+ *
+ * <p>The merge is stable: equal rows from earlier runs are written first.
+ *
+ * <p>Unlike TableWriterAllWithMetadata, this doesn't keep track of min,max for actual_range
+ * or update metadata at end. It is assumed that this is like a filter,
+ * and that a subsequent TableWriter will handle that if needed.
+ */
+public abstract class TableWriterExternalSort extends TableWriterAll {
+
+    /** The maximum number of runs which are merged at once. */
+    public final static int MAX_MERGE_RUNS = 64;
+
+    //set by constructor
+    protected TableWriter otherTableWriter;
+
+    //set the first time writeSome is called
+    private long maxBytes = -1;  //0=gather all rows via TableWriterAll
+
+    private Table buffer = null; //the rows which aren't in a run yet
+    private int nRunsMade = 0;
+    private ArrayList<String> runNames = new ArrayList<>(); //the runs which haven't been merged yet, in order
+
+    /**
+     * The constructor.
+     *
+     * @param tLanguage the index of the selected language
+     * @param tDir a private cache directory for storing the intermediate files,
+     *    usually cacheDirectory(datasetID)
+     * @param tFileNameNoExt is the fileName-safe fileName without dir or extension
+     *    (used as basis for temp files).
+     *     A random number will be added to it for safety.
+     * @param tOtherTableWriter the tableWriter that will receive the sorted rows
+     *   found by this tableWriter.
+     */
+    public TableWriterExternalSort(int tLanguage, EDD tEdd, String tNewHistory, String tDir,
+        String tFileNameNoExt, TableWriter tOtherTableWriter) {
+
+        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt);
+        otherTableWriter = tOtherTableWriter;
+    }
+
+    /**
+     * This sorts the rows of a table in memory
+     * (and, if removeDuplicates(), removes duplicate rows).
+     *
+     * @param table with destinationValues
+     * @throws Throwable if trouble
+     */
+    protected abstract void sortInMemory(Table table) throws Throwable;
+
+    /**
+     * This compares two rows (consistent with the sort order of sortInMemory()).
+     *
+     * @param pas1 the columns with row1
+     * @param row1 the row number in pas1
+     * @param pas2 the columns with row2
+     * @param row2 the row number in pas2
+     * @return a negative integer, zero, or a positive integer if row1 sorts
+     *   before, the same as, or after row2.
+     */
+    protected abstract int compareRows(PrimitiveArray pas1[], int row1,
+        PrimitiveArray pas2[], int row2);
+
+    /**
+     * This indicates if duplicate rows should be removed.
+     * This implementation returns false.
+     */
+    protected boolean removeDuplicates() {
+        return false;
+    }
+
+
+    /**
+     * This adds the current contents of table (a chunk of data) to the rows
+     * which will be sorted.
+     * This calls ensureCompatible each time it is called.
+     * The number of columns, the column names, and the types of columns
+     *   must be the same each time this is called.
+     *
+     * @param table with destinationValues.
+     *   The table should have missing values stored as destinationMissingValues
+     *   or destinationFillValues.
+     *   This implementation doesn't change them.
+     * @throws Throwable if trouble
+     */
+    public void writeSome(Table table) throws Throwable {
+        int nRows = table.nRows();
+        if (nRows == 0)
+            return;
+        if (maxBytes < 0)
+            maxBytes = Math.max(0, EDStatic.sortInMemoryMB * (long)Math2.BytesPerMB);
+
+        if (maxBytes == 0) {
+            //to save memory, just remove duplicates from this partial table
+            //  and leave perfect job to finish()
+            if (removeDuplicates())
+                sortInMemory(table);
+
+            //ensure the table's structure is the same as before
+            //and write to dataOutputStreams
+            super.writeSome(table);
+            return;
+        }
+
+        //ensure the table's structure is the same as before
+        ensureCompatible(table);
+        if (buffer == null)
+            buffer = table.subset(0, 1, nRows - 1); //a copy, since caller may reuse table
+        else buffer.append(table);
+
+        //too big?  sort and write a run
+        if (bufferBytes() > maxBytes) {
+            sortInMemory(buffer);
+            if (bufferBytes() > maxBytes / 2) { //removeDuplicates may have removed lots of rows
+                writeRun(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    /** This returns the approximate number of bytes used by buffer. */
+    private long bufferBytes() {
+        return buffer.nRows() * (long)buffer.estimatedBytesPerRow();
+    }
+
+    /**
+     * This returns the number of rows per block in the runs
+     * (so that MAX_MERGE_RUNS blocks fit in maxBytes).
+     */
+    private int blockNRows() {
+        return Math2.narrowToInt(Math.max(100,
+            maxBytes / (MAX_MERGE_RUNS * (long)Math.max(1, makeEmptyTable().estimatedBytesPerRow()))));
+    }
+
+    /** This returns the name for a new run file. */
+    private String newRunName() {
+        return dir + fileNameNoExt + "." + randomInt + ".run" + nRunsMade++ + ".temp";
+    }
+
+    /**
+     * This writes the (already sorted) rows of a table to a new run file.
+     *
+     * @param table the sorted rows
+     * @throws Throwable if trouble
+     */
+    private void writeRun(Table table) throws Throwable {
+        String runName = newRunName();
+        runNames.add(runName);
+        int nRows = table.nRows();
+        int nColumns = table.nColumns();
+        int blockNRows = blockNRows();
+        PrimitiveArray blockPas[] = new PrimitiveArray[nColumns]; //reused for each block
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(runName)));
+        try {
+            for (int start = 0; start < nRows; start += blockNRows) {
+                int end = Math.min(nRows, start + blockNRows);
+                dos.writeInt(end - start);
+                for (int col = 0; col < nColumns; col++) {
+                    //write the block in bulk (much faster than writing one element at a time)
+                    PrimitiveArray pa = table.getColumn(col);
+                    if (start == 0 && end == nRows) {
+                        pa.writeDos(dos);
+                    } else {
+                        blockPas[col] = pa.subset(blockPas[col], start, 1, end - 1);
+                        blockPas[col].writeDos(dos);
+                    }
+                }
+            }
+            dos.writeInt(0); //end of run
+        } finally {
+            dos.close();
+        }
+        if (reallyVerbose) String2.log("TableWriterExternalSort wrote run#" +
+            (runNames.size() - 1) + " nRows=" + nRows);
+    }
+
+    /** One run which is being merged. */
+    private class Run {
+        int index; //in the list of runs being merged
+        DataInputStream dis;
+        PrimitiveArray pas[]; //the current block
+        int row = 0;
+        int nRows = 0;
+
+        Run(int tIndex, String runName) throws Throwable {
+            index = tIndex;
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(runName)));
+            int nColumns = nColumns();
+            pas = new PrimitiveArray[nColumns];
+            for (int col = 0; col < nColumns; col++)
+                pas[col] = columnEmptyPA(col);
+        }
+
+        /** This reads the next block of rows. It returns false if there are no more rows. */
+        boolean readBlock() throws Throwable {
+            nRows = dis.readInt();
+            row = 0;
+            for (int col = 0; col < pas.length; col++) {
+                pas[col].clear();
+                pas[col].readDis(dis, nRows);
+            }
+            return nRows > 0;
+        }
+
+        /** This moves to the next row. It returns false if there are no more rows. */
+        boolean next() throws Throwable {
+            return ++row < nRows || readBlock();
+        }
+    }
+
+    /**
+     * This merges some runs and writes the results to a new run file
+     * (if runDos != null) or to otherTableWriter.
+     *
+     * @param tRunNames the runs to be merged, in the order they were made
+     * @param runDos the new run file, or null
+     * @throws Throwable if trouble
+     */
+    private void mergeRuns(List<String> tRunNames, DataOutputStream runDos) throws Throwable {
+        int nColumns = nColumns();
+        int blockNRows = blockNRows();
+        boolean removeDuplicates = removeDuplicates();
+        PriorityQueue<Run> queue = new PriorityQueue<>(tRunNames.size(), (run1, run2) -> {
+            int result = compareRows(run1.pas, run1.row, run2.pas, run2.row);
+            return result != 0? result : run1.index - run2.index; //stable
+        });
+        ArrayList<Run> runs = new ArrayList<>();
+        Table out = makeEmptyTable();
+        PrimitiveArray outPas[] = new PrimitiveArray[nColumns];
+        PrimitiveArray lastPas[] = new PrimitiveArray[nColumns]; //the last row written
+        for (int col = 0; col < nColumns; col++) {
+            outPas[col] = out.getColumn(col);
+            lastPas[col] = columnEmptyPA(col);
+        }
+        boolean hasLast = false;
+        long nRowsOut = 0;
+        try {
+            for (int i = 0; i < tRunNames.size(); i++) {
+                Run run = new Run(i, tRunNames.get(i));
+                runs.add(run);
+                if (run.readBlock())
+                    queue.add(run);
+            }
+
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+
+                //duplicate of the last row written?
+                boolean isDuplicate = false;
+                if (removeDuplicates && hasLast) {
+                    isDuplicate = true;
+                    for (int col = 0; col < nColumns; col++) {
+                        if (run.pas[col].compare(run.row, lastPas[col], 0) != 0) {
+                            isDuplicate = false;
+                            break;
+                        }
+                    }
+                }
+
+                if (!isDuplicate) {
+                    for (int col = 0; col < nColumns; col++) {
+                        outPas[col].addFromPA(run.pas[col], run.row);
+                        if (removeDuplicates) {
+                            lastPas[col].clear();
+                            lastPas[col].addFromPA(run.pas[col], run.row);
+                        }
+                    }
+                    hasLast = true;
+
+                    //write a block
+                    if (out.nRows() >= blockNRows) {
+                        nRowsOut += out.nRows();
+                        boolean noMoreDataPlease = writeBlock(out, runDos);
+                        out = makeEmptyTable();
+                        for (int col = 0; col < nColumns; col++)
+                            outPas[col] = out.getColumn(col);
+                        if (noMoreDataPlease)
+                            break;
+                    }
+                }
+
+                if (run.next())
+                    queue.add(run);
+            }
+
+            //write the last block
+            nRowsOut += out.nRows();
+            if (runDos == null) {
+                if (out.nRows() > 0)
+                    otherTableWriter.writeSome(out);
+            } else {
+                if (out.nRows() > 0)
+                    writeBlock(out, runDos);
+                runDos.writeInt(0); //end of run
+            }
+        } finally {
+            for (int i = 0; i < runs.size(); i++)
+                try {runs.get(i).dis.close();} catch (Exception e) {}
+        }
+        if (reallyVerbose) String2.log("TableWriterExternalSort merged " + tRunNames.size() +
+            " runs. nRowsOut=" + nRowsOut);
+    }
+
+    /**
+     * This writes a block of rows to a run file or to otherTableWriter.
+     *
+     * @param out the rows
+     * @param runDos the run file, or null for otherTableWriter
+     * @return true if otherTableWriter doesn't want any more data
+     * @throws Throwable if trouble
+     */
+    private boolean writeBlock(Table out, DataOutputStream runDos) throws Throwable {
+        if (runDos == null) {
+            otherTableWriter.writeSome(out);
+            return otherTableWriter.noMoreDataPlease;
+        }
+        int nRows = out.nRows();
+        int nColumns = out.nColumns();
+        runDos.writeInt(nRows);
+        for (int col = 0; col < nColumns; col++)
+            out.getColumn(col).writeDos(runDos);
+        return false;
+    }
+
+
+    /**
+     * This sorts the rows and sends them to otherTableWriter.
+     * If ignoreFinish=true, nothing will be done.
+     *
+     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
+     */
+    public void finish() throws Throwable {
+        if (ignoreFinish)
+            return;
+
+        //all rows in memory?  sort them as before
+        if (runNames.isEmpty()) {
+            Table table;
+            if (buffer == null) {
+                //close the dataOutputStreams
+                super.finish();  //this throws Throwable if no data
+                table = cumulativeTable();
+                releaseResources();
+            } else {
+                table = makeEmptyTable();
+                int nColumns = nColumns();
+                for (int col = 0; col < nColumns; col++)
+                    table.setColumn(col, buffer.getColumn(col).setMaxIsMV(columnMaxIsMV[col]));
+                buffer = null;
+            }
+            writeAllAndFinish(table);
+            return;
+        }
+
+        //external merge sort
+        try {
+            if (buffer != null) {
+                sortInMemory(buffer);
+                writeRun(buffer);
+                buffer = null;
+            }
+
+            //too many runs?  merge groups of runs into bigger runs
+            //(Each new run is added to runNames as soon as it is created, 
+            //so releaseResources deletes it if there is trouble.)
+            while (runNames.size() > MAX_MERGE_RUNS) {
+                int nOldRuns = runNames.size();
+                for (int start = 0; start < nOldRuns; start += MAX_MERGE_RUNS) {
+                    List<String> group = new ArrayList<>(runNames.subList(start,
+                        Math.min(nOldRuns, start + MAX_MERGE_RUNS)));
+                    String runName = newRunName();
+                    runNames.add(runName);
+                    DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(runName)));
+                    try {
+                        mergeRuns(group, dos);
+                    } finally {
+                        dos.close();
+                    }
+                    for (int i = 0; i < group.size(); i++)
+                        File2.simpleDelete(group.get(i));
+                }
+                runNames.subList(0, nOldRuns).clear();
+            }
+
+            mergeRuns(runNames, null);
+        } finally {
+            releaseResources();
+        }
+        otherTableWriter.finish();
+        otherTableWriter = null;
+
+        //diagnostic
+        if (verbose)
+            String2.log("TableWriterExternalSort done. TIME=" +
+                (System.currentTimeMillis() - time) + "ms\n");
+    }
+
+    /**
+     * This deletes the in-memory rows and the run files, and (via the superclass)
+     * the temporary files and cumulativeTable (if any).
+     * This won't throw an exception.
+     */
+    public void releaseResources() {
+        buffer = null;
+        for (int i = 0; i < runNames.size(); i++)
+            File2.simpleDelete(runNames.get(i));
+        runNames.clear();
+        super.releaseResources();
+    }
+
+    /**
+     * This sorts chunks of data with a TableWriterOrderBy (by key) or a TableWriterDistinct
+     * and returns the results.
+     *
+     * @param distinct if true, this uses a TableWriterDistinct
+     * @param tMaxBytes the maxBytes to use (instead of the one from sortInMemoryMB):
+     *    0 to gather the rows via TableWriterAll, Long.MAX_VALUE for all rows in memory,
+     *    or small to write lots of runs
+     * @param minNRuns the minimum number of runs which must be written
+     */
+    private static Table testSort(boolean distinct, long tMaxBytes, int minNRuns, 
+        Table chunks[]) throws Throwable {
+        String dir = EDStatic.fullTestCacheDirectory;
+        File2.makeDirectory(dir);
+        TableWriterAll results = new TableWriterAll(0, null, "", dir, "testSortResults");
+        TableWriterExternalSort twes = distinct?
+            new TableWriterDistinct(0, null, "", dir, "testSort", results) :
+            new TableWriterOrderBy( 0, null, "", dir, "testSort", results, "key");
+        twes.maxBytes = tMaxBytes; 
+        for (int c = 0; c < chunks.length; c++)
+            twes.writeSome((Table)chunks[c].clone());  //writeSome may change the table
+        Test.ensureTrue(twes.runNames.size() >= minNRuns, 
+            "nRuns=" + twes.runNames.size() + " minNRuns=" + minNRuns);
+        twes.finish();
+        Table table = results.cumulativeTable();
+        results.releaseResources();
+        return table;
+    }
+
+    /**
+     * This tests that the external merge sort (with lots of runs, so more than 
+     * MAX_MERGE_RUNS are merged) has the same results as sorting in memory,
+     * for orderBy (which must be stable) and distinct.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** TableWriterExternalSort.basicTest");
+        Random random = new Random(17);
+        int nChunks = 100, chunkNRows = 1000;
+        long tinyMaxBytes = 20000;
+
+        //orderBy key: lots of rows with the same key, so the sort must be stable
+        Table chunks[] = new Table[nChunks];
+        for (int c = 0; c < nChunks; c++) {
+            IntArray key = new IntArray(chunkNRows, false);
+            IntArray seq = new IntArray(chunkNRows, false);
+            StringArray s = new StringArray(chunkNRows, false);
+            for (int row = 0; row < chunkNRows; row++) {
+                key.add(random.nextInt(50));
+                seq.add(c * chunkNRows + row);
+                s.add("s" + random.nextInt(1000));
+            }
+            chunks[c] = new Table();
+            chunks[c].addColumn("key", key);
+            chunks[c].addColumn("seq", seq);
+            chunks[c].addColumn("s", s);
+        }
+        Table inMemory = testSort(false, Long.MAX_VALUE, 0, chunks);
+        Table external = testSort(false, tinyMaxBytes, MAX_MERGE_RUNS + 1, chunks);
+        Test.ensureEqual(external.nRows(), nChunks * chunkNRows, "");
+        PrimitiveArray key = external.getColumn("key");
+        PrimitiveArray seq = external.getColumn("seq");
+        for (int row = 1; row < external.nRows(); row++) 
+            Test.ensureTrue(key.getInt(row - 1) < key.getInt(row) ||
+                (key.getInt(row - 1) == key.getInt(row) && seq.getInt(row - 1) < seq.getInt(row)), 
+                "row=" + row);
+        Test.ensureEqual(external.dataToString(), inMemory.dataToString(), "");
+        Test.ensureEqual(testSort(false, 0, 0, chunks).dataToString(), inMemory.dataToString(), "");
+
+        //distinct: lots of duplicate rows
+        for (int c = 0; c < nChunks; c++) {
+            PrimitiveArray tSeq = chunks[c].getColumn("seq");
+            PrimitiveArray tS = chunks[c].getColumn("s");
+            for (int row = 0; row < chunkNRows; row++) {
+                tSeq.setInt(row, random.nextInt(10));
+                tS.setString(row, "s" + random.nextInt(5));
+            }
+        }
+        inMemory = testSort(true, Long.MAX_VALUE, 0, chunks);
+        Test.ensureEqual(inMemory.nRows(), 50 * 10 * 5, "");
+        external = testSort(true, tinyMaxBytes, MAX_MERGE_RUNS + 1, chunks);
+        Test.ensureEqual(external.dataToString(), inMemory.dataToString(), "");
+        Test.ensureEqual(testSort(true, 0, 0, chunks).dataToString(), inMemory.dataToString(), "");
+
+        //trouble during an intermediate merge pass: all of the run files are deleted,
+        //including the merged runs which were already written
+        String dir = EDStatic.fullTestCacheDirectory;
+        TableWriterExternalSort twes = new TableWriterOrderBy(0, null, "", dir, "testSortTrouble",
+            new TableWriterAll(0, null, "", dir, "testSortTroubleResults"), "key");
+        twes.maxBytes = tinyMaxBytes; 
+        for (int c = 0; c < nChunks; c++)
+            twes.writeSome((Table)chunks[c].clone());
+        Test.ensureTrue(twes.runNames.size() > MAX_MERGE_RUNS, "nRuns=" + twes.runNames.size());
+        //the first group merges, then the second group can't find its last run
+        File2.delete(twes.runNames.get(twes.runNames.size() - 1));
+        String prefix = "testSortTrouble." + twes.randomInt + ".";
+        try {
+            twes.finish();
+            throw new SimpleException("Shouldn't get here.");
+        } catch (Throwable t) {
+            Test.ensureTrue(t.toString().indexOf("Shouldn't get here") < 0, t.toString());
+        }
+        String files[] = new File(dir).list();
+        for (int i = 0; i < files.length; i++)
+            Test.ensureTrue(!files[i].startsWith(prefix), "Not deleted: " + files[i]);
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ TableWriterExternalSort.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -5,6 +5,7 @@
 package gov.noaa.pfel.erddap.dataset;
 
 import com.cohort.array.Attributes;
+import com.cohort.array.ByteWriter;
 import com.cohort.array.CharArray;
 import com.cohort.array.PrimitiveArray;
 import com.cohort.util.Calendar2;
@@ -18,9 +19,6 @@ import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.erddap.util.EDStatic;
 import gov.noaa.pfel.erddap.variable.EDV;
 
-import java.io.BufferedWriter;
-import java.io.OutputStreamWriter;
-
 /**
  * TableWriterJsonl provides a way to write a table 
  * to JSON (https://www.json.org/) file
@@ -41,7 +39,8 @@ public class TableWriterJsonl extends TableWriter {
     //set by firstTime
     protected volatile boolean isTimeStamp[];
     protected volatile String time_precision[];
-    protected volatile BufferedWriter writer;
+    protected volatile int timeFormatCode[]; //from Calendar2.limitedIsoFormatCode
+    protected volatile ByteWriter writer;
 
     //other
     public volatile long totalNRows = 0;
@@ -106,6 +105,7 @@ public class TableWriterJsonl extends TableWriter {
         if (firstTime) {
             isTimeStamp = new boolean[nColumns];
             time_precision = new String[nColumns];
+            timeFormatCode = new int[nColumns];
             for (int col = 0; col < nColumns; col++) {
                 Attributes catts = table.columnAttributes(col);
                 String u = catts.getString("units");
@@ -117,12 +117,13 @@ public class TableWriterJsonl extends TableWriter {
                     if (tp != null && !tp.startsWith("1970-01-01T00:00:00.0")) 
                         tp = null; //default
                     time_precision[col] = tp;
+                    timeFormatCode[col] = Calendar2.limitedIsoFormatCode(tp);
                 }
             }
 
             //write the header
-            writer = File2.getBufferedWriterUtf8(
-                outputStreamSource.outputStream(File2.UTF_8));  //a requirement
+            writer = new ByteWriter(
+                outputStreamSource.outputStream(File2.UTF_8), File2.UTF_8);  //a requirement
             if (jsonp != null) 
                 writer.write(jsonp + "(\n"); //I think this never makes sense for jsonl
 
@@ -132,7 +133,7 @@ public class TableWriterJsonl extends TableWriter {
                 for (int col = 0; col < nColumns; col++) {
                     if (col > 0)
                         writer.write(", ");
-                    writer.write(String2.toJson(table.getColumnName(col)));
+                    writer.writeJson(table.getColumnName(col));
                 }
                 writer.write("]\n");
             }
@@ -154,16 +155,20 @@ public class TableWriterJsonl extends TableWriter {
             for (int col = 0; col < nColumns; col++) {
                 if (col > 0) writer.write(", "); 
                 if (writeKVP) {
-                    writer.write(String2.toJson(table.getColumnName(col)));
+                    writer.writeJson(table.getColumnName(col));
                     writer.write(':');
                 }
                 if (isTimeStamp[col]) {
                     double d = pas[col].getDouble(row);
-                    writer.write(Double.isNaN(d)? "null" : 
-                        "\"" + Calendar2.epochSecondsToLimitedIsoStringT(
-                        time_precision[col], d, "") + "\"");
+                    if (Double.isNaN(d)) {
+                        writer.write("null");
+                    } else {
+                        writer.write('"');
+                        writer.writeIsoTime(timeFormatCode[col], d, ""); //same as epochSecondsToLimitedIsoStringT
+                        writer.write('"');
+                    }
                 } else {
-                    writer.write(pas[col].getJsonString(row));
+                    writer.writeJsonString(pas[col], row); //same as getJsonString
                 }
             }
             writer.write(writeKVP? "}\n" : "]\n"); //endRow    //recommended: always just \n
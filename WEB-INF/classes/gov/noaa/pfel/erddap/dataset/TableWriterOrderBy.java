@@ -4,6 +4,7 @@
  */
 package gov.noaa.pfel.erddap.dataset;
 
+import com.cohort.array.PrimitiveArray;
 import com.cohort.util.SimpleException;
 import com.cohort.util.String2;
 
@@ -18,6 +19,8 @@ import gov.noaa.pfel.erddap.util.EDStatic;
  *
  * <p>This sort is stable: equal elements will not be reordered as a result of the sort.
  *
+ * <p>If there are lots of rows, this does an external merge sort (see TableWriterExternalSort).
+ *
  * <p>This doesn't do anything to missing values and doesn't assume they are
  * stored as NaN or fake missing values.
  *
@@ -27,12 +30,14 @@ import gov.noaa.pfel.erddap.util.EDStatic;
  *
  * @author Bob Simons (was bob.simons@noaa.gov, now BobSimons2.00@gmail.com) 2009-05-10
  */
-public class TableWriterOrderBy extends TableWriterAll {
+public class TableWriterOrderBy extends TableWriterExternalSort {
 
     //set by constructor
-    protected TableWriter otherTableWriter;
     public String orderBy[];
 
+    //set by sort()
+    private int keys[];
+
     /**
      * The constructor.
      *
@@ -48,8 +53,7 @@ public class TableWriterOrderBy extends TableWriterAll {
     public TableWriterOrderBy(int tLanguage, EDD tEdd, String tNewHistory, String tDir, 
         String tFileNameNoExt, TableWriter tOtherTableWriter, String tOrderByCsv) {
 
-        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt); 
-        otherTableWriter = tOtherTableWriter;
+        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt, tOtherTableWriter); 
         String err = EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) +
             "No column names were specified for 'orderBy'.";
         if (tOrderByCsv == null || tOrderByCsv.trim().length() == 0)
@@ -65,23 +69,6 @@ public class TableWriterOrderBy extends TableWriterAll {
 
 
 
-    /**
-     * This sorts cumulativeTable, then writes it to otherTableWriter
-     * If ignoreFinish=true, nothing will be done.
-     *
-     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
-     */
-    public void finish() throws Throwable {
-        if (ignoreFinish) 
-            return;
-
-        super.finish();
-
-        Table cumulativeTable = cumulativeTable();
-        releaseResources();
-        writeAllAndFinish(cumulativeTable);
-    }
-
     /**
      * If caller has the entire table, use this instead of repeated writeSome() + finish().
      * This overwrites the superclass method.
@@ -105,9 +92,32 @@ public class TableWriterOrderBy extends TableWriterAll {
     }
 
 
+    /**
+     * This sorts the rows of a table in memory.
+     *
+     * @param table with destinationValues
+     */
+    protected void sortInMemory(Table table) {
+        sort(table);
+    }
+
+    /**
+     * This compares two rows based on the orderBy columns.
+     * sort() must have been called first.
+     */
+    protected int compareRows(PrimitiveArray pas1[], int row1,
+        PrimitiveArray pas2[], int row2) {
+        for (int ob = 0; ob < keys.length; ob++) {
+            int result = pas1[keys[ob]].compare(row1, pas2[keys[ob]], row2);
+            if (result != 0)
+                return result;
+        }
+        return 0;
+    }
+
     private void sort(Table table) {
         //ensure orderBy columns are present in results table
-        int[] keys = new int[orderBy.length];
+        keys = new int[orderBy.length];
         boolean[] ascending = new boolean[orderBy.length];
         for (int ob = 0; ob < orderBy.length; ob++) {
             keys[ob] = table.findColumnNumber(orderBy[ob]);
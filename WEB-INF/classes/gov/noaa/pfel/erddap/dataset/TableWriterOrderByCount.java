@@ -31,12 +31,17 @@ import java.util.BitSet;
  *
  * @author Bob Simons (was bob.simons@noaa.gov, now BobSimons2.00@gmail.com) 2017-07-12
  */
-public class TableWriterOrderByCount extends TableWriterAll {
+public class TableWriterOrderByCount extends TableWriterOrderByReduce {
 
     //set by constructor
-    protected TableWriter otherTableWriter;
     public String orderBy[];
 
+    /** 
+     * If true, the incoming tables already have the counts for each group
+     * (e.g., from a database's GROUP BY query), so they are just combined.
+     */
+    public boolean alreadyCounted = false;
+
     /**
      * The constructor.
      *
@@ -52,8 +57,7 @@ public class TableWriterOrderByCount extends TableWriterAll {
     public TableWriterOrderByCount(int tLanguage, EDD tEdd, String tNewHistory, String tDir, 
         String tFileNameNoExt, TableWriter tOtherTableWriter, String tOrderByCsv) {
 
-        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt); 
-        otherTableWriter = tOtherTableWriter;
+        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt, tOtherTableWriter); 
         orderBy = String2.isSomething(tOrderByCsv)?
             String2.split(tOrderByCsv, ','):
             new String[0]; //size==0 is okay
@@ -61,50 +65,28 @@ public class TableWriterOrderByCount extends TableWriterAll {
 
 
     /**
-     * This adds the current contents of table (a chunk of data) to the OutputStream.
-     * This calls ensureCompatible each time it is called.
-     * If this is the first time this is called, this does first time things
-     *   (e.g., call OutputStreamSource.outputStream() and write file header).
-     * The number of columns, the column names, and the types of columns 
-     *   must be the same each time this is called.
+     * This counts the non-missing values for each group in a table (a chunk of data).
      *
      * @param table with destinationValues.
      *   The table should have missing values stored as destinationMissingValues
      *   or destinationFillValues.
-     *   This implementation converts them to NaNs for processing, 
-     *   then back to destinationMV and FV when finished.
+     *   This implementation converts them to NaNs for processing.
      * @throws Throwable if trouble
      */
-    public void writeSome(Table table) throws Throwable {
-        if (table.nRows() == 0) 
-            return;
-
-        //to save time and disk space, this just does a partial job 
-        //  (remove non-max rows from this partial table)
-        //  and leaves perfect job to finish()
-        table.orderByCount(orderBy); //this handles missingValues and _FillValues permanently
-
-        //ensure the table's structure is the same as before
-        //and write to dataOutputStreams
-        super.writeSome(table);
+    protected void reduce(Table table) throws Throwable {
+        if (alreadyCounted)
+            combine(table);
+        else table.orderByCount(orderBy); //this handles missingValues and _FillValues permanently
     }
 
 
     /**
-     * This processes the cumulativeTable, then writes it to otherTableWriter
-     * If ignoreFinish=true, nothing will be done.
+     * This combines the counts for each group in a table (already reduced rows).
      *
-     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
+     * @param cumTable with counts for each group, perhaps with several rows per group.
+     * @throws Throwable if trouble
      */
-    public void finish() throws Throwable {
-        if (ignoreFinish) 
-            return;
-
-        super.finish();
-
-        Table cumTable = cumulativeTable();
-        releaseResources();
-
+    protected void combine(Table cumTable) throws Throwable {
         //combine results
         //missing_value and _FillValue are all done. All data are counts.
         int nRows = cumTable.nRows();
@@ -124,26 +106,10 @@ public class TableWriterOrderByCount extends TableWriterAll {
         for (int kc = 0; kc < nKeyCols; kc++)
             isKeyCol[keyCols[kc]] = true;
 
-        //get pas and set units to "count"
+        //get pas
         PrimitiveArray pas[] = new PrimitiveArray[nCols];
-        for (int col = 0; col < nCols; col++) {
+        for (int col = 0; col < nCols; col++) 
             pas[col] = cumTable.getColumn(col);
-            if (!isKeyCol[col]) {
-                Attributes atts = cumTable.columnAttributes(col);
-                atts.set(   "_FillValue", Integer.MAX_VALUE);
-                atts.remove("actual_range");
-                atts.remove("cf_role");
-                atts.remove("colorBarMinimum");
-                atts.remove("colorBarMaximum");
-                atts.remove("colorBarPalette");
-                atts.remove("colorBarScale");
-                atts.remove("missing_value");
-                String s = atts.getString("standard_name");
-                if (s != null)
-                   atts.set("standard_name", s + " number_of_observations");
-                atts.set(   "units", "count");
-            }
-        }
 
         //walk through the table
         int resultsRow = -1;
@@ -181,15 +147,40 @@ public class TableWriterOrderByCount extends TableWriterAll {
 
         //just keep new group 
         cumTable.justKeep(keep);
-
-        //send results to otherTableWriter;
-        otherTableWriter.writeAllAndFinish(cumTable);
-        otherTableWriter = null;
     }
 
-    //This uses super.writeAllAndFinish() because writeSome stores processed info
-
-}
-
 
+    /**
+     * This sets units to "count" and removes attributes which no longer apply
+     * for the non-key columns.
+     *
+     * @param cumTable the fully reduced table
+     */
+    protected void finishReduce(Table cumTable) {
+        int nCols = cumTable.nColumns();
+        int keyCols[] = cumTable.keyColumnNamesToNumbers("orderByCount",
+            // just get the column names, ignoring rounding e.g. time not time/1day
+            Arrays.stream(orderBy).map((s)->s.split("/")[0]).toArray(size -> new String[size]));
+        boolean isKeyCol[] = new boolean[nCols]; //all false
+        for (int kc = 0; kc < keyCols.length; kc++)
+            isKeyCol[keyCols[kc]] = true;
+        for (int col = 0; col < nCols; col++) {
+            if (!isKeyCol[col]) {
+                Attributes atts = cumTable.columnAttributes(col);
+                atts.set(   "_FillValue", Integer.MAX_VALUE);
+                atts.remove("actual_range");
+                atts.remove("cf_role");
+                atts.remove("colorBarMinimum");
+                atts.remove("colorBarMaximum");
+                atts.remove("colorBarPalette");
+                atts.remove("colorBarScale");
+                atts.remove("missing_value");
+                String s = atts.getString("standard_name");
+                if (s != null)
+                   atts.set("standard_name", s + " number_of_observations");
+                atts.set(   "units", "count");
+            }
+        }
+    }
 
+}
@@ -32,11 +32,10 @@ import java.util.regex.Pattern;
  *
  * @author Bob Simons (was bob.simons@noaa.gov, now BobSimons2.00@gmail.com) 2009-05-13
  */
-public class TableWriterOrderByMin extends TableWriterAll {
+public class TableWriterOrderByMin extends TableWriterOrderByReduce {
 
 
     //set by constructor
-    protected TableWriter otherTableWriter;
     public String orderBy[];
 
     /**
@@ -54,8 +53,7 @@ public class TableWriterOrderByMin extends TableWriterAll {
     public TableWriterOrderByMin(int tLanguage, EDD tEdd, String tNewHistory, String tDir, 
         String tFileNameNoExt, TableWriter tOtherTableWriter, String tOrderByCsv) {
 
-        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt); 
-        otherTableWriter = tOtherTableWriter;
+        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt, tOtherTableWriter); 
         String err = EDStatic.simpleBilingual(language, EDStatic.queryErrorAr) + 
             "No column names were specified for 'orderByMin'.";
         if (tOrderByCsv == null || tOrderByCsv.trim().length() == 0)
@@ -67,12 +65,7 @@ public class TableWriterOrderByMin extends TableWriterAll {
 
 
     /**
-     * This adds the current contents of table (a chunk of data) to the OutputStream.
-     * This calls ensureCompatible each time it is called.
-     * If this is the first time this is called, this does first time things
-     *   (e.g., call OutputStreamSource.outputStream() and write file header).
-     * The number of columns, the column names, and the types of columns 
-     *   must be the same each time this is called.
+     * This removes the non-min rows from a table (a chunk of data or the already reduced rows).
      *
      * @param table with destinationValues.
      *   The table should have missing values stored as destinationMissingValues
@@ -81,63 +74,8 @@ public class TableWriterOrderByMin extends TableWriterAll {
      *   then back to destinationMV and FV when finished.
      * @throws Throwable if trouble
      */
-    public void writeSome(Table table) throws Throwable {
-        if (table.nRows() == 0) 
-            return;
-
-        //to save time and disk space, this just does a partial job 
-        //  (remove non-min rows from this partial table)
-        //  and leaves perfect job to finish()
+    protected void reduce(Table table) throws Throwable {
         table.orderByMin(orderBy); //this handles missingValues and _FillValues temporarily
-
-        //ensure the table's structure is the same as before
-        //and write to dataOutputStreams
-        super.writeSome(table);
     }
 
-    
-    /**
-     * This finishes orderByMin and writes results to otherTableWriter
-     * If ignoreFinish=true, nothing will be done.
-     *
-     * @throws Throwable if trouble (e.g., EDStatic.THERE_IS_NO_DATA if there is no data)
-     */
-    public void finish() throws Throwable {
-        if (ignoreFinish) 
-            return;
-
-        super.finish();
-
-        Table cumulativeTable = cumulativeTable();
-        releaseResources();
-        cumulativeTable.orderByMin(orderBy); //this handles missingValues and _FillValues temporarily
-        otherTableWriter.writeAllAndFinish(cumulativeTable);
-
-        //clean up
-        otherTableWriter = null;
-    }
-
-    /**
-     * If caller has the entire table, use this instead of repeated writeSome() + finish().
-     * This overwrites the superclass method.
-     *
-     * @throws Throwable if trouble (e.g., EDStatic.THERE_IS_NO_DATA if there is no data)
-     */
-    public void writeAllAndFinish(Table tCumulativeTable) throws Throwable {
-        if (ignoreFinish) {
-            writeSome(tCumulativeTable);
-            tCumulativeTable.removeAllRows();
-            return;
-        }
-        tCumulativeTable.orderByMin(orderBy); //this handles missingValues and _FillValues temporarily
-
-        otherTableWriter.writeAllAndFinish(tCumulativeTable);
-        otherTableWriter = null;
-    }
-
-
-
 }
-
-
-
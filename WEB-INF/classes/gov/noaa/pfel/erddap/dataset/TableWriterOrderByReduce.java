@@ -0,0 +1,382 @@
+/*
+ * TableWriterOrderByReduce Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.DoubleArray;
+import com.cohort.array.FloatArray;
+import com.cohort.array.IntArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.util.EDStatic;
+
+import java.util.Random;
+
+/**
+ * TableWriterOrderByReduce is the superclass of the TableWriters
+ * (e.g., TableWriterOrderByMax) which reduce the response table's rows
+ * to one (or a few) rows per group.
+ *
+ * <p>Each chunk of data is reduced (see reduce()), then the reduced rows are
+ * combined in memory with the reduced rows from the previous chunks (see combine()),
+ * so just the current rows for each group are kept.
+ * So if there are few groups (e.g., each station's maximum time),
+ * nothing is written to TableWriterAll's temporary files and finish() doesn't
+ * have to read them all back in.
+ * Only if the reduced rows need more than EDStatic.orderByInMemoryMB,
+ * or the server is short of memory (see Math2.isMemoryAvailable, so concurrent
+ * requests can't each hold orderByInMemoryMB when memory is tight),
+ * are they written to TableWriterAll's temporary files (and the in-memory
+ * table started over). Then finish() combines the cumulativeTable as before.
+ *
+ * <p>Unlike TableWriterAllWithMetadata, this doesn't keep track of min,max for actual_range
+ * or update metadata at end. It is assumed that this is like a filter,
+ * and that a subsequent TableWriter will handle that if needed.
+ */
+public abstract class TableWriterOrderByReduce extends TableWriterAll {
+
+    //set by constructor
+    protected TableWriter otherTableWriter;
+
+    /** The reduced rows which haven't been written to TableWriterAll's temporary files. */
+    private Table reducedTable = null;
+    /** reducedTable's nRows after the last time it was combined. */
+    private int reducedNRows = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param tLanguage the index of the selected language
+     * @param tDir a private cache directory for storing the intermediate files,
+     *    usually cacheDirectory(datasetID)
+     * @param tFileNameNoExt is the fileName without dir or extension (used as basis for temp files).
+     *     A random number will be added to it for safety.
+     * @param tOtherTableWriter the tableWriter that will receive the rows
+     *   found by this tableWriter.
+     */
+    public TableWriterOrderByReduce(int tLanguage, EDD tEdd, String tNewHistory, String tDir,
+        String tFileNameNoExt, TableWriter tOtherTableWriter) {
+
+        super(tLanguage, tEdd, tNewHistory, tDir, tFileNameNoExt);
+        otherTableWriter = tOtherTableWriter;
+    }
+
+    /**
+     * This reduces the rows of a chunk of data (in place).
+     *
+     * @param table with destinationValues
+     * @throws Throwable if trouble
+     */
+    protected abstract void reduce(Table table) throws Throwable;
+
+    /**
+     * This reduces rows which have already been reduced (in place),
+     * e.g., the rows from several chunks.
+     * This implementation just calls reduce().
+     *
+     * @param table with the rows from reduce() and/or combine()
+     * @throws Throwable if trouble
+     */
+    protected void combine(Table table) throws Throwable {
+        reduce(table);
+    }
+
+    /**
+     * This makes any final changes (e.g., to the metadata) to the fully reduced table,
+     * just before it is sent to otherTableWriter.
+     * This implementation does nothing.
+     *
+     * @param table the fully reduced table
+     * @throws Throwable if trouble
+     */
+    protected void finishReduce(Table table) throws Throwable {
+    }
+
+
+    /**
+     * This reduces the current contents of table (a chunk of data)
+     * and combines the results with the reduced rows from the previous chunks.
+     * This calls ensureCompatible each time it is called.
+     * The number of columns, the column names, and the types of columns
+     *   must be the same each time this is called.
+     *
+     * @param table with destinationValues.
+     *   The table should have missing values stored as destinationMissingValues
+     *   or destinationFillValues.
+     * @throws Throwable if trouble
+     */
+    public void writeSome(Table table) throws Throwable {
+        if (table.nRows() == 0)
+            return;
+
+        //to save time and disk space, this just does a partial job
+        //  and leaves perfect job to finish()
+        reduce(table);
+        int nRows = table.nRows();
+        if (nRows == 0)
+            return;
+
+        long maxBytes = EDStatic.orderByInMemoryMB * (long)Math2.BytesPerMB;
+        if (maxBytes <= 0) {
+            //write to dataOutputStreams
+            super.writeSome(table);
+            return;
+        }
+
+        //ensure the table's structure is the same as before
+        ensureCompatible(table);
+
+        //is there room (in the server's memory, not just this request's budget) for these rows?
+        boolean memoryOk = Math2.isMemoryAvailable(nRows * (long)table.estimatedBytesPerRow());
+        if (reducedTable == null) {
+            reducedTable = table.subset(0, 1, nRows - 1); //a copy, since caller may reuse table
+            reducedNRows = nRows;
+        } else {
+            reducedTable.append(table);
+        }
+
+        if (bufferBytes() > maxBytes || !memoryOk) {
+            //too big for memory? combine the rows
+            combine(reducedTable);
+            reducedNRows = reducedTable.nRows();
+
+            //still too many groups to keep in memory?  write them to dataOutputStreams and start over
+            //(maxBytes/2, so there is room for the next chunks)
+            if (bufferBytes() > maxBytes / 2 || !memoryOk) { 
+                if (reallyVerbose) String2.log("TableWriterOrderByReduce writing " + reducedNRows +
+                    " reduced rows to temporary files");
+                super.writeSome(reducedTable);
+                reducedTable = null;
+                reducedNRows = 0;
+            }
+
+        } else if (reducedTable.nRows() > 2 * reducedNRows) {
+            //combine the rows each time nRows doubles (so appending is cheap)
+            combine(reducedTable);
+            reducedNRows = reducedTable.nRows();
+        }
+    }
+
+    /** 
+     * This returns the estimated size of the in-memory reduced rows.
+     * After each writeSome, this is at most orderByInMemoryMB
+     * (and 0 if the server was short of memory).
+     */
+    long bufferBytes() {
+        return reducedTable == null? 0 : 
+            reducedTable.nRows() * (long)reducedTable.estimatedBytesPerRow();
+    }
+
+
+    /**
+     * This finishes the reduction and writes the results to otherTableWriter.
+     * If ignoreFinish=true, nothing will be done.
+     *
+     * @throws Throwable if trouble (e.g., EDStatic.THERE_IS_NO_DATA if there is no data)
+     */
+    public void finish() throws Throwable {
+        if (ignoreFinish)
+            return;
+
+        Table table;
+        if (columnStreams == null && reducedTable != null) {
+            //all of the reduced rows are in memory
+            table = makeEmptyTable();
+            int nColumns = nColumns();
+            for (int col = 0; col < nColumns; col++)
+                table.setColumn(col, reducedTable.getColumn(col).setMaxIsMV(columnMaxIsMV[col]));
+            reducedTable = null;
+            if (verbose)
+                String2.log("TableWriterOrderByReduce done (in memory). TIME=" +
+                    (System.currentTimeMillis() - time) + "ms\n");
+        } else {
+            if (reducedTable != null) {
+                super.writeSome(reducedTable);
+                reducedTable = null;
+            }
+            super.finish();
+            table = cumulativeTable();
+            releaseResources();
+        }
+        combine(table);
+        finishReduce(table);
+        otherTableWriter.writeAllAndFinish(table);
+
+        //clean up
+        otherTableWriter = null;
+    }
+
+    /**
+     * If caller has the entire table, use this instead of repeated writeSome() + finish().
+     * This overwrites the superclass method.
+     *
+     * @throws Throwable if trouble (e.g., EDStatic.THERE_IS_NO_DATA if there is no data)
+     */
+    public void writeAllAndFinish(Table tCumulativeTable) throws Throwable {
+        if (ignoreFinish) {
+            writeSome(tCumulativeTable);
+            tCumulativeTable.removeAllRows();
+            return;
+        }
+        reduce(tCumulativeTable);
+        finishReduce(tCumulativeTable);
+        otherTableWriter.writeAllAndFinish(tCumulativeTable);
+        otherTableWriter = null;
+    }
+
+    /**
+     * This releases the in-memory reduced rows, and (via the superclass)
+     * the temporary files and cumulativeTable (if any).
+     * This won't throw an exception.
+     */
+    public void releaseResources() {
+        reducedTable = null;
+        super.releaseResources();
+    }
+
+    /**
+     * This runs an orderByMax or orderByCount over chunks of data with 
+     * the specified orderByInMemoryMB and returns the results.
+     *
+     * @param type "max" or "count"
+     */
+    private static String testReduce(String type, int inMemoryMB, Table chunks[]) throws Throwable {
+        return testReduce(type, inMemoryMB, false, chunks);
+    }
+
+    /**
+     * This runs an orderByMax or orderByCount over chunks of data with 
+     * the specified orderByInMemoryMB and returns the results.
+     *
+     * @param type "max" or "count"
+     * @param memoryShort if true, this acts as if the server is short of memory
+     *   (so the reduced rows are always written to temporary files)
+     */
+    private static String testReduce(String type, int inMemoryMB, boolean memoryShort, 
+        Table chunks[]) throws Throwable {
+        int oInMemoryMB = EDStatic.orderByInMemoryMB;
+        long oMaxSafeMemory = Math2.maxSafeMemory;
+        String dir = EDStatic.fullTestCacheDirectory;
+        File2.makeDirectory(dir);
+        EDStatic.orderByInMemoryMB = inMemoryMB;
+        try {
+            TableWriterAll results = new TableWriterAll(0, null, "", dir, "testReduceResults");
+            TableWriterOrderByReduce twobr = type.equals("max")?
+                new TableWriterOrderByMax(  0, null, "", dir, "testReduce", results, "station,time") :
+                new TableWriterOrderByCount(0, null, "", dir, "testReduce", results, "station");
+            for (int c = 0; c < chunks.length; c++) {
+                Table chunk = (Table)chunks[c].clone(); //writeSome may change the table
+                if (memoryShort)
+                    Math2.maxSafeMemory = 0;
+                twobr.writeSome(chunk);
+                Math2.maxSafeMemory = oMaxSafeMemory;
+                //the in-memory rows are within the budget after every writeSome
+                Test.ensureTrue(twobr.bufferBytes() <= (memoryShort? 0 : inMemoryMB * (long)Math2.BytesPerMB),
+                    "c=" + c + " bufferBytes=" + twobr.bufferBytes());
+            }
+            twobr.finish();
+            Table table = results.cumulativeTable();
+            results.releaseResources();
+            return table.dataToString();
+        } finally {
+            EDStatic.orderByInMemoryMB = oInMemoryMB;
+            Math2.maxSafeMemory = oMaxSafeMemory;
+        }
+    }
+
+    /**
+     * This tests that orderByMax and orderByCount have the same results if the 
+     * reduced rows are all in memory, are sometimes written to temporary files
+     * (a tiny orderByInMemoryMB), or are always written to temporary files
+     * (orderByInMemoryMB=0, or the server is short of memory).
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** TableWriterOrderByReduce.basicTest");
+        Random random = new Random(17);
+
+        //many stations, so the reduced rows need more than 1MB
+        int nChunks = 30, chunkNRows = 20000, nStations = 100000;
+        Table chunks[] = new Table[nChunks];
+        for (int c = 0; c < nChunks; c++) {
+            IntArray station = new IntArray(chunkNRows, false);
+            DoubleArray time = new DoubleArray(chunkNRows, false);
+            FloatArray value = new FloatArray(chunkNRows, false);
+            for (int row = 0; row < chunkNRows; row++) {
+                station.add(random.nextInt(nStations));
+                time.add(c * chunkNRows + row);
+                value.add(random.nextInt(10) == 0? Float.NaN : random.nextFloat());
+            }
+            chunks[c] = new Table();
+            chunks[c].addColumn("station", station);
+            chunks[c].addColumn("time", time);
+            chunks[c].addColumn("value", value);
+        }
+
+        //all in one table
+        Table all = (Table)chunks[0].clone();
+        for (int c = 1; c < nChunks; c++)
+            all.append(chunks[c]);
+        all.orderByMax(new String[]{"station", "time"});
+        String expected = all.dataToString();
+
+        String inMemory = testReduce("max", 1000, chunks);
+        Test.ensureEqual(inMemory, expected, "");
+        Test.ensureEqual(testReduce("max", 1, chunks), expected, "");
+        Test.ensureEqual(testReduce("max", 0, chunks), expected, "");
+        //the server is short of memory, so the rows are written to temporary files
+        Test.ensureEqual(testReduce("max", 1000, true, chunks), expected, "");
+
+        inMemory = testReduce("count", 1000, chunks);
+        Test.ensureEqual(testReduce("count", 1, chunks), inMemory, "");
+        Test.ensureEqual(testReduce("count", 0, chunks), inMemory, "");
+        Test.ensureEqual(testReduce("count", 1000, true, chunks), inMemory, "");
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ TableWriterOrderByReduce.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -5,6 +5,7 @@
 package gov.noaa.pfel.erddap.dataset;
 
 import com.cohort.array.Attributes;
+import com.cohort.array.ByteWriter;
 import com.cohort.array.PAType;
 import com.cohort.array.PrimitiveArray;
 import com.cohort.util.Calendar2;
@@ -18,9 +19,6 @@ import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.erddap.util.EDStatic;
 import gov.noaa.pfel.erddap.variable.EDV;
 
-import java.io.BufferedWriter;
-import java.io.OutputStreamWriter;
-
 /**
  * TableWriterSeparatedValue provides a way to write a table to comma or
  * tab separated value ASCII 
@@ -43,7 +41,8 @@ public class TableWriterSeparatedValue extends TableWriter {
     protected volatile boolean isStringOrChar[];
     protected volatile boolean isTimeStamp[];
     protected volatile String time_precision[];
-    protected volatile BufferedWriter writer;
+    protected volatile int timeFormatCode[]; //from Calendar2.limitedIsoFormatCode
+    protected volatile ByteWriter writer;
 
     public volatile long totalNRows = 0;
 
@@ -110,6 +109,7 @@ public class TableWriterSeparatedValue extends TableWriter {
         if (firstTime) {
             isTimeStamp = new boolean[nColumns];
             time_precision = new String[nColumns];
+            timeFormatCode = new int[nColumns];
             for (int col = 0; col < nColumns; col++) {
                 Attributes catts = table.columnAttributes(col);
                 String u = catts.getString("units");
@@ -121,12 +121,13 @@ public class TableWriterSeparatedValue extends TableWriter {
                     if (tp != null && !tp.startsWith("1970-01-01T00:00:00.0")) 
                         tp = null; //default
                     time_precision[col] = tp;
+                    timeFormatCode[col] = Calendar2.limitedIsoFormatCode(tp);
                 }
             }
 
             //write the header
-            writer = File2.getBufferedWriter88591(
-                outputStreamSource.outputStream(File2.ISO_8859_1));
+            writer = new ByteWriter(
+                outputStreamSource.outputStream(File2.ISO_8859_1), File2.ISO_8859_1);
 
             //write the column names   
             isStringOrChar = new boolean[nColumns];
@@ -183,21 +184,19 @@ public class TableWriterSeparatedValue extends TableWriter {
         Math2.ensureArraySizeOkay(totalNRows, "Separated Value");
 
         //write the data
+        //ByteWriter encodes the values directly (same as getSVString and getString)
         for (int row = 0; row < nRows; row++) {
             for (int col = 0; col < nColumns; col++) {
                 if (isTimeStamp[col]) {
-                    writer.write(Calendar2.epochSecondsToLimitedIsoStringT(
-                        time_precision[col], pas[col].getDouble(row), ""));
+                    writer.writeIsoTime(timeFormatCode[col], pas[col].getDouble(row), ""); //same as epochSecondsToLimitedIsoStringT
                 } else if (isStringOrChar[col]) {
-                    String s = pas[col].getSVString(row);
-                    if (twoQuotes)
-                        s = String2.replaceAll(s, "\\\"", "\"\"");
-                    writer.write(s);
+                    writer.writeSVString(pas[col], row, twoQuotes);
                 } else {
-                    String s = pas[col].getString(row);
-                    writer.write(s.length() == 0? nanString : s); 
+                    writer.writeString(pas[col], row, nanString);
                 }
-                writer.write(col == nColumns -1? "\n" : separator);
+                if (col == nColumns - 1) 
+                    writer.write('\n');
+                else writer.write(separator);
             }
         }       
 
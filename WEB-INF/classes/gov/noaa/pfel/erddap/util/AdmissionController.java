@@ -0,0 +1,668 @@
+/*
+ * AdmissionController Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This decides when each request (from a limited ipAddress) may start to be
+ * processed by Erddap.doGet. It replaces the old system where each waiting
+ * request's thread polled (Thread.sleep(200)) until the request was in the
+ * top ipAddressMaxRequestsActive slots of that ipAddress's queue.
+ *
+ * <ul>
+ * <li>Each ipAddress has its own FIFO queue and may have at most
+ *   EDStatic.ipAddressMaxRequestsActive active requests.
+ * <li>There is a global budget: at most EDStatic.maxActiveRequests active requests
+ *   and (as long as at least 1 request is active) at most EDStatic.maxActiveRequestsMB
+ *   of estimated cost. The cost of a request isn't known until its query has been parsed,
+ *   so the code that knows it (GridDataAccessor: totalNBytes;
+ *   EDDTableFromFiles: the size of the candidate files) calls charge().
+ *   So an expensive request doesn't block itself, but it delays the admission
+ *   of later requests until it is done.
+ *   Since those requests are processed in partial requests,
+ *   a request's cost is capped at EDStatic.partialRequestMaxBytes.
+ * <li>Cheap requests (see isCheap(), e.g., .html pages and .das and .dds responses)
+ *   aren't subject to the cost budget, so e.g., status.html is always available.
+ * <li>When a slot opens, the next request is taken from the ipAddress with the
+ *   lowest active cost (ties go to the request which has waited longest),
+ *   so one client with many or expensive requests can't starve the others.
+ * <li>A request which has to wait is parked with request.startAsync(), so it
+ *   doesn't tie up a Tomcat thread. When it is admitted (or after MAX_WAIT_MILLIS),
+ *   it is dispatched back to Erddap.doGet, which calls redispatchedTicket().
+ *   If the container doesn't support async for this request, the thread waits
+ *   (without polling) for the request to be admitted.
+ * </ul>
+ *
+ * <p>This is thread-safe. All of the state is guarded by the class's lock.
+ */
+public class AdmissionController {
+
+    /** The max time a request waits to be admitted. */
+    public final static long MAX_WAIT_MILLIS = 120000; //120s
+
+    /** The name of the request attribute which holds the Ticket of a parked request. */
+    public final static String TICKET_ATTRIBUTE = "gov.noaa.pfel.erddap.admissionTicket";
+
+    //the states of a Ticket
+    private final static int WAITING = 0, ADMITTED = 1, TIMED_OUT = 2, ABANDONED = 3, RELEASED = 4;
+
+    /** ipAddress -&gt; its PerIp (only while it has active or waiting requests) */
+    private final static HashMap<String, PerIp> perIpMap = new HashMap<>();
+
+    /** The current thread's admitted Ticket (or null), for charge(). */
+    private final static ThreadLocal<Ticket> currentTicket = new ThreadLocal<>();
+
+    //guarded by AdmissionController.class
+    private static int  nActive = 0;
+    private static long activeCost = 0;  //bytes
+    private static int  nWaiting = 0;
+    private static long nAdmitted = 0, nAdmittedAfterWait = 0, nTimedOut = 0, nAbandoned = 0; //since startup
+    private static long maxWaitMillis = 0; //since startup
+
+    /** The active and waiting requests from one ipAddress. */
+    private static class PerIp {
+        final ArrayDeque<Ticket> waiting = new ArrayDeque<>();
+        int nActive = 0;
+        long activeCost = 0;
+    }
+
+    /**
+     * The admission state of one request.
+     * It also holds the things doGet needs when a parked request is dispatched again.
+     */
+    public static class Ticket {
+        public final int requestNumber;
+        public final String ipAddress;
+        public final long arrivalMillis;  //when doGet first saw the request
+        public final String summary;      //for EDStatic.activeRequests
+        public final boolean cheap;       //if true, it isn't subject to the cost budget
+
+        private int state = WAITING;      //guarded by AdmissionController.class
+        private long cost = 0;            //guarded by AdmissionController.class
+        private long waitMillis = 0;
+        private long enqueuedMillis;
+        private AsyncContext asyncContext = null; //null if not parked async
+        private CountDownLatch latch = null;      //if waiting synchronously
+
+        public Ticket(int tRequestNumber, String tIpAddress, long tArrivalMillis, String tSummary,
+            boolean tCheap) {
+            requestNumber = tRequestNumber;
+            ipAddress = tIpAddress;
+            arrivalMillis = tArrivalMillis;
+            summary = tSummary;
+            cheap = tCheap;
+        }
+
+        /** This returns true if the request was admitted (else it timed out). */
+        public boolean isAdmitted() {
+            synchronized (AdmissionController.class) {
+                return state == ADMITTED;
+            }
+        }
+
+        /** This returns the time (ms) the request waited to be admitted. */
+        public long waitMillis() {
+            return waitMillis;
+        }
+    }
+
+    /**
+     * This is called by doGet (on the request's first pass) to admit the request.
+     *
+     * @param ticket a new Ticket for this request
+     * @param request the request
+     * @return true if the request is admitted now and doGet should process it
+     *   (and later call release()).
+     *   false if the request has been parked (request.startAsync()), so
+     *   doGet should just return (without releasing the ticket or finishing
+     *   the response). The request will be dispatched back to doGet.
+     * @throws InterruptedException if interrupted while waiting synchronously
+     *   (the ticket is cancelled)
+     * @throws TimeoutException if it waited synchronously
+     *   and wasn't admitted within MAX_WAIT_MILLIS
+     */
+    public static boolean admit(Ticket ticket, HttpServletRequest request)
+        throws InterruptedException, TimeoutException {
+        return admit(ticket, request, MAX_WAIT_MILLIS);
+    }
+
+    /** 
+     * This is admit() with a specified maxWaitMillis (so the tests needn't wait 2 minutes).
+     */
+    static boolean admit(Ticket ticket, HttpServletRequest request, long tMaxWaitMillis)
+        throws InterruptedException, TimeoutException {
+
+        boolean async = request.isAsyncSupported();
+        synchronized (AdmissionController.class) {
+            PerIp perIp = perIpMap.computeIfAbsent(ticket.ipAddress, k -> new PerIp());
+            ticket.enqueuedMillis = System.currentTimeMillis();
+            if (perIp.waiting.isEmpty() && canAdmit(perIp, ticket)) {
+                activate(ticket, perIp);
+                currentTicket.set(ticket);
+                return true;
+            }
+
+            //wait
+            if (async) {
+                ticket.asyncContext = request.startAsync();
+                ticket.asyncContext.setTimeout(tMaxWaitMillis);
+                ticket.asyncContext.addListener(new Listener(ticket));
+                request.setAttribute(TICKET_ATTRIBUTE, ticket);
+            } else {
+                ticket.latch = new CountDownLatch(1);
+            }
+            perIp.waiting.add(ticket);
+            nWaiting++;
+            if (EDStatic.reallyVerbose) String2.log(ticket.ipAddress +
+                " request #" + ticket.requestNumber + " is waiting to be admitted (" +
+                (perIp.nActive >= EDStatic.ipAddressMaxRequestsActive?
+                    "ipAddressMaxRequestsActive=" + EDStatic.ipAddressMaxRequestsActive :
+                    "nActive=" + nActive + " activeCostMB=" + activeCost / Math2.BytesPerMB) + ")");
+        }
+        if (async)
+            return false;
+
+        //the container doesn't support async for this request, so wait here
+        boolean admitted = false;
+        try {
+            admitted = ticket.latch.await(tMaxWaitMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            if (!admitted && !cancel(ticket, TIMED_OUT))
+                admitted = true; //it was admitted just now
+        }
+        if (!admitted)
+            throw new TimeoutException(EDStatic.timeoutOtherRequestsAr[0] + " " +
+                EDStatic.oneRequestAtATimeAr[0]);
+        currentTicket.set(ticket);
+        return true;
+    }
+
+    /**
+     * When a parked request is dispatched back to doGet, doGet calls this first.
+     *
+     * @param request the request
+     * @return the request's Ticket (if this is a redispatch of a parked request), else null.
+     *   If ticket.isAdmitted(), the request should be processed (and later released),
+     *   else it timed out while waiting.
+     */
+    public static Ticket redispatchedTicket(HttpServletRequest request) {
+        if (request.getDispatcherType() != DispatcherType.ASYNC)
+            return null;
+        Object o = request.getAttribute(TICKET_ATTRIBUTE);
+        if (!(o instanceof Ticket))
+            return null;
+        request.removeAttribute(TICKET_ATTRIBUTE);
+        Ticket ticket = (Ticket)o;
+        if (ticket.isAdmitted())
+            currentTicket.set(ticket);
+        return ticket;
+    }
+
+    /**
+     * This adds to the estimated cost (in bytes) of the request being processed
+     * by this thread (if any). Later requests aren't admitted while the
+     * active requests' total cost is over EDStatic.maxActiveRequestsMB.
+     * A request's total cost is capped at EDStatic.partialRequestMaxBytes,
+     * since that's about the most that a request holds in memory at once
+     * (the rest is streamed to the client).
+     * This is fast and never throws an exception.
+     *
+     * @param nBytes e.g., GridDataAccessor.totalNBytes()
+     */
+    public static void charge(long nBytes) {
+        Ticket ticket = currentTicket.get();
+        if (ticket == null || nBytes <= 0)
+            return;
+        synchronized (AdmissionController.class) {
+            if (ticket.state != ADMITTED)
+                return;
+            nBytes = Math.min(nBytes, Math.max(0, EDStatic.partialRequestMaxBytes - ticket.cost));
+            ticket.cost += nBytes;
+            activeCost += nBytes;
+            PerIp perIp = perIpMap.get(ticket.ipAddress);
+            if (perIp != null)
+                perIp.activeCost += nBytes;
+        }
+    }
+
+    /**
+     * doGet calls this (in its finally clause) when it is done with an admitted
+     * request (or a request which timed out), so the next waiting requests can be admitted.
+     *
+     * @param ticket This may be null (e.g., the request was exempt).
+     */
+    public static void release(Ticket ticket) {
+        if (ticket == null)
+            return;
+        if (currentTicket.get() == ticket)
+            currentTicket.remove();
+        synchronized (AdmissionController.class) {
+            if (ticket.state != ADMITTED)
+                return;
+            ticket.state = RELEASED;
+            nActive--;
+            activeCost -= ticket.cost;
+            PerIp perIp = perIpMap.get(ticket.ipAddress);
+            if (perIp != null) {
+                perIp.nActive--;
+                perIp.activeCost -= ticket.cost;
+                if (perIp.nActive <= 0 && perIp.waiting.isEmpty())
+                    perIpMap.remove(ticket.ipAddress);
+            }
+        }
+        admitWaiting();
+    }
+
+    /**
+     * This returns true if a request from an ipAddress (with a cheap or costly request) 
+     * can be admitted now. Call this while synchronized.
+     */
+    private static boolean canAdmit(PerIp perIp, Ticket ticket) {
+        return canAdmit(perIp.nActive, ticket.cheap, nActive, activeCost,
+            EDStatic.ipAddressMaxRequestsActive, EDStatic.maxActiveRequests, 
+            EDStatic.maxActiveRequestsMB);
+    }
+
+    /**
+     * This is the admission rule.
+     *
+     * @param ipNActive the number of active requests from the request's ipAddress
+     * @param cheap true if the request isn't subject to the cost budget
+     * @param tNActive the number of active requests (from all ipAddresses)
+     * @param tActiveCost the total cost (bytes) of the active requests
+     * @param ipMaxActive the max number of active requests per ipAddress
+     * @param maxActive the max number of active requests (0=no limit)
+     * @param maxActiveMB the cost budget in MB (0=no limit)
+     * @return true if the request can be admitted now
+     */
+    static boolean canAdmit(int ipNActive, boolean cheap, int tNActive, long tActiveCost,
+        int ipMaxActive, int maxActive, int maxActiveMB) {
+        return ipNActive < ipMaxActive &&
+            (maxActive <= 0 || tNActive < maxActive) &&
+            (cheap || tNActive == 0 || maxActiveMB <= 0 ||
+             tActiveCost < (long)maxActiveMB * Math2.BytesPerMB);
+    }
+
+    /**
+     * This returns true if a request is cheap, so it isn't subject to the cost budget:
+     * everything except the data requests to /griddap/, /tabledap/, /wms/, and /files/,
+     * and even there the .das, .dds, .html, .graph, .subset, and other metadata responses.
+     *
+     * @param requestUrl the part of the request's URL after the language code (if any),
+     *   e.g., /erddap/griddap/erdMHchla8day.nc
+     */
+    public static boolean isCheap(String requestUrl) {
+        if (requestUrl.indexOf("/griddap/") < 0 && requestUrl.indexOf("/tabledap/") < 0 &&
+            requestUrl.indexOf("/wms/") < 0 && requestUrl.indexOf("/files/") < 0)
+            return true;
+        int po = requestUrl.lastIndexOf('.');
+        return po > requestUrl.lastIndexOf('/') &&
+            String2.indexOf(CHEAP_EXTENSIONS, requestUrl.substring(po)) >= 0;
+    }
+
+    /** The file types (in /griddap/, /tabledap/, ...) which are cheap, e.g., metadata. */
+    private final static String CHEAP_EXTENSIONS[] = {".das", ".dds", ".html", ".graph", 
+        ".subset", ".help", ".nccsvMetadata", ".ncml", ".fgdc", ".iso19115"};
+
+    /** This marks the ticket as admitted. Call this while synchronized. */
+    private static void activate(Ticket ticket, PerIp perIp) {
+        ticket.state = ADMITTED;
+        ticket.waitMillis = System.currentTimeMillis() - ticket.enqueuedMillis;
+        perIp.nActive++;
+        nActive++;
+        nAdmitted++;
+        if (ticket.latch != null || ticket.asyncContext != null) { //it had to wait
+            nAdmittedAfterWait++;
+            maxWaitMillis = Math.max(maxWaitMillis, ticket.waitMillis);
+        }
+        String2.distributeTime(ticket.waitMillis, EDStatic.admissionWaitDistribution24);
+        String2.distributeTime(ticket.waitMillis, EDStatic.admissionWaitDistributionTotal);
+    }
+
+    /**
+     * This admits as many waiting requests as the budgets allow,
+     * each from the ipAddress with the lowest active cost.
+     */
+    private static void admitWaiting() {
+        ArrayList<Ticket> admitted = new ArrayList<>();
+        synchronized (AdmissionController.class) {
+            while (nWaiting > 0) {
+                PerIp best = null;
+                for (PerIp perIp : perIpMap.values()) {
+                    if (perIp.waiting.isEmpty() || !canAdmit(perIp, perIp.waiting.peek()))
+                        continue;
+                    if (best == null || perIp.activeCost < best.activeCost ||
+                        (perIp.activeCost == best.activeCost &&
+                         perIp.waiting.peek().enqueuedMillis < best.waiting.peek().enqueuedMillis))
+                        best = perIp;
+                }
+                if (best == null)
+                    break;
+                Ticket ticket = best.waiting.poll();
+                nWaiting--;
+                activate(ticket, best);
+                admitted.add(ticket);
+            }
+        }
+
+        //dispatch or wake them (not while synchronized)
+        for (Ticket ticket : admitted) {
+            if (EDStatic.reallyVerbose) String2.log(ticket.ipAddress +
+                " request #" + ticket.requestNumber + " was admitted after waiting " +
+                ticket.waitMillis + "ms");
+            if (ticket.latch != null) {
+                ticket.latch.countDown();
+            } else {
+                try {
+                    ticket.asyncContext.dispatch();
+                } catch (Throwable t) {
+                    String2.log("AdmissionController couldn't dispatch request #" + ticket.requestNumber + ":\n" +
+                        MustBe.throwableToString(t));
+                    release(ticket);
+                }
+            }
+        }
+    }
+
+    /**
+     * This removes a waiting ticket from its queue.
+     *
+     * @param newState TIMED_OUT or ABANDONED
+     * @return true if the ticket was waiting (so now it's cancelled),
+     *   false if it was already admitted (or cancelled).
+     */
+    private static boolean cancel(Ticket ticket, int newState) {
+        synchronized (AdmissionController.class) {
+            if (ticket.state != WAITING)
+                return false;
+            ticket.state = newState;
+            ticket.waitMillis = System.currentTimeMillis() - ticket.enqueuedMillis;
+            PerIp perIp = perIpMap.get(ticket.ipAddress);
+            if (perIp != null) {
+                if (perIp.waiting.remove(ticket))
+                    nWaiting--;
+                if (perIp.nActive <= 0 && perIp.waiting.isEmpty())
+                    perIpMap.remove(ticket.ipAddress);
+            }
+            if (newState == TIMED_OUT)
+                 nTimedOut++;
+            else nAbandoned++;
+            return true;
+        }
+    }
+
+    /** This deals with the async events of a parked request. */
+    private static class Listener implements AsyncListener {
+        private final Ticket ticket;
+
+        Listener(Ticket tTicket) {
+            ticket = tTicket;
+        }
+
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        public void onComplete(AsyncEvent event) {
+        }
+
+        /** Send it back to doGet, which will see that it wasn't admitted and send the error. */
+        public void onTimeout(AsyncEvent event) {
+            if (cancel(ticket, TIMED_OUT)) {
+                String2.log(ticket.ipAddress + " request #" + ticket.requestNumber +
+                    " timed out while waiting to be admitted.");
+                ticket.asyncContext.dispatch();
+            }
+        }
+
+        /** The connection failed (e.g., the client gave up), so just forget the request. */
+        public void onError(AsyncEvent event) {
+            if (cancel(ticket, ABANDONED)) {
+                String2.log(ticket.ipAddress + " request #" + ticket.requestNumber +
+                    " was abandoned while waiting to be admitted.");
+                EDStatic.removeFromIpAddressQueue(ticket.ipAddress, ticket.requestNumber);
+                try {
+                    ticket.asyncContext.complete();
+                } catch (Throwable t) {
+                }
+            }
+        }
+    }
+
+    /**
+     * This returns a one line summary of the controller's status (for status.html).
+     */
+    public static String statusString() {
+        synchronized (AdmissionController.class) {
+            return "AdmissionController: nActive=" + nActive +
+                " activeCostMB=" + activeCost / Math2.BytesPerMB +
+                " nWaiting=" + nWaiting +
+                " (maxActiveRequests=" + EDStatic.maxActiveRequests +
+                " maxActiveRequestsMB=" + EDStatic.maxActiveRequestsMB + ")" +
+                " admitted=" + nAdmitted +
+                " admittedAfterWait=" + nAdmittedAfterWait +
+                " maxWait=" + maxWaitMillis + "ms" +
+                " timedOut=" + nTimedOut +
+                " abandoned=" + nAbandoned + " (since startup)";
+        }
+    }
+
+    /** 
+     * This makes a fake HttpServletRequest (for the tests) which records 
+     * the async events in events.
+     */
+    private static HttpServletRequest fakeRequest(boolean asyncSupported, 
+        ArrayList<String> events, ArrayList<AsyncListener> listeners) {
+        HashMap<String, Object> attributes = new HashMap<>();
+        DispatcherType dispatcherType[] = {DispatcherType.REQUEST};
+        AsyncContext asyncContext = (AsyncContext)Proxy.newProxyInstance(
+            AsyncContext.class.getClassLoader(), new Class[]{AsyncContext.class},
+            (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.equals("addListener")) {
+                    listeners.add((AsyncListener)args[0]);
+                } else if (name.equals("dispatch")) {
+                    dispatcherType[0] = DispatcherType.ASYNC;
+                    events.add("dispatch");
+                } else if (name.equals("complete")) {
+                    events.add("complete");
+                }
+                return null;
+            });
+        return (HttpServletRequest)Proxy.newProxyInstance(
+            HttpServletRequest.class.getClassLoader(), new Class[]{HttpServletRequest.class},
+            (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.equals("isAsyncSupported")) return asyncSupported;
+                if (name.equals("getDispatcherType")) return dispatcherType[0];
+                if (name.equals("getAttribute")) return attributes.get((String)args[0]);
+                if (name.equals("setAttribute")) {attributes.put((String)args[0], args[1]); return null;}
+                if (name.equals("removeAttribute")) {attributes.remove((String)args[0]); return null;}
+                if (name.equals("startAsync")) {events.add("startAsync"); return asyncContext;}
+                throw new UnsupportedOperationException(name);
+            });
+    }
+
+    /** This tests canAdmit() and isCheap(). */
+    public static void testCanAdmit() throws Throwable {
+        String2.log("\n*** AdmissionController.testCanAdmit()");
+        long GB = 1024L * Math2.BytesPerMB;
+
+        //budgets >= 2048 MB mustn't overflow
+        for (int mb : new int[]{1000, 2047, 2048, 2560, 4096, 100000, Integer.MAX_VALUE}) {
+            long budget = mb * (long)Math2.BytesPerMB;
+            Test.ensureTrue( canAdmit(0, false, 1, 0,          4, 100, mb), "mb=" + mb);
+            Test.ensureTrue( canAdmit(0, false, 1, budget - 1, 4, 100, mb), "mb=" + mb);
+            Test.ensureTrue(!canAdmit(0, false, 1, budget,     4, 100, mb), "mb=" + mb);
+            Test.ensureTrue(!canAdmit(0, false, 1, budget + 1, 4, 100, mb), "mb=" + mb);
+            Test.ensureTrue( canAdmit(0, true,  1, budget + 1, 4, 100, mb), "mb=" + mb); //cheap
+            Test.ensureTrue( canAdmit(0, false, 0, budget + 1, 4, 100, mb), "mb=" + mb); //none active
+        }
+        Test.ensureTrue( canAdmit(0, false, 1, 2 * GB, 4, 100, 2560), ""); 
+        Test.ensureTrue(!canAdmit(0, false, 1, 2 * GB, 4, 100, 2048), ""); 
+        Test.ensureTrue( canAdmit(0, false, 1, 100 * GB, 4, 100, 0), ""); //0=no limit
+
+        //count limits apply to cheap requests, too
+        Test.ensureTrue(!canAdmit(4, true, 1, 0, 4, 100, 0), ""); 
+        Test.ensureTrue(!canAdmit(0, true, 100, 0, 4, 100, 0), ""); 
+        Test.ensureTrue( canAdmit(0, true, 100, 0, 4, 0, 0), "");  //0=no limit
+
+        Test.ensureTrue( isCheap("/erddap/index.html"), "");
+        Test.ensureTrue( isCheap("/erddap/status.html"), "");
+        Test.ensureTrue( isCheap("/erddap/info/erdMHchla8day/index.json"), "");
+        Test.ensureTrue( isCheap("/erddap/griddap/erdMHchla8day.das"), "");
+        Test.ensureTrue( isCheap("/erddap/griddap/erdMHchla8day.html"), "");
+        Test.ensureTrue( isCheap("/erddap/tabledap/cwwcNDBCMet.subset"), "");
+        Test.ensureTrue(!isCheap("/erddap/griddap/erdMHchla8day.nc"), "");
+        Test.ensureTrue(!isCheap("/erddap/tabledap/cwwcNDBCMet.csv"), "");
+        Test.ensureTrue(!isCheap("/erddap/wms/erdMHchla8day/request"), "");
+        Test.ensureTrue(!isCheap("/erddap/files/erdMHchla8day/"), "");
+    }
+
+    /** This tests admit(), charge(), release(), the timeouts, and redispatch. */
+    public static void testAdmission() throws Throwable {
+        String2.log("\n*** AdmissionController.testAdmission()");
+        int oIpMax = EDStatic.ipAddressMaxRequestsActive;
+        int oMaxActive = EDStatic.maxActiveRequests;
+        int oMaxActiveMB = EDStatic.maxActiveRequestsMB;
+        int oPartial = EDStatic.partialRequestMaxBytes;
+        ArrayList<String> events = new ArrayList<>();
+        ArrayList<AsyncListener> listeners = new ArrayList<>();
+        try {
+            EDStatic.ipAddressMaxRequestsActive = 1;
+            EDStatic.maxActiveRequests = 100;
+            EDStatic.maxActiveRequestsMB = 100;
+            EDStatic.partialRequestMaxBytes = 490000000;
+            long now = System.currentTimeMillis();
+            Test.ensureTrue(statusString().indexOf("nActive=0 activeCostMB=0 nWaiting=0 ") >= 0, 
+                "Another request is active:\n" + statusString());
+
+            //a is admitted. Its huge cost is capped at partialRequestMaxBytes.
+            Ticket a = new Ticket(1, "1.1.1.1", now, "a", false);
+            Test.ensureTrue(admit(a, fakeRequest(false, events, listeners)), "");
+            charge(10000L * Math2.BytesPerMB);
+            Test.ensureTrue(statusString().indexOf("nActive=1 activeCostMB=" + 
+                490000000 / Math2.BytesPerMB + " nWaiting=0 ") >= 0, statusString());
+
+            //costly b (from another ipAddress) is over budget, so it's parked
+            HttpServletRequest bRequest = fakeRequest(true, events, listeners);
+            Ticket b = new Ticket(2, "2.2.2.2", now, "b", false);
+            Test.ensureTrue(!admit(b, bRequest), "");
+            Test.ensureEqual(events.toString(), "[startAsync]", "");
+            Test.ensureTrue(!b.isAdmitted(), "");
+            Test.ensureEqual(redispatchedTicket(bRequest), null, ""); //not dispatched yet
+
+            //cheap c isn't subject to the cost budget
+            Ticket c = new Ticket(3, "3.3.3.3", now, "c", true);
+            Test.ensureTrue(admit(c, fakeRequest(false, events, listeners)), "");
+            release(c);
+            Test.ensureEqual(events.toString(), "[startAsync]", ""); //b still waits
+
+            //d (from a's ipAddress) waits synchronously, then times out
+            Ticket d = new Ticket(4, "1.1.1.1", now, "d", true);
+            long time = System.currentTimeMillis();
+            try {
+                admit(d, fakeRequest(false, events, listeners), 100);
+                throw new SimpleException("Shouldn't get here.");
+            } catch (TimeoutException te) {
+            }
+            time = System.currentTimeMillis() - time;
+            Test.ensureTrue(time >= 100 && time < 5000, "time=" + time);
+            Test.ensureTrue(!d.isAdmitted(), "");
+
+            //when a is released, b is admitted and dispatched back to doGet
+            release(a);
+            Test.ensureEqual(events.toString(), "[startAsync, dispatch]", "");
+            Ticket rb = redispatchedTicket(bRequest);
+            Test.ensureTrue(rb == b, "");
+            Test.ensureTrue(b.isAdmitted(), "");
+            Test.ensureTrue(b.waitMillis() >= 100, "waitMillis=" + b.waitMillis());
+            charge(200L * Math2.BytesPerMB);
+
+            //e is parked, then times out (async), so it's dispatched back to doGet (not admitted)
+            events.clear();
+            HttpServletRequest eRequest = fakeRequest(true, events, listeners);
+            Ticket e = new Ticket(5, "5.5.5.5", now, "e", false);
+            Test.ensureTrue(!admit(e, eRequest), "");
+            Test.ensureEqual(listeners.size(), 2, ""); //b's and e's
+            listeners.get(1).onTimeout(null);
+            Test.ensureEqual(events.toString(), "[startAsync, dispatch]", "");
+            Ticket re = redispatchedTicket(eRequest);
+            Test.ensureTrue(re == e, "");
+            Test.ensureTrue(!e.isAdmitted(), "");
+            release(e); //harmless
+            release(b);
+            Test.ensureTrue(statusString().indexOf("nActive=0 activeCostMB=0 nWaiting=0 ") >= 0, 
+                statusString());
+
+        } finally {
+            EDStatic.ipAddressMaxRequestsActive = oIpMax;
+            EDStatic.maxActiveRequests = oMaxActive;
+            EDStatic.maxActiveRequestsMB = oMaxActiveMB;
+            EDStatic.partialRequestMaxBytes = oPartial;
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ AdmissionController.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) testCanAdmit();
+                    if (test ==  1) testAdmission();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
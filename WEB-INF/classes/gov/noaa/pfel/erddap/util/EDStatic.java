@@ -25,6 +25,7 @@ import com.cohort.util.XML;
 
 import com.sun.management.UnixOperatingSystemMXBean;
 
+import gov.noaa.pfel.coastwatch.griddata.NcFileCache;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
@@ -251,6 +252,8 @@ public static boolean developmentMode = false;
     public static int failureTimesDistributionLoadDatasets[] = new int[String2.TimeDistributionSize];
     public static int failureTimesDistribution24[]           = new int[String2.TimeDistributionSize];
     public static int failureTimesDistributionTotal[]        = new int[String2.TimeDistributionSize];
+    public static int datasetLoadTimesDistribution24[]       = new int[String2.TimeDistributionSize];
+    public static int datasetLoadTimesDistributionTotal[]    = new int[String2.TimeDistributionSize];
     public static int majorLoadDatasetsDistribution24[]      = new int[String2.TimeDistributionSize];
     public static int majorLoadDatasetsDistributionTotal[]   = new int[String2.TimeDistributionSize];
     public static int minorLoadDatasetsDistribution24[]      = new int[String2.TimeDistributionSize];
@@ -266,6 +269,10 @@ public static boolean developmentMode = false;
     public static int touchThreadFailedDistributionTotal[]   = new int[String2.TimeDistributionSize];
     public static int touchThreadSucceededDistribution24[]   = new int[String2.TimeDistributionSize];
     public static int touchThreadSucceededDistributionTotal[]= new int[String2.TimeDistributionSize];
+    public static int workQueueWaitDistribution24[]          = new int[String2.TimeDistributionSize];
+    public static int workQueueWaitDistributionTotal[]       = new int[String2.TimeDistributionSize];
+    public static int admissionWaitDistribution24[]          = new int[String2.TimeDistributionSize];
+    public static int admissionWaitDistributionTotal[]       = new int[String2.TimeDistributionSize];
     public static volatile int requestsShed = 0;            //since last Major LoadDatasets
     public static volatile int dangerousMemoryEmails = 0;   //since last Major LoadDatasets
     public static volatile int dangerousMemoryFailures = 0; //since last Major LoadDatasets
@@ -283,11 +290,10 @@ public static boolean developmentMode = false;
     public static long lastMajorLoadDatasetsStopTimeMillis = System.currentTimeMillis() - 1;
     private static ConcurrentHashMap<String,String> sessionNonce = 
         new ConcurrentHashMap(16, 0.75f, 4); //for a session: loggedInAs -> nonce
-    //Currently Loading Dataset
+    //Currently Loading Datasets (several if nLoadDatasetsThreads > 1)
     public static volatile boolean cldMajor       = false;
-    public static volatile int     cldNTry        = 0;    //   0=none actively loading
-    public static volatile String  cldDatasetID   = null; //null=none actively loading
-    public static volatile long    cldStartMillis = 0;    //   0=none actively loading
+    public static final ConcurrentHashMap<String,long[]> cldDatasets = 
+        new ConcurrentHashMap(); //datasetID -> {nTry, startMillis}. empty=none actively loading
     //set by ERDDAP constructor. Only used by status.html below.
     public static ConcurrentHashMap<String,EDDGrid>  gridDatasetHashMap  = null; 
     public static ConcurrentHashMap<String,EDDTable> tableDatasetHashMap = null; 
@@ -348,41 +354,67 @@ public static boolean developmentMode = false;
 
     public final static int DEFAULT_decompressedCacheMaxGB = 10; //for now, 1 value applies to each dataset's decompressed dir
     public final static int DEFAULT_decompressedCacheMaxMinutesOld = 15;
+    public final static int DEFAULT_nGridPrefetchChunks = 0;
     public final static int DEFAULT_nGridThreads = 1;
+    public final static int DEFAULT_nLoadDatasetsThreads = 1;
     public final static int DEFAULT_nTableThreads = 1;
     public static String          DEFAULT_palettes[]   = null; //set when messages.xml is read
     public static HashSet<String> DEFAULT_palettes_set = null;  //set when messages.xml is read
     public static int decompressedCacheMaxGB         = DEFAULT_decompressedCacheMaxGB; 
     public static int decompressedCacheMaxMinutesOld = DEFAULT_decompressedCacheMaxMinutesOld; 
+    public static int nGridPrefetchChunks            = DEFAULT_nGridPrefetchChunks; //will be a valid number 0+
     public static int nGridThreads                   = DEFAULT_nGridThreads;  //will be a valid number 1+
+    public static int nLoadDatasetsThreads           = DEFAULT_nLoadDatasetsThreads; //will be a valid number 1+
     public static int nTableThreads                  = DEFAULT_nTableThreads; //will be a valid number 1+
     public static String convertInterpolateRequestCSVExample = null;         //may be null or ""
     public static String convertInterpolateDatasetIDVariableList[] = new String[0]; //may be [0]
 
     //things that were in setup.xml (discouraged) and are now in datasets.xml (v2.00+)
     public final static int    DEFAULT_cacheMinutes            = 60;
+    public final static int    DEFAULT_cacheMaxGB              = 100;
     public final static String DEFAULT_drawLandMask            = "under";  
     public final static int    DEFAULT_graphBackgroundColorInt = 0xffccccff; 
+    public final static int    DEFAULT_gridChunkCacheMB        = 64;
+    public final static int    DEFAULT_gridRandomAccessInMemoryMB = 50;
     public final static int    DEFAULT_loadDatasetsMinMinutes  = 15;
     public final static int    DEFAULT_loadDatasetsMaxMinutes  = 60;
+    public final static int    DEFAULT_memoryCacheMB           = 64;
     public final static String DEFAULT_logLevel                = "info"; //warning|info|all
+    public final static int    DEFAULT_maxActiveRequests       = 100;
+    public final static int    DEFAULT_maxActiveRequestsMB     = (int)(Math2.maxMemory / 4 / Math2.BytesPerMB);
+    public final static int    DEFAULT_ncFileCacheMaxOpen      = NcFileCache.DEFAULT_MAX_OPEN;
+    public final static int    DEFAULT_orderByInMemoryMB       = 50;
     public final static int    DEFAULT_partialRequestMaxBytes  = 490000000; //this is just below tds default <opendap><binLimit> of 500MB
     public final static int    DEFAULT_partialRequestMaxCells  = 10000000;
     public final static int    DEFAULT_slowDownTroubleMillis   = 1000;
+    public final static int    DEFAULT_sortInMemoryMB          = 100;
     public final static int    DEFAULT_unusualActivity         = 10000;
     public final static int    DEFAULT_updateMaxEvents         = 10;
+    public final static int    DEFAULT_wmsTileCacheMB          = 1000;
+    public final static int    DEFAULT_wmsTilePreseedMaxZoom   = -1;
     public static long   cacheMillis            = DEFAULT_cacheMinutes           * Calendar2.MILLIS_PER_MINUTE;
+    public static int    cacheMaxGB             = DEFAULT_cacheMaxGB;  //for the whole cache directory
     public static String drawLandMask           = DEFAULT_drawLandMask;    
     public static boolean emailDiagnosticsToErdData = true;
     public static Color  graphBackgroundColor   = new Color(DEFAULT_graphBackgroundColorInt, true); //hasAlpha
+    public static int    gridChunkCacheMB       = DEFAULT_gridChunkCacheMB; //GridChunkCache. 0=off
+    public static int    gridRandomAccessInMemoryMB = DEFAULT_gridRandomAccessInMemoryMB; //GridDataRandomAccessor. 0=always use files
     public static long   loadDatasetsMinMillis  = DEFAULT_loadDatasetsMinMinutes * Calendar2.MILLIS_PER_MINUTE;
     public static long   loadDatasetsMaxMillis  = DEFAULT_loadDatasetsMaxMinutes * Calendar2.MILLIS_PER_MINUTE;
+    public static int    maxActiveRequests      = DEFAULT_maxActiveRequests; //AdmissionController. 0=no limit
+    public static int    maxActiveRequestsMB    = DEFAULT_maxActiveRequestsMB; //AdmissionController. 0=no limit
+    public static int    memoryCacheMB          = DEFAULT_memoryCacheMB; //ResponseCache's memory tier. 0=off
     //logLevel handled specially by setLogLevel
+    public static int    ncFileCacheMaxOpen     = DEFAULT_ncFileCacheMaxOpen; //NcFileCache. 0=off
+    public static int    orderByInMemoryMB      = DEFAULT_orderByInMemoryMB; //TableWriterOrderByReduce. 0=always use files
     public static int    partialRequestMaxBytes = DEFAULT_partialRequestMaxBytes;
     public static int    partialRequestMaxCells = DEFAULT_partialRequestMaxCells;
     public static int    slowDownTroubleMillis  = DEFAULT_slowDownTroubleMillis;
+    public static int    sortInMemoryMB         = DEFAULT_sortInMemoryMB; //TableWriterExternalSort. 0=always sort in memory
     public static int    unusualActivity        = DEFAULT_unusualActivity;
     public static int    updateMaxEvents        = DEFAULT_updateMaxEvents;
+    public static int    wmsTileCacheMB         = DEFAULT_wmsTileCacheMB; //WmsTileCache. 0=no limit (just cacheMaxGB)
+    public static int    wmsTilePreseedMaxZoom  = DEFAULT_wmsTilePreseedMaxZoom; //WmsTileCache. -1=off
 
     //not translated
     public static String  //these are set by setup.xml (deprecated) and/or messages.xml and/or datasets.xml (v2.00+)    
@@ -540,6 +572,9 @@ public static boolean developmentMode = false;
     //see bottom of https://lucene.apache.org/java/3_5_0/queryparsersyntax.html
     public  static String        luceneSpecialCharacters = "+-&|!(){}[]^\"~*?:\\";
 
+    //used by the original search engine (if !useLuceneSearchEngine). It is updated by LoadDatasets.updateLucene.
+    public  static SearchIndex   originalSearchIndex = new SearchIndex();
+
     //made if useLuceneSearchEngine
     //there are many analyzers; this is a good starting point
     public  static Analyzer      luceneAnalyzer;    
@@ -4507,6 +4542,26 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         return false;
     }
 
+    /**
+     * When a request is finished (or abandoned), this removes its requestNumber
+     * from the ipAddressQueue for its ipAddress.
+     *
+     * @param ipAddress the requester's ipAddress
+     * @param requestNumber The requestNumber assigned to this request by doGet().
+     */
+    public static void removeFromIpAddressQueue(String ipAddress, int requestNumber) {
+        if (ipAddressUnlimited.contains(ipAddress))
+            return;
+        IntArray iaq = ipAddressQueue.get(ipAddress);
+        if (iaq != null) { //will be null if just added to ipAddressUnlimited
+            synchronized (iaq) {
+                int which = iaq.indexOf(requestNumber);
+                if (which >= 0) //it should be
+                    iaq.remove(which);
+            }
+        }
+    }
+
 
     /**
      * This adds the common, publicly accessible statistics to the StringBuilder.
@@ -4521,16 +4576,17 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
             (loadTime < 0 ? "is still running.\n" : "finished after " + (loadTime/1000) + " seconds.\n"));
 
         //make local copies to avoid trouble from volatile variables
-        boolean tcldMajor       = cldMajor;
-        int     tcldNTry        = cldNTry;        //   0=none actively loading
-        String  tcldDatasetID   = cldDatasetID;   //null=none actively loading
-        long    tcldStartMillis = cldStartMillis; //   0=none actively loading
-        if (tcldNTry == 0 || tcldDatasetID == null || tcldStartMillis == 0) {
+        boolean tcldMajor = cldMajor;
+        ArrayList<Map.Entry<String,long[]>> tcldDatasets = new ArrayList(cldDatasets.entrySet());
+        if (tcldDatasets.isEmpty()) {
             sb.append("Currently, no dataset is loading.\n");
         } else {
-            sb.append("Currently, " + (tcldMajor? "major" : "minor") + " LoadDatasets is loading dataset #" +
-                tcldNTry + "=" + tcldDatasetID + 
-                " (" + Calendar2.elapsedTimeString(Math2.longToDoubleNaN(System.currentTimeMillis() - tcldStartMillis)) + ").\n");
+            tcldDatasets.sort((a, b) -> Long.compare(a.getValue()[0], b.getValue()[0])); //by nTry
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String,long[]> entry : tcldDatasets) 
+                sb.append("Currently, " + (tcldMajor? "major" : "minor") + " LoadDatasets is loading dataset #" +
+                    entry.getValue()[0] + "=" + entry.getKey() + 
+                    " (" + Calendar2.elapsedTimeString(Math2.longToDoubleNaN(now - entry.getValue()[1])) + ").\n");
         }
 
         //make local copy of volatile variables to avoid null pointers and so sum is correct
@@ -4608,6 +4664,22 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
             sb.append(String2.getBriefTimeDistributionStatistics(touchThreadSucceededDistribution24) + "\n");
         }
 
+        sb.append(ThreadedWorkManager.statusString() + "\n");
+        sb.append(LoadDatasets.statusString() + "\n");
+        sb.append(ResponseCache.statusString() + "\n");
+        sb.append(RequestCoalescer.statusString() + "\n");
+        sb.append(AdmissionController.statusString() + "\n");
+        sb.append(NcFileCache.statusString() + "\n");
+        sb.append(GridChunkCache.statusString() + "\n");
+        sb.append(GridOverviews.statusString() + "\n");
+        sb.append(WmsTileCache.statusString() + "\n");
+        if (!useLuceneSearchEngine)
+            sb.append(originalSearchIndex.statusString() + "\n");
+        sb.append("ThreadedWorkManager Queue Wait Time (since last Daily Report) ");
+        sb.append(String2.getBriefTimeDistributionStatistics(workQueueWaitDistribution24) + "\n");
+        sb.append("AdmissionController Queue Wait Time (since last Daily Report) ");
+        sb.append(String2.getBriefTimeDistributionStatistics(admissionWaitDistribution24) + "\n");
+
         try {
             OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
             if (osBean instanceof UnixOperatingSystemMXBean uBean) {
@@ -4643,6 +4715,12 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         sb.append(String2.getTimeDistributionStatistics(majorLoadDatasetsDistributionTotal)); sb.append('\n');
         sb.append('\n');
 
+        sb.append("Dataset Load Times Distribution (since last Daily Report):\n");
+        sb.append(String2.getTimeDistributionStatistics(datasetLoadTimesDistribution24)); sb.append('\n');
+        sb.append("Dataset Load Times Distribution (since startup):\n");
+        sb.append(String2.getTimeDistributionStatistics(datasetLoadTimesDistributionTotal)); sb.append('\n');
+        sb.append('\n');
+
         sb.append("Minor LoadDatasets Times Distribution (since last Daily Report):\n");
         sb.append(String2.getTimeDistributionStatistics(minorLoadDatasetsDistribution24)); sb.append('\n');
         sb.append("Minor LoadDatasets Times Distribution (since startup):\n");
@@ -4701,6 +4779,18 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         sb.append(String2.getTimeDistributionStatistics(touchThreadSucceededDistributionTotal)); sb.append('\n');
         sb.append('\n');
 
+        sb.append("ThreadedWorkManager Queue Wait Time Distribution (since last Daily Report):\n");
+        sb.append(String2.getTimeDistributionStatistics(workQueueWaitDistribution24)); sb.append('\n');
+        sb.append("ThreadedWorkManager Queue Wait Time Distribution (since startup):\n");
+        sb.append(String2.getTimeDistributionStatistics(workQueueWaitDistributionTotal)); sb.append('\n');
+        sb.append('\n');
+
+        sb.append("AdmissionController Queue Wait Time Distribution (since last Daily Report):\n");
+        sb.append(String2.getTimeDistributionStatistics(admissionWaitDistribution24)); sb.append('\n');
+        sb.append("AdmissionController Queue Wait Time Distribution (since startup):\n");
+        sb.append(String2.getTimeDistributionStatistics(admissionWaitDistributionTotal)); sb.append('\n');
+        sb.append('\n');
+
         sb.append(tally.toString("Language (since last daily report)", 50)); //added v2.15
         sb.append(tally.toString("Language (since startup)", 50));
 
@@ -5227,6 +5317,14 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
             //shutdown Cassandra clusters/sessions
             EDDTableFromCassandra.shutdown();
 
+            //interrupt the shared worker threads
+            ThreadedWorkManager.shutdownSharedExecutor();
+
+            //stop the caches' background threads (and close the cached files)
+            NcFileCache.shutdown();
+            WmsTileCache.shutdown();
+            GridOverviews.shutdown();
+
             //interrupt all of them
             for (int i = 0; i < names.length; i++) {
                 try {
@@ -6456,9 +6554,10 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         }
 
         //always: if >=2000ms since gc and memory use is high, call gc
-        long inUse = Math2.getMemoryInUse();
+        long inUse = Math2.getTotalMemoryInUse(); //includes off-heap memory
         if (timeSinceGc >= 3*Math2.shortSleep && inUse >= Math2.halfMemory) {  //This is arbitrary. I don't want to call gc too often but I don't want to shed needlessly.
-            inUse = Math2.gcAndWait("shedThisRequest");  //waits Math2.shortSleep   //in shedThisRequest   //a diagnostic is always logged
+            inUse = Math2.gcAndWait("shedThisRequest") +  //waits Math2.shortSleep   //in shedThisRequest   //a diagnostic is always logged
+                Math2.getOffHeapMemoryInUse();
         }
 
         //if memory use is now low enough for this request, return false
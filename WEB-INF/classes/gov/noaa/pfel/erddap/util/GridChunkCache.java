@@ -0,0 +1,387 @@
+/*
+ * GridChunkCache Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.griddata.NcHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * This is the server-wide, size-bounded cache of decoded (decompressed)
+ * chunks of the data variables in chunked (e.g., HDF5 and NetCDF-4) files,
+ * for EDDGridFromNcFiles and similar datasets.
+ * A small request (e.g., a time series at one lat lon point) usually needs
+ * a few values from each of many chunks, but the library has to read and
+ * decompress each of those chunks completely. With this cache, the next request
+ * for nearby values gets them from the already decoded chunks.
+ *
+ * <p>The chunks are the file's own chunks (from the variable's _ChunkSizes attribute).
+ * Entries are keyed by the file's name and lastModified, the variable's name,
+ * and the chunk's origin, so a changed file never gets stale data.
+ * The least recently used chunks are evicted when the cache is over
+ * EDStatic.gridChunkCacheMB.
+ * Variables with chunks bigger than 1/8 of the cache aren't cached
+ * (so one chunk doesn't flush everyone else's chunks).
+ * A request may need any number of chunks.
+ *
+ * <p>This is thread-safe.
+ */
+public class GridChunkCache {
+
+    /** A decoded chunk. */
+    private static class Chunk {
+        final PrimitiveArray pa;
+        final int shape[];  //the chunk's actual shape (smaller than _ChunkSizes at the edges)
+        final long nBytes;
+        Chunk(PrimitiveArray tPa, int tShape[]) {
+            pa = tPa;
+            shape = tShape;
+            nBytes = (long)tPa.size() * tPa.elementSize();
+        }
+    }
+
+    /** The cache: key -&gt; Chunk, in access order (least recently used first). */
+    private final static LinkedHashMap<String, Chunk> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private static long cacheBytes = 0;
+
+    //counters (since startup)
+    private static long nHits = 0, nMisses = 0, nEvictions = 0, nNotCached = 0;
+
+    /**
+     * This reads the requested values of a data variable from the cached chunks
+     * (reading and decoding the chunks which aren't in the cache).
+     *
+     * @param fullName the file's full name
+     * @param var a variable in the file
+     * @param constraints the start, stride, stop constraints for each of var's dimensions
+     * @return the values (not unpacked, just like
+     *    NcHelper.getPrimitiveArray(var.read(selection), true, NcHelper.isUnsigned(var))),
+     *    or null if the variable isn't chunked, its chunks are too big, or the cache is off,
+     *    so the caller should read the values from the file as usual.
+     * @throws Exception if trouble
+     */
+    public static PrimitiveArray read(String fullName, Variable var, IntArray constraints)
+        throws Exception {
+
+        int rank = var.getRank();
+        Attribute att = var.findAttribute("_ChunkSizes");
+        if (att == null || att.getLength() != rank)
+            return null;
+        int chunkSizes[] = new int[rank];
+        for (int d = 0; d < rank; d++)
+            chunkSizes[d] = att.getNumericValue(d).intValue();
+        return read(fullName, var, chunkSizes, constraints);
+    }
+
+    /**
+     * This is like read(fullName, var, constraints), but with the chunk sizes specified.
+     *
+     * @param chunkSizes the size of the variable's chunks, for each dimension
+     */
+    static PrimitiveArray read(String fullName, Variable var, int chunkSizes[], IntArray constraints)
+        throws Exception {
+
+        long maxBytes = EDStatic.gridChunkCacheMB * (long)Math2.BytesPerMB;
+        int rank = var.getRank();
+        if (maxBytes <= 0 || rank == 0 || constraints.size() != 3 * rank ||
+            fullName.endsWith(".ncml")) //the underlying files may change
+            return null;
+        DataType dataType = var.getDataType();
+        if (dataType.isString() ||
+            dataType == DataType.CHAR || dataType == DataType.STRUCTURE)
+            return null;
+
+        //which chunks are needed?
+        int varShape[] = var.getShape();
+        int start[] = new int[rank], stride[] = new int[rank], stop[] = new int[rank];
+        int firstChunk[] = new int[rank];
+        int nChunksPer[] = new int[rank];
+        long nChunks = 1;
+        long nValues = 1;
+        long chunkNValues = 1;
+        for (int d = 0; d < rank; d++) {
+            if (chunkSizes[d] <= 0)
+                return null;
+            start[d]  = constraints.get(d * 3);
+            stride[d] = constraints.get(d * 3 + 1);
+            stop[d]   = constraints.get(d * 3 + 2);
+            firstChunk[d] = start[d] / chunkSizes[d];
+            nChunksPer[d] = stop[d] / chunkSizes[d] - firstChunk[d] + 1;
+            nChunks *= nChunksPer[d];
+            nValues *= (stop[d] - start[d]) / stride[d] + 1;
+            chunkNValues *= chunkSizes[d];
+        }
+        long chunkBytes = chunkNValues * dataType.getSize();
+        if (chunkBytes > maxBytes / 8 || nValues >= Integer.MAX_VALUE) {
+            synchronized (cache) {
+                nNotCached++;
+            }
+            return null;
+        }
+
+        //assemble the results (in row-major order), one run (along the last dimension) at a time
+        String keyStart = fullName + "\n" + new File(fullName).lastModified() + "\n" +
+            var.getFullName() + "\n";
+        //hold on to the chunks this request uses, unless there are a lot of them
+        //(then get each one from the cache as needed)
+        Chunk chunks[] = nChunks * chunkBytes <= maxBytes / 8? new Chunk[(int)nChunks] : null;
+        long lastCi = -1;
+        Chunk lastChunk = null;
+        PrimitiveArray results = null;
+        int current[] = start.clone();
+        int last = rank - 1;
+        while (true) {
+            //the chunk with current[]
+            long ci = 0;
+            for (int d = 0; d < rank; d++)
+                ci = ci * nChunksPer[d] + current[d] / chunkSizes[d] - firstChunk[d];
+            Chunk chunk = ci == lastCi? lastChunk : chunks == null? null : chunks[(int)ci];
+            if (chunk == null) {
+                chunk = getChunk(keyStart, var, current, chunkSizes, varShape);
+                if (chunks != null)
+                    chunks[(int)ci] = chunk;
+            }
+            lastCi = ci;
+            lastChunk = chunk;
+            if (results == null)
+                results = PrimitiveArray.factory(chunk.pa.elementType(), (int)nValues, false);
+
+            //the offset of current[] within the chunk
+            int offset = 0;
+            for (int d = 0; d < rank; d++)
+                offset = offset * chunk.shape[d] + current[d] % chunkSizes[d];
+
+            //add the values along the last dimension which are in this chunk
+            int chunkStop = Math.min(stop[last],
+                (current[last] / chunkSizes[last] + 1) * chunkSizes[last] - 1);
+            int n = (chunkStop - current[last]) / stride[last] + 1;
+            if (stride[last] == 1) {
+                results.addFromPA(chunk.pa, offset, n);
+            } else {
+                for (int i = 0; i < n; i++)
+                    results.addFromPA(chunk.pa, offset + i * stride[last]);
+            }
+            current[last] += n * stride[last];
+
+            //increment current[]
+            int d = last;
+            while (current[d] > stop[d]) {
+                if (d == 0)
+                    return results;
+                current[d] = start[d];
+                d--;
+                current[d] += stride[d];
+            }
+        }
+    }
+
+    /**
+     * This gets the chunk with the value at current[] from the cache or the file.
+     */
+    private static Chunk getChunk(String keyStart, Variable var, int current[],
+        int chunkSizes[], int varShape[]) throws Exception {
+
+        int rank = current.length;
+        int origin[] = new int[rank];
+        int shape[] = new int[rank];
+        StringBuilder key = new StringBuilder(keyStart);
+        for (int d = 0; d < rank; d++) {
+            origin[d] = current[d] / chunkSizes[d] * chunkSizes[d];
+            shape[d] = Math.min(chunkSizes[d], varShape[d] - origin[d]);
+            key.append(origin[d]).append(',');
+        }
+        String tKey = key.toString();
+        synchronized (cache) {
+            Chunk chunk = cache.get(tKey);
+            if (chunk != null) {
+                nHits++;
+                return chunk;
+            }
+            nMisses++;
+        }
+
+        //read it (outside of the lock; if 2 threads read the same chunk, that's okay)
+        Chunk chunk = new Chunk(NcHelper.getPrimitiveArray(var.read(origin, shape),
+            true, NcHelper.isUnsigned(var)), shape);
+        long maxBytes = EDStatic.gridChunkCacheMB * (long)Math2.BytesPerMB;
+        synchronized (cache) {
+            Chunk old = cache.put(tKey, chunk);
+            cacheBytes += chunk.nBytes - (old == null? 0 : old.nBytes);
+            Iterator<Map.Entry<String, Chunk>> it = cache.entrySet().iterator();
+            while (cacheBytes > maxBytes && it.hasNext()) {
+                Chunk victim = it.next().getValue();
+                if (victim == chunk)
+                    break;
+                cacheBytes -= victim.nBytes;
+                it.remove();
+                nEvictions++;
+            }
+        }
+        return chunk;
+    }
+
+    /** This empties the cache. */
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+            cacheBytes = 0;
+        }
+    }
+
+    /**
+     * This returns a one line summary of the cache's status (for status.html).
+     */
+    public static String statusString() {
+        synchronized (cache) {
+            long n = nHits + nMisses;
+            return "GridChunkCache: nChunks=" + cache.size() +
+                " MB=" + cacheBytes / Math2.BytesPerMB + " (of " + EDStatic.gridChunkCacheMB + ")" +
+                " hits=" + nHits + " misses=" + nMisses +
+                " hitRate=" + (n == 0? "?" : Math2.roundToInt(nHits * 100.0 / n) + "%") +
+                " evictions=" + nEvictions + " notCached=" + nNotCached + " (since startup)";
+        }
+    }
+
+    /**
+     * This tests that requests assembled from the cached chunks are the same
+     * as reading the values directly from the file.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** GridChunkCache.basicTest");
+        int oGridChunkCacheMB = EDStatic.gridChunkCacheMB;
+        String fullName = File2.getSystemTempDirectory() + 
+            "GridChunkCache.basicTest_" + Math2.random(Integer.MAX_VALUE) + ".nc";
+        int shape[] = {40, 50, 60}; //time, lat, lon
+        int n = shape[0] * shape[1] * shape[2];
+        NetcdfFormatWriter ncWriter = null;
+        try {
+            //write the test file
+            NetcdfFormatWriter.Builder newFile = NetcdfFormatWriter.createNewNetcdf3(fullName);
+            Group.Builder rootGroup = newFile.getRootGroup();
+            ArrayList<Dimension> dims = new ArrayList<>();
+            dims.add(NcHelper.addDimension(rootGroup, "time", shape[0]));
+            dims.add(NcHelper.addDimension(rootGroup, "lat",  shape[1]));
+            dims.add(NcHelper.addDimension(rootGroup, "lon",  shape[2]));
+            NcHelper.addVariable(rootGroup, "sst", DataType.FLOAT, dims);
+            ncWriter = newFile.build();
+            float values[] = new float[n];
+            for (int i = 0; i < n; i++)
+                values[i] = i / 10f;
+            ncWriter.write("sst", Array.factory(DataType.FLOAT, shape, values));
+            ncWriter.close();
+            ncWriter = null;
+
+            EDStatic.gridChunkCacheMB = 1;
+            clear();
+            NetcdfFile ncFile = NcHelper.openFile(fullName);
+            try {
+                Variable var = ncFile.findVariable("sst");
+                //the last chunks along lat and lon are partial
+                int chunkSizes[] = {1, 16, 25}; 
+
+                //start, stride, stop for each axis
+                int sss[][] = {
+                    {0, 1, 39,  0, 1, 49,  0, 1, 59},  //all: 480KB, more than 1/8 of the cache
+                    {0, 1, 39, 17, 1, 17, 33, 1, 33},  //a time series at one point
+                    {5, 1,  5,  0, 1, 49,  0, 1, 59},  //one time
+                    {3, 7, 38,  1, 3, 48,  2, 5, 59},  //strides
+                    {0, 2, 39, 10, 1, 40, 20, 9, 58},  
+                    {39, 1, 39, 49, 1, 49, 59, 1, 59}};//the last value
+                for (int rep = 0; rep < 2; rep++) { //the 2nd time, chunks come from the cache
+                    for (int t[] : sss) {
+                        IntArray constraints = new IntArray(t);
+                        PrimitiveArray results = read(fullName, var, chunkSizes, constraints);
+                        PrimitiveArray expected = NcHelper.getPrimitiveArray(var.read(
+                            t[0] + ":" + t[2] + ":" + t[1] + "," + 
+                            t[3] + ":" + t[5] + ":" + t[4] + "," + 
+                            t[6] + ":" + t[8] + ":" + t[7]), true, NcHelper.isUnsigned(var));
+                        Test.ensureEqual(results.elementType(), expected.elementType(), "");
+                        Test.ensureEqual(results.testEquals(expected), "", 
+                            "rep=" + rep + " sss=" + String2.toCSSVString(t));
+                    }
+                    String2.log(statusString());
+                }
+
+                //chunks bigger than 1/8 of the cache aren't cached
+                Test.ensureEqual(read(fullName, var, new int[]{40, 50, 60}, new IntArray(sss[2])), null, "");
+                //a variable without _ChunkSizes isn't cached
+                Test.ensureEqual(read(fullName, var, new IntArray(sss[2])), null, "");
+            } finally {
+                ncFile.close();
+            }
+        } finally {
+            if (ncWriter != null) 
+                try {ncWriter.abort(); } catch (Exception e9) {}
+            EDStatic.gridChunkCacheMB = oGridChunkCacheMB;
+            clear();
+            File2.delete(fullName);
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ GridChunkCache.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
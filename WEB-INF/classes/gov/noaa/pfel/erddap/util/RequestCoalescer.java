@@ -0,0 +1,696 @@
+/*
+ * RequestCoalescer Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.erddap.dataset.EDD;
+import gov.noaa.pfel.erddap.dataset.OutputStreamSource;
+import gov.noaa.pfel.erddap.dataset.OutputStreamSourceSimple;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * This coalesces identical concurrent data requests (e.g., many browsers
+ * showing the same dashboard), so only one of them (the leader) does the work
+ * (getting the data, making the image, ...).
+ * The identical requests which arrive while the leader is working
+ * (the followers) wait for the leader to finish, then send a copy of the leader's response.
+ * If the leader fails, each follower makes its own response.
+ *
+ * <p>The leader's response is only kept if it might be needed:
+ * the first maxMemoryBytes are kept in memory. If the response is bigger and
+ * no follower has joined by then, the request stops being coalesced
+ * (nothing more is kept and later identical requests become new leaders).
+ * If a follower has joined, the response is written to a spool file in the 
+ * dataset's cacheDirectory, but if the response gets bigger than maxSpoolBytes,
+ * the request stops being coalesced and the waiting followers are released 
+ * immediately, so they make their own responses.
+ * Followers can't send the response while the leader is still making it,
+ * because if the leader then fails, each follower must still be able to 
+ * make its own response.
+ *
+ * <p>Requests are identical if they have the same dataset (the same instance,
+ * so not across a reload), loggedInAs, language, fileTypeName, and
+ * EDD.canonicalQuery.
+ *
+ * <p>This is thread-safe.
+ */
+public class RequestCoalescer {
+
+    /** fileTypes which are never coalesced (they modify data, redirect, or are web pages). */
+    private final static String NOT_COALESCED[] = {".delete", ".graph", ".html", ".insert", ".subset"};
+
+    /** The leader's response is kept in memory up to this size (not final, so tests can change it). */
+    static int maxMemoryBytes = 256 * 1024;
+
+    /** The biggest response which is spooled for the followers (not final, so tests can change it). */
+    static long maxSpoolBytes = 100L * Math2.BytesPerMB;
+
+    /** key -&gt; the leader's InFlight */
+    private final static ConcurrentHashMap<String, InFlight> inFlightMap = new ConcurrentHashMap<>();
+
+    //counters (since startup)
+    private final static AtomicLong nLeaders = new AtomicLong();
+    private final static AtomicLong nFollowers = new AtomicLong();
+    private final static AtomicLong nFollowersServed = new AtomicLong();
+    private final static AtomicLong nTooBig = new AtomicLong();
+
+    /** The shared state of one in-flight request. */
+    private static class InFlight {
+        final String key;
+        final String dir;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean succeeded = false;
+        volatile String characterEncoding = null; //as passed to outputStream(). null if not called.
+        volatile String fileName = null;          //as passed to setFileName(). null if not called.
+
+        //These are guarded by this. 
+        //After done, the followers can read bytes and spoolName without locking.
+        int nUsers = 1;            //the leader and the followers
+        boolean joinable = true;
+        boolean collecting = true; //false after tooBig() or finish()
+        long nBytes = 0;           //the size of the response so far
+        ByteArrayOutputStream memory = new ByteArrayOutputStream(); //the response so far, until it is spooled
+        String spoolName = null;   //null until the response is spooled
+        OutputStream spool = null; //the open spool file
+        byte bytes[] = null;       //the complete response, if it wasn't spooled
+
+        InFlight(String tKey, String tDir) {
+            key = tKey;
+            dir = tDir;
+        }
+
+        /** This adds a follower. It returns false if the leader is already finished. */
+        synchronized boolean join() {
+            if (!joinable)
+                return false;
+            nUsers++;
+            return true;
+        }
+
+        /**
+         * The leader's tee calls this with each part of the response.
+         * Trouble here doesn't affect the leader's response.
+         */
+        synchronized void collect(byte b[], int off, int len) {
+            if (!collecting)
+                return;
+            nBytes += len;
+            if (nBytes > maxSpoolBytes ||
+                (spool == null && nBytes > maxMemoryBytes && nUsers == 1)) { //no followers
+                tooBig();
+                return;
+            }
+            try {
+                if (spool == null) {
+                    if (nBytes <= maxMemoryBytes) {
+                        memory.write(b, off, len);
+                        return;
+                    }
+                    spoolName = dir + "coalesce_" + String2.md5Hex12(key) + "_" + Math2.random(Integer.MAX_VALUE);
+                    spool = new BufferedOutputStream(new FileOutputStream(spoolName));
+                    memory.writeTo(spool);
+                    memory = null;
+                }
+                spool.write(b, off, len);
+            } catch (IOException e) { //e.g., the cacheDirectory was just deleted
+                String2.log("RequestCoalescer couldn't write to the spool file: " + e.toString());
+                tooBig();
+            }
+        }
+
+        /** 
+         * This stops coalescing this request: later identical requests become new leaders,
+         * and the waiting followers make their own responses. 
+         * The caller must have the lock.
+         */
+        private void tooBig() {
+            collecting = false;
+            joinable = false;
+            inFlightMap.remove(key, this);
+            closeSpool();
+            memory = null;
+            nTooBig.incrementAndGet();
+            done.countDown(); //succeeded is false
+        }
+
+        /** 
+         * This closes the spool file (if any). The caller must have the lock.
+         *
+         * @return true if the spool file (if any) is complete
+         */
+        private boolean closeSpool() {
+            if (spool == null)
+                return true;
+            try {
+                spool.close();
+                return true;
+            } catch (IOException e) {
+                String2.log("RequestCoalescer couldn't close the spool file: " + e.toString());
+                return false;
+            } finally {
+                spool = null;
+            }
+        }
+
+        /** The leader calls this when it is finished, before done.countDown(). */
+        synchronized void finish(boolean success) {
+            joinable = false;
+            if (!collecting) //tooBig() was called, so succeeded stays false
+                return;
+            collecting = false;
+            boolean spoolOk = closeSpool();
+            if (spoolName == null)
+                bytes = memory.toByteArray();
+            memory = null;
+            succeeded = success && spoolOk && characterEncoding != null;
+        }
+
+        /** A leader or follower calls this when it is done with the response. */
+        void release() {
+            String toDelete = null;
+            synchronized (this) {
+                if (--nUsers == 0)
+                    toDelete = spoolName;
+            }
+            if (toDelete != null)
+                File2.delete(toDelete);
+        }
+    }
+
+    /** A leader's or follower's ticket. */
+    public static class Ticket {
+        private final InFlight inFlight;
+        private final boolean leader;
+        private TeeOutputStream tee = null; //leader only
+        private boolean finished = false;
+
+        private Ticket(InFlight tInFlight, boolean tLeader) {
+            inFlight = tInFlight;
+            leader = tLeader;
+        }
+
+        /** This returns true if this is the leader (i.e., this request must do the work). */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * The leader uses this to wrap its outputStreamSource, so that the
+         * response is also kept for the followers.
+         *
+         * @param oss the request's outputStreamSource
+         * @return the outputStreamSource to be used instead
+         */
+        public OutputStreamSource leaderOutputStreamSource(OutputStreamSource oss) {
+            return new OutputStreamSource() {
+
+                public OutputStream outputStream(String characterEncoding) throws Throwable {
+                    return outputStream(characterEncoding, -1);
+                }
+
+                public OutputStream outputStream(String characterEncoding, long contentLength)
+                    throws Throwable {
+                    if (tee == null) {
+                        OutputStream out = oss.outputStream(characterEncoding, contentLength);
+                        inFlight.characterEncoding = characterEncoding == null? "" : characterEncoding;
+                        tee = new TeeOutputStream(out, inFlight);
+                    }
+                    return tee;
+                }
+
+                /** 
+                 * This returns the underlying outputStream (not the tee), so the caller
+                 * can close it properly (e.g., closeEntry() for a ZipOutputStream).
+                 * The tee doesn't buffer, and leaderFinished() closes the spool file.
+                 */
+                public OutputStream existingOutputStream() {
+                    return oss.existingOutputStream();
+                }
+
+                public void setFileName(String tFileName) {
+                    inFlight.fileName = tFileName;
+                    oss.setFileName(tFileName);
+                }
+
+                public String usingCompression() {
+                    return oss.usingCompression();
+                }
+            };
+        }
+
+        /**
+         * The leader calls this (e.g., in a finally clause) after the response
+         * has been sent (and the outputStream closed) or has failed.
+         * This releases the followers. It is okay to call this more than once.
+         *
+         * @param success true if the response was made successfully
+         */
+        public void leaderFinished(boolean success) {
+            if (!leader || finished)
+                return;
+            finished = true;
+            inFlightMap.remove(inFlight.key, inFlight);
+            inFlight.finish(success);
+            inFlight.done.countDown();
+            inFlight.release();
+        }
+
+        /**
+         * A follower calls this to wait for the leader, then send the leader's response.
+         *
+         * @param oss the request's outputStreamSource
+         * @return true if the response was sent.
+         *   If false (the leader failed, the response was too big, or the leader took too long), 
+         *   nothing was sent, so the follower should make the response itself.
+         * @throws Throwable if trouble while sending the response
+         */
+        public boolean followerCopy(OutputStreamSource oss) throws Throwable {
+            if (leader || finished)
+                return false;
+            finished = true;
+            try {
+                if (!inFlight.done.await(String2.longTimeoutSeconds, TimeUnit.SECONDS) ||
+                    !inFlight.succeeded)
+                    return false;
+                if (inFlight.fileName != null)
+                    oss.setFileName(inFlight.fileName);
+                OutputStream out = oss.outputStream(inFlight.characterEncoding);
+                try {
+                    if (inFlight.bytes != null) 
+                        out.write(inFlight.bytes);
+                    else if (!File2.copy(inFlight.spoolName, out))
+                        //outputStream contentType already set,
+                        //so I can't go back to html and display error message
+                        throw new SimpleException(String2.ERROR + " while transmitting file.");
+                } finally {
+                    out.close();
+                }
+                nFollowersServed.incrementAndGet();
+                return true;
+            } finally {
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * An OutputStream that writes to the response's OutputStream and 
+     * gives a copy of everything to the InFlight (see InFlight.collect).
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final InFlight inFlight;
+
+        TeeOutputStream(OutputStream tOut, InFlight tInFlight) {
+            out = tOut;
+            inFlight = tInFlight;
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            inFlight.collect(new byte[]{(byte)b}, 0, 1);
+        }
+
+        public void write(byte b[], int off, int len) throws IOException {
+            out.write(b, off, len);
+            inFlight.collect(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * This returns the key for a request, or null if the request shouldn't be coalesced.
+     *
+     * @param language the index of the selected language
+     * @param loggedInAs the name of the logged in user (or null if not logged in)
+     * @param edd the dataset
+     * @param fileTypeName e.g., .png
+     * @param userDapQuery the part of the user's request after the '?', still percent-encoded.
+     * @return the key (or null)
+     */
+    public static String key(int language, String loggedInAs, EDD edd,
+        String fileTypeName, String userDapQuery) {
+        if (String2.indexOf(NOT_COALESCED, fileTypeName) >= 0)
+            return null;
+        return edd.datasetID() + "@" + System.identityHashCode(edd) +
+            "\n" + loggedInAs + "\n" + language + "\n" + fileTypeName +
+            "\n" + EDD.canonicalQuery(userDapQuery);
+    }
+
+    /**
+     * This returns a ticket for a request: the leader's ticket if there is no
+     * identical request in progress, else a follower's ticket.
+     *
+     * @param key from key(). If null, this returns null.
+     * @param dir the directory for the spool file (e.g., the dataset's cacheDirectory),
+     *   with a trailing slash
+     * @return a Ticket (or null if key is null).
+     *   A leader must call leaderFinished(). A follower must call followerCopy().
+     */
+    public static Ticket start(String key, String dir) {
+        if (key == null)
+            return null;
+        InFlight newInFlight = null;
+        while (true) {
+            InFlight inFlight = inFlightMap.get(key);
+            if (inFlight != null && inFlight.join()) {
+                nFollowers.incrementAndGet();
+                return new Ticket(inFlight, false);
+            }
+            if (newInFlight == null)
+                newInFlight = new InFlight(key, dir);
+            if (inFlight == null?
+                inFlightMap.putIfAbsent(key, newInFlight) == null :
+                inFlightMap.replace(key, inFlight, newInFlight)) {
+                nLeaders.incrementAndGet();
+                return new Ticket(newInFlight, true);
+            }
+            //else another thread just became the leader; try again
+        }
+    }
+
+    /**
+     * This returns a one line summary of the coalescer's status (for status.html).
+     */
+    public static String statusString() {
+        return "RequestCoalescer: inFlight=" + inFlightMap.size() +
+            " leaders=" + nLeaders.get() +
+            " followers=" + nFollowers.get() +
+            " followersServedByLeader=" + nFollowersServed.get() + 
+            " tooBigToCoalesce=" + nTooBig.get() + " (since startup)";
+    }
+
+    /**
+     * This makes an OutputStreamSource for a zipped response (like 
+     * OutputStreamFromHttpResponse with compression), for the tests.
+     */
+    private static OutputStreamSource testZipSource(ByteArrayOutputStream baos) {
+        return new OutputStreamSource() {
+            ZipOutputStream zos = null;
+            public OutputStream outputStream(String characterEncoding) throws Throwable {
+                return outputStream(characterEncoding, -1);
+            }
+            public OutputStream outputStream(String characterEncoding, long contentLength) 
+                throws Throwable {
+                if (zos == null) {
+                    zos = new ZipOutputStream(baos);
+                    zos.putNextEntry(new ZipEntry("response.txt"));
+                }
+                return zos;
+            }
+            public OutputStream existingOutputStream() {
+                return zos;
+            }
+            public void setFileName(String tFileName) {
+            }
+            public String usingCompression() {
+                return "zip";
+            }
+        };
+    }
+
+    /** This unzips the response made via testZipSource. */
+    private static String testUnzip(byte bytes[]) throws Exception {
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            Test.ensureEqual(zis.getNextEntry().getName(), "response.txt", "");
+            return new String(zis.readAllBytes(), File2.UTF_8_CHARSET);
+        }
+    }
+
+    /** 
+     * This closes a leader's outputStream like Erddap.doDap's finally clause does. 
+     */
+    private static void testClose(OutputStreamSource oss) throws Exception {
+        OutputStream out = oss.existingOutputStream();
+        if (out != null) {
+            if (out instanceof ZipOutputStream zos) zos.closeEntry();
+            out.close();
+        }
+    }
+
+    /**
+     * This tests a leader and its followers, when the leader succeeds and when it fails.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** RequestCoalescer.basicTest");
+        String dir = File2.getSystemTempDirectory() + 
+            "RequestCoalescer.basicTest_" + Math2.random(Integer.MAX_VALUE) + "/";
+        File2.makeDirectory(dir);
+        try {
+            String key = "basicTest@1\nnull\n0\n.csv\nx";
+            String response = "a,b\n1,2\n";
+
+            //the leader succeeds: the followers send the same response
+            Ticket leader = start(key, dir);
+            Test.ensureTrue(leader.isLeader(), "");
+            Ticket followers[] = {start(key, dir), start(key, dir)};
+            ByteArrayOutputStream followerBaos[] = new ByteArrayOutputStream[followers.length];
+            boolean followerSent[] = new boolean[followers.length];
+            Thread threads[] = new Thread[followers.length];
+            for (int f = 0; f < followers.length; f++) {
+                Test.ensureTrue(!followers[f].isLeader(), "");
+                final int ff = f;
+                followerBaos[f] = new ByteArrayOutputStream();
+                threads[f] = new Thread(() -> {
+                    try {
+                        followerSent[ff] = followers[ff].followerCopy(
+                            new OutputStreamSourceSimple(followerBaos[ff]));
+                    } catch (Throwable t) {
+                        String2.log(MustBe.throwableToString(t));
+                    }
+                });
+                threads[f].start();
+            }
+            ByteArrayOutputStream leaderBaos = new ByteArrayOutputStream();
+            OutputStreamSource leaderOss = leader.leaderOutputStreamSource(testZipSource(leaderBaos));
+            leaderOss.setFileName("myFile");
+            Test.ensureTrue(leaderOss.existingOutputStream() == null, "");
+            OutputStream out = leaderOss.outputStream(File2.UTF_8);
+            out.write(String2.stringToUtf8Bytes(response));
+            //the underlying ZipOutputStream (not the tee), so the zip entry is closed properly
+            Test.ensureTrue(leaderOss.existingOutputStream() instanceof ZipOutputStream, "");
+            testClose(leaderOss);
+            leader.leaderFinished(true);
+            Test.ensureEqual(testUnzip(leaderBaos.toByteArray()), response, "");
+            for (int f = 0; f < followers.length; f++) {
+                threads[f].join(10000);
+                Test.ensureTrue(followerSent[f], "f=" + f);
+                Test.ensureEqual(followerBaos[f].toString(File2.UTF_8), response, "f=" + f);
+            }
+
+            //the spool file is deleted, and the next request is a new leader
+            Test.ensureEqual(new File(dir).list().length, 0, "");
+            leader = start(key, dir);
+            Test.ensureTrue(leader.isLeader(), "");
+
+            //the leader fails (after writing part of the response): the follower sends nothing
+            Ticket follower = start(key, dir);
+            Test.ensureTrue(!follower.isLeader(), "");
+            ByteArrayOutputStream failedBaos = new ByteArrayOutputStream();
+            Thread thread = new Thread(() -> {
+                try {
+                    followerSent[0] = follower.followerCopy(new OutputStreamSourceSimple(failedBaos));
+                } catch (Throwable t) {
+                    String2.log(MustBe.throwableToString(t));
+                }
+            });
+            followerSent[0] = true;
+            thread.start();
+            leaderOss = leader.leaderOutputStreamSource(testZipSource(new ByteArrayOutputStream()));
+            leaderOss.outputStream(File2.UTF_8).write(String2.stringToUtf8Bytes("a,b\n"));
+            testClose(leaderOss);
+            leader.leaderFinished(false);
+            thread.join(10000);
+            Test.ensureTrue(!followerSent[0], "");
+            Test.ensureEqual(failedBaos.size(), 0, "");
+            Test.ensureEqual(new File(dir).list().length, 0, "");
+
+            //a request after the leader finished is a new leader
+            leader = start(key, dir);
+            Test.ensureTrue(leader.isLeader(), "");
+            leader.leaderFinished(false);
+            Test.ensureTrue(statusString().indexOf("inFlight=0 ") >= 0, statusString());
+        } finally {
+            File2.deleteAllFiles(dir, true, true);
+            File2.delete(dir);
+        }
+    }
+
+    /** This starts a thread in which a follower waits for the leader and copies its response. */
+    private static Thread testFollower(Ticket follower, ByteArrayOutputStream baos, 
+        boolean sent[], int f) {
+        Thread thread = new Thread(() -> {
+            try {
+                sent[f] = follower.followerCopy(new OutputStreamSourceSimple(baos));
+            } catch (Throwable t) {
+                String2.log(MustBe.throwableToString(t));
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * This tests where the leader's response is kept: in memory if it is small,
+     * nowhere if it is big and there are no followers, in a spool file if it is big
+     * and there are followers, and nowhere (releasing the followers) if it is too big.
+     */
+    public static void testSpool() throws Throwable {
+        String2.log("\n*** RequestCoalescer.testSpool");
+        int oMaxMemoryBytes = maxMemoryBytes;
+        long oMaxSpoolBytes = maxSpoolBytes;
+        String dir = File2.getSystemTempDirectory() + 
+            "RequestCoalescer.testSpool_" + Math2.random(Integer.MAX_VALUE) + "/";
+        File2.makeDirectory(dir);
+        try {
+            maxMemoryBytes = 10;
+            maxSpoolBytes = 100;
+            String key = "testSpool@1\nnull\n0\n.csv\nx";
+            String small = "a,b\n1,2\n"; //8 bytes
+            String big = "a,b\n1,2\n3,4\n5,6\n7,8\n"; //20 bytes
+            String tooBig = big + big + big + big + big + big; //120 bytes
+            boolean sent[] = new boolean[1];
+
+            //small response with a follower: kept in memory (no spool file)
+            Ticket leader = start(key, dir);
+            Ticket follower = start(key, dir);
+            Test.ensureTrue(!follower.isLeader(), "");
+            ByteArrayOutputStream followerBaos = new ByteArrayOutputStream();
+            Thread thread = testFollower(follower, followerBaos, sent, 0);
+            OutputStreamSource leaderOss = leader.leaderOutputStreamSource(
+                new OutputStreamSourceSimple(new ByteArrayOutputStream()));
+            leaderOss.outputStream(File2.UTF_8).write(String2.stringToUtf8Bytes(small));
+            Test.ensureEqual(new File(dir).list().length, 0, "");
+            leader.leaderFinished(true);
+            thread.join(10000);
+            Test.ensureTrue(sent[0], "");
+            Test.ensureEqual(followerBaos.toString(File2.UTF_8), small, "");
+
+            //big response, no followers: coalescing stops (so no spool file)
+            leader = start(key, dir);
+            ByteArrayOutputStream leaderBaos = new ByteArrayOutputStream();
+            leaderOss = leader.leaderOutputStreamSource(new OutputStreamSourceSimple(leaderBaos));
+            leaderOss.outputStream(File2.UTF_8).write(String2.stringToUtf8Bytes(big));
+            Test.ensureEqual(new File(dir).list().length, 0, "");
+            Ticket next = start(key, dir);
+            Test.ensureTrue(next.isLeader(), ""); //not a follower of the big response
+            next.leaderFinished(false);
+            leader.leaderFinished(true);
+            Test.ensureEqual(leaderBaos.toString(File2.UTF_8), big, "");
+
+            //big response with a follower: spooled to a file, which is deleted afterwards
+            leader = start(key, dir);
+            follower = start(key, dir);
+            Test.ensureTrue(!follower.isLeader(), "");
+            followerBaos = new ByteArrayOutputStream();
+            thread = testFollower(follower, followerBaos, sent, 0);
+            leaderOss = leader.leaderOutputStreamSource(
+                new OutputStreamSourceSimple(new ByteArrayOutputStream()));
+            OutputStream out = leaderOss.outputStream(File2.UTF_8);
+            out.write(String2.stringToUtf8Bytes(small));
+            out.write(String2.stringToUtf8Bytes(big));
+            Test.ensureEqual(new File(dir).list().length, 1, "");
+            leader.leaderFinished(true);
+            thread.join(10000);
+            Test.ensureTrue(sent[0], "");
+            Test.ensureEqual(followerBaos.toString(File2.UTF_8), small + big, "");
+            Test.ensureEqual(new File(dir).list().length, 0, "");
+
+            //too big: the follower is released before the leader finishes, and sends nothing
+            leader = start(key, dir);
+            follower = start(key, dir);
+            followerBaos = new ByteArrayOutputStream();
+            sent[0] = true;
+            thread = testFollower(follower, followerBaos, sent, 0);
+            leaderBaos = new ByteArrayOutputStream();
+            leaderOss = leader.leaderOutputStreamSource(new OutputStreamSourceSimple(leaderBaos));
+            leaderOss.outputStream(File2.UTF_8).write(String2.stringToUtf8Bytes(tooBig));
+            thread.join(10000);
+            Test.ensureTrue(!thread.isAlive(), "");
+            Test.ensureTrue(!sent[0], "");
+            Test.ensureEqual(followerBaos.size(), 0, "");
+            Test.ensureTrue(start(key, dir).isLeader(), ""); //a new leader (which is never finished)
+            leader.leaderFinished(true);
+            Test.ensureEqual(leaderBaos.toString(File2.UTF_8), tooBig, ""); //the leader's response is unaffected
+            Test.ensureEqual(new File(dir).list().length, 0, "");
+        } finally {
+            maxMemoryBytes = oMaxMemoryBytes;
+            maxSpoolBytes = oMaxSpoolBytes;
+            inFlightMap.clear();
+            File2.deleteAllFiles(dir, true, true);
+            File2.delete(dir);
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ RequestCoalescer.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1) testSpool();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,649 @@
+/*
+ * ResponseCache Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.LongArray;
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
+import gov.noaa.pfel.erddap.dataset.EDD;
+import gov.noaa.pfel.erddap.dataset.OutputStreamSource;
+import gov.noaa.pfel.erddap.dataset.OutputStreamSourceSimple;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This is the server-wide, two-tier cache of responses.
+ *
+ * <p>The disk tier is the existing system of files in each dataset's cacheDirectory
+ * (e.g., images and .nc files), with names from EDD.suggestFileName
+ * (so differences in the query's percent-encoding and constraint order still hit).
+ * Files are deleted when they are cacheMinutes old, when the dataset is reloaded,
+ * and (by pruneDisk, oldest first) when the whole cache is over cacheMaxGB
+ * (checked by RunLoadDatasets and each time a file is added, see diskFileAdded).
+ *
+ * <p>The memory tier holds the bytes of small, frequently requested cached files
+ * (up to memoryCacheMB in total), so they are sent without reading the file.
+ * An entry is only used if the file still exists with the same lastModified and
+ * length, so an entry is never more stale than the disk tier.
+ * The memory tier also holds small generated metadata responses which aren't cached as files
+ * (.das and .dds, see generatedKey). Those entries are only used for 
+ * the same instance of the dataset (so not after a reload) and for cacheMinutes.
+ * The least recently used entries are evicted, but (TinyLFU-style) a new entry
+ * is only admitted if it has been requested more often (recently) than the
+ * entries it would evict, so one-off requests don't flush the hot entries.
+ *
+ * <p>This is thread-safe.
+ */
+public class ResponseCache {
+
+    /** Files bigger than this aren't held in memory. */
+    public final static int MAX_ENTRY_BYTES = 1024 * 1024;
+
+    /** The fileTypes of the generated responses (not cached as files) which the memory tier holds.
+     * These are just metadata (which only changes when the dataset is reloaded).
+     * Data responses (e.g., .json) aren't held, since the data may change 
+     * (e.g., a file is added) before the dataset is reloaded. */
+    public final static String GENERATED_FILE_TYPES[] = {".das", ".dds"};
+
+    /** The frequency sketch: 4 rows of counters (max 15), halved every SKETCH_SAMPLE accesses. */
+    private final static int SKETCH_WIDTH = 1 << 14; //a power of 2
+    private final static int SKETCH_SAMPLE = 10 * SKETCH_WIDTH;
+    private final static int SKETCH_SEEDS[] = {0x97cb3127, 0x0c2d4b1f, 0x6a09e667, 0xbb67ae85};
+    private final static byte sketch[][] = new byte[SKETCH_SEEDS.length][SKETCH_WIDTH];
+    private static int nSketchAccesses = 0;
+
+    /** An entry in the memory tier. */
+    private static class Entry {
+        final byte bytes[];
+        final long version; //a file's lastModified, or a generated response's dataset's creationTimeMillis
+        final String characterEncoding; //generated responses only
+        final long createdMillis;
+        Entry(byte tBytes[], long tVersion, String tCharacterEncoding) {
+            bytes = tBytes;
+            version = tVersion;
+            characterEncoding = tCharacterEncoding;
+            createdMillis = System.currentTimeMillis();
+        }
+    }
+
+    /** The memory tier: fullName -&gt; Entry, in access order (least recently used first). */
+    private final static LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private static long memoryBytes = 0;
+
+    //counters (since startup)
+    private static long nHits = 0, nMisses = 0, nEvictions = 0, nRejected = 0;
+    private static long nDiskPruned = 0;
+    private static long diskBytes = -1; //as of last pruneDisk, plus the files added since. -1 if not known
+    private static boolean pruning = false; //true while diskFileAdded is pruning
+
+    /**
+     * This copies a cached file to an outputStream, using the memory tier if possible.
+     * This is like File2.copy(fullName, out): it doesn't throw exceptions.
+     *
+     * @param fullName the full name of a cached file (e.g., in a dataset's cacheDirectory)
+     * @param out the outputStream (it isn't closed)
+     * @return true if successful
+     */
+    public static boolean copy(String fullName, OutputStream out) {
+        long maxBytes = EDStatic.memoryCacheMB * (long)Math2.BytesPerMB;
+        if (maxBytes <= 0)
+            return File2.copy(fullName, out);
+
+        File file = new File(fullName);
+        long lastModified = file.lastModified(); //0 if file doesn't exist
+        long length = file.length();
+        if (lastModified == 0 || length > Math.min(MAX_ENTRY_BYTES, maxBytes / 16))
+            return File2.copy(fullName, out);   //it logs the error if the file doesn't exist
+
+        Entry entry;
+        synchronized (memory) {
+            recordAccess(fullName.hashCode());
+            entry = memory.get(fullName);
+            if (entry != null &&
+                (entry.version != lastModified || entry.bytes.length != length)) {
+                //the file was replaced
+                memory.remove(fullName);
+                memoryBytes -= entry.bytes.length;
+                entry = null;
+            }
+            if (entry == null) nMisses++;
+            else               nHits++;
+        }
+
+        try {
+            if (entry == null) {
+                entry = new Entry(Files.readAllBytes(file.toPath()), lastModified, null);
+                if (entry.bytes.length == length && file.lastModified() == lastModified)
+                    add(fullName, entry, maxBytes);
+            }
+            out.write(entry.bytes);
+            return true;
+        } catch (Exception e) {
+            String2.log(String2.ERROR + " in ResponseCache.copy source=" + fullName + "\n" +
+                e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * This adds an entry to the memory tier if it passes the admission test,
+     * evicting least recently used entries as needed.
+     */
+    private static void add(String fullName, Entry entry, long maxBytes) {
+        synchronized (memory) {
+            Entry old = memory.remove(fullName); //another thread may have added it
+            if (old != null)
+                memoryBytes -= old.bytes.length;
+
+            //admission: only evict entries which are requested less often than the new one
+            int frequency = frequency(fullName.hashCode());
+            Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+            long freeable = maxBytes - memoryBytes;
+            while (freeable < entry.bytes.length && it.hasNext()) {
+                Map.Entry<String, Entry> victim = it.next();
+                if (frequency(victim.getKey().hashCode()) >= frequency) {
+                    nRejected++;
+                    return;
+                }
+                freeable += victim.getValue().bytes.length;
+            }
+            if (freeable < entry.bytes.length) { //shouldn't happen
+                nRejected++;
+                return;
+            }
+
+            //evict
+            it = memory.entrySet().iterator();
+            while (maxBytes - memoryBytes < entry.bytes.length) {
+                memoryBytes -= it.next().getValue().bytes.length;
+                it.remove();
+                nEvictions++;
+            }
+            memory.put(fullName, entry);
+            memoryBytes += entry.bytes.length;
+        }
+    }
+
+    /**
+     * This returns the memory tier's key for a generated response (e.g., .das),
+     * or null if the response shouldn't be held in memory (e.g., the fileType 
+     * isn't one of GENERATED_FILE_TYPES, the dataset is realTime or 
+     * has updateEveryNMillis, or the memory tier is off).
+     *
+     * @param language the index of the selected language
+     * @param loggedInAs the name of the logged in user (or null if not logged in)
+     * @param edd the dataset
+     * @param fileTypeName e.g., .das
+     * @param userDapQuery the part of the user's request after the '?', still percent-encoded.
+     * @return the key (or null)
+     */
+    public static String generatedKey(int language, String loggedInAs, EDD edd,
+        String fileTypeName, String userDapQuery) {
+        if (EDStatic.memoryCacheMB <= 0 || 
+            String2.indexOf(GENERATED_FILE_TYPES, fileTypeName) < 0 ||
+            edd.realTime() || edd.getUpdateEveryNMillis() > 0)
+            return null;
+        return "generated\n" + RequestCoalescer.key(language, loggedInAs, edd, fileTypeName, userDapQuery);
+    }
+
+    /**
+     * This sends a generated response from the memory tier, if it is there.
+     *
+     * @param key from generatedKey()
+     * @param version the dataset's creationTimeMillis
+     * @param oss the request's outputStreamSource
+     * @return true if the response was sent. If false, nothing was sent.
+     * @throws Throwable if trouble while sending the response
+     */
+    public static boolean sendGenerated(String key, long version, OutputStreamSource oss) 
+        throws Throwable {
+        if (EDStatic.memoryCacheMB <= 0)
+            return false;
+        Entry entry;
+        synchronized (memory) {
+            recordAccess(key.hashCode());
+            entry = memory.get(key);
+            if (entry != null &&
+                (entry.version != version || 
+                 System.currentTimeMillis() - entry.createdMillis >= EDStatic.cacheMillis)) {
+                //the dataset was reloaded or the entry is too old
+                memory.remove(key);
+                memoryBytes -= entry.bytes.length;
+                entry = null;
+            }
+            if (entry == null) nMisses++;
+            else               nHits++;
+        }
+        if (entry == null)
+            return false;
+        OutputStream out = oss.outputStream(entry.characterEncoding);
+        try {
+            out.write(entry.bytes);
+        } finally {
+            out.close();
+        }
+        return true;
+    }
+
+    /**
+     * This wraps a request's outputStreamSource so a small generated response
+     * is also captured. When the response has been sent, call finished()
+     * to add it to the memory tier.
+     */
+    public static class Capture implements OutputStreamSource {
+        private final OutputStreamSource oss;
+        private final String key;
+        private final long version;
+        private String characterEncoding = null;   //as passed to outputStream()
+        private OutputStream tee = null;
+        private ByteArrayOutputStream captured = null; //null if nothing was written or too big
+
+        /**
+         * The constructor.
+         *
+         * @param tOss the request's outputStreamSource
+         * @param tKey from generatedKey()
+         * @param tVersion the dataset's creationTimeMillis
+         */
+        public Capture(OutputStreamSource tOss, String tKey, long tVersion) {
+            oss = tOss;
+            key = tKey;
+            version = tVersion;
+        }
+
+        public OutputStream outputStream(String tCharacterEncoding) throws Throwable {
+            return outputStream(tCharacterEncoding, -1);
+        }
+
+        public OutputStream outputStream(String tCharacterEncoding, long contentLength) 
+            throws Throwable {
+            if (tee == null) {
+                OutputStream out = oss.outputStream(tCharacterEncoding, contentLength);
+                characterEncoding = tCharacterEncoding == null? "" : tCharacterEncoding;
+                captured = new ByteArrayOutputStream();
+                tee = new FilterOutputStream(out) {
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        if (captured != null) {
+                            captured.write(b);
+                            checkSize();
+                        }
+                    }
+                    public void write(byte b[], int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        if (captured != null) {
+                            captured.write(b, off, len);
+                            checkSize();
+                        }
+                    }
+                };
+            }
+            return tee;
+        }
+
+        /** This stops capturing if the response is too big for the memory tier. */
+        private void checkSize() {
+            if (captured.size() > Math.min(MAX_ENTRY_BYTES, 
+                    EDStatic.memoryCacheMB * (long)Math2.BytesPerMB / 16))
+                captured = null;
+        }
+
+        /** This returns the underlying outputStream (not the tee), so the caller can close it properly. */
+        public OutputStream existingOutputStream() {
+            return oss.existingOutputStream();
+        }
+
+        public void setFileName(String tFileName) {
+            oss.setFileName(tFileName);
+        }
+
+        public String usingCompression() {
+            return oss.usingCompression();
+        }
+
+        /**
+         * Call this (e.g., in a finally clause) after the response has been sent 
+         * (and the outputStream closed) or has failed.
+         *
+         * @param success true if the response was made successfully
+         */
+        public void finished(boolean success) {
+            long maxBytes = EDStatic.memoryCacheMB * (long)Math2.BytesPerMB;
+            if (success && captured != null && maxBytes > 0)
+                add(key, new Entry(captured.toByteArray(), version, characterEncoding), maxBytes);
+            captured = null;
+        }
+    }
+
+    /** This records an access in the frequency sketch. Only call this while synchronized on memory. */
+    private static void recordAccess(int hash) {
+        for (int row = 0; row < SKETCH_SEEDS.length; row++) {
+            int col = sketchIndex(hash, row);
+            if (sketch[row][col] < 15)
+                sketch[row][col]++;
+        }
+        if (++nSketchAccesses >= SKETCH_SAMPLE) {
+            //age: halve all counts, so the sketch reflects recent requests
+            for (int row = 0; row < SKETCH_SEEDS.length; row++) {
+                byte tRow[] = sketch[row];
+                for (int col = 0; col < SKETCH_WIDTH; col++)
+                    tRow[col] >>= 1;
+            }
+            nSketchAccesses = 0;
+        }
+    }
+
+    /** This returns the estimated recent access count. Only call this while synchronized on memory. */
+    private static int frequency(int hash) {
+        int min = 15;
+        for (int row = 0; row < SKETCH_SEEDS.length; row++)
+            min = Math.min(min, sketch[row][sketchIndex(hash, row)]);
+        return min;
+    }
+
+    private static int sketchIndex(int hash, int row) {
+        int h = (hash ^ SKETCH_SEEDS[row]) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (SKETCH_WIDTH - 1);
+    }
+
+    /**
+     * This removes a directory's files (e.g., a dataset's cacheDirectory)
+     * from the memory tier. Call this when the files are deleted.
+     *
+     * @param dir a directory with a trailing slash
+     */
+    public static void removeDirectory(String dir) {
+        synchronized (memory) {
+            Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> me = it.next();
+                if (me.getKey().startsWith(dir)) {
+                    memoryBytes -= me.getValue().bytes.length;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /** This empties the memory tier. */
+    public static void clear() {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+    }
+
+    /**
+     * Call this after a file is added to a dataset's cacheDirectory.
+     * If that makes the cache bigger than cacheMaxGB (or the cache's size isn't known yet),
+     * this prunes the cache (see pruneDisk).
+     * This won't throw an exception.
+     *
+     * @param fullName the new file's full name
+     */
+    public static void diskFileAdded(String fullName) {
+        diskFileAdded(EDStatic.fullCacheDirectory, fullName);
+    }
+
+    /**
+     * This is like diskFileAdded(fullName), but with the cache directory specified.
+     *
+     * @param dir the cache directory, e.g., EDStatic.fullCacheDirectory
+     * @param fullName the new file's full name
+     */
+    static void diskFileAdded(String dir, String fullName) {
+        long length = new File(fullName).length(); //0 if trouble
+        boolean prune;
+        synchronized (memory) {
+            if (diskBytes >= 0) //if not known yet, pruneDisk will find it
+                diskBytes += length;
+            prune = !pruning && 
+                (diskBytes < 0 || diskBytes >= EDStatic.cacheMaxGB * Math2.BytesPerGB);
+            if (prune)
+                pruning = true;
+        }
+        if (prune) {
+            try {
+                pruneDisk(dir);
+            } finally {
+                synchronized (memory) {
+                    pruning = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * This deletes the oldest files in the cache directory (and its subdirectories)
+     * if the total size is over cacheMaxGB.
+     * RunLoadDatasets calls this after deleting the files that are over cacheMinutes old,
+     * and diskFileAdded calls this if the cache is over cacheMaxGB.
+     * This won't throw an exception.
+     *
+     * @param dir the cache directory, e.g., EDStatic.fullCacheDirectory
+     */
+    public static void pruneDisk(String dir) {
+        try {
+            long maxBytes = EDStatic.cacheMaxGB * Math2.BytesPerGB;
+            Table table = FileVisitorDNLS.oneStep(dir, ".*", true, ".*", false); //recursive, !dirsToo
+            int nBefore = table.nRows();
+            long tDiskBytes = 0;
+            long sizeAr[] = ((LongArray)table.getColumn(FileVisitorDNLS.SIZE)).array;
+            for (int row = 0; row < nBefore; row++)
+                tDiskBytes += sizeAr[row];
+            int nPruned = 0;
+            if (tDiskBytes >= maxBytes) {
+                FileVisitorDNLS.setPruneCacheDirSize(dir, tDiskBytes);
+                tDiskBytes = FileVisitorDNLS.pruneCache(dir, maxBytes, FileVisitorDNLS.PRUNE_CACHE_DEFAULT_FRACTION);
+                nPruned = Math.max(0, nBefore - FileVisitorDNLS.oneStep(dir, ".*", true, ".*", false).nRows());
+                String2.log("ResponseCache.pruneDisk deleted " + nPruned + " files from " + dir);
+            }
+            synchronized (memory) {
+                diskBytes = tDiskBytes;
+                nDiskPruned += nPruned;
+            }
+        } catch (Throwable t) {
+            String2.log(String2.ERROR + " in ResponseCache.pruneDisk(" + dir + "):\n" +
+                MustBe.throwableToString(t));
+        }
+    }
+
+    /**
+     * This returns a one line summary of the cache's status (for status.html).
+     */
+    public static String statusString() {
+        synchronized (memory) {
+            return "ResponseCache: memory: nEntries=" + memory.size() +
+                " MB=" + memoryBytes / Math2.BytesPerMB + " (of " + EDStatic.memoryCacheMB + ")" +
+                " hits=" + nHits + " misses=" + nMisses +
+                " evictions=" + nEvictions + " rejected=" + nRejected +
+                "; disk: MB=" + (diskBytes < 0? "?" : "" + diskBytes / Math2.BytesPerMB) +
+                " (of " + EDStatic.cacheMaxGB + "GB)" +
+                " prunedFiles=" + nDiskPruned + " (since startup)";
+        }
+    }
+
+    /**
+     * This tests the memory tier (cached files and generated responses) and diskFileAdded.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** ResponseCache.basicTest");
+        int oMemoryCacheMB = EDStatic.memoryCacheMB;
+        long oCacheMillis = EDStatic.cacheMillis;
+        int oCacheMaxGB = EDStatic.cacheMaxGB;
+        long oDiskBytes = diskBytes;
+        String dir = File2.getSystemTempDirectory() + 
+            "ResponseCache.basicTest_" + Math2.random(Integer.MAX_VALUE) + "/";
+        File2.makeDirectory(dir);
+        try {
+            EDStatic.memoryCacheMB = 1;
+            EDStatic.cacheMillis = 60000;
+            clear();
+
+            //cached file: the copy in memory is only used while the file is unchanged
+            String fullName = dir + "a.txt";
+            Test.ensureEqual(File2.writeToFileUtf8(fullName, "first"), "", "");
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            Test.ensureTrue(copy(fullName, baos), "");
+            Test.ensureEqual(baos.toString("UTF-8"), "first", "");
+            Test.ensureTrue(memory.containsKey(fullName), "");
+            Test.ensureEqual(File2.writeToFileUtf8(fullName, "second!"), "", "");
+            baos = new ByteArrayOutputStream();
+            Test.ensureTrue(copy(fullName, baos), "");
+            Test.ensureEqual(baos.toString("UTF-8"), "second!", "");
+            Test.ensureTrue(!copy(dir + "doesntExist.txt", new ByteArrayOutputStream()), "");
+
+            //only metadata responses are held in memory
+            Test.ensureEqual(generatedKey(0, null, null, ".json", "sst"), null, "");
+            Test.ensureEqual(generatedKey(0, null, null, ".csv", ""), null, "");
+
+            //generated response: miss, then capture
+            String key = "generated\ntestKey";
+            long version = 12345;
+            Test.ensureTrue(!sendGenerated(key, version, new OutputStreamSourceSimple(new ByteArrayOutputStream())), "");
+            baos = new ByteArrayOutputStream();
+            Capture capture = new Capture(new OutputStreamSourceSimple(baos), key, version);
+            OutputStream out = capture.outputStream(File2.UTF_8);
+            Test.ensureTrue(capture.existingOutputStream() == baos, ""); //not the tee
+            out.write(String2.stringToUtf8Bytes("Attributes {\n}\n"));
+            out.close();
+            capture.finished(true);
+            Test.ensureEqual(baos.toString("UTF-8"), "Attributes {\n}\n", "");
+
+            //hit: same bytes and characterEncoding
+            final String encoding[] = {null};
+            final ByteArrayOutputStream hitBaos = new ByteArrayOutputStream();
+            OutputStreamSource hitOss = new OutputStreamSourceSimple(hitBaos) {
+                public OutputStream outputStream(String tCharacterEncoding) throws Throwable {
+                    encoding[0] = tCharacterEncoding;
+                    return super.outputStream(tCharacterEncoding);
+                }
+            };
+            Test.ensureTrue(sendGenerated(key, version, hitOss), "");
+            Test.ensureEqual(hitBaos.toString("UTF-8"), "Attributes {\n}\n", "");
+            Test.ensureEqual(encoding[0], File2.UTF_8, "");
+
+            //a different version (the dataset was reloaded) is a miss and removes the entry
+            Test.ensureTrue(!sendGenerated(key, version + 1, new OutputStreamSourceSimple(new ByteArrayOutputStream())), "");
+            Test.ensureTrue(!memory.containsKey(key), "");
+
+            //an old entry is a miss
+            capture = new Capture(new OutputStreamSourceSimple(new ByteArrayOutputStream()), key, version);
+            out = capture.outputStream(File2.UTF_8);
+            out.write(65);
+            out.close();
+            capture.finished(true);
+            Test.ensureTrue(memory.containsKey(key), "");
+            EDStatic.cacheMillis = 0;
+            Test.ensureTrue(!sendGenerated(key, version, new OutputStreamSourceSimple(new ByteArrayOutputStream())), "");
+            EDStatic.cacheMillis = 60000;
+
+            //a failed response isn't added
+            capture = new Capture(new OutputStreamSourceSimple(new ByteArrayOutputStream()), key, version);
+            out = capture.outputStream(File2.UTF_8);
+            out.write(65);
+            out.close();
+            capture.finished(false);
+            Test.ensureTrue(!memory.containsKey(key), "");
+
+            //a response too big for the memory tier isn't added (but is still sent)
+            baos = new ByteArrayOutputStream();
+            capture = new Capture(new OutputStreamSourceSimple(baos), key, version);
+            out = capture.outputStream(File2.UTF_8);
+            byte big[] = new byte[Math2.BytesPerMB / 16 + 1];
+            out.write(big, 0, 10);
+            out.write(big, 10, big.length - 10);
+            out.close();
+            capture.finished(true);
+            Test.ensureEqual(baos.size(), big.length, "");
+            Test.ensureTrue(!memory.containsKey(key), "");
+
+            //diskFileAdded: if the size isn't known, it prunes (i.e., finds the size)
+            EDStatic.cacheMaxGB = 1;
+            diskBytes = -1;
+            Test.ensureEqual(File2.writeToFileUtf8(dir + "b.txt", "0123456789"), "", "");
+            diskFileAdded(dir, dir + "b.txt");
+            Test.ensureEqual(diskBytes, 17, ""); //a.txt and b.txt
+            Test.ensureEqual(File2.writeToFileUtf8(dir + "c.txt", "01234"), "", "");
+            diskFileAdded(dir, dir + "c.txt");
+            Test.ensureEqual(diskBytes, 22, "");
+            Test.ensureTrue(File2.isFile(dir + "a.txt"), "");
+
+            //over cacheMaxGB: it prunes the oldest files
+            File2.touch(dir + "a.txt", 3 * Calendar2.MILLIS_PER_HOUR);
+            File2.touch(dir + "b.txt", 2 * Calendar2.MILLIS_PER_HOUR);
+            EDStatic.cacheMaxGB = 0;
+            Test.ensureEqual(File2.writeToFileUtf8(dir + "d.txt", "0"), "", "");
+            diskFileAdded(dir, dir + "d.txt");
+            Test.ensureTrue(!File2.isFile(dir + "a.txt"), "");
+            Test.ensureTrue(!pruning, "");
+        } finally {
+            EDStatic.memoryCacheMB = oMemoryCacheMB;
+            EDStatic.cacheMillis = oCacheMillis;
+            EDStatic.cacheMaxGB = oCacheMaxGB;
+            diskBytes = oDiskBytes;
+            clear();
+            File2.deleteAllFiles(dir, true, true);
+            File2.delete(dir);
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ ResponseCache.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
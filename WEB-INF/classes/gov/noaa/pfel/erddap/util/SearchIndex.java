@@ -0,0 +1,335 @@
+/*
+ * SearchIndex Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.IntArray;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This is an in-memory inverted index of the datasets' searchBytes,
+ * for the original search engine.
+ * The terms are the trigrams (3 consecutive bytes) in each dataset's searchBytes,
+ * and each term's posting list has the (sorted) numbers of the datasets that contain it.
+ *
+ * <p>Since EDD.searchRank finds search words anywhere (not just as whole words),
+ * the index is used to find the candidate datasets: the datasets which
+ * have all of the trigrams of every positive search word.
+ * Then EDD.searchRank is used on just the candidates,
+ * so the matches and the rankings are exactly the same as searching every dataset.
+ *
+ * <p>LoadDatasets.updateLucene keeps the index up-to-date as datasets are
+ * added, reloaded, and removed. Removed datasets just become inactive;
+ * when there are more inactive than active datasets, the index is rebuilt.
+ *
+ * <p>This is thread-safe.
+ */
+public class SearchIndex {
+
+    private final HashMap<String, Integer> idToDoc = new HashMap<>();
+    private ArrayList<String> docToId    = new ArrayList<>(); //null if inactive
+    private ArrayList<byte[]> docToBytes = new ArrayList<>(); //null if inactive
+    private HashMap<Integer, IntArray> postings = new HashMap<>(); //trigram -> sorted doc numbers
+    private int nInactive = 0;
+
+    /**
+     * This adds (or replaces) a dataset's searchBytes.
+     *
+     * @param datasetID the datasetID
+     * @param searchBytes the dataset's searchBytes (lowercase). The array isn't copied.
+     */
+    public synchronized void add(String datasetID, byte searchBytes[]) {
+        remove(datasetID);
+        int doc = docToId.size();
+        docToId.add(datasetID);
+        docToBytes.add(searchBytes);
+        idToDoc.put(datasetID, doc);
+        index(doc, searchBytes);
+    }
+
+    /** This adds a doc's trigrams to the postings. */
+    private void index(int doc, byte searchBytes[]) {
+        int trigrams[] = trigrams(searchBytes);
+        int last = -1;
+        for (int i = 0; i < trigrams.length; i++) {
+            int tri = trigrams[i];
+            if (tri == last)
+                continue;
+            last = tri;
+            postings.computeIfAbsent(tri, k -> new IntArray(8, false)).add(doc);
+        }
+    }
+
+    /**
+     * This removes a dataset (if it is in the index).
+     *
+     * @param datasetID the datasetID
+     */
+    public synchronized void remove(String datasetID) {
+        Integer doc = idToDoc.remove(datasetID);
+        if (doc == null)
+            return;
+        docToId.set(doc, null);
+        docToBytes.set(doc, null);
+        nInactive++;
+        if (nInactive > 1000 && nInactive > idToDoc.size())
+            rebuild();
+    }
+
+    /** This rebuilds the index with just the active datasets. */
+    private void rebuild() {
+        long time = System.currentTimeMillis();
+        ArrayList<String> oldIds   = docToId;
+        ArrayList<byte[]> oldBytes = docToBytes;
+        docToId    = new ArrayList<>(idToDoc.size());
+        docToBytes = new ArrayList<>(idToDoc.size());
+        postings   = new HashMap<>();
+        idToDoc.clear();
+        nInactive = 0;
+        for (int oldDoc = 0; oldDoc < oldIds.size(); oldDoc++) {
+            String id = oldIds.get(oldDoc);
+            if (id == null)
+                continue;
+            int doc = docToId.size();
+            docToId.add(id);
+            docToBytes.add(oldBytes.get(oldDoc));
+            idToDoc.put(id, doc);
+            index(doc, oldBytes.get(oldDoc));
+        }
+        String2.log("SearchIndex.rebuild nDatasets=" + docToId.size() +
+            " nTerms=" + postings.size() + " time=" + (System.currentTimeMillis() - time) + "ms");
+    }
+
+    /**
+     * This indicates if the index has exactly these searchBytes for this dataset.
+     * If not (e.g., the dataset was just reloaded and the index hasn't been updated yet),
+     * the caller must search the dataset itself.
+     *
+     * @param datasetID the datasetID
+     * @param searchBytes the dataset's current searchBytes
+     * @return true if these searchBytes (the same array) are indexed for this datasetID
+     */
+    public synchronized boolean isIndexed(String datasetID, byte searchBytes[]) {
+        Integer doc = idToDoc.get(datasetID);
+        return doc != null && docToBytes.get(doc) == searchBytes;
+    }
+
+    /**
+     * This finds the datasets which may match a search.
+     *
+     * @param isNegative indicates which words are negative search words
+     * @param words the words or phrases to be searched for (already lowercase), as UTF-8 bytes
+     * @return the datasetIDs of the candidate datasets (the datasets which
+     *   have all of the trigrams of each positive search word with 3+ bytes),
+     *   or null if the index can't narrow the search
+     *   (e.g., the index is empty or there are no positive words with 3+ bytes).
+     *   Datasets which aren't in the index (see isIndexed) aren't included
+     *   and must be searched by the caller.
+     */
+    public synchronized HashSet<String> candidates(boolean isNegative[], byte words[][]) {
+        if (idToDoc.isEmpty())
+            return null;
+
+        //gather the posting lists for all the trigrams of all the positive words
+        ArrayList<IntArray> lists = new ArrayList<>();
+        for (int w = 0; w < words.length; w++) {
+            if (isNegative[w] || words[w].length < 3)
+                continue;
+            int trigrams[] = trigrams(words[w]);
+            for (int i = 0; i < trigrams.length; i++) {
+                IntArray posting = postings.get(trigrams[i]);
+                if (posting == null)
+                    return new HashSet<>(); //no dataset has this trigram
+                lists.add(posting);
+            }
+        }
+        if (lists.isEmpty())
+            return null;
+
+        //intersect them, starting with the shortest
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        int docs[] = Arrays.copyOf(lists.get(0).array, lists.get(0).size());
+        int nDocs = docs.length;
+        for (int li = 1; li < lists.size() && nDocs > 0; li++) {
+            IntArray posting = lists.get(li);
+            if (posting == lists.get(li - 1))
+                continue;
+            int pDocs[] = posting.array;
+            int pSize = posting.size();
+            int n = 0, p = 0;
+            for (int i = 0; i < nDocs; i++) {
+                int doc = docs[i];
+                //postings are usually much longer, so gallop through them
+                int step = 1;
+                while (p + step < pSize && pDocs[p + step] < doc) {
+                    p += step;
+                    step <<= 1;
+                }
+                int po = Arrays.binarySearch(pDocs, p, Math.min(p + step + 1, pSize), doc);
+                if (po >= 0) {
+                    docs[n++] = doc;
+                    p = po;
+                } else {
+                    p = -po - 1;
+                    if (p == pSize)
+                        break;
+                }
+            }
+            nDocs = n;
+        }
+
+        HashSet<String> ids = new HashSet<>(Math.max(16, 2 * nDocs));
+        for (int i = 0; i < nDocs; i++) {
+            String id = docToId.get(docs[i]);
+            if (id != null)
+                ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * This returns the sorted trigrams in bytes (with duplicates).
+     * A trigram is the 3 bytes as an int.
+     */
+    private static int[] trigrams(byte bytes[]) {
+        int n = Math.max(0, bytes.length - 2);
+        int trigrams[] = new int[n];
+        for (int i = 0; i < n; i++)
+            trigrams[i] = ((bytes[i] & 255) << 16) | ((bytes[i + 1] & 255) << 8) | (bytes[i + 2] & 255);
+        Arrays.sort(trigrams);
+        return trigrams;
+    }
+
+    /**
+     * This returns a one line summary of the index's status (for status.html).
+     */
+    public synchronized String statusString() {
+        return "SearchIndex (original search engine): nDatasets=" + idToDoc.size() +
+            " nInactive=" + nInactive + " nTerms=" + postings.size();
+    }
+
+    /**
+     * This tests that searching the candidates (plus any datasets that aren't indexed)
+     * finds exactly the same datasets as searching every dataset,
+     * as datasets are added, replaced, and removed (including a rebuild).
+     *
+     * @throws Throwable if trouble
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** SearchIndex.basicTest");
+        Random random = new Random(3);
+        String vocabulary[] = {"sea", "surface", "temperature", "sst", "wind", "chlorophyll", 
+            "noaa", "erd", "modis", "aqua", "daily", "monthly", "\u00fcber", "a", "an", "1km", "gridded"};
+        SearchIndex index = new SearchIndex();
+        HashMap<String, byte[]> datasets = new HashMap<>(); //what the datasets' searchBytes are now
+        for (int round = 0; round < 4; round++) {
+            //add, replace, and remove datasets (round 2 removes enough to cause a rebuild)
+            int nChanges = round == 2? 3000 : 700;
+            for (int i = 0; i < nChanges; i++) {
+                String id = "ds" + random.nextInt(round == 2? 2000 : 1500);
+                if (random.nextInt(round == 2? 1 : 5) == 0) {
+                    index.remove(id);
+                    datasets.remove(id);
+                } else {
+                    StringBuilder sb = new StringBuilder();
+                    int nWords = 3 + random.nextInt(10);
+                    for (int w = 0; w < nWords; w++) 
+                        sb.append(vocabulary[random.nextInt(vocabulary.length)])
+                          .append(random.nextBoolean()? " " : "_");
+                    byte bytes[] = String2.stringToUtf8Bytes(sb.toString());
+                    datasets.put(id, bytes);
+                    if (random.nextInt(20) > 0) //some datasets aren't in the index yet
+                        index.add(id, bytes);
+                }
+            }
+            String2.log(index.statusString());
+
+            //compare the results of many searches
+            for (int s = 0; s < 300; s++) {
+                int nSearchWords = 1 + random.nextInt(3);
+                boolean isNegative[] = new boolean[nSearchWords];
+                byte words[][] = new byte[nSearchWords][];
+                int jump[][] = new int[nSearchWords][];
+                for (int w = 0; w < nSearchWords; w++) {
+                    String word = vocabulary[random.nextInt(vocabulary.length)];
+                    if (random.nextInt(3) == 0) //a phrase
+                        word += " " + vocabulary[random.nextInt(vocabulary.length)];
+                    else if (random.nextInt(3) == 0 && word.length() > 2) //part of a word
+                        word = word.substring(1);
+                    isNegative[w] = random.nextInt(5) == 0;
+                    words[w] = String2.stringToUtf8Bytes(word);
+                    jump[w] = String2.makeJumpTable(words[w]);
+                }
+                HashSet<String> candidates = index.candidates(isNegative, words);
+                HashSet<String> expected = new HashSet<>();
+                HashSet<String> results = new HashSet<>();
+                for (Map.Entry<String, byte[]> entry : datasets.entrySet()) {
+                    String id = entry.getKey();
+                    byte bytes[] = entry.getValue();
+                    boolean matches = true;
+                    for (int w = 0; w < nSearchWords; w++) 
+                        if ((String2.indexOf(bytes, words[w], jump[w]) >= 0) == isNegative[w])
+                            matches = false;
+                    if (matches)
+                        expected.add(id);
+                    if (matches && (candidates == null || candidates.contains(id) || 
+                                    !index.isIndexed(id, bytes)))
+                        results.add(id);
+                }
+                Test.ensureEqual(results, expected, "round=" + round + " s=" + s);
+            }
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ SearchIndex.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -1,67 +1,346 @@
 package gov.noaa.pfel.erddap.util;
 
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * This runs a request's tasks (e.g., reading one data file) on a
+ * server-wide pool of worker threads and passes each task's result to a WorkConsumer
+ * on the thread that adds the tasks.
+ *
+ * <p>Each ThreadedWorkManager has at most nThreads tasks in the shared pool at once.
+ * Since the pool's queue is FIFO, that keeps one huge request from
+ * starving the other requests.
+ *
+ * <p>If ordered=true, results are consumed in the order the tasks were added.
+ * If ordered=false, results are consumed as soon as the tasks finish.
+ */
 public class ThreadedWorkManager<T> {
-    ExecutorService executorService = null;
-    List<FutureTask<T>> taskList = new ArrayList<>();
+
+    /** The server-wide pool. It is created as needed and grows to the largest nThreads requested. */
+    private static ThreadPoolExecutor sharedExecutor = null;
+    private static final AtomicInteger workerNumber = new AtomicInteger();
+    private static volatile int maxQueueDepth = 0; //since startup
+
+    /** Worker threads are this class, so nested managers can recognize them. */
+    private static class WorkerThread extends Thread {
+        WorkerThread(Runnable runnable) {
+            super(runnable, "ThreadedWorkManager worker #" + workerNumber.incrementAndGet());
+            setDaemon(true);
+        }
+    }
+
+    ThreadPoolExecutor executor = null; //the shared pool when this was constructed (null if not threaded)
+    ExecutorCompletionService<T> completionService = null; //null if not threaded
+    ArrayDeque<Future<T>> inFlight = new ArrayDeque<>();   //submitted, not yet consumed
     WorkConsumer<T> processor;
-    
+    int nThreads;
+    boolean ordered;
+
     int completed = 0;
-    
+
+    /** A constructor for a manager which consumes the results in the order the tasks were added. */
     public ThreadedWorkManager (int nThreads, WorkConsumer<T> processResult) {
-        if (nThreads > 1) {
-            executorService = Executors.newFixedThreadPool(nThreads);
+        this(nThreads, true, processResult);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param nThreads the maximum number of this manager's tasks which can be
+     *   in the shared pool at once. If &lt;=1, or if this is called from one of the
+     *   shared pool's threads, tasks are run on the calling thread as they are added.
+     * @param ordered if true, results are consumed in the order the tasks were added.
+     *   If false, results are consumed in the order the tasks finish.
+     * @param processResult this consumes the results
+     */
+    public ThreadedWorkManager (int nThreads, boolean ordered, WorkConsumer<T> processResult) {
+        //a task running on the shared pool can't wait for other tasks on the pool (deadlock)
+        if (nThreads > 1 && !(Thread.currentThread() instanceof WorkerThread)) {
+            executor = sharedExecutor(nThreads);
+            completionService = new ExecutorCompletionService<>(executor);
         }
+        this.nThreads = nThreads;
+        this.ordered = ordered;
         processor = processResult;
     }
-    
+
+    /**
+     * This returns the shared pool, creating it or growing it if needed.
+     *
+     * @param nThreads the number of threads that a manager wants
+     */
+    private static synchronized ThreadPoolExecutor sharedExecutor(int nThreads) {
+        int poolSize = Math.max(nThreads, Math.max(EDStatic.nTableThreads, EDStatic.nGridThreads));
+        if (sharedExecutor == null) {
+            sharedExecutor = new ThreadPoolExecutor(poolSize, poolSize,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                runnable -> new WorkerThread(runnable));
+            sharedExecutor.allowCoreThreadTimeOut(true);
+        } else if (poolSize > sharedExecutor.getMaximumPoolSize()) {
+            sharedExecutor.setMaximumPoolSize(poolSize); //increase max before core
+            sharedExecutor.setCorePoolSize(poolSize);
+        }
+        return sharedExecutor;
+    }
+
     public void addTask(Callable<T> callable) throws Exception, Throwable {
         // If we're threaded add the work to the thread.
-        if (executorService != null) {
-            FutureTask<T> task = new FutureTask<T>(callable);
-            taskList.add(task);
-            if (executorService != null) {
-                executorService.submit(task);
-            }
+        if (completionService != null) {
+            //make room: this manager can only have nThreads tasks in the shared pool
+            while (inFlight.size() >= nThreads)
+                processor.accept(getNextTaskResult());
+
+            long queuedAt = System.currentTimeMillis();
+            inFlight.add(completionService.submit(() -> {
+                long waited = System.currentTimeMillis() - queuedAt;
+                String2.distributeTime(waited, EDStatic.workQueueWaitDistribution24);
+                String2.distributeTime(waited, EDStatic.workQueueWaitDistributionTotal);
+                return callable.call();
+            }));
+            int queueDepth = executor.getQueue().size(); //sharedExecutor may be null after shutdown
+            if (queueDepth > maxQueueDepth)
+                maxQueueDepth = queueDepth;
         } else {
             // No threading here, just do the work and process it.
             processor.accept(callable.call());
         }
     }
-    
+
+    /**
+     * This indicates if tasks are run on the shared pool.
+     * If false, each task is run (and its result consumed) by addTask.
+     */
+    public boolean isThreaded() {
+        return completionService != null;
+    }
+
     public boolean hasNext() {
-        return taskList.size() > completed;
+        return !inFlight.isEmpty();
     }
-    
+
+    /**
+     * This waits for and returns the next result:
+     * the oldest task's result if ordered, else the result of the next task to finish.
+     */
     public T getNextTaskResult() throws InterruptedException, ExecutionException {
-        //get results table from a futureTask
-        //Put null in that position in futureTasks so it can be gc'd after this method
-        FutureTask<T> task = taskList.set(completed++,  null);
+        Future<T> task;
+        if (ordered) {
+            task = inFlight.removeFirst();
+        } else {
+            task = completionService.take();
+            inFlight.remove(task);
+        }
+        completed++;
         return task.get();
     }
-    
+
     public void finishedEnqueing() {
-        if (executorService != null) {
-            executorService.shutdown();
-        }
+        //nothing to do: the shared pool stays active for other requests
     }
-    
+
+    /** This cancels (and interrupts) this manager's unfinished tasks. */
     public void forceShutdown() {
-        if (executorService != null) {
-            executorService.shutdownNow();
-        }
+        Future<T> task;
+        while ((task = inFlight.poll()) != null)
+            task.cancel(true);
     }
-    
+
     public void processResults() throws InterruptedException, ExecutionException, Throwable {
         while(hasNext()) {
             processor.accept(getNextTaskResult());
         }
     }
+
+    /**
+     * This returns a one line summary of the shared pool's status (for status.html).
+     */
+    public static String statusString() {
+        ThreadPoolExecutor tExecutor = sharedExecutor;
+        if (tExecutor == null)
+            return "ThreadedWorkManager: the shared pool of worker threads hasn't been used.";
+        return "ThreadedWorkManager: poolSize=" + tExecutor.getPoolSize() +
+            " activeThreads=" + tExecutor.getActiveCount() +
+            " queueDepth=" + tExecutor.getQueue().size() +
+            " maxQueueDepth(since startup)=" + maxQueueDepth +
+            " completedTasks=" + tExecutor.getCompletedTaskCount();
+    }
+
+    /**
+     * This interrupts the shared pool's threads and discards the pool.
+     * EDStatic.destroy calls this when tomcat is stopped.
+     */
+    public static synchronized void shutdownSharedExecutor() {
+        if (sharedExecutor != null) {
+            sharedExecutor.shutdownNow();
+            sharedExecutor = null;
+        }
+    }
+
+    /**
+     * This tests running tasks on the shared pool: results are consumed in order (or not),
+     * a manager never has more than nThreads tasks running, 
+     * and a manager still works after the shared pool is shut down.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void testSharedPool() throws Throwable {
+        String2.log("\n*** ThreadedWorkManager.testSharedPool");
+        for (int ord = 0; ord < 2; ord++) {
+            boolean tOrdered = ord == 1;
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            ArrayList<Integer> results = new ArrayList<>();
+            ThreadedWorkManager<Integer> manager = new ThreadedWorkManager<>(3, tOrdered, 
+                result -> results.add(result));
+            Test.ensureTrue(manager.isThreaded(), "");
+            for (int i = 0; i < 30; i++) {
+                final int ti = i;
+                manager.addTask(() -> {
+                    int nRunning = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(nRunning, Math::max);
+                    Test.ensureTrue(Thread.currentThread() instanceof WorkerThread, "");
+                    Math2.sleep((30 - ti) % 7);
+                    running.decrementAndGet();
+                    return ti;
+                });
+            }
+            manager.finishedEnqueing();
+            manager.processResults();
+            Test.ensureEqual(results.size(), 30, "");
+            Test.ensureTrue(maxRunning.get() <= 3, "maxRunning=" + maxRunning.get());
+            ArrayList<Integer> sorted = new ArrayList<>(results);
+            Collections.sort(sorted);
+            for (int i = 0; i < 30; i++) {
+                Test.ensureEqual(sorted.get(i).intValue(), i, "");
+                if (tOrdered)
+                    Test.ensureEqual(results.get(i).intValue(), i, "");
+            }
+        }
+        Test.ensureTrue(statusString().indexOf("poolSize=") > 0, statusString());
+
+        //a manager made before shutdownSharedExecutor uses its own pool reference (no NullPointerException)
+        ArrayList<Integer> results = new ArrayList<>();
+        ThreadedWorkManager<Integer> manager = new ThreadedWorkManager<>(2, results::add);
+        manager.addTask(() -> 1);
+        shutdownSharedExecutor();
+        try {
+            manager.addTask(() -> 2);
+            throw new SimpleException("Shouldn't get here.");
+        } catch (RejectedExecutionException e) {
+        }
+        manager.forceShutdown();
+
+        //a new manager makes a new pool
+        manager = new ThreadedWorkManager<>(2, results::add);
+        results.clear();
+        manager.addTask(() -> 3);
+        manager.addTask(() -> 4);
+        manager.processResults();
+        Test.ensureEqual(results.toString(), "[3, 4]", "");
+    }
+
+    /**
+     * This tests that a manager made by a task on the shared pool (or with nThreads&lt;=1)
+     * runs its tasks on the calling thread, so it can't deadlock waiting for the pool.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void testNested() throws Throwable {
+        String2.log("\n*** ThreadedWorkManager.testNested");
+        ArrayList<Integer> results = new ArrayList<>();
+        ThreadedWorkManager<Integer> manager = new ThreadedWorkManager<>(1, results::add);
+        Test.ensureTrue(!manager.isThreaded(), "");
+        manager.addTask(() -> 5);
+        Test.ensureEqual(results.toString(), "[5]", ""); //consumed by addTask
+
+        //fill the pool with tasks that each run a nested manager
+        int n = Math.max(EDStatic.nTableThreads, EDStatic.nGridThreads) + 2;
+        results.clear();
+        manager = new ThreadedWorkManager<>(n, true, results::add);
+        for (int i = 0; i < n; i++) {
+            final int ti = i;
+            manager.addTask(() -> {
+                ArrayList<Integer> nestedResults = new ArrayList<>();
+                ThreadedWorkManager<Integer> nested = new ThreadedWorkManager<>(4, nestedResults::add);
+                Test.ensureTrue(!nested.isThreaded(), "");
+                try {
+                    for (int j = 0; j < 4; j++) {
+                        final int tj = j;
+                        nested.addTask(() -> ti * 10 + tj);
+                    }
+                    nested.processResults();
+                } catch (Throwable t) {
+                    throw new Exception(t);
+                }
+                int sum = 0;
+                for (int r : nestedResults)
+                    sum += r;
+                return sum;
+            });
+        }
+        manager.processResults();
+        Test.ensureEqual(results.size(), n, "");
+        for (int i = 0; i < n; i++)
+            Test.ensureEqual(results.get(i).intValue(), i * 40 + 6, "");
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ ThreadedWorkManager.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) testSharedPool();
+                    if (test ==  1) testNested();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
 }
@@ -0,0 +1,571 @@
+/*
+ * WmsTileCache Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * This manages the WMS GetMap images (tiles) which Erddap.doWmsGetMap caches
+ * in the datasets' cacheDirectories.
+ *
+ * <p>Images are cached by a canonical key (made by Erddap.doWmsGetMap)
+ * which has the tile's z/x/y (if the BBOX is a tile of the EPSG:4326 tile grid,
+ * see zxy()) or the BBOX, the size, the colors, and each layer's dataset, variable,
+ * style, and the time, elevation, and other dimension values that the request
+ * resolves to. So requests from different clients with a different parameter order
+ * or slightly different BBOX rounding share the cached image.
+ * The image's file name includes the time slice (see sliceName()), so when a dataset's
+ * lowUpdate adds or changes data, just the affected time slices are invalidated.
+ *
+ * <p>This keeps an index of the cached images so the total size is at most
+ * EDStatic.wmsTileCacheMB (the least recently used images are deleted).
+ * If EDStatic.wmsTilePreseedMaxZoom &gt;= 0, the tiles for the latest time
+ * are made in the background whenever a grid dataset is (re)loaded.
+ *
+ * <p>This is thread-safe.
+ */
+public class WmsTileCache {
+
+    /** The width and height (in pixels) of a tile. */
+    public final static int TILE_SIZE = 256;
+
+    /** The maximum zoom level. */
+    public final static int MAX_ZOOM = 20;
+
+    /** The maximum wmsTilePreseedMaxZoom (zoom level 6 has up to 8192 tiles per variable). */
+    public final static int MAX_PRESEED_ZOOM = 6;
+
+    /** The sliceName for images without a time (or for any time). */
+    public final static String ALL_TIMES = "all";
+
+    /** The index of the cached images: fullName -&gt; nBytes, in access order (least recently used first). */
+    private final static LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private static long indexBytes = 0;
+
+    //counters (since startup)
+    private static long nHits = 0, nMisses = 0, nEvictions = 0, nInvalidated = 0;
+    private static long nPreseeded = 0;
+
+    /** The one background thread which preseeds the tiles (for all datasets). 
+     * null until it is needed (and after shutdown()). guarded by WmsTileCache.class */
+    private static ExecutorService preseeder = null;
+
+    /** The datasetIDs which are queued or being preseeded. */
+    private final static Set<String> pendingPreseeds = ConcurrentHashMap.newKeySet();
+
+    /** The method (Erddap.preseedWmsTiles) which preseeds a dataset's tiles. null until Erddap sets it. */
+    private static volatile Consumer<String> preseedFunction = null;
+
+    /**
+     * If the bounding box is a tile of the EPSG:4326 (WMTS WorldCRS84Quad-like) tile grid,
+     * this returns the tile's z/x/y.
+     * At zoom level z, each tile is 180/2^z degrees wide and high, x=0 is at longitude=-180
+     * (but x may be larger than usual for datasets with longitude 0 to 360),
+     * and y=0 is at latitude=90.
+     *
+     * @param minx the minimum longitude
+     * @param miny the minimum latitude
+     * @param maxx the maximum longitude
+     * @param maxy the maximum latitude
+     * @return the tile's z/x/y, or null if the bounding box isn't a tile
+     *   (to within 1/10000 of a pixel).
+     */
+    public static String zxy(double minx, double miny, double maxx, double maxy) {
+        double height = maxy - miny;
+        if (!(height > 0))
+            return null;
+        int z = Math2.roundToInt(Math.log(180 / height) / Math.log(2));
+        if (z < 0 || z > MAX_ZOOM)
+            return null;
+        double size = 180.0 / (1 << z);
+        double tolerance = size / (TILE_SIZE * 10000.0);
+        double fx = (minx + 180) / size;
+        double fy = (90 - maxy) / size;
+        long x = Math.round(fx);
+        long y = Math.round(fy);
+        if (Math.abs(height - size) > tolerance || Math.abs(maxx - minx - size) > tolerance ||
+            Math.abs(fx - x) * size > tolerance || Math.abs(fy - y) * size > tolerance ||
+            x < 0 || y < 0)
+            return null;
+        return z + "/" + x + "/" + y;
+    }
+
+    /**
+     * This returns the exact bounding box of a tile.
+     *
+     * @param z the zoom level (0 to MAX_ZOOM)
+     * @param x the tile's column (0 is at longitude=-180)
+     * @param y the tile's row (0 is at latitude=90)
+     * @return double[]{minx, miny, maxx, maxy}
+     */
+    public static double[] tileBbox(int z, long x, long y) {
+        double size = 180.0 / (1 << z);
+        double maxy = 90 - y * size;
+        double minx = -180 + x * size;
+        return new double[]{minx, maxy - size, minx + size, maxy};
+    }
+
+    /**
+     * This returns the exact bounding box of a tile.
+     *
+     * @param zxy a tile's z/x/y (from zxy())
+     * @return double[]{minx, miny, maxx, maxy}
+     */
+    public static double[] tileBbox(String zxy) {
+        String parts[] = String2.split(zxy, '/');
+        return tileBbox(String2.parseInt(parts[0]), String2.parseLong(parts[1]),
+            String2.parseLong(parts[2]));
+    }
+
+    /**
+     * This returns the part of a cached image's file name which identifies its time slice.
+     *
+     * @param epochSeconds the image's time (for the dataset whose cacheDirectory has the image),
+     *   or NaN if none
+     * @return the sliceName, e.g., t1.6725312E9 or ALL_TIMES
+     */
+    public static String sliceName(double epochSeconds) {
+        return Double.isNaN(epochSeconds)? ALL_TIMES : "t" + epochSeconds;
+    }
+
+    /**
+     * This returns the file name (without the directory and extension) for a cached image.
+     *
+     * @param datasetID the datasetID of the dataset whose cacheDirectory has the image
+     *   (or null if the image is in EDStatic.fullWmsCacheDirectory)
+     * @param sliceName from sliceName()
+     * @param key the image's canonical key
+     */
+    public static String fileName(String datasetID, String sliceName, String key) {
+        return (datasetID == null? "" : datasetID + "_") + "wms_" + sliceName + "_" + String2.md5Hex12(key);
+    }
+
+    /**
+     * This checks if a cached image exists (and if so, marks it as recently used).
+     *
+     * @param fullName the image's full file name
+     * @return true if the file exists
+     */
+    public static boolean isCached(String fullName) {
+        File file = new File(fullName);
+        long length = file.length(); //0 if the file doesn't exist
+        synchronized (index) {
+            if (length > 0) {
+                if (index.get(fullName) == null) { //e.g., after a restart
+                    index.put(fullName, length);
+                    indexBytes += length;
+                }
+                nHits++;
+            } else {
+                Long old = index.remove(fullName);
+                if (old != null)
+                    indexBytes -= old;
+                nMisses++;
+            }
+        }
+        return length > 0;
+    }
+
+    /**
+     * This adds a new cached image to the index and deletes the least recently used
+     * images if the total size is over EDStatic.wmsTileCacheMB.
+     *
+     * @param fullName the image's full file name
+     */
+    public static void added(String fullName) {
+        long length = File2.length(fullName);
+        if (length <= 0)
+            return;
+        long maxBytes = EDStatic.wmsTileCacheMB * (long)Math2.BytesPerMB;
+        synchronized (index) {
+            Long old = index.put(fullName, length);
+            indexBytes += length - (old == null? 0 : old);
+            if (maxBytes <= 0)
+                return;
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (indexBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> victim = it.next();
+                if (victim.getKey().equals(fullName))
+                    break;
+                File2.simpleDelete(victim.getKey());
+                indexBytes -= victim.getValue();
+                it.remove();
+                nEvictions++;
+            }
+        }
+    }
+
+    /**
+     * This deletes a dataset's cached images for a range of times.
+     * EDDGridFromFiles.lowUpdate calls this when it adds or changes files.
+     *
+     * @param cacheDir the dataset's cacheDirectory
+     * @param datasetID the datasetID
+     * @param minTime the minimum time (epochSeconds) of the changed data, or NaN for all times
+     * @param maxTime the maximum time (epochSeconds) of the changed data, or NaN for all times
+     * @return the number of images deleted
+     */
+    public static int invalidate(String cacheDir, String datasetID, double minTime, double maxTime) {
+        String prefix = datasetID + "_wms_";
+        boolean allTimes = Double.isNaN(minTime) || Double.isNaN(maxTime);
+        String names[] = new File(cacheDir).list();
+        int nDeleted = 0;
+        for (int i = 0; names != null && i < names.length; i++) {
+            String name = names[i];
+            if (!name.startsWith(prefix))
+                continue;
+            int po = name.indexOf('_', prefix.length()); //the md5Hex12 part has '_'s, the sliceName doesn't
+            if (po < 0)
+                continue;
+            String slice = name.substring(prefix.length(), po);
+            double time = slice.startsWith("t")? String2.parseDouble(slice.substring(1)) : Double.NaN;
+            if (allTimes || Double.isNaN(time) || (time >= minTime && time <= maxTime)) {
+                File2.simpleDelete(cacheDir + name);
+                nDeleted++;
+                synchronized (index) {
+                    Long old = index.remove(cacheDir + name);
+                    if (old != null)
+                        indexBytes -= old;
+                }
+            }
+        }
+        synchronized (index) {
+            nInvalidated += nDeleted;
+        }
+        if (nDeleted > 0 && EDStatic.verbose)
+            String2.log("WmsTileCache.invalidate datasetID=" + datasetID +
+                " deleted " + nDeleted + " images" +
+                (allTimes? "" : " for times " + minTime + " to " + maxTime));
+        return nDeleted;
+    }
+
+    /**
+     * This removes a directory's images (e.g., a dataset's cacheDirectory)
+     * from the index. Call this when the files are deleted.
+     *
+     * @param dir a directory with a trailing slash
+     */
+    public static void removeDirectory(String dir) {
+        synchronized (index) {
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> me = it.next();
+                if (me.getKey().startsWith(dir)) {
+                    indexBytes -= me.getValue();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * This returns a valid wmsTilePreseedMaxZoom value.
+     *
+     * @param zoom the value from datasets.xml (Integer.MAX_VALUE if missing or invalid)
+     * @return -1 (off, for invalid values) to MAX_PRESEED_ZOOM.
+     *   Values over MAX_PRESEED_ZOOM are reduced to MAX_PRESEED_ZOOM (with a warning in the log).
+     */
+    public static int validPreseedMaxZoom(int zoom) {
+        if (zoom < -1 || zoom == Integer.MAX_VALUE)
+            return EDStatic.DEFAULT_wmsTilePreseedMaxZoom;
+        if (zoom > MAX_PRESEED_ZOOM) {
+            String2.log(String2.WARNING + ": wmsTilePreseedMaxZoom=" + zoom + 
+                " is too big, so it was changed to " + MAX_PRESEED_ZOOM + ".");
+            return MAX_PRESEED_ZOOM;
+        }
+        return zoom;
+    }
+
+    /**
+     * Erddap calls this to set the method which preseeds a dataset's tiles.
+     *
+     * @param tPreseedFunction accepts a datasetID
+     */
+    public static void setPreseedFunction(Consumer<String> tPreseedFunction) {
+        preseedFunction = tPreseedFunction;
+    }
+
+    /**
+     * This queues the preseeding of a grid dataset's tiles for the latest time
+     * (if EDStatic.wmsTilePreseedMaxZoom &gt;= 0).
+     *
+     * @param datasetID the datasetID
+     */
+    public static void requestPreseed(String datasetID) {
+        Consumer<String> function = preseedFunction;
+        if (EDStatic.wmsTilePreseedMaxZoom < 0 || function == null ||
+            !pendingPreseeds.add(datasetID))
+            return;
+        preseeder().execute(() -> {
+            try {
+                function.accept(datasetID);
+            } catch (Throwable t) {
+                String2.log(String2.ERROR + " in WmsTileCache preseed for datasetID=" + datasetID + ":\n" +
+                    MustBe.throwableToString(t));
+            } finally {
+                pendingPreseeds.remove(datasetID);
+            }
+        });
+    }
+
+    /** This returns the preseeder (making it if needed). */
+    private static synchronized ExecutorService preseeder() {
+        if (preseeder == null) {
+            preseeder = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "WmsTileCache preseeder");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return preseeder;
+    }
+
+    /**
+     * This interrupts the preseeder thread (Erddap.preseedWmsTiles stops when 
+     * it sees the interrupt), discards the queued preseeds, 
+     * and waits (up to 10 seconds) for the current preseed to stop.
+     * EDStatic.destroy calls this when tomcat is stopped.
+     */
+    public static void shutdown() {
+        ExecutorService tPreseeder;
+        synchronized (WmsTileCache.class) {
+            tPreseeder = preseeder;
+            preseeder = null;
+        }
+        if (tPreseeder == null)
+            return;
+        tPreseeder.shutdownNow();
+        pendingPreseeds.clear();
+        try {
+            if (!tPreseeder.awaitTermination(10, TimeUnit.SECONDS))
+                String2.log(String2.WARNING + ": WmsTileCache preseeder didn't stop within 10 seconds.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Erddap.preseedWmsTiles calls this after it makes a tile. */
+    public static void preseeded() {
+        synchronized (index) {
+            nPreseeded++;
+        }
+    }
+
+    /**
+     * This returns a one line summary of the cache's status (for status.html).
+     */
+    public static String statusString() {
+        synchronized (index) {
+            return "WmsTileCache: nImages=" + index.size() +
+                " MB=" + indexBytes / Math2.BytesPerMB + " (of " + EDStatic.wmsTileCacheMB + ")" +
+                " hits=" + nHits + " misses=" + nMisses +
+                " evictions=" + nEvictions + " invalidated=" + nInvalidated +
+                " preseeded=" + nPreseeded + " pendingPreseeds=" + pendingPreseeds.size() +
+                " (since startup)";
+        }
+    }
+
+    /**
+     * This tests the tile keys, the cache index, invalidation, and validPreseedMaxZoom.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** WmsTileCache.basicTest");
+
+        //zxy: a tile's bbox (even with slightly different rounding) is that tile
+        Test.ensureEqual(zxy(-180, -90, 0, 90), "0/0/0", "");
+        Test.ensureEqual(zxy(0, -90, 180, 90), "0/1/0", "");
+        Test.ensureEqual(zxy(-135, 45, -112.5, 67.5), "3/2/1", "");
+        Test.ensureEqual(zxy(-135.0000000001, 44.9999999999, -112.4999999999, 67.5000000001), "3/2/1", "");
+        Test.ensureEqual(zxy(180, 0, 202.5, 22.5), "3/16/3", ""); //for lon 0 to 360
+        Test.ensureEqual(zxy(-135, 45, -112, 67.5), null, ""); //not square
+        Test.ensureEqual(zxy(-134, 45, -111, 68), null, ""); //not on the grid
+        Test.ensureEqual(zxy(-135, 45, -135, 45), null, ""); //no height
+        Test.ensureEqual(zxy(-180, -90, 180, 90), null, ""); //too big
+        Test.ensureEqual(zxy(-202.5, 0, -180, 22.5), null, ""); //x < 0
+
+        //tileBbox is the inverse of zxy
+        for (int z = 0; z <= 8; z++) {
+            long x = (1L << z) + 1, y = (1L << z) / 3; //any tile
+            double bbox[] = tileBbox(z, x, y);
+            Test.ensureEqual(zxy(bbox[0], bbox[1], bbox[2], bbox[3]), z + "/" + x + "/" + y, "z=" + z);
+            Test.ensureEqual(tileBbox(z + "/" + x + "/" + y), bbox, "z=" + z);
+        }
+
+        //fileName: the same for the same key; different for a different key or slice
+        String key = "tile=3/2/1 layers=myDataset:sst styles= time=1.6725312E9";
+        Test.ensureEqual(sliceName(1.6725312E9), "t1.6725312E9", "");
+        Test.ensureEqual(sliceName(Double.NaN), ALL_TIMES, "");
+        String name = fileName("myDataset", sliceName(1.6725312E9), key);
+        Test.ensureTrue(name.startsWith("myDataset_wms_t1.6725312E9_"), name);
+        Test.ensureEqual(fileName("myDataset", sliceName(1.6725312E9), key), name, "");
+        Test.ensureTrue(!fileName("myDataset", sliceName(1.6725312E9), key + "x").equals(name), "");
+        Test.ensureTrue(!fileName("myDataset", sliceName(1.6726176E9), key).equals(name), "");
+        Test.ensureTrue(fileName(null, ALL_TIMES, key).startsWith("wms_all_"), "");
+
+        //invalidate: just the images for the changed times (and for all times) are deleted
+        String dir = File2.getSystemTempDirectory() + 
+            "WmsTileCache.basicTest_" + Math2.random(Integer.MAX_VALUE) + "/";
+        File2.makeDirectory(dir);
+        int oWmsTileCacheMB = EDStatic.wmsTileCacheMB;
+        try {
+            double times[] = {100, 200, 300, Double.NaN};
+            String names[] = new String[times.length];
+            for (int i = 0; i < times.length; i++) {
+                names[i] = fileName("myDataset", sliceName(times[i]), key) + ".png";
+                Test.ensureEqual(File2.writeToFileUtf8(dir + names[i], "image" + i), "", "");
+                Test.ensureTrue(!isCached(dir + names[i] + "x"), "");
+                added(dir + names[i]);
+                Test.ensureTrue(isCached(dir + names[i]), "");
+            }
+            String otherName = fileName("otherDataset", sliceName(200), key) + ".png";
+            Test.ensureEqual(File2.writeToFileUtf8(dir + otherName, "other"), "", "");
+            Test.ensureEqual(invalidate(dir, "myDataset", 150, 250), 2, ""); //200 and NaN
+            Test.ensureTrue( File2.isFile(dir + names[0]), "");
+            Test.ensureTrue(!File2.isFile(dir + names[1]), "");
+            Test.ensureTrue( File2.isFile(dir + names[2]), "");
+            Test.ensureTrue(!File2.isFile(dir + names[3]), "");
+            Test.ensureTrue( File2.isFile(dir + otherName), "");
+            Test.ensureTrue(!isCached(dir + names[1]), "");
+            Test.ensureEqual(invalidate(dir, "myDataset", Double.NaN, Double.NaN), 2, ""); //all
+            Test.ensureTrue(!File2.isFile(dir + names[0]), "");
+            Test.ensureTrue( File2.isFile(dir + otherName), "");
+
+            //added: the least recently used images are deleted if over wmsTileCacheMB
+            EDStatic.wmsTileCacheMB = 1;
+            byte bytes[] = new byte[Math2.BytesPerMB / 3];
+            String bigNames[] = new String[4];
+            for (int i = 0; i < bigNames.length; i++) {
+                bigNames[i] = dir + fileName("bigDataset", ALL_TIMES, key + i) + ".png";
+                Files.write(Paths.get(bigNames[i]), bytes);
+                if (i == 3)
+                    Test.ensureTrue(isCached(bigNames[0]), ""); //so [1] is the least recently used
+                added(bigNames[i]);
+            }
+            Test.ensureTrue( File2.isFile(bigNames[0]), "");
+            Test.ensureTrue(!File2.isFile(bigNames[1]), "");
+            Test.ensureTrue( File2.isFile(bigNames[2]), "");
+            Test.ensureTrue( File2.isFile(bigNames[3]), "");
+        } finally {
+            EDStatic.wmsTileCacheMB = oWmsTileCacheMB;
+            removeDirectory(dir);
+            File2.deleteAllFiles(dir, true, true);
+            File2.delete(dir);
+        }
+
+        //validPreseedMaxZoom
+        Test.ensureEqual(validPreseedMaxZoom(-1), -1, "");
+        Test.ensureEqual(validPreseedMaxZoom(0), 0, "");
+        Test.ensureEqual(validPreseedMaxZoom(6), 6, "");
+        Test.ensureEqual(validPreseedMaxZoom(7), 6, "");
+        Test.ensureEqual(validPreseedMaxZoom(20), 6, "");
+        Test.ensureEqual(validPreseedMaxZoom(-2), EDStatic.DEFAULT_wmsTilePreseedMaxZoom, "");
+        Test.ensureEqual(validPreseedMaxZoom(Integer.MAX_VALUE), EDStatic.DEFAULT_wmsTilePreseedMaxZoom, "");
+
+        //shutdown interrupts the preseed which is running and discards the queued ones
+        int oMaxZoom = EDStatic.wmsTilePreseedMaxZoom;
+        Consumer<String> oFunction = preseedFunction;
+        try {
+            EDStatic.wmsTilePreseedMaxZoom = 2;
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicBoolean interrupted = new AtomicBoolean(false);
+            AtomicInteger nRun = new AtomicInteger(0);
+            setPreseedFunction(tDatasetID -> {
+                nRun.incrementAndGet();
+                started.countDown();
+                try {
+                    Thread.sleep(60000); 
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            });
+            requestPreseed("basicTest1");
+            requestPreseed("basicTest2"); //queued
+            Test.ensureTrue(started.await(10, TimeUnit.SECONDS), "");
+            long time = System.currentTimeMillis();
+            shutdown();
+            Test.ensureTrue(System.currentTimeMillis() - time < 10000, "");
+            Test.ensureTrue(interrupted.get(), "");
+            Test.ensureEqual(nRun.get(), 1, "");
+            Test.ensureTrue(statusString().indexOf("pendingPreseeds=0") >= 0, statusString());
+            synchronized (WmsTileCache.class) {
+                Test.ensureTrue(preseeder == null, "");
+            }
+            shutdown(); //it is okay to call this again
+
+            //a later request starts a new preseeder
+            CountDownLatch ran = new CountDownLatch(1);
+            setPreseedFunction(tDatasetID -> ran.countDown());
+            requestPreseed("basicTest3");
+            Test.ensureTrue(ran.await(10, TimeUnit.SECONDS), "");
+            shutdown();
+        } finally {
+            EDStatic.wmsTilePreseedMaxZoom = oMaxZoom;
+            setPreseedFunction(oFunction);
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ WmsTileCache.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -53,6 +53,9 @@ public class EDVTimeStamp extends EDV {
     protected String time_precision;  //see Calendar2.epochSecondsToLimitedIsoStringT
     protected String time_zone;  //if not specified, will be Zulu
     protected TimeZone timeZone = null; //for Java   null=Zulu
+    //if >0, source times with this length (and 'Z' or not) are first tried with Calendar2.simpleIsoStringToMillis
+    protected int simpleIsoLength = 0;
+    protected boolean simpleIsoZ = false;
  
     /**
      * This class holds information about the time variable,
@@ -238,6 +241,16 @@ public class EDVTimeStamp extends EDV {
                 //    "probably because the time_zone is supported by Joda but not Java.");
             }
 
+            //simple ISO formats (Zulu) can be parsed quickly (and identically) by Calendar2.simpleIsoStringToMillis
+            if (timeZone == null &&
+                (dateTimeFormat.equals(Calendar2.ISO8601DATE_FORMAT) ||
+                 dateTimeFormat.equals(Calendar2.ISO8601T_FORMAT) ||
+                 dateTimeFormat.equals(Calendar2.ISO8601T3_FORMAT) ||
+                 dateTimeFormat.equals("yyyy-MM-dd'T'HH:mm:ss'Z'") ||
+                 dateTimeFormat.equals("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"))) {
+                simpleIsoZ = dateTimeFormat.endsWith("'Z'");
+                simpleIsoLength = String2.replaceAll(dateTimeFormat, "'", "").length();
+            }
         }
 
         //then set missing_value  (as PAType.DOUBLE)
@@ -494,6 +507,13 @@ public class EDVTimeStamp extends EDV {
             return sourceTimeToEpochSeconds(String2.parseDouble(sourceTime));
 
         //time is a string
+        if (simpleIsoLength > 0 && sourceTime != null && 
+            sourceTime.length() == simpleIsoLength &&
+            (sourceTime.charAt(simpleIsoLength - 1) == 'Z') == simpleIsoZ) {
+            long millis = Calendar2.simpleIsoStringToMillis(sourceTime);
+            if (millis != Long.MAX_VALUE)
+                return millis / 1000.0;
+        }
         try {
             double d = //parseISOWithCalendar2?
                 //parse with Calendar2.parseISODateTime
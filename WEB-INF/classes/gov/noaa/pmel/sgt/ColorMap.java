@@ -61,6 +61,23 @@ abstract public class ColorMap implements Cloneable, PropertyChangeListener, Ser
    *
    */
   abstract public Color getColor(double val);
+  /**
+   * Get the colors (as ARGB ints, see <code>Color.getRGB()</code>) 
+   * for a slice of an array of values.
+   * Subclasses (e.g., CompoundColorMap) may override this with a faster
+   * method which doesn't allocate a <code>Color</code> for each value.
+   *
+   * @param vals the values
+   * @param offset the index of the first value
+   * @param n the number of values
+   * @param argb receives the colors
+   * @param argbOffset the index in argb of the first color
+   */
+  public void getRGBs(double[] vals, int offset, int n, int[] argb, int argbOffset) {
+    for(int i=0; i < n; i++) {
+      argb[argbOffset + i] = getColor(vals[offset + i]).getRGB();
+    }
+  }
 
   /**
    * Get the current user range for the <code>Transform</code>s or
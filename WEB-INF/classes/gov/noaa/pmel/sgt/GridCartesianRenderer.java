@@ -25,12 +25,18 @@ import gov.noaa.pmel.util.Range2D;
 import gov.noaa.pmel.util.Point2D;
 import gov.noaa.pmel.util.Debug;
 
+import java.awt.AlphaComposite;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
 import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.Font;
 import java.awt.Point;
 import java.awt.FontMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.Enumeration;
 import java.beans.PropertyChangeEvent;
 
@@ -233,6 +239,7 @@ if(grid_.getYArray().length == 0) return;
     if (JPane.debug) String2.log(">>xSize=" + xSize + " ySize=" + ySize + "\n" +
         ">>xp[]=" + String2.toCSSVString(xp) + "\n" +
         ">>yp[]=" + String2.toCSSVString(yp));
+    if(drawRasterImage(g, xp, yp, xSize, ySize, gValues)) return;
     for(i=0; i < xSize; i++) {
       for(j=0; j < ySize; j++) {
         val = gValues[count++];
@@ -244,6 +251,83 @@ if(grid_.getYArray().length == 0) return;
       }
     }
   }
+  /**
+   * This draws the raster's cells (the same pixels as the fillRect's 
+   * in drawRaster) into an ARGB image, then draws the image.
+   * The colors come from ColorMap.getRGBs(), so no <code>Color</code> 
+   * is allocated for each cell. This is only used when g draws into an image
+   * (e.g., for .png, .transparentPng, and WMS images) with no scaling, 
+   * since drawing an image into a vector graphics (e.g., .pdf) isn't the same.
+   *
+   * @return true if the raster was drawn, 
+   *   or false if the caller should draw it with fillRect's
+   */
+  private boolean drawRasterImage(Graphics g, int[] xp, int[] yp, 
+    int xSize, int ySize, double[] gValues) {
+    if(!(g instanceof Graphics2D)) return false;
+    Graphics2D g2 = (Graphics2D)g;
+    try {
+      if(g2.getDeviceConfiguration().getDevice().getType() != 
+         GraphicsDevice.TYPE_IMAGE_BUFFER) return false;
+    } catch (Throwable t) {  //e.g., HeadlessException
+      return false;
+    }
+    AffineTransform at = g2.getTransform();
+    if((at.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0 ||
+       at.getTranslateX() != Math.rint(at.getTranslateX()) ||
+       at.getTranslateY() != Math.rint(at.getTranslateY())) return false;
+    if(g2.getComposite() != AlphaComposite.SrcOver) return false; //the transparent pixels must not change g
+    int n = xSize * ySize;
+    if(gValues.length < n || xp.length <= xSize || yp.length <= ySize) return false;
+
+    //the bounds of the cells, clipped
+    int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+    int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+    for(int i=0; i <= xSize; i++) {
+      minX = Math.min(minX, xp[i]);
+      maxX = Math.max(maxX, xp[i]);
+    }
+    for(int j=0; j <= ySize; j++) {
+      minY = Math.min(minY, yp[j]);
+      maxY = Math.max(maxY, yp[j]);
+    }
+    Rectangle bounds = new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    Rectangle clip = g2.getClipBounds();
+    if(clip != null) bounds = bounds.intersection(clip);
+    if(bounds.width <= 0 || bounds.height <= 0) return true; //nothing is visible
+    if((long)bounds.width * bounds.height > 50000000) return false;
+
+    //colorize
+    int[] argb = new int[n];
+    attr_.getColorMap().getRGBs(gValues, 0, n, argb, 0);
+    for(int count=0; count < n; count++) {
+      if(!Double.isNaN(gValues[count]) && (argb[count] >>> 24) != 0xFF) 
+        return false; //overlapping translucent cells wouldn't be the same
+    }
+
+    //fill the cells (in the same order as drawRaster, so overlaps are the same)
+    BufferedImage image = new BufferedImage(bounds.width, bounds.height, 
+      BufferedImage.TYPE_INT_ARGB);
+    int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    int bx2 = bounds.x + bounds.width, by2 = bounds.y + bounds.height;
+    int count = 0;
+    for(int i=0; i < xSize; i++) {
+      int x1 = Math.max(bounds.x, Math.min(xp[i], xp[i+1]));
+      int x2 = Math.min(bx2,      Math.max(xp[i], xp[i+1]));
+      for(int j=0; j < ySize; j++, count++) {
+        if(Double.isNaN(gValues[count])) continue;
+        int y1 = Math.max(bounds.y, Math.min(yp[j], yp[j+1]));
+        int y2 = Math.min(by2,      Math.max(yp[j], yp[j+1]));
+        int color = argb[count];
+        for(int y=y1; y < y2; y++) {
+          int po = (y - bounds.y) * bounds.width - bounds.x;
+          for(int x=x1; x < x2; x++) pixels[po + x] = color;
+        }
+      }
+    }
+    g2.drawImage(image, bounds.x, bounds.y, null);
+    return true;
+  }
   /**
    * Get the <code>Attribute</code> associated with
    * the <code>SGTGrid</code> data.
@@ -0,0 +1,115 @@
+/*
+ * ByteWriterBenchmark Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.benchmarks;
+
+import com.cohort.array.ByteWriter;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.util.File2;
+import com.cohort.util.String2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.io.BufferedWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for encoding the cells of a table as .csv or .json text,
+ * the old way (pa.getSVString/getString/getJsonString to a BufferedWriter)
+ * vs. ByteWriter (which the .csv, .tsv, .json, and .jsonl TableWriters now use).
+ * Both write exactly the same bytes.
+ * Run with -prof gc to see the difference in allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteWriterBenchmark {
+
+    @Param({"csv", "json"})
+    public String format;
+
+    @Param({"100000"})
+    public int nRows;
+
+    private PrimitiveArray pas[];
+    private boolean isString[];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Table table = SyntheticData.pointTable(nRows);
+        int nColumns = table.nColumns();
+        pas = new PrimitiveArray[nColumns];
+        isString = new boolean[nColumns];
+        for (int col = 0; col < nColumns; col++) {
+            pas[col] = table.getColumn(col);
+            isString[col] = pas[col].elementType() == PAType.STRING;
+        }
+    }
+
+    @Benchmark
+    public long bufferedWriter() throws Exception {
+        TableWriterBenchmark.CountingOutputStream os = new TableWriterBenchmark.CountingOutputStream();
+        BufferedWriter writer = File2.getBufferedWriterUtf8(os);
+        boolean csv = format.equals("csv");
+        int nColumns = pas.length;
+        for (int row = 0; row < nRows; row++) {
+            for (int col = 0; col < nColumns; col++) {
+                if (csv) {
+                    if (isString[col]) {
+                        writer.write(String2.replaceAll(pas[col].getSVString(row), "\\\"", "\"\""));
+                    } else {
+                        String s = pas[col].getString(row);
+                        writer.write(s.length() == 0? "NaN" : s);
+                    }
+                    writer.write(col == nColumns - 1? "\n" : ",");
+                } else {
+                    writer.write(pas[col].getJsonString(row));
+                    writer.write(col == nColumns - 1? "\n" : ", ");
+                }
+            }
+        }
+        writer.flush();
+        return os.count;
+    }
+
+    @Benchmark
+    public long byteWriter() throws Exception {
+        TableWriterBenchmark.CountingOutputStream os = new TableWriterBenchmark.CountingOutputStream();
+        ByteWriter writer = new ByteWriter(os, File2.UTF_8);
+        boolean csv = format.equals("csv");
+        int nColumns = pas.length;
+        for (int row = 0; row < nRows; row++) {
+            for (int col = 0; col < nColumns; col++) {
+                if (csv) {
+                    if (isString[col])
+                        writer.writeSVString(pas[col], row, true);
+                    else writer.writeString(pas[col], row, "NaN");
+                    writer.write(col == nColumns - 1? '\n' : ',');
+                } else {
+                    writer.writeJsonString(pas[col], row);
+                    writer.write(col == nColumns - 1? "\n" : ", ");
+                }
+            }
+        }
+        writer.flush();
+        return os.count;
+    }
+}
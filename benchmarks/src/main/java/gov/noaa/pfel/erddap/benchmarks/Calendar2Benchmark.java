@@ -0,0 +1,74 @@
+/*
+ * Calendar2Benchmark Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.benchmarks;
+
+import com.cohort.util.Calendar2;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for Calendar2's ISO 8601 String &lt;-&gt; epochSeconds conversions,
+ * which are used for every time value in most ERDDAP responses.
+ * Each invocation converts N values, so the results are per value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Calendar2Benchmark {
+
+    private static final int N = 10000;
+
+    private double seconds[] = new double[N];
+    private String isoStrings[] = new String[N];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(17);
+        for (int i = 0; i < N; i++) {
+            //1950 - 2050, to the second
+            seconds[i] = Math.rint(-631152000 + random.nextDouble() * 3155760000.0);
+            isoStrings[i] = Calendar2.epochSecondsToIsoStringTZ(seconds[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void parseISODateTimeZulu(Blackhole blackhole) {
+        for (int i = 0; i < N; i++)
+            blackhole.consume(Calendar2.parseISODateTimeZulu(isoStrings[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void isoStringToEpochSeconds(Blackhole blackhole) {
+        for (int i = 0; i < N; i++)
+            blackhole.consume(Calendar2.isoStringToEpochSeconds(isoStrings[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void epochSecondsToIsoStringTZ(Blackhole blackhole) {
+        for (int i = 0; i < N; i++)
+            blackhole.consume(Calendar2.epochSecondsToIsoStringTZ(seconds[i]));
+    }
+}
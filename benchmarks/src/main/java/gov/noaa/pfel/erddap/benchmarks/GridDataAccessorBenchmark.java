@@ -0,0 +1,154 @@
+/*
+ * GridDataAccessorBenchmark Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.benchmarks;
+
+import com.cohort.array.DoubleArray;
+import com.cohort.array.FloatArray;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.dataset.EDD;
+import gov.noaa.pfel.erddap.dataset.EDDGrid;
+import gov.noaa.pfel.erddap.dataset.GridDataAccessor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for GridDataAccessor.incrementChunk: getting all of the data
+ * for a griddap request from an EDDGridFromNcFiles dataset (with several files).
+ *
+ * <p>Making the dataset needs EDStatic, so this needs an ERDDAP content directory:
+ * run with -jvmArgsAppend -DerddapContentDirectory=/path/to/content/erddap/
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridDataAccessorBenchmark {
+
+    /** Each file has 1 time point of nLat x nLon. */
+    @Param({"10"})
+    public int nFiles;
+
+    @Param({"720"})
+    public int nLon;
+
+    private String dir;
+    private EDDGrid eddGrid;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        dir = SyntheticData.tempDir("erddapGridDataAccessorBenchmark");
+        int nLat = nLon / 2;
+        Random random = new Random(17);
+        for (int file = 0; file < nFiles; file++) {
+            int n = nLat * nLon;
+            DoubleArray lon  = new DoubleArray(n, false);
+            DoubleArray lat  = new DoubleArray(n, false);
+            DoubleArray alt  = new DoubleArray(n, false);
+            DoubleArray time = new DoubleArray(n, false);
+            FloatArray sst   = new FloatArray(n, false);
+            for (int y = 0; y < nLat; y++) {
+                for (int x = 0; x < nLon; x++) {
+                    lon.add(-180 + (x + 0.5) * 360.0 / nLon);
+                    lat.add(-90  + (y + 0.5) * 180.0 / nLat);
+                    alt.add(0);
+                    time.add(SyntheticData.START_SECONDS + file * 86400.0);
+                    sst.add(random.nextInt(20) == 0? Float.NaN : 30 * random.nextFloat());
+                }
+            }
+            Table table = new Table();
+            table.addColumn("longitude", lon);
+            table.columnAttributes(0).add("units", "degrees_east");
+            table.addColumn("latitude", lat);
+            table.columnAttributes(1).add("units", "degrees_north");
+            table.addColumn("altitude", alt);
+            table.columnAttributes(2).add("units", "m");
+            table.addColumn("time", time);
+            table.columnAttributes(3).add("units", "seconds since 1970-01-01T00:00:00Z");
+            table.addColumn("sst", sst);
+            table.columnAttributes(4).add("units", "degree_C");
+            table.saveAs4DNc(dir + "grid" + file + ".nc", 0, 1, 2, 3);
+        }
+
+        eddGrid = (EDDGrid)EDD.oneFromXmlFragment(null,
+            "<dataset type=\"EDDGridFromNcFiles\" datasetID=\"benchmarkGrid\" active=\"true\">\n" +
+            "    <reloadEveryNMinutes>1000000</reloadEveryNMinutes>\n" +
+            "    <fileDir>" + dir + "</fileDir>\n" +
+            "    <fileNameRegex>grid.*\\.nc</fileNameRegex>\n" +
+            "    <recursive>false</recursive>\n" +
+            "    <metadataFrom>last</metadataFrom>\n" +
+            "    <addAttributes>\n" +
+            "        <att name=\"cdm_data_type\">Grid</att>\n" +
+            "        <att name=\"Conventions\">CF-1.6, ACDD-1.3</att>\n" +
+            "        <att name=\"infoUrl\">https://coastwatch.pfeg.noaa.gov/erddap/</att>\n" +
+            "        <att name=\"institution\">NOAA</att>\n" +
+            "        <att name=\"license\">[standard]</att>\n" +
+            "        <att name=\"summary\">Synthetic grid data for benchmarks.</att>\n" +
+            "        <att name=\"title\">Synthetic Grid Data</att>\n" +
+            "    </addAttributes>\n" +
+            "    <axisVariable><sourceName>time</sourceName><destinationName>time</destinationName></axisVariable>\n" +
+            "    <axisVariable><sourceName>altitude</sourceName><destinationName>altitude</destinationName></axisVariable>\n" +
+            "    <axisVariable><sourceName>latitude</sourceName><destinationName>latitude</destinationName></axisVariable>\n" +
+            "    <axisVariable><sourceName>longitude</sourceName><destinationName>longitude</destinationName></axisVariable>\n" +
+            "    <dataVariable>\n" +
+            "        <sourceName>sst</sourceName>\n" +
+            "        <destinationName>sst</destinationName>\n" +
+            "        <dataType>float</dataType>\n" +
+            "        <addAttributes>\n" +
+            "            <att name=\"ioos_category\">Temperature</att>\n" +
+            "            <att name=\"long_name\">Sea Surface Temperature</att>\n" +
+            "        </addAttributes>\n" +
+            "    </dataVariable>\n" +
+            "</dataset>\n");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticData.deleteTempDir(dir);
+    }
+
+    private long getAll(String userDapQuery) throws Throwable {
+        GridDataAccessor gda = new GridDataAccessor(0, eddGrid, 
+            "/erddap/griddap/benchmarkGrid.nc", userDapQuery, 
+            true, true); //rowMajor, convertToNaN
+        long n = 0;
+        try {
+            while (gda.incrementChunk())
+                n += gda.getPartialDataValues(0).size();
+        } finally {
+            gda.releaseGetResources();
+        }
+        return n;
+    }
+
+    /** All of the data. */
+    @Benchmark
+    public long incrementChunkAll() throws Throwable {
+        return getAll("sst");
+    }
+
+    /** Every 4th lat and lon, from every file. */
+    @Benchmark
+    public long incrementChunkStride() throws Throwable {
+        return getAll("sst[][][0:4:last][0:4:last]");
+    }
+}
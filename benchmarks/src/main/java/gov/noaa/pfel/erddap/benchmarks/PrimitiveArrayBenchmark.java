@@ -0,0 +1,130 @@
+/*
+ * PrimitiveArrayBenchmark Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.benchmarks;
+
+import com.cohort.array.DoubleArray;
+import com.cohort.array.IntArray;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.StringArray;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for PrimitiveArray sort, rank, and applyConstraint.
+ * applyConstraintRowByRow is the per-row loop that applyConstraint used before 
+ * it had type-specific loops, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4G"})
+public class PrimitiveArrayBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int n;
+
+    private DoubleArray doubles;   //random 0 - 100
+    private IntArray ints;         //random 0 - 99
+    private StringArray strings;   //1000 distinct values
+    private DoubleArray doublesToSort;
+    private StringArray stringsToSort;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(17);
+        doubles = new DoubleArray(n, false);
+        ints    = new IntArray(n, false);
+        strings = new StringArray(n, false);
+        for (int i = 0; i < n; i++) {
+            doubles.add(100 * random.nextDouble());
+            ints.add(random.nextInt(100));
+            strings.add("value" + random.nextInt(1000));
+        }
+    }
+
+    /** sort() sorts in place, so each invocation gets a fresh copy. */
+    @Setup(Level.Invocation)
+    public void copyForSort() {
+        doublesToSort = (DoubleArray)doubles.clone();
+        stringsToSort = (StringArray)strings.clone();
+    }
+
+    @Benchmark
+    public PrimitiveArray sortDoubles() {
+        doublesToSort.sort();
+        return doublesToSort;
+    }
+
+    @Benchmark
+    public PrimitiveArray sortStrings() {
+        stringsToSort.sort();
+        return stringsToSort;
+    }
+
+    @Benchmark
+    public int[] rankDoubles() {
+        return doubles.rank(true);
+    }
+
+    @Benchmark
+    public int[] rankStrings() {
+        return strings.rank(true);
+    }
+
+    /** Two constraints, like &amp;temperature&gt;=30&amp;count&lt;60 */
+    @Benchmark
+    public int applyConstraint() {
+        BitSet keep = new BitSet(n);
+        keep.set(0, n);
+        doubles.applyConstraint(false, keep, ">=", "30");
+        return ints.applyConstraint(false, keep, "<", "60");
+    }
+
+    /** The same constraints as applyConstraint, tested row by row. */
+    @Benchmark
+    public int applyConstraintRowByRow() {
+        BitSet keep = new BitSet(n);
+        keep.set(0, n);
+        for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) 
+            if (!PrimitiveArray.testValueOpValue(doubles.getDouble(row), ">=", 30.0))
+                keep.clear(row);
+        int nStillGood = 0;
+        for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
+            if (PrimitiveArray.testValueOpValue(ints.getInt(row), "<", 60))
+                nStillGood++;
+            else keep.clear(row);
+        }
+        return nStillGood;
+    }
+
+    @Benchmark
+    public int makeIndicesStrings() {
+        return strings.makeIndices(new IntArray(n, false)).size();
+    }
+
+    @Benchmark
+    public int applyConstraintString() {
+        BitSet keep = new BitSet(n);
+        keep.set(0, n);
+        return strings.applyConstraint(false, keep, "=", "value17");
+    }
+}
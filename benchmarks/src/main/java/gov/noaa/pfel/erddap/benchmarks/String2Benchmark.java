@@ -0,0 +1,67 @@
+/*
+ * String2Benchmark Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.benchmarks;
+
+import com.cohort.util.String2;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for String2.canonical, which every StringArray.add uses
+ * (so it is called for every String value read from every source).
+ * The values are new String objects (like values read from a file) 
+ * with 1000 distinct values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class String2Benchmark {
+
+    private static final int N = 100000;
+
+    private String values[] = new String[N];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(17);
+        for (int i = 0; i < N; i++) 
+            values[i] = new String("station" + random.nextInt(1000));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void canonical(Blackhole blackhole) {
+        for (int i = 0; i < N; i++)
+            blackhole.consume(String2.canonical(values[i]));
+    }
+
+    /** The same, with 4 threads, since canonical's map is shared by all threads. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    @Threads(4)
+    public void canonical4Threads(Blackhole blackhole) {
+        for (int i = 0; i < N; i++)
+            blackhole.consume(String2.canonical(values[i]));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * SyntheticData Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.benchmarks;
+
+import com.cohort.array.Attributes;
+import com.cohort.array.DoubleArray;
+import com.cohort.array.FloatArray;
+import com.cohort.array.IntArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.File2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * This makes the synthetic data used by the benchmarks.
+ * The data is random, but the same each time (fixed seeds).
+ */
+public class SyntheticData {
+
+    /** 2020-01-01T00:00:00Z */
+    public static final double START_SECONDS = 1577836800;
+
+    /**
+     * This makes a CF point table with nRows rows: 
+     * time, latitude, longitude, station, depth, temperature, and count.
+     *
+     * @param nRows the number of rows
+     * @return a new table
+     */
+    public static Table pointTable(int nRows) {
+        Random random = new Random(17);
+        DoubleArray time = new DoubleArray(nRows, false);
+        FloatArray lat   = new FloatArray(nRows, false);
+        FloatArray lon   = new FloatArray(nRows, false);
+        StringArray station = new StringArray(nRows, false);
+        ShortArray depth = new ShortArray(nRows, false);
+        FloatArray temp  = new FloatArray(nRows, false);
+        IntArray count   = new IntArray(nRows, false);
+        for (int row = 0; row < nRows; row++) {
+            int st = random.nextInt(100);
+            time.add(START_SECONDS + row * 60.0);
+            lat.add(-60 + st * 1.2f);
+            lon.add(-180 + st * 3.6f);
+            station.add("station" + st);
+            depth.add((short)random.nextInt(1000));
+            temp.add(random.nextInt(20) == 0? Float.NaN : 25 * random.nextFloat());
+            count.add(random.nextInt(1000));
+        }
+
+        Table table = new Table();
+        table.globalAttributes()
+            .add("cdm_data_type", "Point")
+            .add("featureType", "Point")
+            .add("Conventions", "CF-1.6, ACDD-1.3")
+            .add("title", "Synthetic Point Data");
+        table.addColumn("time", time);
+        table.columnAttributes(0).add("units", "seconds since 1970-01-01T00:00:00Z")
+                                  .add("standard_name", "time");
+        table.addColumn("latitude", lat);
+        table.columnAttributes(1).add("units", "degrees_north");
+        table.addColumn("longitude", lon);
+        table.columnAttributes(2).add("units", "degrees_east");
+        table.addColumn("station", station);
+        table.addColumn("depth", depth);
+        table.columnAttributes(4).add("units", "m");
+        table.addColumn("temperature", temp);
+        table.columnAttributes(5).add("units", "degree_C");
+        table.addColumn("count", count);
+        return table;
+    }
+
+    /**
+     * This makes a new temp directory, which is deleted when the JVM exits.
+     *
+     * @param prefix the start of the directory's name
+     * @return the directory name, with a trailing slash
+     * @throws Exception if trouble
+     */
+    public static String tempDir(String prefix) throws Exception {
+        File dir = Files.createTempDirectory(prefix).toFile();
+        dir.deleteOnExit();
+        return File2.addSlash(dir.getAbsolutePath().replace('\\', '/'));
+    }
+
+    /**
+     * This deletes a temp directory and its files.
+     *
+     * @param dir the directory from tempDir
+     */
+    public static void deleteTempDir(String dir) {
+        File2.deleteAllFiles(dir, true, true); 
+        File2.delete(dir);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * TableReadBenchmark Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.benchmarks;
+
+import com.cohort.array.StringArray;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for reading a whole file into a Table:
+ * readNcCF and readNDNc (a .nc CF point file) and readASCII (a .csv file).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableReadBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int nRows;
+
+    private String dir;
+    private String ncFileName;
+    private String csvFileName;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Table.verbose = false;
+        Table.reallyVerbose = false;
+        dir = SyntheticData.tempDir("erddapTableReadBenchmark");
+        ncFileName  = dir + "point.nc";
+        csvFileName = dir + "point.csv";
+        Table table = SyntheticData.pointTable(nRows);
+        table.saveAsFlatNc(ncFileName, "row");
+        table.saveAsCsvASCII(csvFileName);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticData.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public Table readNcCF() throws Exception {
+        Table table = new Table();
+        table.readNcCF(ncFileName, null, 0, //standardizeWhat
+            null, null, null);
+        return table;
+    }
+
+    @Benchmark
+    public Table readNcCFConstrained() throws Exception {
+        Table table = new Table();
+        table.readNcCF(ncFileName, null, 0, //standardizeWhat
+            StringArray.fromCSV("station"), StringArray.fromCSV("="), StringArray.fromCSV("station17"));
+        return table;
+    }
+
+    @Benchmark
+    public Table readNDNc() throws Exception {
+        Table table = new Table();
+        table.readNDNc(ncFileName, null, 0, //standardizeWhat
+            null, Double.NaN, Double.NaN);
+        return table;
+    }
+
+    @Benchmark
+    public Table readASCII() throws Exception {
+        Table table = new Table();
+        table.readASCII(csvFileName, 0, 2); //columnNamesLine, dataStartLine (after units line)
+        return table;
+    }
+}
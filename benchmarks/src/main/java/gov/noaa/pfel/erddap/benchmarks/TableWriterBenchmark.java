@@ -0,0 +1,104 @@
+/*
+ * TableWriterBenchmark Copyright 2023, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.benchmarks;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.dataset.EDDTable;
+import gov.noaa.pfel.erddap.dataset.OutputStreamSource;
+import gov.noaa.pfel.erddap.dataset.OutputStreamSourceSimple;
+import gov.noaa.pfel.erddap.dataset.TableWriter;
+import gov.noaa.pfel.erddap.dataset.TableWriterDataTable;
+import gov.noaa.pfel.erddap.dataset.TableWriterDods;
+import gov.noaa.pfel.erddap.dataset.TableWriterDodsAscii;
+import gov.noaa.pfel.erddap.dataset.TableWriterEsriCsv;
+import gov.noaa.pfel.erddap.dataset.TableWriterJson;
+import gov.noaa.pfel.erddap.dataset.TableWriterJsonl;
+import gov.noaa.pfel.erddap.dataset.TableWriterNccsv;
+import gov.noaa.pfel.erddap.dataset.TableWriterSeparatedValue;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the TableWriters that make the common tabledap response file types,
+ * writing a table (in 10 chunks, like a dataset that reads 10 files) to an
+ * OutputStream that discards the bytes.
+ * The TableWriters which need a running ERDDAP (e.g., .htmlTable and .geoJson,
+ * which use EDStatic's messages) aren't included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableWriterBenchmark {
+
+    @Param({".asc", ".csv", ".dataTable", ".dods", ".esriCsv", ".json", 
+        ".jsonlCSV", ".jsonlKVP", ".nccsv", ".tsv"})
+    public String fileType;
+
+    @Param({"100000"})
+    public int nRows;
+
+    private Table chunks[];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Table table = SyntheticData.pointTable(nRows);
+        int nChunks = 10;
+        chunks = new Table[nChunks];
+        for (int i = 0; i < nChunks; i++) 
+            chunks[i] = table.subset(i * nRows / nChunks, 1, (i + 1) * nRows / nChunks - 1);
+    }
+
+    /** This makes a TableWriter like EDDTable.respondToDapQuery does (but with no EDD). */
+    private TableWriter tableWriter(OutputStreamSource oss) {
+        String history = "TableWriterBenchmark";
+        switch (fileType) {
+            case ".asc":       return new TableWriterDodsAscii(0, null, history, oss, EDDTable.SEQUENCE_NAME);
+            case ".csv":       return new TableWriterSeparatedValue(0, null, history, oss, ",", true, true, '2', "NaN");
+            case ".dataTable": return new TableWriterDataTable(0, null, history, oss, true); //writeUnits
+            case ".dods":      return new TableWriterDods(0, null, history, oss, EDDTable.SEQUENCE_NAME);
+            case ".esriCsv":   return new TableWriterEsriCsv(0, null, history, oss);
+            case ".json":      return new TableWriterJson(0, null, history, oss, null, true); //jsonp, writeUnits
+            case ".jsonlCSV":  return new TableWriterJsonl(0, null, history, oss, false, false, null); //writeColNames, writeKVP, jsonp
+            case ".jsonlKVP":  return new TableWriterJsonl(0, null, history, oss, false, true, null);
+            case ".nccsv":     return new TableWriterNccsv(0, null, history, oss);
+            case ".tsv":       return new TableWriterSeparatedValue(0, null, history, oss, "\t", false, true, '2', "NaN");
+            default: throw new IllegalArgumentException("Unsupported fileType=" + fileType);
+        }
+    }
+
+    @Benchmark
+    public long write() throws Throwable {
+        CountingOutputStream os = new CountingOutputStream();
+        TableWriter tableWriter = tableWriter(new OutputStreamSourceSimple(os));
+        for (int i = 0; i < chunks.length; i++)
+            tableWriter.writeSome((Table)chunks[i].clone()); //some writers modify the table
+        tableWriter.finish();
+        return os.count;
+    }
+
+    /** An OutputStream which just counts the bytes. */
+    static class CountingOutputStream extends OutputStream {
+        long count = 0;
+        public void write(int b) {count++;}
+        public void write(byte b[], int off, int len) {count += len;}
+    }
+}